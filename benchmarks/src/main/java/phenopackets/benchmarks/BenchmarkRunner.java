@@ -0,0 +1,81 @@
+package phenopackets.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+
+/**
+ * Runs the benchmarks once for each thread count, with the gc profiler so the allocation rate is
+ * reported with the throughput. The thread counts are given by the threads property, for example
+ * -Dthreads=1,2,4,8, and any other argument is passed to JMH, such as a benchmark name or -p size=10
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_THREADS = "1,2,4";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        List<RunResult> results = new ArrayList<>();
+
+        for (String threads : System.getProperty("threads", DEFAULT_THREADS).split(",")) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .threads(Integer.parseInt(threads.trim()))
+                .addProfiler(GCProfiler.class);
+
+            // Short defaults, the command line options take precedence
+            if (!commandLine.getForkCount().hasValue()) {
+                options.forks(1);
+            }
+            if (!commandLine.getWarmupIterations().hasValue()) {
+                options.warmupIterations(3).warmupTime(TimeValue.seconds(2));
+            }
+            if (!commandLine.getMeasurementIterations().hasValue()) {
+                options.measurementIterations(5).measurementTime(TimeValue.seconds(2));
+            }
+
+            Collection<RunResult> run = new Runner(options.build()).run();
+            results.addAll(run);
+        }
+
+        System.out.println();
+        System.out.println("Benchmark                                    Threads  Params                 ops/s   alloc B/op");
+        for (RunResult result : results) {
+            System.out.printf("%-44s %7d  %-18s %12.1f %12.1f%n",
+                result.getParams().getBenchmark().replace("phenopackets.benchmarks.", ""),
+                result.getParams().getThreads(),
+                params(result),
+                result.getPrimaryResult().getScore(),
+                allocation(result));
+        }
+    }
+
+    private static String params(RunResult result){
+        StringBuilder params = new StringBuilder();
+        for (String key : result.getParams().getParamsKeys()) {
+            if (params.length() > 0) {
+                params.append(',');
+            }
+            params.append(key).append('=').append(result.getParams().getParam(key));
+        }
+        return params.toString();
+    }
+
+    private static double allocation(RunResult result){
+        // Name of the secondary result of the gc profiler in JMH 1.36
+        Result<?> allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+        return (allocation == null) ? Double.NaN : allocation.getScore();
+    }
+}
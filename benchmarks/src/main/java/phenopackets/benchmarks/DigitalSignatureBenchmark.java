@@ -0,0 +1,72 @@
+package phenopackets.benchmarks;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.phenopackets.secure.schema.Phenopacket;
+
+import com.nimbusds.jose.shaded.json.parser.ParseException;
+
+import phenopackets.securityMechanisms.DigitalSignature;
+
+
+/**
+ * Benchmark of the signature and the verification of a whole Phenopacket. The cache of
+ * verifications is disabled, so every verification checks the signature
+ */
+@State(Scope.Benchmark)
+public class DigitalSignatureBenchmark {
+
+    // Number of PhenotypicFeatures and MedicalActions added to the Covid19 example
+    @Param({"0", "10", "100"})
+    public int elements;
+
+    private Path storage;
+    private String phenopacketId;
+    private byte[] phenopacketBytes;
+
+    @Setup
+    public void setup() throws IOException, GeneralSecurityException, URISyntaxException, ParseException{
+        storage = Records.useTemporaryStorage();
+        DigitalSignature.setVerificationCache(null);
+
+        Phenopacket phenopacket = Records.phenopacket(elements);
+        phenopacketId = phenopacket.getId();
+        phenopacketBytes = phenopacket.toByteArray();
+        DigitalSignature.protectWithDS("sign", phenopacketBytes, phenopacketId);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException{
+        Records.deleteStorage(storage);
+    }
+
+    /*
+     * Every signature is appended to the store under the same ID
+     */
+    @Benchmark
+    public void sign() throws IOException, URISyntaxException, ParseException{
+        DigitalSignature.protectWithDS("sign", phenopacketBytes, phenopacketId);
+    }
+
+    /*
+     * protectWithDS prints the result of the verification, so it is measured too
+     */
+    @Benchmark
+    public void verify() throws IOException, URISyntaxException, ParseException{
+        DigitalSignature.protectWithDS("verify", phenopacketBytes, phenopacketId);
+    }
+
+    @Benchmark
+    public Boolean verifyWithoutOutput() throws IOException, URISyntaxException, GeneralSecurityException{
+        return DigitalSignature.verifyWithDS(phenopacketBytes, phenopacketId);
+    }
+}
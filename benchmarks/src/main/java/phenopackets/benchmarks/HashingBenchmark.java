@@ -0,0 +1,66 @@
+package phenopackets.benchmarks;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.phenopackets.secure.schema.core.Disease;
+import org.phenopackets.secure.schema.core.MedicalAction;
+import org.phenopackets.secure.schema.core.PhenotypicFeature;
+
+import phenopackets.SecurePhenopacket;
+import phenopackets.securityMechanisms.Hashing;
+
+
+/**
+ * Benchmark of the hash of each Phenopacket element. Each hash is stored in the index as well
+ */
+@State(Scope.Benchmark)
+public class HashingBenchmark {
+
+    // Number of ontology classes added to each element: disease stages, modifiers or adverse events
+    @Param({"0", "10", "100"})
+    public int size;
+
+    private Path storage;
+    private String phenopacketId;
+    private Disease disease;
+    private PhenotypicFeature phenotypicFeature;
+    private MedicalAction medicalAction;
+
+    @Setup
+    public void setup() throws IOException, GeneralSecurityException, URISyntaxException{
+        storage = Records.useTemporaryStorage();
+        phenopacketId = SecurePhenopacket.generatePhenopacketId();
+        disease = Records.disease(size);
+        phenotypicFeature = Records.phenotypicFeature(size);
+        medicalAction = Records.medicalAction(size);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException{
+        Records.deleteStorage(storage);
+    }
+
+    @Benchmark
+    public String diseaseHash() throws IOException, URISyntaxException{
+        return Hashing.computeDiseaseHash(disease, phenopacketId);
+    }
+
+    @Benchmark
+    public String phenotypicFeatureHash() throws IOException, URISyntaxException{
+        return Hashing.computePhenotypicFeatureHash(phenotypicFeature, phenopacketId);
+    }
+
+    @Benchmark
+    public String medicalActionHash() throws IOException, URISyntaxException{
+        return Hashing.computeMedicalActionHash(medicalAction, phenopacketId, "treatment");
+    }
+}
@@ -0,0 +1,67 @@
+package phenopackets.benchmarks;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import phenopackets.securityMechanisms.HybridAlgorithm;
+import phenopackets.securityMechanisms.HybridEncryption;
+
+
+/**
+ * Benchmark of the hybrid encryption algorithms with the sizes of the encrypted fields: an age,
+ * a MetaData creator and a larger element. The keyset is rotated to the algorithm before measuring
+ */
+public class HybridAlgorithmBenchmark {
+
+    private static final byte[] CONTEXT = "benchmark".getBytes(StandardCharsets.UTF_8);
+
+    @State(Scope.Benchmark)
+    public static class AlgorithmState {
+
+        @Param({"ECIES_P256_HKDF_HMAC_SHA256_AES128_GCM", "ECIES_P256_COMPRESSED_HKDF_HMAC_SHA256_AES128_GCM",
+            "ECIES_P256_HKDF_HMAC_SHA256_AES128_CTR_HMAC_SHA256", "DHKEM_X25519_HKDF_SHA256_HKDF_SHA256_AES_128_GCM",
+            "DHKEM_X25519_HKDF_SHA256_HKDF_SHA256_AES_256_GCM", "DHKEM_X25519_HKDF_SHA256_HKDF_SHA256_CHACHA20_POLY1305"})
+        public String algorithm;
+
+        // An ISO 8601 age, a creator and a MetaData element
+        @Param({"8", "64", "512"})
+        public int size;
+
+        Path storage;
+        byte[] field;
+        byte[] cipherField;
+
+        @Setup
+        public void setup() throws IOException, GeneralSecurityException, URISyntaxException{
+            storage = Records.useTemporaryStorage();
+            HybridEncryption.rotateKeySet(HybridAlgorithm.valueOf(algorithm));
+            field = Records.payload(size);
+            cipherField = HybridEncryption.hybridEncryption("encrypt", field, CONTEXT);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException{
+            Records.deleteStorage(storage);
+        }
+    }
+
+    @Benchmark
+    public byte[] encrypt(AlgorithmState state) throws IOException, GeneralSecurityException, URISyntaxException{
+        return HybridEncryption.hybridEncryption("encrypt", state.field, CONTEXT);
+    }
+
+    @Benchmark
+    public byte[] decrypt(AlgorithmState state) throws IOException, GeneralSecurityException, URISyntaxException{
+        return HybridEncryption.hybridEncryption("decrypt", state.cipherField, CONTEXT);
+    }
+}
@@ -0,0 +1,93 @@
+package phenopackets.benchmarks;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import phenopackets.securityMechanisms.HybridEncryption;
+
+
+/**
+ * Benchmark of the hybrid encryption of a field, such as an age, and of a MetaData element
+ */
+public class HybridEncryptionBenchmark {
+
+    private static final byte[] CONTEXT = "benchmark".getBytes(StandardCharsets.UTF_8);
+
+    @State(Scope.Benchmark)
+    public static class FieldState {
+
+        // Size of the field, an ISO 8601 age is a few bytes long
+        @Param({"8", "64", "512"})
+        public int size;
+
+        Path storage;
+        byte[] field;
+        byte[] cipherField;
+
+        @Setup
+        public void setup() throws IOException, GeneralSecurityException, URISyntaxException{
+            storage = Records.useTemporaryStorage();
+            field = Records.payload(size);
+            cipherField = HybridEncryption.hybridEncryption("encrypt", field, CONTEXT);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException{
+            Records.deleteStorage(storage);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MetaDataState {
+
+        // Number of resources added to the MetaData of the Covid19 example
+        @Param({"0", "10", "100"})
+        public int resources;
+
+        Path storage;
+        byte[] metaData;
+        byte[] cipherMetaData;
+
+        @Setup
+        public void setup() throws IOException, GeneralSecurityException, URISyntaxException{
+            storage = Records.useTemporaryStorage();
+            metaData = Records.metaData(resources).toByteArray();
+            cipherMetaData = HybridEncryption.hybridEncryption("encrypt", metaData, CONTEXT);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException{
+            Records.deleteStorage(storage);
+        }
+    }
+
+    @Benchmark
+    public byte[] encryptField(FieldState state) throws IOException, GeneralSecurityException, URISyntaxException{
+        return HybridEncryption.hybridEncryption("encrypt", state.field, CONTEXT);
+    }
+
+    @Benchmark
+    public byte[] decryptField(FieldState state) throws IOException, GeneralSecurityException, URISyntaxException{
+        return HybridEncryption.hybridEncryption("decrypt", state.cipherField, CONTEXT);
+    }
+
+    @Benchmark
+    public byte[] encryptMetaData(MetaDataState state) throws IOException, GeneralSecurityException, URISyntaxException{
+        return HybridEncryption.hybridEncryption("encrypt", state.metaData, CONTEXT);
+    }
+
+    @Benchmark
+    public byte[] decryptMetaData(MetaDataState state) throws IOException, GeneralSecurityException, URISyntaxException{
+        return HybridEncryption.hybridEncryption("decrypt", state.cipherMetaData, CONTEXT);
+    }
+}
@@ -0,0 +1,102 @@
+package phenopackets.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.phenopackets.secure.schema.Phenopacket;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+import com.nimbusds.jose.shaded.json.parser.ParseException;
+
+import phenopackets.PhenopacketJsonCodec;
+import phenopackets.SecurePhenopacket;
+
+
+/**
+ * Benchmark of the import and the export of a Phenopacket in JSON, and of the codec against JsonFormat
+ */
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+    // Number of PhenotypicFeatures and MedicalActions added to the Covid19 example
+    @Param({"0", "10", "100"})
+    public int elements;
+
+    private Path storage;
+    private Phenopacket phenopacket;
+    private String json;
+    private File jsonFile;
+
+    private final JsonFormat.Printer printer = JsonFormat.printer().includingDefaultValueFields();
+    private final JsonFormat.Parser parser = JsonFormat.parser();
+
+    @Setup
+    public void setup() throws IOException, GeneralSecurityException, URISyntaxException{
+        storage = Records.useTemporaryStorage();
+        phenopacket = Records.phenopacket(elements);
+        json = PhenopacketJsonCodec.pretty().print(phenopacket);
+        jsonFile = Files.writeString(storage.resolve("import.json"), json, StandardCharsets.UTF_8).toFile();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException{
+        Records.deleteStorage(storage);
+    }
+
+    @Benchmark
+    public void exportPhenopacket() throws URISyntaxException{
+        SecurePhenopacket.exportPhenopacket(phenopacket);
+    }
+
+    @Benchmark
+    public Phenopacket importPhenopacket() throws URISyntaxException, ParseException, IOException{
+        return SecurePhenopacket.importPhenopacket(jsonFile);
+    }
+
+    @Benchmark
+    public String printCodec() throws IOException{
+        return PhenopacketJsonCodec.pretty().print(phenopacket);
+    }
+
+    @Benchmark
+    public String printJsonFormat() throws InvalidProtocolBufferException{
+        return printer.print(phenopacket);
+    }
+
+    @Benchmark
+    public Phenopacket parseCodec() throws IOException{
+        return PhenopacketJsonCodec.pretty().parse(json);
+    }
+
+    @Benchmark
+    public Phenopacket parseJsonFormat() throws InvalidProtocolBufferException{
+        Phenopacket.Builder builder = Phenopacket.newBuilder();
+        parser.merge(json, builder);
+        return builder.build();
+    }
+
+    // Print and parse back, as a Phenopacket is exported and imported again
+    @Benchmark
+    public Phenopacket roundTripCodec() throws IOException{
+        return PhenopacketJsonCodec.pretty().parse(PhenopacketJsonCodec.pretty().print(phenopacket));
+    }
+
+    @Benchmark
+    public Phenopacket roundTripJsonFormat() throws InvalidProtocolBufferException{
+        Phenopacket.Builder builder = Phenopacket.newBuilder();
+        parser.merge(printer.print(phenopacket), builder);
+        return builder.build();
+    }
+}
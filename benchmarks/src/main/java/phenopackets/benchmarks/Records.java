@@ -0,0 +1,153 @@
+package phenopackets.benchmarks;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.phenopackets.secure.schema.Phenopacket;
+import org.phenopackets.secure.schema.core.Disease;
+import org.phenopackets.secure.schema.core.MedicalAction;
+import org.phenopackets.secure.schema.core.MetaData;
+import org.phenopackets.secure.schema.core.PhenotypicFeature;
+
+import phenopackets.SecurePhenopacket;
+import phenopackets.examples.Covid19;
+import phenopackets.schema.BlockBuilder;
+import phenopackets.securityMechanisms.ExternalResources;
+import phenopackets.securityMechanisms.FileStorageBackend;
+
+
+/**
+ * Records used by the benchmarks, built from the Covid19 example
+ */
+final class Records {
+
+    /**
+     * Method to create a Phenopacket with a given number of extra elements, half PhenotypicFeatures
+     * and half MedicalActions, so the size of the record grows with the number of elements
+     * @param elements required - number of extra elements
+     * @return the Phenopacket, with a new ID
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws URISyntaxException
+     */
+    static Phenopacket phenopacket(int elements) throws IOException, GeneralSecurityException, URISyntaxException{
+        Phenopacket covid19 = new Covid19().covid19Phenopacket();
+        Phenopacket.Builder builder = Phenopacket.newBuilder(covid19).setId(SecurePhenopacket.generatePhenopacketId());
+
+        PhenotypicFeature feature = covid19.getPhenotypicFeatures(0);
+        MedicalAction medicalAction = covid19.getMedicalActions(0);
+        for (int i = 0; i < elements; i++) {
+            if (i % 2 == 0) {
+                builder.addPhenotypicFeatures(PhenotypicFeature.newBuilder(feature)
+                    .setType(BlockBuilder.createOntologyClass("HP:" + (1000000 + i), "Feature " + i)));
+            } else {
+                builder.addMedicalActions(MedicalAction.newBuilder(medicalAction)
+                    .setTreatmentTarget(BlockBuilder.createOntologyClass("NCIT:C" + (2000000 + i), "Target " + i)));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Method to create a payload of random bytes
+     * @param size required - number of bytes
+     * @return the payload
+     */
+    static byte[] payload(int size){
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * Method to create a MetaData element with a given number of extra resources
+     * @param resources required - number of extra resources
+     * @return the MetaData element
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws URISyntaxException
+     */
+    static MetaData metaData(int resources) throws IOException, GeneralSecurityException, URISyntaxException{
+        MetaData.Builder builder = MetaData.newBuilder(new Covid19().createCovidMetaData());
+        for (int i = 0; i < resources; i++) {
+            builder.addResources(BlockBuilder.createResource("resource" + i, "Resource " + i, "RES" + i,
+                "http://purl.obolibrary.org/obo/resource" + i + ".owl", "2021-01-" + (1 + i % 28), "http://purl.obolibrary.org/obo/RES" + i + "_"));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Method to create a Disease element with a given number of disease stages
+     * @param size required - number of extra disease stages
+     * @return the Disease element
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws URISyntaxException
+     */
+    static Disease disease(int size) throws IOException, GeneralSecurityException, URISyntaxException{
+        Disease.Builder builder = Disease.newBuilder(new Covid19().createCovidDisease().get(0));
+        for (int i = 0; i < size; i++) {
+            builder.addDiseaseStage(BlockBuilder.createOntologyClass("NCIT:C" + (3000000 + i), "Stage " + i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Method to create a PhenotypicFeature element with a given number of modifiers
+     * @param size required - number of extra modifiers
+     * @return the PhenotypicFeature element
+     */
+    static PhenotypicFeature phenotypicFeature(int size){
+        PhenotypicFeature.Builder builder = PhenotypicFeature.newBuilder(new Covid19().createCovidPhenotypicFeatures().get(0));
+        for (int i = 0; i < size; i++) {
+            builder.addModifiers(BlockBuilder.createOntologyClass("HP:" + (4000000 + i), "Modifier " + i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Method to create a MedicalAction element with a given number of adverse events
+     * @param size required - number of extra adverse events
+     * @return the MedicalAction element
+     */
+    static MedicalAction medicalAction(int size){
+        MedicalAction.Builder builder = MedicalAction.newBuilder(new Covid19().createCovidMedicalActions().get(0));
+        for (int i = 0; i < size; i++) {
+            builder.addAdverseEvents(BlockBuilder.createOntologyClass("NCIT:C" + (5000000 + i), "Adverse event " + i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Method to store every file of the benchmark in a new temporary folder, so the keys and the
+     * stores of previous runs do not change the results
+     * @return the temporary folder
+     * @throws IOException
+     */
+    static Path useTemporaryStorage() throws IOException{
+        Path root = Files.createTempDirectory("phenopackets-benchmark");
+        ExternalResources.setStorageBackend(new FileStorageBackend(root));
+        return root;
+    }
+
+    /**
+     * Method to delete the temporary folder of a benchmark
+     * @param root required - the folder given by useTemporaryStorage
+     * @throws IOException
+     */
+    static void deleteStorage(Path root) throws IOException{
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private Records() {}
+}
@@ -0,0 +1,76 @@
+package phenopackets.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.nimbusds.jose.shaded.json.parser.ParseException;
+
+import phenopackets.securityMechanisms.ExternalResources;
+
+
+/**
+ * Benchmark of the JSON entries of the store, which already has a number of entries
+ */
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+
+    private static final String FILE_PREFIX = "P-";
+    private static final String FILE_FORMAT = ".json";
+    private static final String ELEMENT = "hash";
+    private static final String VALUE = "3b7e72edbf2a2a5cbd4d6a1d4c8e0c0f4bb1c0b8d5e0e1a7c3b0f2b9c4d1e5f6";
+
+    // Number of entries in the store before the measurement
+    @Param({"1000", "10000", "100000"})
+    public int storeSize;
+
+    private final ExternalResources externalResources = new ExternalResources();
+    private final AtomicLong nextEntry = new AtomicLong();
+    private Path storage;
+
+    @Setup
+    public void setup() throws IOException, URISyntaxException, ParseException{
+        storage = Records.useTemporaryStorage();
+        for (int i = 0; i < storeSize; i++) {
+            externalResources.createJSONFile(fileName(i), VALUE, ELEMENT);
+        }
+        nextEntry.set(storeSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException{
+        Records.deleteStorage(storage);
+    }
+
+    /*
+     * Each invocation adds a new entry, so the store keeps growing during the measurement
+     */
+    @Benchmark
+    public void createJSONFile() throws URISyntaxException, ParseException{
+        externalResources.createJSONFile(fileName(nextEntry.getAndIncrement()), VALUE, ELEMENT);
+    }
+
+    @Benchmark
+    public String getJSONEntry() throws URISyntaxException, IOException, ParseException{
+        return externalResources.getJSONEntry(fileName(ThreadLocalRandom.current().nextInt(storeSize)), ELEMENT);
+    }
+
+    @Benchmark
+    public File getFileFromResource() throws URISyntaxException{
+        return externalResources.getFileFromResource(fileName(ThreadLocalRandom.current().nextInt(storeSize)));
+    }
+
+    private static String fileName(long entry){
+        return FILE_PREFIX + entry + FILE_FORMAT;
+    }
+}
@@ -0,0 +1,129 @@
+package phenopackets;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+import org.phenopackets.secure.schema.Phenopacket;
+
+
+/**
+ * Export of many Phenopackets, either to a single newline-delimited JSON file, optionally gzip
+ * compressed, or to one P-[PhenopacketID].json file each. Every Phenopacket is printed straight
+ * into a buffered writer with the same printer, so only one Phenopacket is in memory at a time
+ */
+public class PhenopacketExporter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String FILE_PREFIX = "P-";
+    private static final String FILE_FORMAT = ".json";
+
+    // The codecs are immutable and shared by every export
+    private static final PhenopacketJsonCodec LINE_PRINTER = PhenopacketJsonCodec.compact();
+    private static final PhenopacketJsonCodec FILE_PRINTER = PhenopacketJsonCodec.pretty();
+
+    private final Writer writer;
+    private final Path directory;
+    private long count;
+
+    private PhenopacketExporter(Writer writer, Path directory) {
+        this.writer = writer;
+        this.directory = directory;
+    }
+
+    /**
+     * Method to create an exporter to a single NDJSON file, a Phenopacket per line
+     * @param file required - the file, it is replaced if it exists
+     * @param gzip required - if the file is gzip compressed
+     * @return the exporter, it has to be closed to finish the file
+     * @throws IOException
+     */
+    public static PhenopacketExporter toFile(Path file, boolean gzip) throws IOException{
+        // Input validation
+        if (file == null){
+            throw new NullPointerException();
+        }
+        OutputStream output = Channels.newOutputStream(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        if (gzip) {
+            output = new GZIPOutputStream(output, BUFFER_SIZE);
+        }
+        return new PhenopacketExporter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE), null);
+    }
+
+    /**
+     * Method to create an exporter to one P-[PhenopacketID].json file for each Phenopacket
+     * @param directory required - the folder of the files, it is created if it does not exist
+     * @return the exporter
+     * @throws IOException
+     */
+    public static PhenopacketExporter toDirectory(Path directory) throws IOException{
+        // Input validation
+        if (directory == null){
+            throw new NullPointerException();
+        }
+        Files.createDirectories(directory);
+        return new PhenopacketExporter(null, directory);
+    }
+
+    /**
+     * Method to export a Phenopacket
+     * @param phenopacket required - Phenopacket element
+     * @throws IOException
+     */
+    public void write(Phenopacket phenopacket) throws IOException{
+        // Input validation
+        if (phenopacket == null){
+            throw new NullPointerException();
+        }
+
+        if (directory == null) {
+            LINE_PRINTER.appendTo(phenopacket, writer);
+            writer.write('\n');
+        } else {
+            Path file = directory.resolve(FILE_PREFIX + phenopacket.getId() + FILE_FORMAT);
+            try (Writer fileWriter = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                FILE_PRINTER.appendTo(phenopacket, fileWriter);
+            }
+        }
+        count++;
+    }
+
+    /**
+     * Method to export several Phenopackets, they are read from the iterable one at a time
+     * @param phenopackets required - the Phenopacket elements
+     * @throws IOException
+     */
+    public void writeAll(Iterable<Phenopacket> phenopackets) throws IOException{
+        // Input validation
+        if (phenopackets == null){
+            throw new NullPointerException();
+        }
+        for (Phenopacket phenopacket : phenopackets) {
+            write(phenopacket);
+        }
+    }
+
+    /**
+     * @return number of Phenopackets exported
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package phenopackets;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.phenopackets.secure.schema.Phenopacket;
+
+
+/**
+ * Bulk import of the Phenopacket JSON files of a directory tree. The files are read and parsed
+ * by a pool of workers and the Phenopackets are handed to the consumer through a bounded queue,
+ * so the workers wait when the consumer is slower than them
+ */
+public class PhenopacketImporter {
+
+    private static final System.Logger LOGGER = System.getLogger(PhenopacketImporter.class.getName());
+
+    private static final String FILE_FORMAT = ".json";
+    private static final int FILES_PER_THREAD = 2;
+
+    private final int threads;
+    private final int queueCapacity;
+
+    /**
+     * Create an importer with a worker per processor
+     */
+    public PhenopacketImporter() {
+        this(Runtime.getRuntime().availableProcessors(), 256);
+    }
+
+    /**
+     * Create an importer
+     * @param threads required - number of workers that read and parse the files
+     * @param queueCapacity required - maximum number of parsed Phenopackets waiting for the consumer
+     */
+    public PhenopacketImporter(int threads, int queueCapacity) {
+        if (threads <= 0 || queueCapacity <= 0){
+            throw new IllegalArgumentException();
+        }
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Method to import every JSON file of a directory tree. A file that cannot be read or parsed is
+     * reported and the import goes on with the next one
+     * @param directory required - the root of the directory tree
+     * @param consumer required - receives each Phenopacket in the calling thread
+     * @return the report of the import
+     * @throws IOException if the import is interrupted
+     */
+    public Report importDirectory(Path directory, Consumer<Phenopacket> consumer) throws IOException{
+        // Input validation
+        if (directory == null || consumer == null){
+            throw new NullPointerException();
+        }
+
+        BlockingQueue<Item> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Report report = new Report();
+        long start = System.nanoTime();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "phenopacket-import-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread walker = new Thread(() -> walk(directory, workers, queue, report), "phenopacket-import-walker");
+        walker.setDaemon(true);
+        walker.start();
+
+        try {
+            // Hand each Phenopacket to the consumer until the walker has finished
+            while (true) {
+                Item item = queue.take();
+                if (item.path == null) {
+                    break;
+                }
+                try {
+                    consumer.accept(item.phenopacket);
+                    report.imported.increment();
+                } catch (RuntimeException ex) {
+                    report.addError(item.path, ex);
+                }
+            }
+        } catch (InterruptedException ex) {
+            walker.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", ex);
+        } finally {
+            workers.shutdownNow();
+        }
+
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Private method to walk the directory tree and submit a task for each file. The number of files
+     * read at the same time is bounded, the walker waits for a worker when the bound is reached
+     */
+    private void walk(Path directory, ExecutorService workers, BlockingQueue<Item> queue, Report report){
+        int bound = threads * FILES_PER_THREAD;
+        Semaphore inFlight = new Semaphore(bound);
+        PhenopacketJsonCodec codec = PhenopacketJsonCodec.compact();
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.filter(PhenopacketImporter::isJsonFile)::iterator) {
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        queue.put(new Item(path, parse(codec, path, report)));
+                    } catch (IOException | RuntimeException ex) {
+                        report.addError(path, ex);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            report.addError(directory, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        try {
+            // Wait for the last files and tell the consumer the import has finished
+            inFlight.acquire(bound);
+            queue.put(new Item(null, null));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Phenopacket parse(PhenopacketJsonCodec codec, Path path, Report report) throws IOException{
+        report.files.increment();
+        byte[] fileBytes = Files.readAllBytes(path);
+        report.bytes.add(fileBytes.length);
+
+        return codec.parse(new String(fileBytes, StandardCharsets.UTF_8));
+    }
+
+    private static boolean isJsonFile(Path path){
+        return Files.isRegularFile(path) && path.getFileName().toString().endsWith(FILE_FORMAT);
+    }
+
+    private static final class Item {
+
+        private final Path path;
+        private final Phenopacket phenopacket;
+
+        private Item(Path path, Phenopacket phenopacket) {
+            this.path = path;
+            this.phenopacket = phenopacket;
+        }
+    }
+
+    /**
+     * Result of an import: the number of files, the throughput and the files that failed
+     */
+    public static final class Report {
+
+        private final LongAdder files = new LongAdder();
+        private final LongAdder imported = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private volatile long elapsedNanos;
+
+        private Report() {}
+
+        private void addError(Path path, Exception ex){
+            String error = path + ": " + ex.getMessage();
+            LOGGER.log(Level.WARNING, "Error importing {0}", error);
+            errors.add(error);
+        }
+
+        /**
+         * @return number of JSON files found
+         */
+        public long getFiles() {
+            return files.sum();
+        }
+
+        /**
+         * @return number of Phenopackets handed to the consumer
+         */
+        public long getImported() {
+            return imported.sum();
+        }
+
+        /**
+         * @return number of bytes read
+         */
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * @return one message for each file that could not be imported
+         */
+        public List<String> getErrors() {
+            synchronized (errors) {
+                return new ArrayList<>(errors);
+            }
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return Phenopackets imported per second
+         */
+        public double getThroughput() {
+            return (elapsedNanos == 0) ? 0 : getImported() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d of %d files (%d errors) in %.3f s, %.1f Phenopackets/s, %.1f MB/s",
+                getImported(), getFiles(), errors.size(), elapsedNanos / 1e9, getThroughput(),
+                (elapsedNanos == 0) ? 0 : getBytes() * 1e3 / elapsedNanos);
+        }
+    }
+}
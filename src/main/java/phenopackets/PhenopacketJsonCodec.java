@@ -0,0 +1,754 @@
+package phenopackets;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.phenopackets.secure.schema.Phenopacket;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumDescriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.Duration;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Durations;
+import com.google.protobuf.util.FieldMaskUtil;
+import com.google.protobuf.util.JsonFormat;
+import com.google.protobuf.util.Timestamps;
+
+
+/**
+ * JSON codec of Phenopackets that prints and parses in a single streaming pass. The output is the
+ * same as JsonFormat.printer().includingDefaultValueFields() and the parser accepts the same input
+ * as JsonFormat.parser(), but the fields of each message type are resolved only once and no
+ * intermediate JSON tree or String is built. Messages with Any, Struct, Value or ListValue fields
+ * are handed to JsonFormat
+ */
+public final class PhenopacketJsonCodec {
+
+    private static final PhenopacketJsonCodec PRETTY = new PhenopacketJsonCodec(true);
+    private static final PhenopacketJsonCodec COMPACT = new PhenopacketJsonCodec(false);
+
+    private static final String INDENT = "  ";
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+    private static final Set<String> UNSUPPORTED_TYPES = Set.of(
+        "google.protobuf.Any", "google.protobuf.Struct", "google.protobuf.Value", "google.protobuf.ListValue");
+    private static final Set<String> WRAPPER_TYPES = Set.of(
+        "google.protobuf.DoubleValue", "google.protobuf.FloatValue", "google.protobuf.Int64Value",
+        "google.protobuf.UInt64Value", "google.protobuf.Int32Value", "google.protobuf.UInt32Value",
+        "google.protobuf.BoolValue", "google.protobuf.StringValue", "google.protobuf.BytesValue");
+
+    // Same escaping as the HTML-safe Gson writer used by JsonFormat
+    private static final String[] REPLACEMENTS = new String[128];
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            REPLACEMENTS[i] = String.format("\\u%04x", i);
+        }
+        REPLACEMENTS['"'] = "\\\"";
+        REPLACEMENTS['\\'] = "\\\\";
+        REPLACEMENTS['\t'] = "\\t";
+        REPLACEMENTS['\b'] = "\\b";
+        REPLACEMENTS['\n'] = "\\n";
+        REPLACEMENTS['\r'] = "\\r";
+        REPLACEMENTS['\f'] = "\\f";
+        REPLACEMENTS['<'] = "\\u003c";
+        REPLACEMENTS['>'] = "\\u003e";
+        REPLACEMENTS['&'] = "\\u0026";
+        REPLACEMENTS['='] = "\\u003d";
+        REPLACEMENTS['\''] = "\\u0027";
+    }
+
+    // Fields of each message type, shared by both codecs
+    private static final Map<Descriptor, MessagePlan> PLANS = new ConcurrentHashMap<>();
+    private static final Map<Descriptor, Boolean> SUPPORTED = new ConcurrentHashMap<>();
+
+    private final boolean pretty;
+    private final JsonFormat.Printer fallbackPrinter;
+    private final JsonFormat.Parser fallbackParser = JsonFormat.parser();
+
+    private PhenopacketJsonCodec(boolean pretty) {
+        this.pretty = pretty;
+        JsonFormat.Printer printer = JsonFormat.printer().includingDefaultValueFields();
+        this.fallbackPrinter = pretty ? printer : printer.omittingInsignificantWhitespace();
+    }
+
+    /**
+     * @return the codec with the indented output of exportPhenopacket
+     */
+    public static PhenopacketJsonCodec pretty(){
+        return PRETTY;
+    }
+
+    /**
+     * @return the codec with the output in a single line, as in a NDJSON file
+     */
+    public static PhenopacketJsonCodec compact(){
+        return COMPACT;
+    }
+
+    /**
+     * Method to print a Phenopacket or any of its elements
+     * @param message required - the element
+     * @return the JSON String
+     * @throws IOException
+     */
+    public String print(MessageOrBuilder message) throws IOException{
+        StringBuilder output = new StringBuilder(4096);
+        appendTo(message, output);
+        return output.toString();
+    }
+
+    /**
+     * Method to print a Phenopacket or any of its elements straight into an output
+     * @param message required - the element
+     * @param output required - where the JSON is written
+     * @throws IOException
+     */
+    public void appendTo(MessageOrBuilder message, Appendable output) throws IOException{
+        // Input validation
+        if (message == null || output == null){
+            throw new NullPointerException();
+        }
+        if (!isSupported(message.getDescriptorForType())) {
+            fallbackPrinter.appendTo(message, output);
+            return;
+        }
+        new Printer(output, pretty).printValue(message);
+    }
+
+    /**
+     * Method to parse a Phenopacket
+     * @param json required - the JSON String
+     * @return the Phenopacket
+     * @throws IOException if the JSON is not a valid Phenopacket
+     */
+    public Phenopacket parse(String json) throws IOException{
+        // Input validation
+        if (json == null){
+            throw new NullPointerException();
+        }
+        return parse(new StringReader(json));
+    }
+
+    /**
+     * Method to parse a Phenopacket reading the JSON from a reader
+     * @param json required - the reader of the JSON
+     * @return the Phenopacket
+     * @throws IOException if the JSON is not a valid Phenopacket
+     */
+    public Phenopacket parse(Reader json) throws IOException{
+        Phenopacket.Builder phenopacketBuilder = Phenopacket.newBuilder();
+        merge(json, phenopacketBuilder);
+        return phenopacketBuilder.build();
+    }
+
+    /**
+     * Method to parse a Phenopacket or any of its elements into a builder
+     * @param json required - the JSON String
+     * @param builder required - the builder of the element
+     * @throws IOException if the JSON is not a valid element
+     */
+    public void merge(String json, Message.Builder builder) throws IOException{
+        // Input validation
+        if (json == null){
+            throw new NullPointerException();
+        }
+        merge(new StringReader(json), builder);
+    }
+
+    /**
+     * Method to parse a Phenopacket or any of its elements into a builder, reading the JSON from a reader
+     * @param json required - the reader of the JSON
+     * @param builder required - the builder of the element
+     * @throws IOException if the JSON is not a valid element
+     */
+    public void merge(Reader json, Message.Builder builder) throws IOException{
+        // Input validation
+        if (json == null || builder == null){
+            throw new NullPointerException();
+        }
+        if (!isSupported(builder.getDescriptorForType())) {
+            fallbackParser.merge(json, builder);
+            return;
+        }
+        JsonReader reader = new JsonReader(json);
+        reader.setLenient(false);
+        try {
+            mergeValue(reader, builder);
+        } catch (InvalidProtocolBufferException ex) {
+            throw ex;
+        } catch (IOException | RuntimeException ex) {
+            throw new InvalidProtocolBufferException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Private method to check that a message type and its fields do not need the JSON mapping of
+     * Any, Struct, Value or ListValue
+     * @param descriptor required - the message type
+     * @return true if the codec handles the type
+     */
+    private static boolean isSupported(Descriptor descriptor){
+        Boolean supported = SUPPORTED.get(descriptor);
+        if (supported == null) {
+            supported = isSupported(descriptor, new HashSet<>());
+            SUPPORTED.put(descriptor, supported);
+        }
+        return supported;
+    }
+
+    private static boolean isSupported(Descriptor descriptor, Set<Descriptor> visited){
+        if (UNSUPPORTED_TYPES.contains(descriptor.getFullName())) {
+            return false;
+        }
+        if (!visited.add(descriptor)) {
+            return true;
+        }
+        for (FieldDescriptor field : descriptor.getFields()) {
+            if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE && !isSupported(field.getMessageType(), visited)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MessagePlan plan(Descriptor descriptor){
+        return PLANS.computeIfAbsent(descriptor, MessagePlan::new);
+    }
+
+    // Parser
+
+    private static void mergeValue(JsonReader reader, Message.Builder builder) throws IOException{
+        MessagePlan plan = plan(builder.getDescriptorForType());
+        switch (plan.kind) {
+            case TIMESTAMP:
+                try {
+                    builder.mergeFrom(Timestamps.parse(nextText(reader)).toByteString());
+                } catch (ParseException ex) {
+                    throw new InvalidProtocolBufferException("Failed to parse timestamp: " + ex.getMessage());
+                }
+                return;
+            case DURATION:
+                try {
+                    builder.mergeFrom(Durations.parse(nextText(reader)).toByteString());
+                } catch (ParseException ex) {
+                    throw new InvalidProtocolBufferException("Failed to parse duration: " + ex.getMessage());
+                }
+                return;
+            case FIELD_MASK:
+                builder.mergeFrom(FieldMaskUtil.fromJsonString(nextText(reader)).toByteString());
+                return;
+            case WRAPPER:
+                FieldDescriptor valueField = plan.fields[0];
+                builder.setField(valueField, parseValue(reader, valueField, builder));
+                return;
+            default:
+                mergeMessage(reader, builder, plan);
+        }
+    }
+
+    private static void mergeMessage(JsonReader reader, Message.Builder builder, MessagePlan plan) throws IOException{
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new InvalidProtocolBufferException("Expect message object but got: " + reader.peek());
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            FieldDescriptor field = plan.fieldsByName.get(name);
+            if (field == null) {
+                throw new InvalidProtocolBufferException("Cannot find field: " + name + " in message " + plan.descriptor.getFullName());
+            }
+            mergeField(reader, field, builder);
+        }
+        reader.endObject();
+    }
+
+    private static void mergeField(JsonReader reader, FieldDescriptor field, Message.Builder builder) throws IOException{
+        if (field.isRepeated()) {
+            if (builder.getRepeatedFieldCount(field) > 0) {
+                throw new InvalidProtocolBufferException("Field " + field.getFullName() + " has already been set.");
+            }
+        } else {
+            if (builder.hasField(field)) {
+                throw new InvalidProtocolBufferException("Field " + field.getFullName() + " has already been set.");
+            }
+            if (field.getContainingOneof() != null && builder.getOneofFieldDescriptor(field.getContainingOneof()) != null) {
+                FieldDescriptor other = builder.getOneofFieldDescriptor(field.getContainingOneof());
+                throw new InvalidProtocolBufferException("Cannot set field " + field.getFullName() + " because another field "
+                    + other.getFullName() + " belonging to the same oneof has already been set ");
+            }
+        }
+
+        // A null value leaves the field with its default value
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+
+        if (field.isMapField()) {
+            mergeMapField(reader, field, builder);
+        } else if (field.isRepeated()) {
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                throw new InvalidProtocolBufferException("Expect an array but found: " + reader.peek());
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() == JsonToken.NULL) {
+                    throw new InvalidProtocolBufferException("Repeated field elements cannot be null in field: " + field.getFullName());
+                }
+                builder.addRepeatedField(field, parseValue(reader, field, builder));
+            }
+            reader.endArray();
+        } else {
+            builder.setField(field, parseValue(reader, field, builder));
+        }
+    }
+
+    private static void mergeMapField(JsonReader reader, FieldDescriptor field, Message.Builder builder) throws IOException{
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new InvalidProtocolBufferException("Expect a map object but found: " + reader.peek());
+        }
+        Descriptor entryType = field.getMessageType();
+        FieldDescriptor keyField = entryType.findFieldByName("key");
+        FieldDescriptor valueField = entryType.findFieldByName("value");
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            Message.Builder entryBuilder = builder.newBuilderForField(field);
+            entryBuilder.setField(keyField, parseScalar(reader.nextName(), keyField));
+            if (reader.peek() == JsonToken.NULL) {
+                throw new InvalidProtocolBufferException("Map value cannot be null.");
+            }
+            entryBuilder.setField(valueField, parseValue(reader, valueField, entryBuilder));
+            builder.addRepeatedField(field, entryBuilder.build());
+        }
+        reader.endObject();
+    }
+
+    private static Object parseValue(JsonReader reader, FieldDescriptor field, Message.Builder builder) throws IOException{
+        switch (field.getJavaType()) {
+            case MESSAGE:
+                Message.Builder subBuilder = builder.newBuilderForField(field);
+                mergeValue(reader, subBuilder);
+                return subBuilder.build();
+            case BOOLEAN:
+                if (reader.peek() == JsonToken.BOOLEAN) {
+                    return reader.nextBoolean();
+                }
+                return parseScalar(nextText(reader), field);
+            default:
+                return parseScalar(nextText(reader), field);
+        }
+    }
+
+    private static String nextText(JsonReader reader) throws IOException{
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return Boolean.toString(reader.nextBoolean());
+            default:
+                throw new InvalidProtocolBufferException("Expect a primitive value but got: " + reader.peek());
+        }
+    }
+
+    private static Object parseScalar(String text, FieldDescriptor field) throws InvalidProtocolBufferException{
+        try {
+            switch (field.getType()) {
+                case INT32:
+                case SINT32:
+                case SFIXED32:
+                    try {
+                        return Integer.parseInt(text);
+                    } catch (NumberFormatException ex) {
+                        return new BigDecimal(text).intValueExact();
+                    }
+                case INT64:
+                case SINT64:
+                case SFIXED64:
+                    try {
+                        return Long.parseLong(text);
+                    } catch (NumberFormatException ex) {
+                        return new BigDecimal(text).longValueExact();
+                    }
+                case UINT32:
+                case FIXED32:
+                    long unsigned32 = new BigDecimal(text).longValueExact();
+                    if (unsigned32 < 0 || unsigned32 > 0xFFFFFFFFL) {
+                        throw new InvalidProtocolBufferException("Out of range uint32 value: " + text);
+                    }
+                    return (int) unsigned32;
+                case UINT64:
+                case FIXED64:
+                    BigInteger unsigned64 = new BigDecimal(text).toBigIntegerExact();
+                    if (unsigned64.signum() < 0 || unsigned64.bitLength() > 64) {
+                        throw new InvalidProtocolBufferException("Out of range uint64 value: " + text);
+                    }
+                    return unsigned64.longValue();
+                case BOOL:
+                    if (text.equals("true")) {
+                        return true;
+                    }
+                    if (text.equals("false")) {
+                        return false;
+                    }
+                    throw new InvalidProtocolBufferException("Invalid bool value: " + text);
+                case FLOAT:
+                    double floatValue = parseDouble(text);
+                    if (!Double.isNaN(floatValue) && !Double.isInfinite(floatValue) && Math.abs(floatValue) > Float.MAX_VALUE * (1.0 + 1e-6)) {
+                        throw new InvalidProtocolBufferException("Out of range float value: " + text);
+                    }
+                    return (float) floatValue;
+                case DOUBLE:
+                    return parseDouble(text);
+                case STRING:
+                    return text;
+                case BYTES:
+                    try {
+                        return ByteString.copyFrom(Base64.getDecoder().decode(text));
+                    } catch (IllegalArgumentException ex) {
+                        return ByteString.copyFrom(Base64.getUrlDecoder().decode(text));
+                    }
+                case ENUM:
+                    return parseEnum(text, field.getEnumType());
+                default:
+                    throw new InvalidProtocolBufferException("Invalid field type: " + field.getType());
+            }
+        } catch (NumberFormatException | ArithmeticException ex) {
+            throw new InvalidProtocolBufferException("Not a " + field.getType().name().toLowerCase() + " value: " + text);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidProtocolBufferException("Invalid value " + text + " of field " + field.getFullName());
+        }
+    }
+
+    private static double parseDouble(String text){
+        switch (text) {
+            case "NaN":
+                return Double.NaN;
+            case "Infinity":
+                return Double.POSITIVE_INFINITY;
+            case "-Infinity":
+                return Double.NEGATIVE_INFINITY;
+            default:
+                return new BigDecimal(text).doubleValue();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static EnumValueDescriptor parseEnum(String text, EnumDescriptor enumType) throws InvalidProtocolBufferException{
+        EnumValueDescriptor value = enumType.findValueByName(text);
+        if (value == null) {
+            try {
+                int number = Integer.parseInt(text);
+                value = (enumType.getFile().getSyntax() == FileDescriptor.Syntax.PROTO3)
+                    ? enumType.findValueByNumberCreatingIfUnknown(number)
+                    : enumType.findValueByNumber(number);
+            } catch (NumberFormatException ex) {
+                value = null;
+            }
+        }
+        if (value == null) {
+            throw new InvalidProtocolBufferException("Invalid enum value: " + text + " for enum type: " + enumType.getFullName());
+        }
+        return value;
+    }
+
+    /**
+     * Kind of JSON mapping of a message type
+     */
+    private enum Kind {
+        MESSAGE, TIMESTAMP, DURATION, FIELD_MASK, WRAPPER
+    }
+
+    /**
+     * Fields of a message type in the order they are printed, with their names already escaped
+     */
+    private static final class MessagePlan {
+
+        private final Descriptor descriptor;
+        private final Kind kind;
+        private final FieldDescriptor[] fields;
+        private final String[] prettyNames;
+        private final String[] compactNames;
+        private final Map<String, FieldDescriptor> fieldsByName;
+
+        private MessagePlan(Descriptor descriptor) {
+            this.descriptor = descriptor;
+            String fullName = descriptor.getFullName();
+            if (fullName.equals(Timestamp.getDescriptor().getFullName())) {
+                kind = Kind.TIMESTAMP;
+            } else if (fullName.equals(Duration.getDescriptor().getFullName())) {
+                kind = Kind.DURATION;
+            } else if (fullName.equals(FieldMask.getDescriptor().getFullName())) {
+                kind = Kind.FIELD_MASK;
+            } else if (WRAPPER_TYPES.contains(fullName)) {
+                kind = Kind.WRAPPER;
+            } else {
+                kind = Kind.MESSAGE;
+            }
+
+            // JsonFormat prints the fields in the order of their numbers
+            List<FieldDescriptor> sorted = new ArrayList<>(descriptor.getFields());
+            sorted.sort(Comparator.comparingInt(FieldDescriptor::getNumber));
+            fields = sorted.toArray(new FieldDescriptor[0]);
+            prettyNames = new String[fields.length];
+            compactNames = new String[fields.length];
+            Map<String, FieldDescriptor> byName = new HashMap<>();
+            for (int i = 0; i < fields.length; i++) {
+                prettyNames[i] = "\"" + fields[i].getJsonName() + "\": ";
+                compactNames[i] = "\"" + fields[i].getJsonName() + "\":";
+                byName.put(fields[i].getName(), fields[i]);
+                byName.put(fields[i].getJsonName(), fields[i]);
+            }
+            fieldsByName = Collections.unmodifiableMap(byName);
+        }
+    }
+
+    /**
+     * Writer of a single print call, it keeps the indentation of the current line
+     */
+    private static final class Printer {
+
+        private final Appendable output;
+        private final boolean pretty;
+        private int indent;
+        private boolean atStartOfLine;
+
+        private Printer(Appendable output, boolean pretty) {
+            this.output = output;
+            this.pretty = pretty;
+        }
+
+        private void printValue(MessageOrBuilder message) throws IOException{
+            MessagePlan plan = plan(message.getDescriptorForType());
+            switch (plan.kind) {
+                case TIMESTAMP:
+                    print('"' + Timestamps.toString(message instanceof Timestamp ? (Timestamp) message : Timestamp.parseFrom(toByteString(message))) + '"');
+                    return;
+                case DURATION:
+                    print('"' + Durations.toString(message instanceof Duration ? (Duration) message : Duration.parseFrom(toByteString(message))) + '"');
+                    return;
+                case FIELD_MASK:
+                    print('"' + FieldMaskUtil.toJsonString(message instanceof FieldMask ? (FieldMask) message : FieldMask.parseFrom(toByteString(message))) + '"');
+                    return;
+                case WRAPPER:
+                    printSingleValue(plan.fields[0], message.getField(plan.fields[0]), false);
+                    return;
+                default:
+                    printMessage(message, plan);
+            }
+        }
+
+        private void printMessage(MessageOrBuilder message, MessagePlan plan) throws IOException{
+            print("{");
+            newLine();
+            indent++;
+            boolean printedField = false;
+            for (int i = 0; i < plan.fields.length; i++) {
+                FieldDescriptor field = plan.fields[i];
+                // Unset message and oneof fields are not printed, any other field is printed with its default value
+                if (!field.isRepeated() && (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE || field.getContainingOneof() != null)
+                        && !message.hasField(field)) {
+                    continue;
+                }
+                if (printedField) {
+                    print(",");
+                    newLine();
+                } else {
+                    printedField = true;
+                }
+                print(pretty ? plan.prettyNames[i] : plan.compactNames[i]);
+                Object value = message.getField(field);
+                if (field.isMapField()) {
+                    printMap(field, (List<?>) value);
+                } else if (field.isRepeated()) {
+                    printRepeated(field, (List<?>) value);
+                } else {
+                    printSingleValue(field, value, false);
+                }
+            }
+            if (printedField) {
+                newLine();
+            }
+            indent--;
+            print("}");
+        }
+
+        private void printRepeated(FieldDescriptor field, List<?> values) throws IOException{
+            print("[");
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    print(pretty ? ", " : ",");
+                }
+                printSingleValue(field, values.get(i), false);
+            }
+            print("]");
+        }
+
+        private void printMap(FieldDescriptor field, List<?> entries) throws IOException{
+            Descriptor entryType = field.getMessageType();
+            FieldDescriptor keyField = entryType.findFieldByName("key");
+            FieldDescriptor valueField = entryType.findFieldByName("value");
+
+            print("{");
+            newLine();
+            indent++;
+            for (int i = 0; i < entries.size(); i++) {
+                Message entry = (Message) entries.get(i);
+                if (i > 0) {
+                    print(",");
+                    newLine();
+                }
+                // The keys are always quoted
+                printSingleValue(keyField, entry.getField(keyField), true);
+                print(pretty ? ": " : ":");
+                printSingleValue(valueField, entry.getField(valueField), false);
+            }
+            if (!entries.isEmpty()) {
+                newLine();
+            }
+            indent--;
+            print("}");
+        }
+
+        private void printSingleValue(FieldDescriptor field, Object value, boolean quoted) throws IOException{
+            switch (field.getType()) {
+                case INT32:
+                case SINT32:
+                case SFIXED32:
+                    printNumber(Integer.toString((Integer) value), quoted);
+                    return;
+                case INT64:
+                case SINT64:
+                case SFIXED64:
+                    printNumber(Long.toString((Long) value), true);
+                    return;
+                case UINT32:
+                case FIXED32:
+                    printNumber(Integer.toUnsignedString((Integer) value), quoted);
+                    return;
+                case UINT64:
+                case FIXED64:
+                    printNumber(Long.toUnsignedString((Long) value), true);
+                    return;
+                case BOOL:
+                    printNumber(((Boolean) value) ? "true" : "false", quoted);
+                    return;
+                case FLOAT:
+                    Float floatValue = (Float) value;
+                    if (floatValue.isNaN() || floatValue.isInfinite()) {
+                        printNumber(floatValue.isNaN() ? "NaN" : (floatValue > 0 ? "Infinity" : "-Infinity"), true);
+                    } else {
+                        printNumber(floatValue.toString(), quoted);
+                    }
+                    return;
+                case DOUBLE:
+                    Double doubleValue = (Double) value;
+                    if (doubleValue.isNaN() || doubleValue.isInfinite()) {
+                        printNumber(doubleValue.isNaN() ? "NaN" : (doubleValue > 0 ? "Infinity" : "-Infinity"), true);
+                    } else {
+                        printNumber(doubleValue.toString(), quoted);
+                    }
+                    return;
+                case STRING:
+                    printString((String) value);
+                    return;
+                case BYTES:
+                    printNumber(Base64.getEncoder().encodeToString(((ByteString) value).toByteArray()), true);
+                    return;
+                case ENUM:
+                    EnumValueDescriptor enumValue = (EnumValueDescriptor) value;
+                    if (enumValue.getType().getFullName().equals("google.protobuf.NullValue")) {
+                        print(quoted ? "\"NULL_VALUE\"" : "null");
+                    } else if (enumValue.getIndex() == -1) {
+                        print(String.valueOf(enumValue.getNumber()));
+                    } else {
+                        printNumber(enumValue.getName(), true);
+                    }
+                    return;
+                default:
+                    printValue((MessageOrBuilder) value);
+            }
+        }
+
+        private void printNumber(String text, boolean quoted) throws IOException{
+            print(quoted ? '"' + text + '"' : text);
+        }
+
+        private void printString(String value) throws IOException{
+            print("\"");
+            int last = 0;
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                String replacement;
+                if (c < 128) {
+                    replacement = REPLACEMENTS[c];
+                    if (replacement == null) {
+                        continue;
+                    }
+                } else if (c == LINE_SEPARATOR) {
+                    replacement = "\\u2028";
+                } else if (c == PARAGRAPH_SEPARATOR) {
+                    replacement = "\\u2029";
+                } else {
+                    continue;
+                }
+                if (last < i) {
+                    output.append(value, last, i);
+                }
+                output.append(replacement);
+                last = i + 1;
+            }
+            if (last < length) {
+                output.append(value, last, length);
+            }
+            output.append('"');
+        }
+
+        private void print(String text) throws IOException{
+            if (atStartOfLine) {
+                atStartOfLine = false;
+                for (int i = 0; i < indent; i++) {
+                    output.append(INDENT);
+                }
+            }
+            output.append(text);
+        }
+
+        private void newLine() throws IOException{
+            if (pretty) {
+                output.append('\n');
+                atStartOfLine = true;
+            }
+        }
+
+        private static ByteString toByteString(MessageOrBuilder message){
+            return (message instanceof Message) ? ((Message) message).toByteString() : ((Message.Builder) message).build().toByteString();
+        }
+    }
+}
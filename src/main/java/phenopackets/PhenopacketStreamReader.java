@@ -0,0 +1,268 @@
+package phenopackets;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.phenopackets.secure.schema.Phenopacket;
+
+
+/**
+ * Reader of the Phenopackets of a cohort file, either a JSON array or newline-delimited JSON. The
+ * file is read one Phenopacket at a time, so only the bytes of the current Phenopacket are kept in
+ * memory. The byte offset of each Phenopacket is known and the reading can start again from it
+ */
+public class PhenopacketStreamReader implements Iterator<Phenopacket>, Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final InputStream input;
+    private final PhenopacketJsonCodec codec = PhenopacketJsonCodec.compact();
+
+    // Bytes read from the file
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLimit;
+    private long position;
+
+    // Bytes of the current Phenopacket, the array grows up to the largest one
+    private byte[] record = new byte[BUFFER_SIZE];
+    private int recordLength;
+    private long recordOffset = -1;
+    private boolean hasRecord;
+
+    private long lastOffset = -1;
+    // Offset of the last invalid Phenopacket or unexpected character
+    private long errorOffset = -1;
+    // After an unexpected character everything up to the next object is skipped
+    private boolean skipToObject;
+
+    /**
+     * Create a reader from the beginning of a file
+     * @param file required - the JSON array or NDJSON file
+     * @throws IOException
+     */
+    public PhenopacketStreamReader(Path file) throws IOException {
+        this(file, 0);
+    }
+
+    /**
+     * Create a reader from a byte offset of a file, such as the offset given by getNextOffset before a failure
+     * @param file required - the JSON array or NDJSON file
+     * @param offset required - offset of a Phenopacket or of the space between two of them
+     * @throws IOException
+     */
+    public PhenopacketStreamReader(Path file, long offset) throws IOException {
+        // Input validation
+        if (file == null){
+            throw new NullPointerException();
+        }
+        if (offset < 0){
+            throw new IllegalArgumentException("The offset cannot be negative");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.channel.position(offset);
+        this.input = Channels.newInputStream(channel);
+        this.position = offset;
+    }
+
+    /**
+     * Method to check if there is another Phenopacket
+     * @return true if next() returns a Phenopacket
+     */
+    @Override
+    public boolean hasNext() {
+        if (!hasRecord) {
+            try {
+                hasRecord = readRecord();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return hasRecord;
+    }
+
+    /**
+     * Method to read the next Phenopacket. If it is not valid an IllegalArgumentException with its offset
+     * is thrown and the reader goes on with the next one
+     * @return the Phenopacket
+     */
+    @Override
+    public Phenopacket next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasRecord = false;
+        try {
+            Phenopacket phenopacket = codec.parse(new String(record, 0, recordLength, StandardCharsets.UTF_8));
+            lastOffset = recordOffset;
+            return phenopacket;
+        } catch (IOException ex) {
+            errorOffset = recordOffset;
+            throw new IllegalArgumentException("Invalid Phenopacket at offset " + recordOffset, ex);
+        }
+    }
+
+    /**
+     * @return offset of the last Phenopacket returned by next(), -1 before the first one
+     */
+    public long getOffset() {
+        return lastOffset;
+    }
+
+    /**
+     * @return offset where a new reader starts with the Phenopacket after the last one returned by next()
+     */
+    public long getNextOffset() {
+        return hasRecord ? recordOffset : position;
+    }
+
+    /**
+     * Method to get the Phenopackets as a stream, the file is closed when the stream is closed. The
+     * stream ends with the IllegalArgumentException of the first invalid Phenopacket, the offsets of
+     * the reader give where to start again
+     * @return the stream of Phenopackets
+     */
+    public Stream<Phenopacket> stream(){
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(this::closeStream);
+    }
+
+    /**
+     * Method to get the valid Phenopackets as a stream, the invalid ones are skipped and given to a
+     * callback with their offset. The file is closed when the stream is closed
+     * @param onError required - receives the error of each invalid Phenopacket and its offset
+     * @return the stream of Phenopackets
+     */
+    public Stream<Phenopacket> stream(ObjLongConsumer<IllegalArgumentException> onError){
+        // Input validation
+        if (onError == null){
+            throw new NullPointerException();
+        }
+
+        Spliterator<Phenopacket> phenopackets = new Spliterators.AbstractSpliterator<Phenopacket>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Phenopacket> action) {
+                for (;;) {
+                    Phenopacket phenopacket;
+                    try {
+                        if (!hasNext()) {
+                            return false;
+                        }
+                        phenopacket = next();
+                    } catch (IllegalArgumentException ex) {
+                        onError.accept(ex, errorOffset);
+                        continue;
+                    }
+                    action.accept(phenopacket);
+                    return true;
+                }
+            }
+        };
+        return StreamSupport.stream(phenopackets, false).onClose(this::closeStream);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void closeStream(){
+        try {
+            close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Private method to copy the bytes of the next JSON object into the record. The brackets and
+     * commas of an array and the spaces between objects are skipped
+     * @return false if there are no more objects
+     * @throws IOException
+     */
+    private boolean readRecord() throws IOException{
+        recordLength = 0;
+        int depth = 0;
+        boolean inString = false;
+        boolean escape = false;
+
+        int b;
+        while ((b = read()) >= 0) {
+            if (depth == 0) {
+                if (b == '{') {
+                    recordOffset = position - 1;
+                    skipToObject = false;
+                    depth = 1;
+                    append(b);
+                } else if (!skipToObject && !Character.isWhitespace(b) && b != '[' && b != ']' && b != ',') {
+                    skipToObject = true;
+                    errorOffset = position - 1;
+                    throw new IllegalArgumentException("Unexpected character '" + (char) b + "' at offset " + (position - 1));
+                }
+                continue;
+            }
+
+            append(b);
+            if (inString) {
+                if (escape) {
+                    escape = false;
+                } else if (b == '\\') {
+                    escape = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 0) {
+                    return true;
+                }
+            }
+        }
+        if (depth > 0) {
+            errorOffset = recordOffset;
+            throw new IllegalArgumentException("Truncated Phenopacket at offset " + recordOffset);
+        }
+        return false;
+    }
+
+    private int read() throws IOException{
+        if (bufferPosition == bufferLimit) {
+            bufferLimit = input.read(buffer, 0, buffer.length);
+            bufferPosition = 0;
+            if (bufferLimit <= 0) {
+                bufferLimit = 0;
+                return -1;
+            }
+        }
+        position++;
+        return buffer[bufferPosition++] & 0xFF;
+    }
+
+    private void append(int b){
+        if (recordLength == record.length) {
+            record = Arrays.copyOf(record, record.length * 2);
+        }
+        record[recordLength++] = (byte) b;
+    }
+}
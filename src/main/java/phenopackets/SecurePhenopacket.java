@@ -1,17 +1,22 @@
  package phenopackets;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.System.Logger.Level;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import org.phenopackets.secure.schema.core.Disease;
 import org.phenopackets.secure.schema.core.Individual;
@@ -20,21 +25,39 @@ import org.phenopackets.secure.schema.core.MetaData;
 import org.phenopackets.secure.schema.core.PhenotypicFeature;
 
 
-import com.google.gson.stream.JsonReader;
-import com.google.protobuf.util.JsonFormat;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.WireFormat;
 import com.nimbusds.jose.shaded.json.JSONObject;
 import com.nimbusds.jose.shaded.json.parser.ParseException;
 
 import phenopackets.securityMechanisms.DigitalSignature;
+import phenopackets.securityMechanisms.EnvelopeSession;
 import phenopackets.securityMechanisms.ExternalResources;
+import phenopackets.securityMechanisms.Hashing;
 import phenopackets.securityMechanisms.HybridEncryption;
+import phenopackets.securityMechanisms.KeccakEngine;
+import phenopackets.securityMechanisms.MerkleProof;
+import phenopackets.securityMechanisms.MerkleTree;
+import phenopackets.securityMechanisms.ProtectedBundle;
+import phenopackets.securityMechanisms.ProtectionEvents;
+import phenopackets.securityMechanisms.ProtectionRecord;
+import phenopackets.securityMechanisms.SignatureService;
+import phenopackets.securityMechanisms.VerificationStatus;
 import phenopackets.schema.MainElements;
 
 import org.phenopackets.secure.schema.Phenopacket;
 
 public class SecurePhenopacket {
 
-    private static final String SIGNATURES_FILE = "signatures.json";
+    private static final System.Logger LOGGER = System.getLogger(SecurePhenopacket.class.getName());
+
+    private static final String ID_ELEMENT = "id";
+    private static final String SUBJECT_ELEMENT = "subject";
+    private static final String METADATA_ELEMENT = "meta_data";
+    private static final String DISEASES_ELEMENT = "diseases/";
+    private static final String PHENOTYPIC_FEATURES_ELEMENT = "phenotypic_features/";
+    private static final String MEDICAL_ACTIONS_ELEMENT = "medical_actions/";
 
     static ExternalResources externalResource = new ExternalResources();
     public static JSONObject jsonObj = new JSONObject();
@@ -86,7 +109,7 @@ public class SecurePhenopacket {
         
         // Remove MetaData from Phenopacket
         phenopacket = Phenopacket.newBuilder(phenopacket).clearMetaData().build();
-        System.out.println("Phenopacket is:" + phenopacket);
+        LOGGER.log(Level.DEBUG, "Phenopacket is: {0}", phenopacket);
         // Encrypt the element
         byte[] cipherMetadata = MainElements.protectedMetaData(metaData, phenopacketId.getBytes());
         byte[] phenopacketBytes = phenopacket.toByteArray();
@@ -94,7 +117,33 @@ public class SecurePhenopacket {
         HybridEncryption.saveInFile(cipherMetadata, "Metadata", phenopacketId);
         HybridEncryption.saveInFile(phenopacketBytes, "Phenopacket", phenopacketId);
         
-        System.out.println("The elements have been saved successfully");
+        LOGGER.log(Level.INFO, "The elements have been saved successfully");
+    }
+
+    /**
+     * Method to encrypt the MetaData element with the Phenopacket session and store it with
+     * the Phenopacket and the wrapped session key
+     * @param phenopacket required - Phenopacket element
+     * @param session required - envelope encryption session of the Phenopacket
+     * @throws URISyntaxException
+     * @throws GeneralSecurityException
+     * @throws ParseException
+     */
+    public static void protectMetaData(Phenopacket phenopacket, EnvelopeSession session) throws URISyntaxException, GeneralSecurityException, ParseException{
+        MetaData metaData = phenopacket.getMetaData();
+        String phenopacketId = phenopacket.getId();
+        
+        // Remove MetaData from Phenopacket
+        phenopacket = Phenopacket.newBuilder(phenopacket).clearMetaData().build();
+        // Encrypt the element with the session key
+        byte[] cipherMetadata = MainElements.protectedMetaData(metaData, session);
+        byte[] phenopacketBytes = phenopacket.toByteArray();
+        // Save the session key and both elements in a JSON file
+        HybridEncryption.saveSession(session, phenopacketId);
+        HybridEncryption.saveInFile(cipherMetadata, "Metadata", phenopacketId);
+        HybridEncryption.saveInFile(phenopacketBytes, "Phenopacket", phenopacketId);
+        
+        LOGGER.log(Level.INFO, "The elements have been saved successfully");
     }
 
     /**
@@ -117,14 +166,308 @@ public class SecurePhenopacket {
 
     }
 
+    /**
+     * Method to sign a Phenopacket without building its byte array, useful for Phenopackets with
+     * long MedicalAction histories. The Phenopacket is hashed while it is serialized and only the hash is signed
+     * @param phenopacket required - Phenopacket element
+     * @param storePayload required - if the Phenopacket is also stored with the signature
+     * @throws IOException
+     * @throws URISyntaxException
+     * @throws GeneralSecurityException
+     */
+    public static void signPhenopacketDigest(Phenopacket phenopacket, boolean storePayload) throws IOException, URISyntaxException, GeneralSecurityException{
+        DigitalSignature.signDigest(phenopacket, phenopacket.getId(), storePayload);
+    }
+
+    /**
+     * Method to verify the digest signature of a Phenopacket without building its byte array
+     * @param phenopacket required - Phenopacket element
+     * @return boolean value. If the signatures was verified then returns true, otherwise false
+     * @throws IOException
+     * @throws URISyntaxException
+     * @throws GeneralSecurityException
+     */
+    public static Boolean verifyPhenopacketDigest(Phenopacket phenopacket) throws IOException, URISyntaxException, GeneralSecurityException{
+        Boolean isVerified = DigitalSignature.verifyDigest(phenopacket, phenopacket.getId());
+        if (LOGGER.isLoggable(Level.DEBUG)) {
+            LOGGER.log(Level.DEBUG, "Verified: {0}", isVerified);
+        }
+        return isVerified;
+    }
+
+    /**
+     * Method to sign several Phenopackets with a single signature. Each Phenopacket is stored with
+     * its inclusion proof and can still be verified on its own with verifyPhenopacket
+     * @param phenopackets required - the Phenopacket elements
+     * @return the ID of the batch
+     * @throws IOException
+     * @throws URISyntaxException
+     * @throws GeneralSecurityException
+     */
+    public static String signPhenopackets(Collection<Phenopacket> phenopackets) throws IOException, URISyntaxException, GeneralSecurityException{
+        // Input validation
+        if (phenopackets == null){
+            throw new NullPointerException();
+        }
+
+        // Serialize every Phenopacket linked to its ID
+        Map<String, byte[]> elements = new LinkedHashMap<>();
+        for (Phenopacket phenopacket : phenopackets) {
+            elements.put(phenopacket.getId(), phenopacket.toByteArray());
+        }
+        return DigitalSignature.signBatch(elements);
+    }
+
+    /**
+     * Method to build the Merkle tree of the elements of a Phenopacket. The leaves are named id,
+     * subject, meta_data, diseases/[index], phenotypic_features/[index] and medical_actions/[index]
+     * @param phenopacket required - Phenopacket element
+     * @return the Merkle tree
+     */
+    public static MerkleTree buildMerkleTree(Phenopacket phenopacket){
+        Map<String, byte[]> hashes = computeElementHashes(phenopacket);
+        return new MerkleTree(new ArrayList<>(hashes.keySet()), new ArrayList<>(hashes.values()));
+    }
+
+    /**
+     * Method to compute the Keccak hash of each element of a Phenopacket, named as the leaves of its Merkle tree
+     * @param phenopacket required - Phenopacket element
+     * @return the hashes by element name, in the order of the Phenopacket
+     */
+    public static Map<String, byte[]> computeElementHashes(Phenopacket phenopacket){
+        // Input validation
+        if (phenopacket == null){
+            throw new NullPointerException();
+        }
+
+        Map<String, byte[]> hashes = new LinkedHashMap<>();
+        // The ID binds the signed root to the Phenopacket
+        hashes.put(ID_ELEMENT, KeccakEngine.hash(phenopacket.getId().getBytes(StandardCharsets.UTF_8)));
+        hashes.put(SUBJECT_ELEMENT, KeccakEngine.hash(phenopacket.getSubject()));
+        hashes.put(METADATA_ELEMENT, KeccakEngine.hash(phenopacket.getMetaData()));
+        for (int i = 0; i < phenopacket.getDiseasesCount(); i++) {
+            hashes.put(DISEASES_ELEMENT + i, KeccakEngine.hash(phenopacket.getDiseases(i)));
+        }
+        for (int i = 0; i < phenopacket.getPhenotypicFeaturesCount(); i++) {
+            hashes.put(PHENOTYPIC_FEATURES_ELEMENT + i, KeccakEngine.hash(phenopacket.getPhenotypicFeatures(i)));
+        }
+        for (int i = 0; i < phenopacket.getMedicalActionsCount(); i++) {
+            hashes.put(MEDICAL_ACTIONS_ELEMENT + i, KeccakEngine.hash(phenopacket.getMedicalActions(i)));
+        }
+        return hashes;
+    }
+
+    /**
+     * Method to protect a new version of a Phenopacket doing only the work of the elements that changed.
+     * The element hashes are compared with the last version record: only the new hashes are stored, the
+     * MetaData is encrypted again only if it changed and the Merkle root is signed from the hashes
+     * already computed. A new version record is kept. The first call protects every element
+     * @param phenopacket required - Phenopacket element
+     * @return the elements that changed since the last version
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws ParseException
+     */
+    public static ProtectionRecord.Changes reprotectPhenopacket(Phenopacket phenopacket) throws URISyntaxException, IOException, GeneralSecurityException, ParseException{
+        Map<String, byte[]> hashes = computeElementHashes(phenopacket);
+        String phenopacketId = phenopacket.getId();
+
+        ProtectionRecord previous = ProtectionRecord.load(phenopacketId);
+        ProtectionRecord.Changes changes = ProtectionRecord.diff(previous, hashes);
+        if (!changes.hasChanges()) {
+            return changes;
+        }
+
+        // Hash: drop the hashes of the names that no longer exist, then store the ones that changed
+        Hashing.removeHashes(phenopacketId, changes.getRemoved());
+        Hashing.storeHashes(phenopacketId, changes.getHashes());
+
+        // Encrypt: the MetaData only if it changed, the rest of the Phenopacket is stored as it is
+        boolean metaDataChanged = changes.isChanged(METADATA_ELEMENT);
+        if (metaDataChanged) {
+            byte[] cipherMetadata = MainElements.protectedMetaData(phenopacket.getMetaData(), phenopacketId.getBytes());
+            HybridEncryption.saveInFile(cipherMetadata, "Metadata", phenopacketId);
+        }
+        if (changes.getHashes().size() > (metaDataChanged ? 1 : 0) || !changes.getRemoved().isEmpty()) {
+            byte[] phenopacketBytes = Phenopacket.newBuilder(phenopacket).clearMetaData().build().toByteArray();
+            HybridEncryption.saveInFile(phenopacketBytes, "Phenopacket", phenopacketId);
+        }
+
+        // Sign: a single signature of the new root
+        MerkleTree tree = new MerkleTree(new ArrayList<>(hashes.keySet()), new ArrayList<>(hashes.values()));
+        DigitalSignature.signMerkleRoot(phenopacketId, tree.getRoot());
+
+        int version = (previous == null) ? 1 : previous.getVersion() + 1;
+        new ProtectionRecord(version, System.currentTimeMillis(), hashes).save(phenopacketId);
+        return changes;
+    }
+
+    /**
+     * Method to hash, encrypt and sign a Phenopacket serializing it only once. The elements are read
+     * from the serialized Phenopacket without serializing them again: each one is hashed, the MetaData
+     * is encrypted and the Phenopacket without MetaData is copied from the same bytes, that are also the
+     * signed bytes. The bundle is stored with a single write
+     * @param phenopacket required - Phenopacket element
+     * @return the protected bundle
+     * @throws IOException
+     * @throws URISyntaxException
+     * @throws GeneralSecurityException
+     */
+    public static ProtectedBundle protectPhenopacket(Phenopacket phenopacket) throws IOException, URISyntaxException, GeneralSecurityException{
+        // Input validation
+        if (phenopacket == null){
+            throw new NullPointerException();
+        }
+        String phenopacketId = phenopacket.getId();
+        if (phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+
+        // Serialize the Phenopacket, the only serialization
+        byte[] phenopacketBytes = phenopacket.toByteArray();
+
+        // Hash each element from its bytes, in the order of computeElementHashes
+        Map<String, byte[]> subjectAndMetaData = new LinkedHashMap<>();
+        subjectAndMetaData.put(SUBJECT_ELEMENT, KeccakEngine.hash(Individual.getDefaultInstance()));
+        subjectAndMetaData.put(METADATA_ELEMENT, KeccakEngine.hash(MetaData.getDefaultInstance()));
+        Map<String, byte[]> diseases = new LinkedHashMap<>();
+        Map<String, byte[]> phenotypicFeatures = new LinkedHashMap<>();
+        Map<String, byte[]> medicalActions = new LinkedHashMap<>();
+        byte[] metaDataBytes = null;
+        ByteArrayOutputStream withoutMetaData = new ByteArrayOutputStream(phenopacketBytes.length);
+
+        CodedInputStream input = CodedInputStream.newInstance(phenopacketBytes);
+        while (true) {
+            int fieldStart = input.getTotalBytesRead();
+            int tag = input.readTag();
+            if (tag == 0) {
+                break;
+            }
+            int field = WireFormat.getTagFieldNumber(tag);
+            if (WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                input.skipField(tag);
+                withoutMetaData.write(phenopacketBytes, fieldStart, input.getTotalBytesRead() - fieldStart);
+                continue;
+            }
+            int length = input.readRawVarint32();
+            int offset = input.getTotalBytesRead();
+            input.skipRawBytes(length);
+
+            if (field == Phenopacket.META_DATA_FIELD_NUMBER) {
+                metaDataBytes = Arrays.copyOfRange(phenopacketBytes, offset, offset + length);
+                subjectAndMetaData.put(METADATA_ELEMENT, elementHash(phenopacketBytes, offset, length));
+                continue;
+            }
+            withoutMetaData.write(phenopacketBytes, fieldStart, offset + length - fieldStart);
+            if (field == Phenopacket.SUBJECT_FIELD_NUMBER) {
+                subjectAndMetaData.put(SUBJECT_ELEMENT, elementHash(phenopacketBytes, offset, length));
+            } else if (field == Phenopacket.DISEASES_FIELD_NUMBER) {
+                diseases.put(DISEASES_ELEMENT + diseases.size(), elementHash(phenopacketBytes, offset, length));
+            } else if (field == Phenopacket.PHENOTYPIC_FEATURES_FIELD_NUMBER) {
+                phenotypicFeatures.put(PHENOTYPIC_FEATURES_ELEMENT + phenotypicFeatures.size(), elementHash(phenopacketBytes, offset, length));
+            } else if (field == Phenopacket.MEDICAL_ACTIONS_FIELD_NUMBER) {
+                medicalActions.put(MEDICAL_ACTIONS_ELEMENT + medicalActions.size(), elementHash(phenopacketBytes, offset, length));
+            }
+        }
+        Map<String, byte[]> hashes = new LinkedHashMap<>();
+        hashes.put(ID_ELEMENT, KeccakEngine.hash(phenopacketId.getBytes(StandardCharsets.UTF_8)));
+        hashes.putAll(subjectAndMetaData);
+        hashes.putAll(diseases);
+        hashes.putAll(phenotypicFeatures);
+        hashes.putAll(medicalActions);
+
+        // Encrypt the MetaData and sign the serialized Phenopacket
+        byte[] cipherMetaData = (metaDataBytes == null) ? new byte[0] : HybridEncryption.hybridEncryption("encrypt", metaDataBytes, phenopacketId.getBytes());
+        byte[] signature = SignatureService.getInstance().sign(phenopacketBytes);
+
+        // Store everything with a single write
+        ProtectedBundle bundle = new ProtectedBundle(phenopacketId, hashes, cipherMetaData, withoutMetaData.toByteArray(), signature);
+        bundle.save();
+        return bundle;
+    }
+
+    /**
+     * Method to get a Phenopacket protected with protectPhenopacket: the MetaData is decrypted and
+     * the signature is checked
+     * @param phenopacketId required - the Phenopacket ID
+     * @return the Phenopacket, null if there is no bundle for the ID
+     * @throws IOException
+     * @throws URISyntaxException
+     * @throws GeneralSecurityException if the signature is not valid
+     */
+    public static Phenopacket openProtectedBundle(String phenopacketId) throws IOException, URISyntaxException, GeneralSecurityException{
+        ProtectedBundle bundle = ProtectedBundle.load(phenopacketId);
+        if (bundle == null) {
+            return null;
+        }
+
+        Phenopacket.Builder builder = Phenopacket.newBuilder().mergeFrom(bundle.getPhenopacketBytes());
+        byte[] cipherMetaData = bundle.getCipherMetaData();
+        if (cipherMetaData.length > 0) {
+            builder.setMetaData(MainElements.getMetaData(cipherMetaData, phenopacketId.getBytes()));
+        }
+        Phenopacket phenopacket = builder.build();
+
+        if (!SignatureService.getInstance().verify(phenopacket.toByteArray(), bundle.getSignature())) {
+            throw new GeneralSecurityException("The signature of the Phenopacket is not valid");
+        }
+        return phenopacket;
+    }
+
+    private static byte[] elementHash(byte[] phenopacketBytes, int offset, int length){
+        byte[] hash = new byte[KeccakEngine.DIGEST_SIZE];
+        KeccakEngine.hash(phenopacketBytes, offset, length, hash, 0);
+        return hash;
+    }
+
+    /**
+     * Method to sign the elements of the Phenopacket: only the root of their Merkle tree is signed,
+     * so each element can be verified on its own with its proof
+     * @param phenopacket required - Phenopacket element
+     * @return the Merkle tree, to get the proof of each element
+     * @throws IOException
+     * @throws URISyntaxException
+     * @throws GeneralSecurityException
+     */
+    public static MerkleTree signPhenopacketElements(Phenopacket phenopacket) throws IOException, URISyntaxException, GeneralSecurityException{
+        MerkleTree tree = buildMerkleTree(phenopacket);
+        DigitalSignature.signMerkleRoot(phenopacket.getId(), tree.getRoot());
+        return tree;
+    }
+
+    /**
+     * Method to verify a single element of a signed Phenopacket, such as a Disease, without the rest of the Phenopacket
+     * @param phenopacketId required - the Phenopacket ID
+     * @param elementName required - name of the element, such as diseases/0
+     * @param element required - the received element
+     * @param proof required - audit path of the element
+     * @return boolean value. If the element was verified then returns true, otherwise false
+     * @throws IOException
+     * @throws URISyntaxException
+     * @throws GeneralSecurityException
+     */
+    public static Boolean verifyPhenopacketElement(String phenopacketId, String elementName, MessageLite element, MerkleProof proof) throws IOException, URISyntaxException, GeneralSecurityException{
+        // Input validation
+        if (element == null){
+            throw new NullPointerException();
+        }
+        Boolean isVerified = DigitalSignature.verifyElementWithDS(phenopacketId, elementName, KeccakEngine.hash(element), proof);
+        if (LOGGER.isLoggable(Level.DEBUG)) {
+            LOGGER.log(Level.DEBUG, "Verified: {0}", isVerified);
+        }
+        return isVerified;
+    }
+
     /**
      * Method to verify the signature
      * @param phenopacket required - phenopacket element
+     * @return boolean value. If the signatures was verified then returns true, otherwise false 
      * @throws IOException
      * @throws URISyntaxException
-     * @throws ParseException
+     * @throws GeneralSecurityException
      */
-    public static  void verifyPhenopacket(Phenopacket phenopacket) throws IOException, URISyntaxException, ParseException{
+    public static Boolean verifyPhenopacket(Phenopacket phenopacket) throws IOException, URISyntaxException, GeneralSecurityException{
         
         // Serialize to byte array  
         byte[] phenopacketBytes = phenopacket.toByteArray();
@@ -133,11 +476,49 @@ public class SecurePhenopacket {
         String phenopacketId = phenopacket.getId();
 
         // Verify the element
-        DigitalSignature.protectWithDS("verify", phenopacketBytes, phenopacketId);
+        Boolean isVerified = DigitalSignature.verifyWithDS(phenopacketBytes, phenopacketId);
+        if (LOGGER.isLoggable(Level.DEBUG)) {
+            LOGGER.log(Level.DEBUG, "Verified: {0}", isVerified);
+        }
+        return isVerified;
+    }
+
+    /**
+     * Method to verify the signatures of several Phenopackets in parallel
+     * @param phenopackets required - the Phenopacket elements
+     * @return the verification status of each Phenopacket ID
+     * @throws IOException
+     * @throws URISyntaxException
+     * @throws GeneralSecurityException
+     */
+    public static Map<String, VerificationStatus> verifyPhenopackets(Collection<Phenopacket> phenopackets) throws IOException, URISyntaxException, GeneralSecurityException{
+        // Input validation
+        if (phenopackets == null){
+            throw new NullPointerException();
+        }
+
+        // Serialize every Phenopacket linked to its ID
+        Map<String, byte[]> elements = new LinkedHashMap<>();
+        for (Phenopacket phenopacket : phenopackets) {
+            elements.put(phenopacket.getId(), phenopacket.toByteArray());
+        }
+        return DigitalSignature.verifyBatch(elements);
+    }
+
+    /**
+     * Method to verify in parallel the signatures of several Phenopackets stored with their signature
+     * @param phenopacketIds required - the Phenopacket IDs
+     * @return the verification status of each Phenopacket ID
+     * @throws IOException
+     * @throws URISyntaxException
+     * @throws GeneralSecurityException
+     */
+    public static Map<String, VerificationStatus> verifyPhenopacketsById(Collection<String> phenopacketIds) throws IOException, URISyntaxException, GeneralSecurityException{
+        return DigitalSignature.verifyStoredBatch(phenopacketIds);
     }
 
     /**
-     * Method to retrieve the Phenopacket element from File
+     * Method to retrieve the Phenopacket element from the signature store
      * @param elementID required - Phenopacket ID
      * @return new Phenopacket element
      * @throws URISyntaxException
@@ -145,35 +526,11 @@ public class SecurePhenopacket {
      */
     public static Phenopacket getPhenopacketFromFile(String elementID) throws URISyntaxException, IOException{
 
-        byte[] phenopacketBytes = null;
-
-        // Get the file with the signature
-        File signaturesFile = externalResource.getFileFromResource(SIGNATURES_FILE);
-
-        try (FileReader reader = new FileReader(signaturesFile)){
-            JsonReader js =  new JsonReader(reader);
-            js.beginObject();
-            // Search for a specific item by its ID 
-            while (js.hasNext()) {
-                String field = js.nextName();
-                
-                if (field.equals(elementID)) {
-                    String ptPhenopacket = js.nextString();
-                    // Get the signature Bytes from the file
-                    phenopacketBytes = Base64.getDecoder().decode(ptPhenopacket);
-                   
-                }else {
-                    js.skipValue();
-                }
-            }
-            js.endObject();
-            js.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
+        // Get the Phenopacket bytes stored with the signature
+        byte[] phenopacketBytes = ExternalResources.getSignatureStore().get(elementID);
         
         Phenopacket phenopacket = Phenopacket.parseFrom(phenopacketBytes);
-        System.out.println(phenopacket);
+        LOGGER.log(Level.DEBUG, "Phenopacket is: {0}", phenopacket);
         return phenopacket;
     }
 
@@ -184,18 +541,37 @@ public class SecurePhenopacket {
      */
     public static void exportPhenopacket(Phenopacket phenopacket) throws URISyntaxException{
        
+        ProtectionEvents.JsonCodec event = new ProtectionEvents.JsonCodec();
+        event.begin();
         try{
-            String jsonString = JsonFormat.printer().includingDefaultValueFields().print(phenopacket);
-            System.out.println(jsonString);
+            String jsonString = PhenopacketJsonCodec.pretty().print(phenopacket);
+            LOGGER.log(Level.DEBUG, "Phenopacket JSON is: {0}", jsonString);
+            byte[] jsonBytes = jsonString.getBytes(StandardCharsets.UTF_8);
+            event.end();
+            event.mode = "print";
+            event.phenopacketId = phenopacket.getId();
+            event.size = jsonBytes.length;
+            event.commit();
            
-            File phenopacketJson = externalResource.createNewFile("P-"+phenopacket.getId()+".json");
-
-            BufferedWriter fileWriter = new BufferedWriter(new FileWriter(phenopacketJson));     
-            fileWriter.write(jsonString);
-            fileWriter.close();
+            ExternalResources.getStorageBackend().write("P-"+phenopacket.getId()+".json", jsonBytes);
 
         }catch(IOException ex){
-            ex.printStackTrace();
+            LOGGER.log(Level.ERROR, "Error exporting the Phenopacket", ex);
+        }
+    }
+
+    /**
+     * Method to export several Phenopackets to a single newline-delimited JSON file without printing them
+     * @param phenopackets required - the Phenopacket elements, read one at a time
+     * @param file required - the NDJSON file
+     * @param gzip required - if the file is gzip compressed
+     * @return number of Phenopackets exported
+     * @throws IOException
+     */
+    public static long exportPhenopackets(Iterable<Phenopacket> phenopackets, Path file, boolean gzip) throws IOException{
+        try (PhenopacketExporter exporter = PhenopacketExporter.toFile(file, gzip)) {
+            exporter.writeAll(phenopackets);
+            return exporter.getCount();
         }
     }
 
@@ -213,14 +589,44 @@ public class SecurePhenopacket {
 
         Phenopacket phenopacket = null;
 
+        ProtectionEvents.JsonCodec event = new ProtectionEvents.JsonCodec();
+        event.begin();
         try{
-            Phenopacket.Builder phenopacketBuilder = Phenopacket.newBuilder();
-            JsonFormat.parser().merge(js, phenopacketBuilder);
-            phenopacket = phenopacketBuilder.build();
+            phenopacket = PhenopacketJsonCodec.pretty().parse(js);
+            event.end();
+            if (event.shouldCommit()) {
+                event.mode = "parse";
+                event.phenopacketId = phenopacket.getId();
+                event.size = jsonFile.length();
+                event.commit();
+            }
        
         }catch(IOException ex){
-            ex.printStackTrace();
+            LOGGER.log(Level.ERROR, "Error importing the Phenopacket", ex);
         }
         return phenopacket;
     }
+
+    /**
+     * Method to import every Phenopacket JSON file of a directory tree in parallel
+     * @param directory required - the root of the directory tree
+     * @param consumer required - receives each imported Phenopacket
+     * @return the report of the import, with the files that could not be imported
+     * @throws IOException if the import is interrupted
+     */
+    public static PhenopacketImporter.Report importPhenopackets(Path directory, Consumer<Phenopacket> consumer) throws IOException{
+        return new PhenopacketImporter().importDirectory(directory, consumer);
+    }
+
+    /**
+     * Method to read the Phenopackets of a JSON array or newline-delimited JSON file one at a time.
+     * The reader gives the Phenopackets as a stream, either ending at the first invalid one or
+     * skipping the invalid ones with a callback, and the offsets to start reading again
+     * @param file required - the cohort file
+     * @return the reader of the Phenopackets, it has to be closed to close the file
+     * @throws IOException
+     */
+    public static PhenopacketStreamReader streamPhenopackets(Path file) throws IOException{
+        return new PhenopacketStreamReader(file);
+    }
 }
\ No newline at end of file
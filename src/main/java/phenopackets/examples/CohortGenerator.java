@@ -0,0 +1,500 @@
+package phenopackets.examples;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.phenopackets.secure.schema.Phenopacket;
+import org.phenopackets.secure.schema.core.Age;
+import org.phenopackets.secure.schema.core.Disease;
+import org.phenopackets.secure.schema.core.DoseInterval;
+import org.phenopackets.secure.schema.core.Evidence;
+import org.phenopackets.secure.schema.core.Individual;
+import org.phenopackets.secure.schema.core.MedicalAction;
+import org.phenopackets.secure.schema.core.MetaData;
+import org.phenopackets.secure.schema.core.OntologyClass;
+import org.phenopackets.secure.schema.core.PhenotypicFeature;
+import org.phenopackets.secure.schema.core.Resource;
+import org.phenopackets.secure.schema.core.TimeElement;
+import org.phenopackets.secure.schema.core.TimeInterval;
+import org.phenopackets.secure.schema.core.Update;
+import org.phenopackets.secure.schema.core.VitalStatus;
+import org.phenopackets.secure.schema.core.VitalStatus.Status;
+
+import com.google.protobuf.Timestamp;
+
+import phenopackets.PhenopacketExporter;
+import phenopackets.SecurePhenopacket;
+import phenopackets.schema.BlockBuilder;
+import phenopackets.schema.MainElements;
+import phenopackets.securityMechanisms.EnvelopeSession;
+
+
+/**
+ * Generator of synthetic Phenopackets for load testing. The elements are created with MainElements and
+ * BlockBuilder from a small vocabulary of real ontology terms, and the number of elements of each kind
+ * follows a configurable distribution. The Phenopacket with a given index only depends on the seed and
+ * the index, so a corpus can be generated again, in parallel or in parts, and always gives the same records
+ */
+public class CohortGenerator {
+
+    private static final String SCHEMA_VERSION = "2.0";
+    private static final String SUBMITTER = "Synthetic cohort";
+    // 2015-01-01T00:00:00Z and ten years of seconds after it
+    private static final long FIRST_SECOND = 1420070400L;
+    private static final long TIME_SPAN = 10L * 365 * 24 * 3600;
+    private static final long DAY = 24 * 3600;
+
+    // Vocabulary of the generated elements
+    private static final OntologyClass[] PHENOTYPES = {
+        term("HP:0001945", "Fever"), term("HP:0012735", "Cough"), term("HP:0002094", "Dyspnea"),
+        term("HP:0003326", "Myalgia"), term("HP:0002315", "Headache"), term("HP:0012378", "Fatigue"),
+        term("HP:0002018", "Nausea"), term("HP:0002014", "Diarrhea"), term("HP:0000790", "Hematuria"),
+        term("HP:0100518", "Dysuria"), term("HP:0001824", "Weight loss"), term("HP:0002027", "Abdominal pain"),
+        term("HP:0001250", "Seizure"), term("HP:0001649", "Tachycardia"), term("HP:0001903", "Anemia"),
+        term("HP:0000989", "Pruritus")};
+    private static final OntologyClass[] SEVERITIES = {
+        term("HP:0012825", "Mild"), term("HP:0012826", "Moderate"), term("HP:0012828", "Severe"), term("HP:0012829", "Profound")};
+    private static final Evidence EVIDENCE = BlockBuilder.createEvidence("ECO:0006017", "author statement from published clinical study used in manual assertion");
+
+    private static final OntologyClass[] DISEASES = {
+        term("NCIT:C2985", "Diabetes Mellitus"), term("NCIT:C34830", "Cardiomyopathy"), term("NCIT:C3117", "Hypertension"),
+        term("NCIT:C171133", "COVID-19")};
+    private static final OntologyClass[] CANCERS = {
+        term("NCIT:C39853", "Infiltrating Urothelial Carcinoma"), term("NCIT:C4872", "Breast Carcinoma"),
+        term("NCIT:C4878", "Lung Carcinoma"), term("NCIT:C2955", "Colorectal Carcinoma"), term("NCIT:C4863", "Prostate Carcinoma")};
+    private static final OntologyClass[] STAGES = {
+        term("NCIT:C27966", "Stage I"), term("NCIT:C28054", "Stage II"), term("NCIT:C27970", "Stage III"), term("NCIT:C27971", "Stage IV")};
+    private static final OntologyClass[] TNM_FINDINGS = {
+        term("NCIT:C48720", "T1 Stage Finding"), term("NCIT:C48724", "T2 Stage Finding"), term("NCIT:C48766", "pT2b Stage Finding"),
+        term("NCIT:C48728", "T3 Stage Finding"), term("NCIT:C48705", "N0 Stage Finding"), term("NCIT:C48706", "N1 Stage Finding"),
+        term("NCIT:C48750", "pN2 Stage Finding"), term("NCIT:C48699", "M0 Stage Finding"), term("NCIT:C48700", "M1 Stage Finding")};
+    private static final OntologyClass[] SITES = {
+        term("UBERON:0001255", "urinary bladder"), term("UBERON:0000310", "breast"), term("UBERON:0002048", "lung"),
+        term("UBERON:0001155", "colon"), term("UBERON:0002367", "prostate gland"), term("UBERON:0000948", "heart")};
+
+    private static final OntologyClass[] PROCEDURES = {
+        term("NCIT:C80473", "Left Ventricular Assist Device"), term("NCIT:C15189", "Biopsy"),
+        term("NCIT:C5189", "Radical Cystoprostatectomy"), term("NCIT:C15329", "Surgical Procedure")};
+    private static final OntologyClass[] AGENTS = {
+        term("NCIT:C722", "Oxygen"), term("NCIT:C376", "Cisplatin"), term("NCIT:C422", "Dexamethasone"), term("NCIT:C1411", "Paclitaxel")};
+    private static final OntologyClass[] ROUTES = {
+        term("NCIT:C38284", "Nasal Route of Administration"), term("NCIT:C38276", "Intravenous Route of Administration"),
+        term("NCIT:C38288", "Oral Route of Administration")};
+    private static final OntologyClass[] UNITS = {
+        term("NCIT:C67388", "Liter per Minute"), term("NCIT:C28253", "Milligram")};
+    private static final OntologyClass[] SCHEDULES = {
+        term("NCIT:C64597", "Immediately"), term("NCIT:C125004", "Once Daily"), term("NCIT:C64496", "Twice Daily")};
+    private static final OntologyClass[] MODALITIES = {
+        term("NCIT:C28039", "Proton Beam Radiation Therapy"), term("NCIT:C15313", "Radiation Therapy")};
+    private static final OntologyClass[] REGIMENS = {
+        term("NCIT:C15632", "Chemotherapy"), term("NCIT:C15262", "Combination Chemotherapy")};
+    private static final OntologyClass[] INTENTS = {
+        term("NCIT:C62220", "Cure"), term("NCIT:C71148", "Palliative")};
+    private static final OntologyClass[] RESPONSES = {
+        term("NCIT:C123584", "Favorable Response"), term("NCIT:C123585", "Unfavorable Response")};
+    private static final OntologyClass[] TERMINATIONS = {
+        term("NCIT:C41331", "Adverse Event"), term("NCIT:C105740", "Treatment Completed as Prescribed")};
+
+    private static final Resource[] RESOURCES = {
+        BlockBuilder.createResource("hp", "human phenotype ontology", "HP", "http://purl.obolibrary.org/obo/hp.owl", "2018-03-08", "http://purl.obolibrary.org/obo/HP_"),
+        BlockBuilder.createResource("ncit", "NCI Thesaurus OBO Edition", "NCIT", "http://purl.obolibrary.org/obo/ncit.owl", "2019-11-26", "http://purl.obolibrary.org/obo/NCIT_"),
+        BlockBuilder.createResource("uberon", "uber anatomy ontology", "UBERON", "http://purl.obolibrary.org/obo/uberon.owl", "2019-03-08", "http://purl.obolibrary.org/obo/UBERON_"),
+        BlockBuilder.createResource("eco", "Evidence and Conclusion Ontology", "ECO", "http://purl.obolibrary.org/obo/eco.owl", "2020-04-27", "http://purl.obolibrary.org/obo/ECO_"),
+        BlockBuilder.createResource("mondo", "Mondo Disease Ontology", "MONDO", "http://purl.obolibrary.org/obo/mondo.owl", "2021-04-07", "http://purl.obolibrary.org/obo/MONDO_")};
+
+    private final long seed;
+    private Distribution phenotypicFeatures = Distribution.poisson(3);
+    private Distribution diseases = Distribution.uniform(1, 2);
+    private Distribution tnmFindings = Distribution.uniform(0, 3);
+    private Distribution medicalActions = Distribution.poisson(2);
+    private Distribution resources = Distribution.uniform(1, RESOURCES.length);
+    private Distribution updates = Distribution.uniform(1, 3);
+    private EnvelopeSession session;
+
+    /**
+     * Create a generator
+     * @param seed required - the same seed always generates the same Phenopackets
+     */
+    public CohortGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param distribution required - number of PhenotypicFeatures of each Phenopacket
+     * @return this generator
+     */
+    public CohortGenerator phenotypicFeatures(Distribution distribution){
+        this.phenotypicFeatures = check(distribution);
+        return this;
+    }
+
+    /**
+     * @param distribution required - number of Diseases of each Phenopacket
+     * @return this generator
+     */
+    public CohortGenerator diseases(Distribution distribution){
+        this.diseases = check(distribution);
+        return this;
+    }
+
+    /**
+     * @param distribution required - number of clinical TNM findings of each Disease, a Disease without
+     * findings is not oncological
+     * @return this generator
+     */
+    public CohortGenerator tnmFindings(Distribution distribution){
+        this.tnmFindings = check(distribution);
+        return this;
+    }
+
+    /**
+     * @param distribution required - number of MedicalActions of each Phenopacket, the four kinds of
+     * action are equally likely
+     * @return this generator
+     */
+    public CohortGenerator medicalActions(Distribution distribution){
+        this.medicalActions = check(distribution);
+        return this;
+    }
+
+    /**
+     * @param distribution required - number of Resources in the MetaData, at most the size of the vocabulary
+     * @return this generator
+     */
+    public CohortGenerator resources(Distribution distribution){
+        this.resources = check(distribution);
+        return this;
+    }
+
+    /**
+     * @param distribution required - number of Updates in the MetaData
+     * @return this generator
+     */
+    public CohortGenerator updates(Distribution distribution){
+        this.updates = check(distribution);
+        return this;
+    }
+
+    /**
+     * Method to encrypt the ages with a session, as the examples do. The ciphertexts are random, so
+     * only the plain Phenopackets are the same for the same seed
+     * @param session optional - envelope encryption session, null keeps the ages in plain ISO 8601
+     * @return this generator
+     */
+    public CohortGenerator encryptAges(EnvelopeSession session){
+        this.session = session;
+        return this;
+    }
+
+    /**
+     * Method to generate one Phenopacket of the corpus
+     * @param index required - position of the Phenopacket in the corpus
+     * @return the Phenopacket
+     * @throws GeneralSecurityException if the age cannot be encrypted
+     */
+    public Phenopacket generate(long index) throws GeneralSecurityException{
+        if (index < 0){
+            throw new IllegalArgumentException("The index cannot be negative");
+        }
+        SplittableRandom random = new SplittableRandom(mix(seed + index * 0x9E3779B97F4A7C15L));
+        String phenopacketId = uuid(random).toString();
+
+        // The first time is the creation of the record, the events of the patient happen after it
+        long created = FIRST_SECOND + random.nextLong(TIME_SPAN);
+
+        List<PhenotypicFeature> features = new ArrayList<>();
+        for (int i = phenotypicFeatures.sample(random); i > 0; i--) {
+            features.add(phenotypicFeature(random, created));
+        }
+        List<Disease> diseaseList = new ArrayList<>();
+        for (int i = diseases.sample(random); i > 0; i--) {
+            diseaseList.add(disease(random));
+        }
+        List<MedicalAction> actions = new ArrayList<>();
+        for (int i = medicalActions.sample(random); i > 0; i--) {
+            actions.add(medicalAction(random, created));
+        }
+
+        return SecurePhenopacket.createPhenopacket(phenopacketId, subject(random), features, metaData(random, created), diseaseList, actions);
+    }
+
+    /**
+     * Method to get the first Phenopackets of the corpus as a stream. The Phenopackets are generated
+     * when they are read, so the stream can be larger than the memory and can be parallel
+     * @param count required - number of Phenopackets
+     * @return the stream of Phenopackets
+     */
+    public Stream<Phenopacket> stream(long count){
+        return stream(0, count);
+    }
+
+    /**
+     * Method to get a part of the corpus as a stream
+     * @param first required - index of the first Phenopacket
+     * @param count required - number of Phenopackets
+     * @return the stream of Phenopackets
+     */
+    public Stream<Phenopacket> stream(long first, long count){
+        if (first < 0 || count < 0){
+            throw new IllegalArgumentException();
+        }
+        return LongStream.range(first, first + count).mapToObj(index -> {
+            try {
+                return generate(index);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Cannot generate the Phenopacket " + index, ex);
+            }
+        });
+    }
+
+    /**
+     * Method to write the first Phenopackets of the corpus to a newline-delimited JSON file
+     * @param count required - number of Phenopackets
+     * @param file required - the NDJSON file
+     * @param gzip required - if the file is gzip compressed
+     * @return number of Phenopackets written
+     * @throws IOException
+     */
+    public long toNdjson(long count, Path file, boolean gzip) throws IOException{
+        try (PhenopacketExporter exporter = PhenopacketExporter.toFile(file, gzip)) {
+            exporter.writeAll(stream(count)::iterator);
+            return exporter.getCount();
+        }
+    }
+
+    /**
+     * Method to write the first Phenopackets of the corpus to one P-[PhenopacketID].json file each
+     * @param count required - number of Phenopackets
+     * @param directory required - the folder of the files
+     * @return number of Phenopackets written
+     * @throws IOException
+     */
+    public long toDirectory(long count, Path directory) throws IOException{
+        try (PhenopacketExporter exporter = PhenopacketExporter.toDirectory(directory)) {
+            exporter.writeAll(stream(count)::iterator);
+            return exporter.getCount();
+        }
+    }
+
+    /**
+     * Private method to create the subject. MainElements.createSubject draws the Individual ID from a
+     * strong random generator, which is neither repeatable nor fast enough for millions of records,
+     * so the Individual is built with a generated ID instead
+     */
+    private Individual subject(SplittableRandom random) throws GeneralSecurityException{
+        Status status = (random.nextInt(10) == 0) ? Status.DECEASED : Status.ALIVE;
+        return Individual.newBuilder()
+            .setId(String.format("P%06d", random.nextInt(1000000)))
+            .setTimeAtLastEncounter(age(random))
+            .setVitalStatus(VitalStatus.newBuilder().setStatus(status))
+            // Mostly XX or XY
+            .setKaryotypicSexValue(random.nextInt(20) == 0 ? 3 + random.nextInt(3) : 1 + random.nextInt(2))
+            .build();
+    }
+
+    private PhenotypicFeature phenotypicFeature(SplittableRandom random, long created){
+        long onset = created + random.nextLong(365 * DAY);
+        List<Evidence> evidences = new ArrayList<>();
+        evidences.add(EVIDENCE);
+        return MainElements.createPhenotypicFeature(pick(random, PHENOTYPES), pick(random, SEVERITIES), evidences,
+            timeElement(onset), timeElement(onset + DAY + random.nextLong(60 * DAY)));
+    }
+
+    private Disease disease(SplittableRandom random) throws GeneralSecurityException{
+        List<OntologyClass> stages = new ArrayList<>();
+        stages.add(pick(random, STAGES));
+        int findings = tnmFindings.sample(random);
+        if (findings <= 0) {
+            return MainElements.createDisease(pick(random, DISEASES), random.nextInt(10) == 0, stages, pick(random, SITES), age(random));
+        }
+
+        List<OntologyClass> tnm = new ArrayList<>();
+        for (int i = 0; i < findings; i++) {
+            tnm.add(pick(random, TNM_FINDINGS));
+        }
+        return MainElements.createOncologicalDisease(pick(random, CANCERS), false, stages, tnm, pick(random, SITES), age(random));
+    }
+
+    private MedicalAction medicalAction(SplittableRandom random, long created){
+        long start = created + random.nextLong(365 * DAY);
+        long end = start + DAY + random.nextLong(90 * DAY);
+        List<OntologyClass> adverseEvents = new ArrayList<>();
+        if (random.nextInt(4) == 0) {
+            adverseEvents.add(pick(random, PHENOTYPES));
+        }
+        OntologyClass target = pick(random, CANCERS);
+        OntologyClass intent = pick(random, INTENTS);
+        OntologyClass response = pick(random, RESPONSES);
+        OntologyClass termination = pick(random, TERMINATIONS);
+
+        switch (random.nextInt(4)) {
+            case 0:
+                return MainElements.createMedicalProcedure(BlockBuilder.setProcedure(pick(random, PROCEDURES), pick(random, SITES), timeElement(start)),
+                    target, intent, response, adverseEvents, termination);
+            case 1:
+                List<DoseInterval> doseIntervals = new ArrayList<>();
+                TimeInterval interval = TimeInterval.newBuilder().setStart(timestamp(start)).setEnd(timestamp(end)).build();
+                doseIntervals.add(BlockBuilder.setDoseInterval(BlockBuilder.setQuantity(pick(random, UNITS), (double) (1 + random.nextInt(500))),
+                    pick(random, SCHEDULES), interval));
+                return MainElements.createMedicalTreatment(BlockBuilder.setTreatment(pick(random, AGENTS), pick(random, ROUTES), doseIntervals),
+                    target, intent, response, adverseEvents, termination);
+            case 2:
+                return MainElements.createMedicalRadiationTherapy(BlockBuilder.setRadiationTheraphy(pick(random, MODALITIES), pick(random, SITES),
+                    10 + random.nextInt(70), 1 + random.nextInt(35)), target, intent, response, adverseEvents, termination);
+            default:
+                // Status from started to discontinued
+                return MainElements.createMedicalTherapeuticRegimen(BlockBuilder.setTherapeuticRegimen(pick(random, REGIMENS), timeElement(start),
+                    timeElement(end), 1 + random.nextInt(3)), target, intent, response, adverseEvents, termination);
+        }
+    }
+
+    private MetaData metaData(SplittableRandom random, long created){
+        // Resources are not repeated, the first ones of a shuffled vocabulary are taken
+        Resource[] shuffled = RESOURCES.clone();
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Resource resource = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = resource;
+        }
+        List<Resource> resourceList = new ArrayList<>();
+        for (int i = Math.min(resources.sample(random), shuffled.length); i > 0; i--) {
+            resourceList.add(shuffled[i - 1]);
+        }
+
+        List<Update> updateList = new ArrayList<>();
+        long update = created;
+        for (int i = updates.sample(random); i > 0; i--) {
+            update += 1 + random.nextLong(30 * DAY);
+            updateList.add(Update.newBuilder().setTimestamp(timestamp(update)).build());
+        }
+
+        try {
+            return MainElements.createMetaData(timestamp(created), "Curator " + random.nextInt(100), SUBMITTER, resourceList, updateList, SCHEMA_VERSION);
+        } catch (IOException | GeneralSecurityException | URISyntaxException ex) {
+            // The MetaData is only built, nothing is read or encrypted
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private TimeElement age(SplittableRandom random) throws GeneralSecurityException{
+        String isoAge = "P" + random.nextInt(100) + "Y" + random.nextInt(12) + "M";
+        if (session != null) {
+            return BlockBuilder.createTimeElementAge(isoAge.getBytes(StandardCharsets.UTF_8), session);
+        }
+        return TimeElement.newBuilder().setAge(Age.newBuilder().setIso8601Duration(isoAge)).build();
+    }
+
+    /*
+     * BlockBuilder creates the times from ISO 8601 strings, the generator builds them from the seconds
+     * to avoid formatting and parsing each one
+     */
+    private static Timestamp timestamp(long seconds){
+        return Timestamp.newBuilder().setSeconds(seconds).build();
+    }
+
+    private static TimeElement timeElement(long seconds){
+        return TimeElement.newBuilder().setTimestamp(timestamp(seconds)).build();
+    }
+
+    private static <T> T pick(SplittableRandom random, T[] values){
+        return values[random.nextInt(values.length)];
+    }
+
+    private static OntologyClass term(String id, String label){
+        return BlockBuilder.createOntologyClass(id, label);
+    }
+
+    private static UUID uuid(SplittableRandom random){
+        // Random UUID, version 4 and IETF variant
+        long mostSignificant = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSignificant = (random.nextLong() & ~0xC000000000000000L) | 0x8000000000000000L;
+        return new UUID(mostSignificant, leastSignificant);
+    }
+
+    private static long mix(long z){
+        // Finalizer of SplitMix64, so close seeds and indexes give unrelated sequences
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static Distribution check(Distribution distribution){
+        // Input validation
+        if (distribution == null){
+            throw new NullPointerException();
+        }
+        return distribution;
+    }
+
+    /**
+     * Distribution of the number of elements of a kind in each Phenopacket
+     */
+    @FunctionalInterface
+    public interface Distribution {
+
+        /**
+         * @param random required - generator of the Phenopacket
+         * @return number of elements, negative values are taken as 0
+         */
+        int sample(SplittableRandom random);
+
+        /**
+         * @param count required - the same number every time
+         * @return the distribution
+         */
+        static Distribution fixed(int count){
+            if (count < 0){
+                throw new IllegalArgumentException();
+            }
+            return random -> count;
+        }
+
+        /**
+         * @param min required - smallest number
+         * @param max required - largest number, included
+         * @return the distribution
+         */
+        static Distribution uniform(int min, int max){
+            if (min < 0 || max < min){
+                throw new IllegalArgumentException();
+            }
+            return random -> min + random.nextInt(max - min + 1);
+        }
+
+        /**
+         * Poisson distribution, most records have about the mean and a few have many more
+         * @param mean required - mean number
+         * @return the distribution
+         */
+        static Distribution poisson(double mean){
+            if (mean < 0){
+                throw new IllegalArgumentException();
+            }
+            if (mean >= 30) {
+                // Normal approximation, Box-Muller transform
+                return random -> (int) Math.max(0, Math.round(mean + Math.sqrt(mean)
+                    * Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble())));
+            }
+            double limit = Math.exp(-mean);
+            return random -> {
+                int count = 0;
+                double product = random.nextDouble();
+                while (product > limit) {
+                    count++;
+                    product *= random.nextDouble();
+                }
+                return count;
+            };
+        }
+    }
+}
@@ -3,6 +3,7 @@ package phenopackets.schema;
 import org.phenopackets.secure.schema.core.*;
 import com.google.protobuf.Timestamp;
 
+import phenopackets.securityMechanisms.EnvelopeSession;
 import phenopackets.securityMechanisms.HybridEncryption;
 
 import java.io.IOException;
@@ -126,6 +127,25 @@ public class BlockBuilder {
         return TimeElement.newBuilder().setAge(age).build();
     }
 
+    /**
+     * Method to create a new TimeElement that includes the Age element encrypted with the Phenopacket session
+     * @param isoDuration required - iso8601
+     * @param session required - envelope encryption session of the Phenopacket
+     * @return Time Element
+     * @throws GeneralSecurityException
+     */
+    public static TimeElement createTimeElementAge(byte[] isoDuration, EnvelopeSession session) throws GeneralSecurityException{
+        // Encrypt the age and store it in Base64
+        byte[] cipherBytes = HybridEncryption.hybridEncryption(MODE_ENC, isoDuration, session);
+        String cipherAge = Base64.getEncoder().encodeToString(cipherBytes);
+
+        // Create age element
+        Age age = Age.newBuilder().setIso8601Duration(cipherAge).build();
+
+        // Create and return TimeElement
+        return TimeElement.newBuilder().setAge(age).build();
+    }
+
     /**
      * Method to create a new Timestamp
      * @param isoDate required - iso8601 date time
@@ -266,4 +286,25 @@ public class BlockBuilder {
         return new String(age);
     }
 
+    /**
+     * Method to obtain the age from the TimeElement object encrypted with the Phenopacket session
+     * @param timeElement required - age value
+     * @param session required - envelope encryption session of the Phenopacket
+     * @return Value of age
+     * @throws GeneralSecurityException
+     */
+    public static String getAge(TimeElement timeElement, EnvelopeSession session) throws GeneralSecurityException{
+        
+        // Get age from TimeElement and the corresponding value 
+        Age ageElement = timeElement.getAge();
+        String isoDuration = ageElement.getIso8601Duration();
+        
+        // Decrypt age
+        byte[] ageBytes = Base64.getDecoder().decode(isoDuration);
+        byte[] age = HybridEncryption.hybridEncryption(MODE_DEC, ageBytes, session);
+
+        // Return the Age value as String 
+        return new String(age);
+    }
+
 }
\ No newline at end of file
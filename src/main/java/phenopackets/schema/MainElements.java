@@ -4,10 +4,12 @@ import org.phenopackets.secure.schema.core.*;
 
 import com.google.protobuf.Timestamp;
 
+import phenopackets.securityMechanisms.EnvelopeSession;
 import phenopackets.securityMechanisms.HybridEncryption;
 
 
 import java.io.IOException;
+import java.lang.System.Logger.Level;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
@@ -25,6 +27,8 @@ import javax.crypto.NoSuchPaddingException;
 
 public class MainElements {
 
+    private static final System.Logger LOGGER = System.getLogger(MainElements.class.getName());
+
     private static final String MODE_ENC = "encrypt"; 
     private static final String MODE_DEC = "decrypt"; 
 
@@ -78,7 +82,7 @@ public class MainElements {
         
         // Check timeElement is actually an age element
         if (!timeAtLastEncounter.hasAge()){
-            System.out.println("Incorret TimeElement");
+            LOGGER.log(Level.WARNING, "Incorret TimeElement");
             throw new IllegalArgumentException();
         }
 
@@ -106,7 +110,7 @@ public class MainElements {
         
         // Check timeElements correspond to Timestamp Elements
         if (!onset.hasTimestamp() || !resolution.hasTimestamp()){
-            System.out.println("Incorret TimeElement");
+            LOGGER.log(Level.WARNING, "Incorret TimeElement");
             throw new IllegalArgumentException();
         }
         
@@ -132,7 +136,7 @@ public class MainElements {
         
         // Check timeElement is actually an age element
         if (!onset.hasAge()){
-            System.out.println("Incorret TimeElement");
+            LOGGER.log(Level.WARNING, "Incorret TimeElement");
             throw new IllegalArgumentException();
         }
 
@@ -159,7 +163,7 @@ public class MainElements {
         
         // Check timeElement is actually an age element
         if (!onset.hasAge()){
-            System.out.println("Incorret TimeElement");
+            LOGGER.log(Level.WARNING, "Incorret TimeElement");
             throw new IllegalArgumentException();
         }
 
@@ -281,6 +285,72 @@ public class MainElements {
         return new String(plainCreatedBy);
      }
 
+    /**
+     * Method to encrypt the MetaData creator with the Phenopacket session
+     * @param metaData required - MetaData element
+     * @param session required - envelope encryption session of the Phenopacket
+     * @return MetaData element
+     * @throws GeneralSecurityException
+     */
+    public static MetaData protectedMetaDataCreator(MetaData metaData, EnvelopeSession session) throws GeneralSecurityException{
+        String createdBy = metaData.getCreatedBy();
+
+        // Use the session key to protect the creator of the phenopacket
+        byte[] cipher = HybridEncryption.hybridEncryption(MODE_ENC, createdBy.getBytes(), session);
+        String cipherCreatedBy = Base64.getEncoder().encodeToString(cipher);
+       
+        return MetaData.newBuilder(metaData).setCreatedBy(cipherCreatedBy).build(); 
+    }
+
+    /**
+     * Function to create protected MetaData element with the Phenopacket session
+     * @param metaData required - MetaData element to protect
+     * @param session required - envelope encryption session of the Phenopacket
+     * @return encrypted byte[] representing the element
+     * @throws GeneralSecurityException
+     */
+    public static byte[] protectedMetaData(MetaData metaData, EnvelopeSession session) throws GeneralSecurityException{
+        
+        // Encrypt the whole element
+        return HybridEncryption.hybridEncryption(MODE_ENC, metaData.toByteArray(), session);
+    }
+
+    /**
+     * Function to decrypt and get the MetaData element with the Phenopacket session
+     * @param metaDataBytes required - the cipher element
+     * @param session required - envelope encryption session of the Phenopacket
+     * @return plain MetaData
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    public static MetaData getMetaData(byte[] metaDataBytes, EnvelopeSession session) throws GeneralSecurityException, IOException{
+       
+        // Decrypt the above bytes with the session key
+        byte[] plainMetaData = HybridEncryption.hybridEncryption(MODE_DEC, metaDataBytes, session);
+        
+        // return the MetaData element
+        return MetaData.parseFrom(plainMetaData);
+    }
+
+    /**
+     * Method to decrypt and get the creator of the phenopacket with the Phenopacket session
+     * @param metaData required - the metadata element with the encrypted creator
+     * @param session required - envelope encryption session of the Phenopacket
+     * @return plain Created_by field
+     * @throws GeneralSecurityException
+     */
+    public static String getMetaDataCreator(MetaData metaData, EnvelopeSession session) throws GeneralSecurityException{
+       
+        // Get the created_by field bytes
+        byte[] createdBytes = Base64.getDecoder().decode(metaData.getCreatedBy());
+        
+        // Decrypt the above bytes with the session key
+        byte[] plainCreatedBy = HybridEncryption.hybridEncryption(MODE_DEC, createdBytes, session);
+        
+        // return the Creator
+        return new String(plainCreatedBy);
+    }
+
     /**
      * Method to reate MedicalAction element with Procedure action (all fields included)
      * @param procedure required - Procedure action
@@ -0,0 +1,59 @@
+package phenopackets.securityMechanisms;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+
+class BatchRunner {
+
+    private static final int TASKS_PER_THREAD = 4;
+
+    /**
+     * Method to run an action for every position of a batch. The positions are split in
+     * slices that run in the executor, the method returns when every slice has finished
+     * @param size required - number of items of the batch
+     * @param executor required - executor that runs the slices
+     * @param action required - action that processes one position
+     * @throws IOException if the batch is interrupted or an action throws an unexpected error
+     */
+    static void forEach(int size, ExecutorService executor, IntConsumer action) throws IOException{
+        // Input validation
+        if (executor == null || action == null){
+            throw new NullPointerException();
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        int sliceSize = Math.max(1, (size + threads * TASKS_PER_THREAD - 1) / (threads * TASKS_PER_THREAD));
+
+        // Each slice processes its own positions
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int start = 0; start < size; start += sliceSize) {
+            int from = start;
+            int to = Math.min(size, start + sliceSize);
+            tasks.add(executor.submit(() -> {
+                for (int i = from; i < to; i++) {
+                    action.accept(i);
+                }
+            }));
+        }
+
+        // Wait for every slice
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Batch interrupted", ex);
+            } catch (ExecutionException ex) {
+                throw new IOException("Batch failed", ex.getCause());
+            }
+        }
+    }
+
+    private BatchRunner() {}
+}
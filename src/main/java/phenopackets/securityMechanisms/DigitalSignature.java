@@ -1,35 +1,51 @@
 package phenopackets.securityMechanisms;
 
-import com.google.crypto.tink.CleartextKeysetHandle;
-import com.google.crypto.tink.JsonKeysetReader;
-import com.google.crypto.tink.KeysetHandle;
-import com.google.crypto.tink.PublicKeySign;
-import com.google.crypto.tink.PublicKeyVerify;
-import com.google.crypto.tink.signature.SignatureConfig;
-
-
-import com.nimbusds.jose.shaded.json.JSONObject;
+import com.google.protobuf.MessageLite;
 import com.nimbusds.jose.shaded.json.parser.ParseException;
-import com.google.gson.stream.JsonReader;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.lang.System.Logger.Level;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.util.Base64;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 
 public class DigitalSignature {
 
-    private static final String PK_FILE = "pk_verify.json"; 
-    private static final String SK_FILE = "pk_sign.json"; 
-    private static final String SIGNATURES_FILE = "signatures.json";
+    private static final System.Logger LOGGER = System.getLogger(DigitalSignature.class.getName());
+
+    private static final String SIGNATURE_SUFFIX = "-Signature";
+    private static final String MERKLE_SUFFIX = "-MerkleSignature";
+    private static final String BATCH_PROOF_SUFFIX = "-BatchProof";
+    private static final String DIGEST_SUFFIX = "-DigestSignature";
+    private static final String BATCH_PREFIX = "Batch-";
+
+    // Signed before the elements, the Merkle roots and the digests, so a signature of one mode is not accepted by another
+    private static final byte[] ELEMENT_TAG = "phenopackets/element\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MERKLE_ROOT_TAG = "phenopackets/merkle-root\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BATCH_ROOT_TAG = "phenopackets/batch-root\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DIGEST_TAG = "phenopackets/digest\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] TAGS = {ELEMENT_TAG, MERKLE_ROOT_TAG, BATCH_ROOT_TAG, DIGEST_TAG};
   
     static ExternalResources externalResource = new ExternalResources();
-    public static JSONObject jsonObj = new JSONObject();
+
+    // Optional cache of verdicts, disabled by default
+    private static volatile VerificationCache verificationCache;
 
     /**
      * Private method to sign the Phenopacket element
@@ -44,20 +60,8 @@ public class DigitalSignature {
          if (element == null || element.length == 0){
             throw new NullPointerException();
         }
-        // Read and store the private key to sign
-        KeysetHandle handle = CleartextKeysetHandle.read(JsonKeysetReader.withFile(externalResource.getFileFromResource(SK_FILE)));
-        
-        // Create the signer instance and get the associated primitive
-        PublicKeySign signer = null;
-
-        try{
-            signer = handle.getPrimitive(PublicKeySign.class);
-        }catch(GeneralSecurityException ex){
-            System.err.println("Process error: " + ex);
-        }
-
-        // Sign and return the signature bytes 
-        byte[] signature = signer.sign(element);
+        // Sign with the cached signer and return the signature bytes 
+        byte[] signature = SignatureService.getInstance().sign(element);
         return signature;
     }
 
@@ -79,30 +83,86 @@ public class DigitalSignature {
             throw new NullPointerException();
         }
 
-        //Set Boolean variable 
-        Boolean isVerified = false; 
-        // Read and store the public key to verify
-        KeysetHandle handle = CleartextKeysetHandle.read(JsonKeysetReader.withFile(externalResource.getFileFromResource(PK_FILE)));
+        // Check if the signature is correct with the cached verifier
+        Boolean isVerified = SignatureService.getInstance().verify(element, signature);
+        return isVerified;
+    }
+    
+    /**
+     * Method to enable the cache of verifications: unchanged elements are not verified again
+     * @param cache optional - the cache to use, null disables it
+     */
+    public static void setVerificationCache(VerificationCache cache){
+        verificationCache = cache;
+    }
 
-         // Create the verifier instance and get the associated primitive
-        PublicKeyVerify verifier = null;
+    /**
+     * @return the cache of verifications, null if it is disabled
+     */
+    public static VerificationCache getVerificationCache(){
+        return verificationCache;
+    }
 
-        try{
-            verifier = handle.getPrimitive(PublicKeyVerify.class);
-        } catch (GeneralSecurityException ex) {
-            System.err.println("Process error: " + ex);
+    /**
+     * Private method to verify a signature, reusing the cached verdict when the element, the
+     * signature and the verifying key did not change
+     * @param phenopacketId required - the Phenopacket ID
+     * @param element required - the signed bytes
+     * @param signature required - the signature
+     * @return boolean value. If the signatures was verified then returns true, otherwise false
+     * @throws GeneralSecurityException
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    private static boolean verifyCached(String phenopacketId, byte[] element, byte[] signature) throws GeneralSecurityException, IOException, URISyntaxException{
+        VerificationCache cache = verificationCache;
+        if (cache == null) {
+            return verifyElement(element, signature);
         }
 
-        // Check if the signature is correct
-        try{
-            verifier.verify(signature, element);
-            isVerified = true;
-        }catch (GeneralSecurityException ex) {
-            System.err.println("Verification failed." + ex);
+        SignatureService service = SignatureService.getInstance();
+        long keyId = service.getVerifyingKeyId();
+        byte[] digest = KeccakEngine.hash(element);
+        Boolean verdict = cache.get(phenopacketId, digest, signature, keyId);
+        if (verdict == null) {
+            verdict = verifyElement(element, signature);
+            cache.put(phenopacketId, digest, signature, keyId, verdict);
         }
-        return isVerified;
+        return verdict;
     }
-    
+
+    /**
+     * Private method to verify the signature of a whole element. The elements signed before the tags
+     * were added are accepted untagged, unless their bytes start with the tag of a signing mode
+     * @param phenopacketId required - the Phenopacket ID
+     * @param element required - the element bytes
+     * @param signature required - the stored signature
+     * @return true if the signature matches the element
+     * @throws GeneralSecurityException
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    private static boolean verifyElementSignature(String phenopacketId, byte[] element, byte[] signature) throws GeneralSecurityException, IOException, URISyntaxException{
+        if (verifyCached(phenopacketId, tag(ELEMENT_TAG, element), signature)) {
+            return true;
+        }
+        return !isTagged(element) && verifyCached(phenopacketId, element, signature);
+    }
+
+    /**
+     * Private method to check if some bytes start with the tag of a signing mode
+     * @param element required - the element bytes
+     * @return true if the bytes start with a tag
+     */
+    private static boolean isTagged(byte[] element){
+        for (byte[] tag : TAGS) {
+            if (element.length >= tag.length && Arrays.equals(element, 0, tag.length, tag, 0, tag.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Main process to sign or verify the element
      * @param mode required - two actions are allowed: sign or verify
@@ -122,34 +182,426 @@ public class DigitalSignature {
         //Set variable 
         Boolean isVerified = false; 
         try {
-            // Set the Digital Signature configuration 
-            SignatureConfig.register();
-            
             // Check the mode is correct
             if (!mode.equals("sign") && !mode.equals("verify")) {
-                System.err.println("Incorrect mode.");
+                LOGGER.log(Level.ERROR, "Incorrect mode.");
             }
             
             if(mode.equals("sign")){
-                byte[] signatureBytes = signElement(elementBytes);
+                byte[] signatureBytes = signElement(tag(ELEMENT_TAG, elementBytes));
                 
-                // Store the signature in a jsonObj and create a file with the signature
-                String ptSignature = new String(Base64.getEncoder().encode(signatureBytes), StandardCharsets.UTF_8);
-                String ptPhenopacket = new String(Base64.getEncoder().encode(elementBytes), StandardCharsets.UTF_8);
-                externalResource.createJSONFile(SIGNATURES_FILE, ptPhenopacket, phenopacketId);
-                externalResource.createJSONFile(SIGNATURES_FILE, ptSignature, phenopacketId+"-Signature");
+                // Store the element and its signature in the indexed store
+                EntryStore store = ExternalResources.getSignatureStore();
+                store.put(phenopacketId, elementBytes);
+                store.put(phenopacketId+SIGNATURE_SUFFIX, signatureBytes);
                 
             }else if(mode.equals("verify")){
                 isVerified = searchSignatureAndVerify(elementBytes, phenopacketId);
-                System.out.println("Verified:" + isVerified);
+                if (LOGGER.isLoggable(Level.DEBUG)) {
+                    LOGGER.log(Level.DEBUG, "Verified: {0}", isVerified);
+                }
             }
         }catch (java.security.GeneralSecurityException e){
-            System.out.println("Error protecting with DS");
+            LOGGER.log(Level.ERROR, "Error protecting with DS", e);
         }
     }
 
     /**
-     * Method to search a signature in a json file and check if is correct
+     * Method to verify the stored signature of an element and return the result
+     * @param elementBytes required - the element bytes to verify the signature
+     * @param phenopacketId required - the Phenopacket ID
+     * @return boolean value. If the signatures was verified then returns true, otherwise false 
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static Boolean verifyWithDS(byte[] elementBytes, String phenopacketId) throws URISyntaxException, IOException, GeneralSecurityException{
+        // Input validation
+        if ( phenopacketId == null || phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+        return searchSignatureAndVerify(elementBytes, phenopacketId);
+    }
+
+    /**
+     * Method to sign the Merkle root of the elements of a Phenopacket and store the signature
+     * @param phenopacketId required - the Phenopacket ID
+     * @param root required - root of the Merkle tree of the Phenopacket elements
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static void signMerkleRoot(String phenopacketId, byte[] root) throws URISyntaxException, IOException, GeneralSecurityException{
+        // Input validation
+        if ( phenopacketId == null || phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+        byte[] signatureBytes = signElement(tag(MERKLE_ROOT_TAG, root));
+        ExternalResources.getSignatureStore().put(phenopacketId+MERKLE_SUFFIX, signatureBytes);
+    }
+
+    /**
+     * Method to sign an element without building its byte array: the element is serialized
+     * straight into the Keccak digest and only the 32 bytes of the digest are signed
+     * @param element required - the Phenopacket element
+     * @param phenopacketId required - the Phenopacket ID
+     * @param storePayload required - if the element bytes are also stored, false when the element is kept elsewhere
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static void signDigest(MessageLite element, String phenopacketId, boolean storePayload) throws URISyntaxException, IOException, GeneralSecurityException{
+        // Input validation
+        if (element == null){
+            throw new NullPointerException();
+        }
+        if ( phenopacketId == null || phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+
+        byte[] signatureBytes = signElement(tag(DIGEST_TAG, KeccakEngine.hash(element)));
+
+        EntryStore store = ExternalResources.getSignatureStore();
+        store.put(phenopacketId+DIGEST_SUFFIX, signatureBytes);
+        if (storePayload) {
+            store.put(phenopacketId, element.toByteArray());
+        }
+    }
+
+    /**
+     * Method to verify the digest signature of an element, the element is not serialized to a byte array
+     * @param element required - the Phenopacket element
+     * @param phenopacketId required - the Phenopacket ID
+     * @return boolean value. If the signatures was verified then returns true, otherwise false
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static Boolean verifyDigest(MessageLite element, String phenopacketId) throws URISyntaxException, IOException, GeneralSecurityException{
+        // Input validation
+        if (element == null){
+            throw new NullPointerException();
+        }
+        if ( phenopacketId == null || phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+
+        byte[] signatureBytes = ExternalResources.getSignatureStore().get(phenopacketId+DIGEST_SUFFIX);
+        if (signatureBytes == null) {
+            return false;
+        }
+        return verifyCached(phenopacketId+DIGEST_SUFFIX, tag(DIGEST_TAG, KeccakEngine.hash(element)), signatureBytes);
+    }
+
+    /**
+     * Method to sign many elements with a single signature. The elements are the leaves of a
+     * Merkle tree, only its root is signed and each element is stored with its inclusion proof
+     * so it can still be verified on its own
+     * @param elements required - the element bytes of each Phenopacket ID
+     * @return the ID of the batch
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static String signBatch(Map<String, byte[]> elements) throws URISyntaxException, IOException, GeneralSecurityException{
+        // Input validation
+        if (elements == null || elements.isEmpty()){
+            throw new NullPointerException();
+        }
+
+        // One leaf for each Phenopacket, named by its ID
+        List<String> ids = new ArrayList<>(elements.size());
+        List<byte[]> hashes = new ArrayList<>(elements.size());
+        for (Map.Entry<String, byte[]> element : elements.entrySet()) {
+            if (element.getValue() == null || element.getValue().length == 0){
+                throw new NullPointerException();
+            }
+            ids.add(element.getKey());
+            hashes.add(KeccakEngine.hash(element.getValue()));
+        }
+        MerkleTree tree = new MerkleTree(ids, hashes);
+
+        // The only private key operation of the batch
+        String batchId = BATCH_PREFIX + UUID.randomUUID();
+        byte[] signatureBytes = signElement(tag(BATCH_ROOT_TAG, tree.getRoot()));
+
+        EntryStore store = ExternalResources.getSignatureStore();
+        store.put(batchId+SIGNATURE_SUFFIX, signatureBytes);
+        for (String phenopacketId : ids) {
+            store.put(phenopacketId, elements.get(phenopacketId));
+            store.put(phenopacketId+BATCH_PROOF_SUFFIX, encodeBatchProof(batchId, tree.getProof(phenopacketId)));
+        }
+        return batchId;
+    }
+
+    /**
+     * Method to verify a single element of a Phenopacket with its audit path. Only the path is
+     * hashed and the signature of the Merkle root is checked, the rest of the Phenopacket is not needed
+     * @param phenopacketId required - the Phenopacket ID
+     * @param elementName required - name of the element in the Merkle tree
+     * @param elementHash required - Keccak hash of the element
+     * @param proof required - audit path of the element
+     * @return boolean value. If the element belongs to the signed tree then returns true, otherwise false
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static Boolean verifyElementWithDS(String phenopacketId, String elementName, byte[] elementHash, MerkleProof proof) throws URISyntaxException, IOException, GeneralSecurityException{
+        // Input validation
+        if ( phenopacketId == null || phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+        if (proof == null){
+            throw new NullPointerException();
+        }
+
+        // Root of the tree the element claims to belong to
+        byte[] root = proof.computeRoot(elementName, elementHash);
+        byte[] signatureBytes = ExternalResources.getSignatureStore().get(phenopacketId+MERKLE_SUFFIX);
+        if (root == null || signatureBytes == null) {
+            return false;
+        }
+        return verifyElement(tag(MERKLE_ROOT_TAG, root), signatureBytes);
+    }
+
+    /**
+     * Method to verify a batch of elements in parallel with the common fork-join pool
+     * @param elements required - the element bytes of each Phenopacket ID
+     * @return the verification status of each Phenopacket ID, in the same order
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static Map<String, VerificationStatus> verifyBatch(Map<String, byte[]> elements) throws URISyntaxException, IOException, GeneralSecurityException{
+        return verifyBatch(elements, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Method to verify a batch of elements in parallel. The signatures file is read only
+     * once for the whole batch
+     * @param elements required - the element bytes of each Phenopacket ID
+     * @param executor required - executor that runs the verifications
+     * @return the verification status of each Phenopacket ID, in the same order
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static Map<String, VerificationStatus> verifyBatch(Map<String, byte[]> elements, ExecutorService executor) throws URISyntaxException, IOException, GeneralSecurityException{
+        // Input validation
+        if (elements == null){
+            throw new NullPointerException();
+        }
+
+        // Load the signatures of the batch at once
+        Map<String, byte[]> signatures = readSignatures(elements.keySet(), false);
+        String[] ids = elements.keySet().toArray(new String[0]);
+        byte[][] payloads = new byte[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            payloads[i] = elements.get(ids[i]);
+        }
+        return verifyAll(ids, payloads, signatures, executor);
+    }
+
+    /**
+     * Method to verify a batch of stored Phenopackets by their ID in parallel with the common fork-join pool
+     * @param phenopacketIds required - the Phenopacket IDs
+     * @return the verification status of each Phenopacket ID, in the same order
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static Map<String, VerificationStatus> verifyStoredBatch(Collection<String> phenopacketIds) throws URISyntaxException, IOException, GeneralSecurityException{
+        return verifyStoredBatch(phenopacketIds, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Method to verify a batch of stored Phenopackets by their ID in parallel. The Phenopacket
+     * bytes and the signatures are read from the signatures file only once for the whole batch
+     * @param phenopacketIds required - the Phenopacket IDs
+     * @param executor required - executor that runs the verifications
+     * @return the verification status of each Phenopacket ID, in the same order
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public static Map<String, VerificationStatus> verifyStoredBatch(Collection<String> phenopacketIds, ExecutorService executor) throws URISyntaxException, IOException, GeneralSecurityException{
+        // Input validation
+        if (phenopacketIds == null){
+            throw new NullPointerException();
+        }
+
+        // Load the Phenopackets and their signatures at once
+        Map<String, byte[]> stored = readSignatures(phenopacketIds, true);
+        String[] ids = new LinkedHashSet<>(phenopacketIds).toArray(new String[0]);
+        byte[][] payloads = new byte[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            payloads[i] = stored.get(ids[i]);
+        }
+        return verifyAll(ids, payloads, stored, executor);
+    }
+
+    /**
+     * Private method to verify every element of a batch in parallel
+     * @param ids required - the Phenopacket IDs
+     * @param payloads required - the element bytes in the same order as the IDs
+     * @param signatures required - the loaded signatures
+     * @param executor required - executor that runs the verifications
+     * @return the verification status of each Phenopacket ID
+     * @throws IOException
+     */
+    private static Map<String, VerificationStatus> verifyAll(String[] ids, byte[][] payloads, Map<String, byte[]> signatures, ExecutorService executor) throws IOException{
+        VerificationStatus[] results = new VerificationStatus[ids.length];
+        // Batch roots already verified, each batch signature is checked only once
+        Map<String, byte[]> verifiedRoots = new ConcurrentHashMap<>();
+
+        BatchRunner.forEach(ids.length, executor, i -> {
+            byte[] signature = signatures.get(ids[i] + SIGNATURE_SUFFIX);
+            byte[] batchProof = signatures.get(ids[i] + BATCH_PROOF_SUFFIX);
+            byte[] digestSignature = signatures.get(ids[i] + DIGEST_SUFFIX);
+            if ((signature == null && batchProof == null && digestSignature == null) || payloads[i] == null || payloads[i].length == 0) {
+                results[i] = VerificationStatus.MISSING_SIGNATURE;
+                return;
+            }
+            try {
+                boolean isVerified = signature != null && verifyElementSignature(ids[i], payloads[i], signature);
+                if (!isVerified && batchProof != null) {
+                    isVerified = verifyBatchProof(ids[i], payloads[i], batchProof, signatures, verifiedRoots);
+                }
+                if (!isVerified && digestSignature != null) {
+                    isVerified = verifyCached(ids[i] + DIGEST_SUFFIX, tag(DIGEST_TAG, KeccakEngine.hash(payloads[i])), digestSignature);
+                }
+                results[i] = isVerified ? VerificationStatus.VERIFIED : VerificationStatus.BAD_SIGNATURE;
+            } catch (GeneralSecurityException | IOException | URISyntaxException ex) {
+                // The error only affects this Phenopacket, the rest of the batch is still verified
+                LOGGER.log(Level.WARNING, "Cannot verify " + ids[i], ex);
+                results[i] = VerificationStatus.ERROR;
+            }
+        });
+
+        Map<String, VerificationStatus> statuses = new LinkedHashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            statuses.put(ids[i], results[i]);
+        }
+        return statuses;
+    }
+
+    /**
+     * Private method to verify an element signed in a batch with its inclusion proof
+     * @param phenopacketId required - the Phenopacket ID
+     * @param elementBytes required - the element bytes
+     * @param batchProof required - the stored batch ID and inclusion proof
+     * @param signatures required - the loaded signatures, including the batch signature
+     * @param verifiedRoots required - batch roots already verified
+     * @return true if the element belongs to the signed batch, false if it does not or the proof is malformed
+     * @throws GeneralSecurityException
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    private static boolean verifyBatchProof(String phenopacketId, byte[] elementBytes, byte[] batchProof, Map<String, byte[]> signatures, Map<String, byte[]> verifiedRoots) throws GeneralSecurityException, IOException, URISyntaxException{
+        // The stored proof is not trusted: a truncated or corrupted one is not verified
+        if (batchProof.length < 4) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(batchProof);
+        int batchIdLength = buffer.getInt();
+        if (batchIdLength < 0 || batchIdLength > buffer.remaining()) {
+            return false;
+        }
+        byte[] batchIdBytes = new byte[batchIdLength];
+        buffer.get(batchIdBytes);
+        String batchId = new String(batchIdBytes, StandardCharsets.UTF_8);
+        byte[] proofBytes = new byte[buffer.remaining()];
+        buffer.get(proofBytes);
+
+        MerkleProof proof;
+        try {
+            proof = MerkleProof.parse(proofBytes);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+        byte[] root = proof.computeRoot(phenopacketId, KeccakEngine.hash(elementBytes));
+        if (root == null) {
+            return false;
+        }
+        byte[] verifiedRoot = verifiedRoots.get(batchId);
+        if (verifiedRoot != null) {
+            return MessageDigest.isEqual(verifiedRoot, root);
+        }
+
+        byte[] signature = signatures.get(batchId + SIGNATURE_SUFFIX);
+        if (signature == null) {
+            signature = ExternalResources.getSignatureStore().get(batchId + SIGNATURE_SUFFIX);
+        }
+        if (signature == null || !verifyElement(tag(BATCH_ROOT_TAG, root), signature)) {
+            return false;
+        }
+        verifiedRoots.put(batchId, root);
+        return true;
+    }
+
+    /**
+     * Private method to prefix the signed bytes with the tag of their signing mode
+     * @param tag required - the tag of the mode
+     * @param value required - the element, the Merkle root or the digest
+     * @return the bytes to sign or verify
+     */
+    private static byte[] tag(byte[] tag, byte[] value){
+        byte[] tagged = Arrays.copyOf(tag, tag.length + value.length);
+        System.arraycopy(value, 0, tagged, tag.length, value.length);
+        return tagged;
+    }
+
+    /**
+     * Private method to serialize the batch ID and the inclusion proof of an element
+     * @param batchId required - the ID of the batch
+     * @param proof required - the inclusion proof
+     * @return the bytes to store
+     */
+    private static byte[] encodeBatchProof(String batchId, MerkleProof proof){
+        byte[] batchIdBytes = batchId.getBytes(StandardCharsets.UTF_8);
+        byte[] proofBytes = proof.toByteArray();
+        return ByteBuffer.allocate(4 + batchIdBytes.length + proofBytes.length)
+            .putInt(batchIdBytes.length).put(batchIdBytes).put(proofBytes).array();
+    }
+
+    /**
+     * Private method to read from the signature store the entries of a set of Phenopackets
+     * @param phenopacketIds required - the Phenopacket IDs
+     * @param includePhenopackets required - if the stored Phenopacket bytes are also read
+     * @return the entries by their key
+     * @throws URISyntaxException
+     * @throws IOException
+     */
+    private static Map<String, byte[]> readSignatures(Collection<String> phenopacketIds, boolean includePhenopackets) throws URISyntaxException, IOException{
+        EntryStore store = ExternalResources.getSignatureStore();
+        Map<String, byte[]> entries = new HashMap<>();
+
+        // Each lookup only reads the record of its key
+        for (String phenopacketId : phenopacketIds) {
+            byte[] signature = store.get(phenopacketId + SIGNATURE_SUFFIX);
+            if (signature != null) {
+                entries.put(phenopacketId + SIGNATURE_SUFFIX, signature);
+            }
+            byte[] batchProof = store.get(phenopacketId + BATCH_PROOF_SUFFIX);
+            if (batchProof != null) {
+                entries.put(phenopacketId + BATCH_PROOF_SUFFIX, batchProof);
+            }
+            byte[] digestSignature = store.get(phenopacketId + DIGEST_SUFFIX);
+            if (digestSignature != null) {
+                entries.put(phenopacketId + DIGEST_SUFFIX, digestSignature);
+            }
+            if (includePhenopackets) {
+                byte[] phenopacketBytes = store.get(phenopacketId);
+                if (phenopacketBytes != null) {
+                    entries.put(phenopacketId, phenopacketBytes);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Method to search a signature in the signature store and check if is correct
      * @param elementBytes required - the element bytes to verify the signature
      * @param phenopacketId required - the Phenopacket ID
      * @return boolean value. If the signatures was verified then returns true, otherwise false 
@@ -167,33 +619,24 @@ public class DigitalSignature {
         // Set variable
         Boolean isVerified = false;
 
-        // Set the Digital Signature configuration 
-        SignatureConfig.register();
+        // Get the signature bytes from the store
+        EntryStore store = ExternalResources.getSignatureStore();
+        byte[] signatureBytes = store.get(phenopacketId+SIGNATURE_SUFFIX);
+        if (signatureBytes != null) {
+            // Proceeds to verify
+            isVerified = verifyElementSignature(phenopacketId, elementBytes, signatureBytes);
+        }
 
-        // Get the file with the signature
-        File signaturesFile = externalResource.getFileFromResource(SIGNATURES_FILE);
+        // Elements signed in a batch are verified with their inclusion proof
+        byte[] batchProof = store.get(phenopacketId+BATCH_PROOF_SUFFIX);
+        if (!isVerified && batchProof != null) {
+            isVerified = verifyBatchProof(phenopacketId, elementBytes, batchProof, Collections.emptyMap(), new HashMap<>());
+        }
 
-        try (FileReader reader = new FileReader(signaturesFile)){
-            JsonReader js =  new JsonReader(reader);
-            js.beginObject();
-            // Search for a specific item by its ID 
-            while (js.hasNext()) {
-                String field = js.nextName();
-                
-                if (field.equals(phenopacketId+"-Signature")) {
-                    String ptSignature = js.nextString();
-                    // Get the signature Bytes from the file
-                    byte[] signatureBytes = Base64.getDecoder().decode(ptSignature);
-                    // Proceeds to verify
-                    isVerified = verifyElement(elementBytes, signatureBytes);
-                }else {
-                    js.skipValue();
-                }
-            }
-            js.endObject();
-            js.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+        // Elements signed by their digest
+        byte[] digestSignature = store.get(phenopacketId+DIGEST_SUFFIX);
+        if (!isVerified && digestSignature != null) {
+            isVerified = verifyCached(phenopacketId+DIGEST_SUFFIX, tag(DIGEST_TAG, KeccakEngine.hash(elementBytes)), digestSignature);
         }
         return isVerified;
     }
@@ -0,0 +1,46 @@
+package phenopackets.securityMechanisms;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * Values stored by key, a new value replaces the previous one of the same key
+ */
+public interface EntryStore extends Closeable {
+
+    /**
+     * Method to store a value
+     * @param key required - key of the value
+     * @param value required - bytes to store
+     * @throws IOException
+     */
+    void put(String key, byte[] value) throws IOException;
+
+    /**
+     * Method to get the value of a key
+     * @param key required - key of the value
+     * @return the stored bytes, null if the key is not stored
+     * @throws IOException
+     */
+    byte[] get(String key) throws IOException;
+
+    /**
+     * Method to check if a key is stored
+     * @param key required - key of the value
+     * @return true if the key is stored
+     * @throws IOException
+     */
+    boolean contains(String key) throws IOException;
+
+    /**
+     * @return number of stored keys
+     */
+    int size();
+
+    /**
+     * Method to write the pending changes
+     * @throws IOException
+     */
+    void flush() throws IOException;
+}
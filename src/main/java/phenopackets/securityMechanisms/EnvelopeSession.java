@@ -0,0 +1,142 @@
+package phenopackets.securityMechanisms;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.BinaryKeysetReader;
+import com.google.crypto.tink.BinaryKeysetWriter;
+import com.google.crypto.tink.CleartextKeysetHandle;
+import com.google.crypto.tink.HybridDecrypt;
+import com.google.crypto.tink.HybridEncrypt;
+import com.google.crypto.tink.KeyTemplates;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.aead.AeadConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+
+public class EnvelopeSession {
+
+    private static final String DEK_ALGORITHM = "AES128_GCM";
+
+    static {
+        // Initialize the AEAD configuration once
+        try {
+            AeadConfig.register();
+        } catch (GeneralSecurityException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final byte[] context;
+    private final byte[] wrappedKey;
+    private final Aead aead;
+
+    private EnvelopeSession(byte[] context, byte[] wrappedKey, Aead aead) {
+        this.context = context;
+        this.wrappedKey = wrappedKey;
+        this.aead = aead;
+    }
+
+    /**
+     * Method to start a new session: a data encryption key is generated and wrapped
+     * once with the hybrid public key
+     * @param context required - the Phenopacket ID
+     * @param encryptor required - hybrid primitive used to wrap the key
+     * @return the new session
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    static EnvelopeSession create(byte[] context, HybridEncrypt encryptor) throws GeneralSecurityException, IOException{
+        // Input validation
+        if (context == null || context.length == 0){
+            throw new NullPointerException();
+        }
+        if (encryptor == null){
+            throw new NullPointerException();
+        }
+
+        // Generate the data encryption key
+        KeysetHandle dataKey = KeysetHandle.generateNew(KeyTemplates.get(DEK_ALGORITHM));
+
+        // Serialize the key and wrap it with the only hybrid operation of the session
+        ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+        CleartextKeysetHandle.write(dataKey, BinaryKeysetWriter.withOutputStream(keyBytes));
+        byte[] wrappedKey = encryptor.encrypt(keyBytes.toByteArray(), context);
+
+        return new EnvelopeSession(context.clone(), wrappedKey, dataKey.getPrimitive(Aead.class));
+    }
+
+    /**
+     * Method to open an existing session: the data encryption key is unwrapped once
+     * with the hybrid private key and kept for every field of the Phenopacket
+     * @param wrappedKey required - the wrapped data encryption key
+     * @param context required - the Phenopacket ID
+     * @param decryptor required - hybrid primitive used to unwrap the key
+     * @return the opened session
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    static EnvelopeSession open(byte[] wrappedKey, byte[] context, HybridDecrypt decryptor) throws GeneralSecurityException, IOException{
+        // Input validation
+        if (wrappedKey == null || wrappedKey.length == 0){
+            throw new NullPointerException();
+        }
+        if (context == null || context.length == 0){
+            throw new NullPointerException();
+        }
+        if (decryptor == null){
+            throw new NullPointerException();
+        }
+
+        // Unwrap and read the data encryption key
+        byte[] keyBytes = decryptor.decrypt(wrappedKey, context);
+        KeysetHandle dataKey = CleartextKeysetHandle.read(BinaryKeysetReader.withBytes(keyBytes));
+
+        return new EnvelopeSession(context.clone(), wrappedKey.clone(), dataKey.getPrimitive(Aead.class));
+    }
+
+    /**
+     * Method to encrypt a field of the Phenopacket, the Phenopacket ID is bound as associated data
+     * @param element required - the element or field to encrypt
+     * @return the encrypted data
+     * @throws GeneralSecurityException
+     */
+    public byte[] encrypt(byte[] element) throws GeneralSecurityException{
+        // Input validation
+        if (element == null || element.length == 0){
+            throw new NullPointerException();
+        }
+        return aead.encrypt(element, context);
+    }
+
+    /**
+     * Method to decrypt a field of the Phenopacket
+     * @param cipher required - the element or field to decrypt
+     * @return the plaintext
+     * @throws GeneralSecurityException
+     */
+    public byte[] decrypt(byte[] cipher) throws GeneralSecurityException{
+        // Input validation
+        if (cipher == null || cipher.length == 0){
+            throw new NullPointerException();
+        }
+        return aead.decrypt(cipher, context);
+    }
+
+    /**
+     * Method to get the wrapped data encryption key that has to be stored with the Phenopacket
+     * @return the wrapped key bytes
+     */
+    public byte[] getWrappedKey() {
+        return wrappedKey.clone();
+    }
+
+    /**
+     * Method to get the context bound to the session
+     * @return the Phenopacket ID bytes
+     */
+    public byte[] getContext() {
+        return context.clone();
+    }
+}
@@ -1,8 +1,13 @@
 package phenopackets.securityMechanisms;
 
 import java.io.*;
+import java.lang.System.Logger.Level;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
 
 import com.google.crypto.tink.subtle.Hex;
 
@@ -13,42 +18,106 @@ import com.nimbusds.jose.shaded.json.parser.ParseException;
 
 public class ExternalResources {
 
-    private static final String DEFAULT_PATH = "readME.txt";
+    private static final System.Logger LOGGER = System.getLogger(ExternalResources.class.getName());
+
+    private static final String DEFAULT_PATH = "readMe.txt";
+    private static final String STORAGE_PROPERTY = "phenopackets.storage";
     private static final String FORMAT_TXT = ".txt";
+    private static final String STORE_FOLDER = "store";
+    private static final String SIGNATURES_STORE = "signatures";
+    private static final String SIGNATURES_FILE = "signatures.json";
+    private static final String KEY_SEPARATOR = "/";
+    private static final Object STORE_LOCK = new Object();
 
-    JSONObject js = new JSONObject();
+    private static volatile StorageBackend backend;
+    private static EntryStore signatures;
+    private static StorageBackend signaturesBackend;
 
     /**
-     * Method to get file from resources folder. In case the file doesn't exist, the method creates a new one
+     * Method to get file from the storage folder. In case the file doesn't exist, the method creates a new one.
+     * Only a FileStorageBackend has files, with other backends the content is read and written with the
+     * methods of getStorageBackend()
      * @param fileName required - name of the file
      * @return the required file
      * @throws URISyntaxException
+     * @throws UnsupportedOperationException if the storage backend does not use files
      */
     public File getFileFromResource(String fileName) throws URISyntaxException{
-
-        URL resource = getClass().getClassLoader().getResource(fileName);
-        if (resource == null) {
-            System.out.println("File not found, new one will be created");
-            return createNewFile(fileName);
-        } else {
-            // failed if files have whitespaces or special characters
-            return new File(resource.toURI());
-        }
+        return getFileBackend("getFileFromResource").resolve(fileName).toFile();
     }
 
     /**
-     * Method to create a new file
+     * Method to create a new file in the storage folder. Only a FileStorageBackend has a storage folder
      * @param fileName required - name of the file
      * @return the new File
      * @throws URISyntaxException
+     * @throws UnsupportedOperationException if the storage backend does not use files
      */
     public File createNewFile(String fileName) throws URISyntaxException{
+        return getFileBackend("createNewFile").getRoot().resolve(fileName).toFile();
+    }
 
-        URL resource = getClass().getClassLoader().getResource(DEFAULT_PATH);
-        String path = resource.toString().replace(DEFAULT_PATH, fileName).replace("file:", "");
-        File newFile = new File(path);
+    /**
+     * Method to get the backend where every file is stored. By default the files are stored in
+     * the folder given by the phenopackets.storage property or, if it is not set, next to the resources
+     * @return the storage backend
+     */
+    public static StorageBackend getStorageBackend(){
+        StorageBackend current = backend;
+        if (current != null) {
+            return current;
+        }
+        synchronized (STORE_LOCK) {
+            if (backend == null) {
+                try {
+                    backend = new FileStorageBackend(getDefaultRoot());
+                } catch (IOException | URISyntaxException e) {
+                    throw new IllegalStateException("Storage folder not available", e);
+                }
+            }
+            return backend;
+        }
+    }
 
-        return newFile;
+    /**
+     * Method to change the backend where every file is stored, for example a folder in a fast disk
+     * or a MemoryStorageBackend for tests and benchmarks
+     * @param storageBackend required - the new storage backend
+     */
+    public static void setStorageBackend(StorageBackend storageBackend){
+        // Input validation
+        if (storageBackend == null){
+            throw new NullPointerException();
+        }
+        synchronized (STORE_LOCK) {
+            backend = storageBackend;
+            signatures = null;
+        }
+        // Keysets read from the previous backend
+        KeysetRegistry.clear();
+    }
+
+    /**
+     * Method to get the store of the Phenopackets and their signatures. The first time the store is
+     * opened, the signatures of the previous JSON file are imported
+     * @return the signature store
+     * @throws IOException
+     */
+    public static EntryStore getSignatureStore() throws IOException{
+        StorageBackend storage = getStorageBackend();
+        synchronized (STORE_LOCK) {
+            if (signatures == null || signaturesBackend != storage) {
+                EntryStore store = storage.openIndexedStore(SIGNATURES_STORE);
+                // Import the signatures stored with the previous format
+                byte[] json = storage.read(SIGNATURES_FILE);
+                if (store.size() == 0 && json != null && json.length > 0) {
+                    importJson(store, new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8));
+                }
+                signatures = store;
+                signaturesBackend = storage;
+            }
+            return signatures;
+        }
     }
 
     /**
@@ -61,21 +130,17 @@ public class ExternalResources {
      */
     public void addHashToFile(String fileName, byte[] hash, String element) throws IOException, URISyntaxException{
         try{
-            File hashFile = getFileFromResource(fileName+FORMAT_TXT);
-
-            BufferedWriter fileWriter = new BufferedWriter(new FileWriter(hashFile,true));
-            
-            fileWriter.write(element+":"+Hex.encode(hash));
-            fileWriter.newLine();
-            fileWriter.close();
+            String line = element+":"+Hex.encode(hash)+System.lineSeparator();
+            getStorageBackend().append(fileName+FORMAT_TXT, line.getBytes(StandardCharsets.UTF_8));
 
         }catch (IOException ex){
-            ex.printStackTrace();
+            LOGGER.log(Level.ERROR, "Error adding the hash to " + fileName, ex);
         }
       }
 
     /**
-     * Method to create JSON file and adds a JSON object
+     * Method to add a JSON entry to the store. The entry is appended to the segment log
+     * instead of rewriting the whole JSON file
      * @param fileName required - name of the file
      * @param bytes required - bytes element
      * @param element required - name of the element
@@ -87,28 +152,53 @@ public class ExternalResources {
          if (bytes == null ||  bytes.length() == 0){
             throw new NullPointerException();
         }
+        ProtectionEvents.JsonStore event = new ProtectionEvents.JsonStore();
+        event.begin();
         try {
-            File jsonFile = createNewFile(fileName);
-
-            // Get the stored JSON Obj
-            if (jsonFile.length()==0) {
-                BufferedWriter fileWriter = new BufferedWriter(new FileWriter(jsonFile));
-                js.appendField(element, bytes);
-                fileWriter.write(js.toJSONString());
-                fileWriter.close();
-            }else{
-                JSONObject js = getJSONFromFile(jsonFile);
-                BufferedWriter fileWriter = new BufferedWriter(new FileWriter(jsonFile));
-                js.appendField(element, bytes);
-                fileWriter.write(js.toJSONString());
-                fileWriter.close();
-            }
-
+            byte[] value = bytes.getBytes(StandardCharsets.UTF_8);
+            getStorageBackend().openLogStore(STORE_FOLDER).put(fileName + KEY_SEPARATOR + element, value);
+            event.fileName = fileName;
+            event.element = element;
+            event.size = value.length;
+            event.commit();
         } catch (IOException e) {
-            e.printStackTrace();
+            LOGGER.log(Level.ERROR, "Error storing " + element + " of " + fileName, e);
         }
       }
-      
+
+    /**
+     * Method to get a JSON entry from the store. Files written before the store existed are
+     * still read from the JSON file
+     * @param fileName required - name of the file
+     * @param element required - name of the element
+     * @return the entry value, null if it does not exist
+     * @throws URISyntaxException
+     * @throws IOException
+     * @throws ParseException
+     */
+    public String getJSONEntry(String fileName, String element) throws URISyntaxException, IOException, ParseException{
+        // Input validation
+        if (fileName == null || fileName.length() == 0){
+            throw new NullPointerException();
+        }
+        if (element == null || element.length() == 0){
+            throw new NullPointerException();
+        }
+
+        StorageBackend storage = getStorageBackend();
+        byte[] value = storage.openLogStore(STORE_FOLDER).get(fileName + KEY_SEPARATOR + element);
+        if (value != null) {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+
+        // Previous format, one JSON file rewritten for each entry
+        byte[] json = storage.read(fileName);
+        if (json == null || json.length == 0) {
+            return null;
+        }
+        return readJSON(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8)).getAsString(element);
+    }
+
     /**
      * Method to get JSON object from file
      * @param jsonFile required - JSON File
@@ -120,18 +210,92 @@ public class ExternalResources {
         JSONObject js = new JSONObject();
 
         try(FileReader reader = new FileReader(jsonFile)){
-            JsonReader jsReader =  new JsonReader(reader);
-            jsReader.beginObject();
-            // Save fields and keys
-            while (jsReader.hasNext()) {
-                js.appendField(jsReader.nextName(), jsReader.nextString());
-            }
-            jsReader.endObject();
-            jsReader.close();
+            js = readJSON(reader);
 
         }catch (FileNotFoundException e) {
-            e.printStackTrace();
+            LOGGER.log(Level.ERROR, "JSON file not found", e);
         }
         return js;
       }
-}
\ No newline at end of file
+
+    /**
+     * Method to import the entries of a JSON file with Base64 values, such as signatures.json
+     * @param store required - store where the entries are added
+     * @param reader required - reader of the JSON file
+     * @throws IOException
+     */
+    static void importJson(EntryStore store, Reader reader) throws IOException{
+        JsonReader js =  new JsonReader(reader);
+        js.beginObject();
+        while (js.hasNext()) {
+            String field = js.nextName();
+            store.put(field, Base64.getDecoder().decode(js.nextString()));
+        }
+        js.endObject();
+        js.close();
+    }
+
+    /**
+     * Method to read a resource of the classpath
+     * @param fileName required - name of the file
+     * @return the content, null if the resource does not exist
+     * @throws IOException
+     */
+    static byte[] readResource(String fileName) throws IOException{
+        try (InputStream resource = ExternalResources.class.getClassLoader().getResourceAsStream(fileName)) {
+            return (resource != null) ? resource.readAllBytes() : null;
+        }
+    }
+
+    /**
+     * Private method to read the fields of a JSON object
+     * @param reader required - reader of the JSON object
+     * @return JSON object
+     * @throws IOException
+     */
+    private static JSONObject readJSON(Reader reader) throws IOException{
+        JSONObject js = new JSONObject();
+
+        JsonReader jsReader =  new JsonReader(reader);
+        jsReader.beginObject();
+        // Save fields and keys
+        while (jsReader.hasNext()) {
+            js.appendField(jsReader.nextName(), jsReader.nextString());
+        }
+        jsReader.endObject();
+        jsReader.close();
+        return js;
+    }
+
+    /**
+     * Private method to get the backend when it stores real files
+     * @param method required - name of the public method, for the error message
+     * @return the file storage backend
+     */
+    private static FileStorageBackend getFileBackend(String method){
+        StorageBackend storage = getStorageBackend();
+        if (!(storage instanceof FileStorageBackend)) {
+            throw new UnsupportedOperationException(method + " needs a FileStorageBackend, the storage backend is a "
+                + storage.getClass().getSimpleName() + ". Use getStorageBackend().read and write instead");
+        }
+        return (FileStorageBackend) storage;
+    }
+
+    /**
+     * Private method to get the default storage folder
+     * @return the folder of the files
+     * @throws URISyntaxException
+     */
+    private static Path getDefaultRoot() throws URISyntaxException{
+        String root = System.getProperty(STORAGE_PROPERTY);
+        if (root != null && root.length() > 0) {
+            return Paths.get(root);
+        }
+        // Same folder as the resources
+        URL resource = ExternalResources.class.getClassLoader().getResource(DEFAULT_PATH);
+        if (resource != null && "file".equals(resource.getProtocol())) {
+            return Paths.get(resource.toURI()).getParent();
+        }
+        return Paths.get(System.getProperty("user.dir"));
+    }
+}
@@ -0,0 +1,257 @@
+package phenopackets.securityMechanisms;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Storage backend that keeps every file inside a root directory. Files that are not in the
+ * root yet, such as the signing keys, are read from the classpath
+ */
+public class FileStorageBackend implements StorageBackend {
+
+    private static final System.Logger LOGGER = System.getLogger(FileStorageBackend.class.getName());
+
+    private static final String TEMP_FORMAT = ".tmp";
+    private static final String DATA_FORMAT = ".dat";
+    private static final String INDEX_FORMAT = ".idx";
+    private static final int MISSING_RESOURCES = 1024;
+
+    private final Path root;
+    // Files found in the classpath, their number is bounded by the classpath
+    private final ConcurrentHashMap<String, Path> resources = new ConcurrentHashMap<>();
+    // Names recently not found in the classpath, bounded so the names of every Phenopacket are not kept
+    private final Map<String, Boolean> missingResources = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MISSING_RESOURCES;
+        }
+    });
+    private final ConcurrentHashMap<String, EntryStore> stores = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HashIndex> hashIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * Create a backend rooted at a directory, the directory is created if it does not exist
+     * @param root required - directory of the files
+     * @throws IOException
+     */
+    public FileStorageBackend(Path root) throws IOException {
+        // Input validation
+        if (root == null){
+            throw new NullPointerException();
+        }
+        this.root = root.toAbsolutePath().normalize();
+        Files.createDirectories(this.root);
+    }
+
+    /**
+     * @return directory of the files
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Method to get the path of a file: the root when the file is there, the classpath resource
+     * otherwise. A file that is in neither place is resolved in the root
+     * @param name required - name of the file
+     * @return the path of the file
+     */
+    public Path resolve(String name){
+        Path path = writablePath(name);
+        if (Files.exists(path)) {
+            return path;
+        }
+        Path resource = resources.get(name);
+        if (resource != null) {
+            return resource;
+        }
+        if (missingResources.containsKey(name)) {
+            return path;
+        }
+        resource = locateResource(name);
+        if (resource == null) {
+            missingResources.put(name, Boolean.TRUE);
+            return path;
+        }
+        resources.put(name, resource);
+        return resource;
+    }
+
+    @Override
+    public byte[] read(String name) throws IOException{
+        long start = Metrics.start();
+        byte[] content;
+        try {
+            try {
+                content = Files.readAllBytes(resolve(name));
+            } catch (NoSuchFileException e) {
+                // Resources packaged in a jar
+                content = ExternalResources.readResource(name);
+            }
+        } catch (IOException | RuntimeException ex) {
+            Metrics.error(Metrics.Operation.STORE_READ, start);
+            throw ex;
+        }
+        Metrics.record(Metrics.Operation.STORE_READ, start, (content == null) ? 0 : content.length);
+        return content;
+    }
+
+    @Override
+    public void write(String name, byte[] content) throws IOException{
+        // Input validation
+        if (content == null){
+            throw new NullPointerException();
+        }
+        Path path = writablePath(name);
+
+        // The new content replaces the old one at once
+        long start = Metrics.start();
+        try {
+            Path tempPath = path.resolveSibling(path.getFileName() + TEMP_FORMAT);
+            Files.write(tempPath, content);
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            Metrics.error(Metrics.Operation.STORE_WRITE, start);
+            throw ex;
+        }
+        Metrics.record(Metrics.Operation.STORE_WRITE, start, content.length);
+    }
+
+    @Override
+    public void append(String name, byte[] content) throws IOException{
+        // Input validation
+        if (content == null){
+            throw new NullPointerException();
+        }
+        long start = Metrics.start();
+        try {
+            Files.write(writablePath(name), content, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException | RuntimeException ex) {
+            Metrics.error(Metrics.Operation.STORE_WRITE, start);
+            throw ex;
+        }
+        Metrics.record(Metrics.Operation.STORE_WRITE, start, content.length);
+    }
+
+    @Override
+    public boolean exists(String name){
+        File file = resolve(name).toFile();
+        return file.length() > 0;
+    }
+
+    @Override
+    public long getVersion(String name) throws IOException{
+        File file = resolve(name).toFile();
+        if (!file.exists()) {
+            return -1;
+        }
+        // A change of the modification time or of the size
+        return file.lastModified() * 31 + file.length();
+    }
+
+    @Override
+    public EntryStore openLogStore(String name) throws IOException{
+        EntryStore store = stores.get(name);
+        if (store != null) {
+            return store;
+        }
+        synchronized (stores) {
+            store = stores.get(name);
+            if (store == null) {
+                store = new SegmentLog(writablePath(name).toFile());
+                stores.put(name, store);
+            }
+            return store;
+        }
+    }
+
+    @Override
+    public EntryStore openIndexedStore(String name) throws IOException{
+        EntryStore store = stores.get(name);
+        if (store != null) {
+            return store;
+        }
+        synchronized (stores) {
+            store = stores.get(name);
+            if (store == null) {
+                store = new SignatureStore(writablePath(name + DATA_FORMAT).toFile(), writablePath(name + INDEX_FORMAT).toFile());
+                stores.put(name, store);
+            }
+            return store;
+        }
+    }
+
+    @Override
+    public HashIndex openHashIndex(String name) throws IOException{
+        HashIndex hashIndex = hashIndexes.get(name);
+        if (hashIndex != null) {
+            return hashIndex;
+        }
+        synchronized (stores) {
+            hashIndex = hashIndexes.get(name);
+            if (hashIndex == null) {
+                hashIndex = new HashIndex(writablePath(name + INDEX_FORMAT).toFile());
+                hashIndexes.put(name, hashIndex);
+            }
+            return hashIndex;
+        }
+    }
+
+    @Override
+    public void close() throws IOException{
+        synchronized (stores) {
+            for (EntryStore store : stores.values()) {
+                store.close();
+            }
+            stores.clear();
+            for (HashIndex hashIndex : hashIndexes.values()) {
+                hashIndex.close();
+            }
+            hashIndexes.clear();
+        }
+    }
+
+    /**
+     * Private method to get the path of a file inside the root, once written the file is read from this path
+     * @param name required - name of the file
+     * @return the path inside the root
+     */
+    private Path writablePath(String name){
+        // Input validation
+        if (name == null || name.length() == 0){
+            throw new NullPointerException();
+        }
+        return root.resolve(name);
+    }
+
+    /**
+     * Private method to find a file in the classpath
+     * @param name required - name of the file
+     * @return the path of the file, null if it is not a file of the classpath
+     */
+    private Path locateResource(String name){
+        URL resource = getClass().getClassLoader().getResource(name);
+        if (resource != null && "file".equals(resource.getProtocol())) {
+            try {
+                return Paths.get(resource.toURI());
+            } catch (URISyntaxException e) {
+                LOGGER.log(Level.ERROR, "Invalid resource " + resource, e);
+            }
+        }
+        return null;
+    }
+}
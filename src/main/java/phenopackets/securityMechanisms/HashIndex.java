@@ -0,0 +1,455 @@
+package phenopackets.securityMechanisms;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * Index of the element hashes of every Phenopacket. Each slot keeps the fingerprint of the
+ * (Phenopacket ID, element) pair and the raw digest, so a lookup reads a single slot. The
+ * fingerprint is the start of the Keccak hash of the pair, so two pairs cannot be made to share
+ * a slot. The whole index is one mapping, so it holds at most 16M hashes (2^24) and a new hash past
+ * that limit is rejected with an IOException. A removed hash leaves a tombstone so the probing of
+ * the other keys is not broken, the tombstones are dropped when the index is rebuilt
+ */
+public class HashIndex implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(HashIndex.class.getName());
+
+    public static final int DIGEST_SIZE = 32;
+
+    private static final String TEMP_FORMAT = ".tmp";
+
+    // Index layout: header followed by open addressing slots
+    private static final int MAGIC = 0x50484932;
+    // Index of the first format, with FNV fingerprints that cannot be converted
+    private static final int MAGIC_V1 = 0x50484931;
+    private static final String V1_FORMAT = ".v1";
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 16 + DIGEST_SIZE;
+    private static final int INITIAL_CAPACITY = 1024;
+    // The index is a single mapping with int positions, so it stays under 2 GB
+    private static final int MAX_CAPACITY = 1 << 25;
+    private static final int MAGIC_POSITION = 0;
+    private static final int CAPACITY_POSITION = 4;
+    private static final int SIZE_POSITION = 8;
+    private static final int TOMBSTONES_POSITION = 12;
+
+    // First half of the fingerprint of an empty slot and of a removed one
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = 1;
+
+    private final Path indexPath;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ByteBuffer index;
+    private int capacity;
+    private int size;
+    private int tombstones;
+
+    /**
+     * Open an index stored in a file, the file is memory-mapped
+     * @param indexFile required - file of the index
+     * @throws IOException
+     */
+    public HashIndex(File indexFile) throws IOException {
+        // Input validation
+        if (indexFile == null){
+            throw new NullPointerException();
+        }
+        this.indexPath = indexFile.toPath();
+
+        if (Files.exists(indexPath) && Files.size(indexPath) >= HEADER_SIZE) {
+            index = map(indexPath, Files.size(indexPath));
+            capacity = index.getInt(CAPACITY_POSITION);
+            size = index.getInt(SIZE_POSITION);
+            tombstones = index.getInt(TOMBSTONES_POSITION);
+            long expectedSize = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+            int magic = index.getInt(MAGIC_POSITION);
+            if (magic == MAGIC && Integer.bitCount(capacity) == 1 && capacity <= MAX_CAPACITY && Files.size(indexPath) == expectedSize) {
+                return;
+            }
+            if (magic == MAGIC_V1) {
+                // The keys are not stored, the old file is kept aside and the hashes have to be stored again
+                Path oldPath = indexPath.resolveSibling(indexPath.getFileName() + V1_FORMAT);
+                LOGGER.log(Level.WARNING, "Hash index of the first format, it is moved to {0} and a new one will be created", oldPath);
+                Files.move(indexPath, oldPath, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                LOGGER.log(Level.WARNING, "Damaged hash index, a new one will be created");
+                Files.delete(indexPath);
+            }
+        }
+        index = createIndex(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Create an index kept in memory, with the same layout as the file
+     */
+    private HashIndex() {
+        this.indexPath = null;
+        try {
+            this.index = createIndex(INITIAL_CAPACITY);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Method to create an index that is not stored in a file, for tests and benchmarks
+     * @return the new index
+     */
+    public static HashIndex inMemory(){
+        return new HashIndex();
+    }
+
+    /**
+     * Method to store the hash of an element, a previous hash of the element is replaced
+     * @param phenopacketId required - Phenopacket ID
+     * @param element required - name of the element
+     * @param digest required - the 32 bytes of the hash
+     * @throws IOException
+     */
+    public void put(String phenopacketId, String element, byte[] digest) throws IOException{
+        checkDigest(digest);
+        long[] key = fingerprint(phenopacketId, element);
+
+        lock.writeLock().lock();
+        try {
+            insert(key[0], key[1], digest);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Method to store the hashes of several elements of a Phenopacket at once, the index is
+     * written to disk once for the whole group
+     * @param phenopacketId required - Phenopacket ID
+     * @param digests required - the hashes by element name
+     * @throws IOException
+     */
+    public void putAll(String phenopacketId, Map<String, byte[]> digests) throws IOException{
+        // Input validation
+        if (digests == null){
+            throw new NullPointerException();
+        }
+        long[][] keys = new long[digests.size()][];
+        byte[][] values = new byte[digests.size()][];
+        int i = 0;
+        for (Map.Entry<String, byte[]> entry : digests.entrySet()) {
+            checkDigest(entry.getValue());
+            keys[i] = fingerprint(phenopacketId, entry.getKey());
+            values[i] = entry.getValue();
+            i++;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (i = 0; i < keys.length; i++) {
+                insert(keys[i][0], keys[i][1], values[i]);
+            }
+            force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Method to get the hash of an element
+     * @param phenopacketId required - Phenopacket ID
+     * @param element required - name of the element
+     * @return the 32 bytes of the hash, null if it is not stored
+     */
+    public byte[] get(String phenopacketId, String element){
+        long[] key = fingerprint(phenopacketId, element);
+
+        lock.readLock().lock();
+        try {
+            int position = find(key[0], key[1]);
+            if (isEmpty(position)) {
+                return null;
+            }
+            byte[] digest = new byte[DIGEST_SIZE];
+            for (int i = 0; i < DIGEST_SIZE; i++) {
+                digest[i] = index.get(position + 16 + i);
+            }
+            return digest;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Method to remove the hash of an element, its slot is kept as a tombstone
+     * @param phenopacketId required - Phenopacket ID
+     * @param element required - name of the element
+     * @return true if the hash was stored, otherwise false
+     */
+    public boolean remove(String phenopacketId, String element){
+        long[] key = fingerprint(phenopacketId, element);
+
+        lock.writeLock().lock();
+        try {
+            int position = find(key[0], key[1]);
+            if (isEmpty(position)) {
+                return false;
+            }
+            writeSlot(index, position, TOMBSTONE, 0, new byte[DIGEST_SIZE]);
+            size--;
+            tombstones++;
+            index.putInt(SIZE_POSITION, size);
+            index.putInt(TOMBSTONES_POSITION, tombstones);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of stored hashes
+     */
+    public int size(){
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Method to write the pending changes of the index to disk
+     */
+    public void flush(){
+        lock.writeLock().lock();
+        try {
+            force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close(){
+        flush();
+    }
+
+    /**
+     * Private method to store a digest in the slot of its key
+     * @param high required - first half of the fingerprint
+     * @param low required - second half of the fingerprint
+     * @param digest required - the hash bytes
+     * @throws IOException
+     */
+    private void insert(long high, long low, byte[] digest) throws IOException{
+        int position = find(high, low);
+        if (!isEmpty(position)) {
+            writeSlot(index, position, high, low, digest);
+            return;
+        }
+
+        // Keep the load factor under one half, the tombstones also fill the probe sequences
+        if ((size + 1 + tombstones) * 2 > capacity) {
+            int newCapacity = ((size + 1) * 4 > capacity) ? capacity * 2 : capacity;
+            if (newCapacity > MAX_CAPACITY) {
+                throw new IOException("The hash index is full, it holds at most " + MAX_CAPACITY / 2 + " hashes");
+            }
+            resize(newCapacity);
+        }
+
+        // A new key takes the first tombstone of its probe sequence, if there is one
+        position = findFree(high);
+        if (isTombstone(position)) {
+            tombstones--;
+            index.putInt(TOMBSTONES_POSITION, tombstones);
+        }
+        writeSlot(index, position, high, low, digest);
+        size++;
+        index.putInt(SIZE_POSITION, size);
+    }
+
+    /**
+     * Private method to find the slot of a key or the empty slot where it has to be stored
+     * @param high required - first half of the fingerprint
+     * @param low required - second half of the fingerprint
+     * @return position of the slot
+     */
+    private int find(long high, long low){
+        int mask = capacity - 1;
+        for (int slot = firstSlot(high, mask); ; slot = (slot + 1) & mask) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            if (isEmpty(position) || (index.getLong(position) == high && index.getLong(position + 8) == low)) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Private method to find the first empty slot or tombstone of the probe sequence of a key
+     * @param high required - first half of the fingerprint
+     * @return position of the slot
+     */
+    private int findFree(long high){
+        int mask = capacity - 1;
+        for (int slot = firstSlot(high, mask); ; slot = (slot + 1) & mask) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            if (isEmpty(position) || isTombstone(position)) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Private method to move every slot to a bigger index, or to a new one of the same size
+     * without the tombstones. The new index is written to a
+     * temporary file that replaces the old one
+     * @param newCapacity required - number of slots, power of two
+     * @throws IOException
+     */
+    private void resize(int newCapacity) throws IOException{
+        ByteBuffer newIndex;
+        Path tempPath = null;
+        if (indexPath != null) {
+            tempPath = indexPath.resolveSibling(indexPath.getFileName() + TEMP_FORMAT);
+            Files.deleteIfExists(tempPath);
+            newIndex = map(tempPath, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        } else {
+            newIndex = ByteBuffer.allocate(HEADER_SIZE + newCapacity * SLOT_SIZE);
+        }
+        newIndex.putInt(MAGIC_POSITION, MAGIC);
+        newIndex.putInt(CAPACITY_POSITION, newCapacity);
+        newIndex.putInt(SIZE_POSITION, size);
+
+        // The keys are unique, each slot only needs a free position
+        int mask = newCapacity - 1;
+        byte[] digest = new byte[DIGEST_SIZE];
+        for (int i = 0; i < capacity; i++) {
+            int position = HEADER_SIZE + i * SLOT_SIZE;
+            if (isEmpty(position) || isTombstone(position)) {
+                continue;
+            }
+            long high = index.getLong(position);
+            long low = index.getLong(position + 8);
+            int slot = firstSlot(high, mask);
+            while (newIndex.getLong(HEADER_SIZE + slot * SLOT_SIZE) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            for (int j = 0; j < DIGEST_SIZE; j++) {
+                digest[j] = index.get(position + 16 + j);
+            }
+            writeSlot(newIndex, HEADER_SIZE + slot * SLOT_SIZE, high, low, digest);
+        }
+
+        if (tempPath != null) {
+            ((MappedByteBuffer) newIndex).force();
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        index = newIndex;
+        capacity = newCapacity;
+        tombstones = 0;
+    }
+
+    /**
+     * Private method to create an empty index
+     * @param newCapacity required - number of slots, power of two
+     * @return the index buffer
+     * @throws IOException
+     */
+    private ByteBuffer createIndex(int newCapacity) throws IOException{
+        ByteBuffer newIndex = (indexPath != null)
+            ? map(indexPath, HEADER_SIZE + (long) newCapacity * SLOT_SIZE)
+            : ByteBuffer.allocate(HEADER_SIZE + newCapacity * SLOT_SIZE);
+        newIndex.putInt(MAGIC_POSITION, MAGIC);
+        newIndex.putInt(CAPACITY_POSITION, newCapacity);
+        newIndex.putInt(SIZE_POSITION, 0);
+        capacity = newCapacity;
+        size = 0;
+        tombstones = 0;
+        return newIndex;
+    }
+
+    private void force(){
+        if (index instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) index).force();
+        }
+    }
+
+    private boolean isEmpty(int position){
+        // Fingerprints never start with zero or one
+        return index.getLong(position) == EMPTY;
+    }
+
+    private boolean isTombstone(int position){
+        return index.getLong(position) == TOMBSTONE;
+    }
+
+    private static void writeSlot(ByteBuffer buffer, int position, long high, long low, byte[] digest){
+        buffer.putLong(position + 8, low);
+        for (int i = 0; i < DIGEST_SIZE; i++) {
+            buffer.put(position + 16 + i, digest[i]);
+        }
+        // The first half is written last, it marks the slot as used
+        buffer.putLong(position, high);
+    }
+
+    private static void checkDigest(byte[] digest){
+        // Input validation
+        if (digest == null){
+            throw new NullPointerException();
+        }
+        if (digest.length != DIGEST_SIZE){
+            throw new IllegalArgumentException("The hash must have " + DIGEST_SIZE + " bytes");
+        }
+    }
+
+    private static int firstSlot(long fingerprint, int mask){
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    /**
+     * Private method to compute the 128 bits fingerprint of a (Phenopacket ID, element) pair, the
+     * first bytes of the Keccak hash of the ID length, the ID and the element
+     * @param phenopacketId required - Phenopacket ID
+     * @param element required - name of the element
+     * @return both halves of the fingerprint
+     */
+    private static long[] fingerprint(String phenopacketId, String element){
+        // Input validation
+        if (phenopacketId == null || phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+        if (element == null || element.length() == 0){
+            throw new NullPointerException();
+        }
+        byte[] idBytes = phenopacketId.getBytes(StandardCharsets.UTF_8);
+        byte[] elementBytes = element.getBytes(StandardCharsets.UTF_8);
+
+        // The ID length separates both parts
+        byte[] key = ByteBuffer.allocate(4 + idBytes.length + elementBytes.length)
+            .putInt(idBytes.length).put(idBytes).put(elementBytes).array();
+        ByteBuffer hash = ByteBuffer.wrap(KeccakEngine.hash(key));
+        long high = hash.getLong();
+        long low = hash.getLong();
+        if (high == EMPTY || high == TOMBSTONE) {
+            high = 2;
+        }
+        return new long[] {high, low};
+    }
+
+    private static MappedByteBuffer map(Path path, long length) throws IOException{
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+}
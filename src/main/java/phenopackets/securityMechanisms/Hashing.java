@@ -1,22 +1,29 @@
 package phenopackets.securityMechanisms;
 
-import java.io.File;
 import java.io.IOException;
+import java.lang.System.Logger.Level;
 import java.net.URISyntaxException;
-import java.nio.file.Files;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import org.bouncycastle.jcajce.provider.digest.Keccak;
+import org.bouncycastle.util.encoders.DecoderException;
 import org.bouncycastle.util.encoders.Hex;
 import org.phenopackets.secure.schema.core.Disease;
 import org.phenopackets.secure.schema.core.MedicalAction;
 import org.phenopackets.secure.schema.core.PhenotypicFeature;
 
+import com.google.protobuf.MessageLite;
+
 
 public class Hashing {
 
+    private static final System.Logger LOGGER = System.getLogger(Hashing.class.getName());
+
     static ExternalResources externalResource = new ExternalResources();
     private static final String FORMAT_FILE =".txt";
+    private static final String HASH_INDEX = "hashes";
 
     /**
      * Private method to calculate the hash with Keccak
@@ -28,10 +35,31 @@ public class Hashing {
          if (element == null || element.length == 0){
             throw new NullPointerException();
         }
-        // Generate a new Keccak instance
-        Keccak.Digest256 digest256 = new Keccak.Digest256();
-        // Compute hash of an element
-        byte[] hashBytes = digest256.digest(element);
+        // Compute hash of an element with the digest of the thread
+        ProtectionEvents.Hash event = new ProtectionEvents.Hash();
+        event.begin();
+        long start = Metrics.start();
+        byte[] hashBytes = KeccakEngine.hash(element);
+        Metrics.record(Metrics.Operation.HASH_COMPUTE, start, element.length);
+        event.size = element.length;
+        event.commit();
+
+        return hashBytes;
+    }
+
+    /**
+     * Private method to calculate the hash of a Phenopacket element without serializing it to a byte array
+     * @param element required - the element to compute the hash
+     * @return the hash bytes
+     */
+    private static byte[] computeHash(MessageLite element) {
+        ProtectionEvents.Hash event = new ProtectionEvents.Hash();
+        event.begin();
+        long start = Metrics.start();
+        byte[] hashBytes = KeccakEngine.hash(element);
+        Metrics.record(Metrics.Operation.HASH_COMPUTE, start, element.getSerializedSize());
+        event.size = element.getSerializedSize();
+        event.commit();
 
         return hashBytes;
     }
@@ -53,12 +81,10 @@ public class Hashing {
             throw new NullPointerException();
         }
   
-        // Serialize the Disease element to a byte array
-        byte[] diseaseBytes = disease.toByteArray();
-        // Compute the hash
-        byte [] hash = computeHash(diseaseBytes);
-        // Store the hash in a file linked with its name
-        externalResource.addHashToFile(phenopacketId, hash, disease.getTerm().getLabel());
+        // Compute the hash of the serialized Disease element
+        byte [] hash = computeHash(disease);
+        // Store the hash in the index linked with its name
+        getHashIndex().put(phenopacketId, disease.getTerm().getLabel(), hash);
         // Return the hash as String
         return new String(Hex.encode(hash));
     }
@@ -79,12 +105,10 @@ public class Hashing {
         if (phenopacketId == null || phenopacketId.length()==0){
             throw new NullPointerException();
         }
-        // Serialize the PhenotypicFeature element to a byte array
-        byte[] phenotypicFeatureBytes = phenotypicFeature.toByteArray();
-        // Compute the hash
-        byte [] hash = computeHash(phenotypicFeatureBytes);
-        // Store the hash in a file linked with its name
-        externalResource.addHashToFile(phenopacketId, hash, phenotypicFeature.getType().getLabel());
+        // Compute the hash of the serialized PhenotypicFeature element
+        byte [] hash = computeHash(phenotypicFeature);
+        // Store the hash in the index linked with its name
+        getHashIndex().put(phenopacketId, phenotypicFeature.getType().getLabel(), hash);
         // Return the hash as String
         return new String(Hex.encode(hash));
         
@@ -111,12 +135,10 @@ public class Hashing {
             throw new NullPointerException();
         }
 
-        // Serialize the PhenotypicFeature element to a byte array
-        byte[] medicalActionBytes = medicalAction.toByteArray();
-        // Compute the hash
-        byte [] hash = computeHash(medicalActionBytes);
-        // Store the hash in a file linked with its name
-        externalResource.addHashToFile(phenopacketId, hash, medicalActionName);
+        // Compute the hash of the serialized MedicalAction element
+        byte [] hash = computeHash(medicalAction);
+        // Store the hash in the index linked with its name
+        getHashIndex().put(phenopacketId, medicalActionName, hash);
         // Return the hash as String
         return new String(Hex.encode(hash));
     }
@@ -132,38 +154,163 @@ public class Hashing {
          return new String(Hex.encode(hash));
     }
 
+    /**
+     * Method to calculate the hash of any Phenopacket element into a given buffer
+     * @param element required - Element to compute hash
+     * @param out required - buffer where the 32 bytes of the hash are written
+     * @param offset required - position of the hash in the buffer
+     */
+    public void computeHashElement(byte[] element, byte[] out, int offset){
+        ProtectionEvents.Hash event = new ProtectionEvents.Hash();
+        event.begin();
+        long start = Metrics.start();
+        KeccakEngine.hash(element, 0, element.length, out, offset);
+        Metrics.record(Metrics.Operation.HASH_COMPUTE, start, element.length);
+        event.size = element.length;
+        event.commit();
+    }
+
+    /**
+     * Method to compute the hashes of several elements of a Phenopacket, all of them are stored
+     * in the index with a single write
+     * @param phenopacketId required - Phenopacket ID
+     * @param elements required - the serialized elements by their name
+     * @return the hashes by element name
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    public static Map<String, byte[]> computeHashes(String phenopacketId, Map<String, byte[]> elements) throws IOException, URISyntaxException{
+        // Input validation
+        if (phenopacketId == null || phenopacketId.length()==0){
+            throw new NullPointerException();
+        }
+        if (elements == null){
+            throw new NullPointerException();
+        }
+
+        Map<String, byte[]> hashes = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> element : elements.entrySet()) {
+            hashes.put(element.getKey(), computeHash(element.getValue()));
+        }
+        getHashIndex().putAll(phenopacketId, hashes);
+        return hashes;
+    }
+
+    /**
+     * Method to store hashes already computed, all of them with a single write
+     * @param phenopacketId required - Phenopacket ID
+     * @param hashes required - the hash bytes by element name
+     * @throws IOException
+     */
+    public static void storeHashes(String phenopacketId, Map<String, byte[]> hashes) throws IOException{
+        // Input validation
+        if (phenopacketId == null || phenopacketId.length()==0){
+            throw new NullPointerException();
+        }
+        if (hashes == null){
+            throw new NullPointerException();
+        }
+        if (!hashes.isEmpty()) {
+            getHashIndex().putAll(phenopacketId, hashes);
+        }
+    }
+
+    /**
+     * Method to remove the hashes of the elements that are no longer in a Phenopacket
+     * @param phenopacketId required - Phenopacket ID
+     * @param elements required - the names of the removed elements
+     * @throws IOException
+     */
+    public static void removeHashes(String phenopacketId, Collection<String> elements) throws IOException{
+        // Input validation
+        if (phenopacketId == null || phenopacketId.length()==0){
+            throw new NullPointerException();
+        }
+        if (elements == null){
+            throw new NullPointerException();
+        }
+        if (!elements.isEmpty()) {
+            HashIndex hashIndex = getHashIndex();
+            for (String element : elements) {
+                hashIndex.remove(phenopacketId, element);
+            }
+            hashIndex.flush();
+        }
+    }
+
     /**
      * Method to get the hash of an element
-     * @param fileName required - the file where the hash is stored
+     * @param fileName required - the file where the hash is stored, the Phenopacket ID
      * @param element required - the element to obtain the hash
      * @return the hash String
      * @throws URISyntaxException
      * @throws IOException
      */
     public static String getHash(String fileName, String element) throws URISyntaxException, IOException{
+        byte[] hash = getHashBytes(fileName, element);
+        if (hash == null) {
+            return null;
+        }
+        return new String(Hex.encode(hash));
+    }
+
+    /**
+     * Method to get the bytes of the hash of an element
+     * @param phenopacketId required - Phenopacket ID
+     * @param element required - the element to obtain the hash
+     * @return the hash bytes, null if it is not stored
+     * @throws URISyntaxException
+     * @throws IOException
+     */
+    public static byte[] getHashBytes(String phenopacketId, String element) throws URISyntaxException, IOException{
         // Input validation
-        if (fileName == null || fileName.length()==0){
+        if (phenopacketId == null || phenopacketId.length()==0){
             throw new NullPointerException();
         }
         if (element == null || element.length()==0){
             throw new NullPointerException();
         }
-        
-        String hash = null;
 
-        File hashFile = externalResource.getFileFromResource(fileName+FORMAT_FILE);
-        List<String> lines=Files.readAllLines(hashFile.toPath());
+        long start = Metrics.start();
+        byte[] hash;
+        try {
+            hash = getHashIndex().get(phenopacketId, element);
+        } catch (IOException | RuntimeException ex) {
+            Metrics.error(Metrics.Operation.HASH_LOOKUP, start);
+            throw ex;
+        }
+        if (hash != null) {
+            Metrics.record(Metrics.Operation.HASH_LOOKUP, start, hash.length);
+            return hash;
+        }
+
+        // Hashes stored with the previous format, one text file for each Phenopacket
+        byte[] hashFile = ExternalResources.getStorageBackend().read(phenopacketId+FORMAT_FILE);
+        if (hashFile == null) {
+            Metrics.record(Metrics.Operation.HASH_LOOKUP, start, 0);
+            return null;
+        }
+        String[] lines = new String(hashFile, StandardCharsets.UTF_8).split("\\R");
 
         for (String line: lines){
-            if(line.contains(element)){
-                String[] hashLine = line.split(":");
-                System.out.println(hashLine[1]);
-                hash = hashLine[1];
+            int separator = line.lastIndexOf(':');
+            if(separator > 0 && line.substring(0, separator).equals(element)){
+                hash = Hex.decode(line.substring(separator + 1));
             }
         }
+        Metrics.record(Metrics.Operation.HASH_LOOKUP, start, hashFile.length);
         return hash;
     }
 
+    /**
+     * Private method to get the index where the hashes are stored
+     * @return the hash index
+     * @throws IOException
+     */
+    private static HashIndex getHashIndex() throws IOException{
+        return ExternalResources.getStorageBackend().openHashIndex(HASH_INDEX);
+    }
+
     /**
      * Function to check if the stored hash is the same as the new computed one
      * @param computedHash required
@@ -176,15 +323,47 @@ public class Hashing {
         // Input validation
         if(element!=null && !storedHash.isBlank()){
             
-            byte [] hash = computeHash(element);
-            String computedHash = new String(Hex.encode(hash));
-
-            // Compare both values
-            result = computedHash.equals(storedHash);
-            System.out.println(result);
+            // Compare both values without encoding the computed hash
+            try {
+                result = KeccakEngine.matches(element, Hex.decode(storedHash));
+            } catch (DecoderException e) {
+                result = false;
+            }
+            if (LOGGER.isLoggable(Level.DEBUG)) {
+                LOGGER.log(Level.DEBUG, "Hash matches: {0}", result);
+            }
         }else{
             throw new NullPointerException();
         }
         return result;
     }
+
+    /**
+     * Function to check if the stored hash bytes are the same as the new computed ones
+     * @param element required - the element to compute the hash
+     * @param storedHash required - the stored hash bytes
+     * @return boolean - if hashes are equal then returns true, otherwise returns false
+     */
+    public static boolean checkHash(byte[] element, byte[] storedHash){
+        // Input validation
+        if (element == null || storedHash == null){
+            throw new NullPointerException();
+        }
+        return KeccakEngine.matches(element, storedHash);
+    }
+
+    /**
+     * Function to check if the stored hash bytes are the same as the hash of a Phenopacket element,
+     * the element is not serialized to a byte array
+     * @param element required - the Phenopacket element
+     * @param storedHash required - the stored hash bytes
+     * @return boolean - if hashes are equal then returns true, otherwise returns false
+     */
+    public static boolean checkHash(MessageLite element, byte[] storedHash){
+        // Input validation
+        if (element == null || storedHash == null){
+            throw new NullPointerException();
+        }
+        return KeccakEngine.matches(element, storedHash);
+    }
 }
@@ -0,0 +1,298 @@
+package phenopackets.securityMechanisms;
+
+import com.google.crypto.tink.HybridDecrypt;
+import com.google.crypto.tink.HybridEncrypt;
+import com.google.crypto.tink.subtle.X25519;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * Hybrid Public Key Encryption (RFC 9180) in base mode with DHKEM(X25519, HKDF-SHA256) and
+ * HKDF-SHA256. A single message is sealed with the first nonce of the context, the context
+ * information of the hybrid encryption is the HPKE info and the associated data is empty.
+ * The ciphertext is the encapsulated key followed by the AEAD ciphertext
+ */
+final class Hpke {
+
+    private static final byte[] VERSION_LABEL = "HPKE-v1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte MODE_BASE = 0x00;
+    private static final int KEM_ID = 0x0020;
+    private static final int KDF_ID = 0x0001;
+    private static final int HASH_LENGTH = 32;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    static final int KEY_LENGTH = 32;
+
+    private static final byte[] KEM_SUITE_ID = {'K', 'E', 'M', (byte) (KEM_ID >> 8), (byte) KEM_ID};
+
+    /**
+     * AEAD algorithms of the key schedule
+     */
+    enum Aead {
+        AES_128_GCM(0x0001, 16, "AES/GCM/NoPadding", "AES"),
+        AES_256_GCM(0x0002, 32, "AES/GCM/NoPadding", "AES"),
+        CHACHA20_POLY1305(0x0003, 32, "ChaCha20-Poly1305", "ChaCha20");
+
+        private final int id;
+        private final int keyLength;
+        private final String transformation;
+        private final String keyAlgorithm;
+        private final byte[] suiteId;
+
+        Aead(int id, int keyLength, String transformation, String keyAlgorithm) {
+            this.id = id;
+            this.keyLength = keyLength;
+            this.transformation = transformation;
+            this.keyAlgorithm = keyAlgorithm;
+            this.suiteId = new byte[] {'H', 'P', 'K', 'E', (byte) (KEM_ID >> 8), (byte) KEM_ID,
+                (byte) (KDF_ID >> 8), (byte) KDF_ID, (byte) (id >> 8), (byte) id};
+        }
+
+        int getId() {
+            return id;
+        }
+
+        static Aead fromId(int id) throws GeneralSecurityException {
+            for (Aead aead : values()) {
+                if (aead.id == id) {
+                    return aead;
+                }
+            }
+            throw new GeneralSecurityException("Unsupported HPKE AEAD " + id);
+        }
+
+        private byte[] seal(byte[] key, byte[] nonce, byte[] aad, byte[] plaintext, byte[] output, int offset) throws GeneralSecurityException {
+            // A new cipher each time, the JCE refuses to initialize a cipher twice with the same key and nonce
+            Cipher cipher = Cipher.getInstance(transformation);
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, keyAlgorithm), parameters(nonce));
+            cipher.updateAAD(aad);
+            cipher.doFinal(plaintext, 0, plaintext.length, output, offset);
+            return output;
+        }
+
+        private byte[] open(byte[] key, byte[] nonce, byte[] aad, byte[] ciphertext, int offset) throws GeneralSecurityException {
+            Cipher cipher = Cipher.getInstance(transformation);
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, keyAlgorithm), parameters(nonce));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(ciphertext, offset, ciphertext.length - offset);
+        }
+
+        private AlgorithmParameterSpec parameters(byte[] nonce) {
+            return (this == CHACHA20_POLY1305) ? new IvParameterSpec(nonce) : new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+        }
+    }
+
+    private Hpke() {}
+
+    /**
+     * Method to create a new private key
+     * @return the X25519 private key
+     */
+    static byte[] generatePrivateKey(){
+        return X25519.generatePrivateKey();
+    }
+
+    /**
+     * Method to get the public key of a private key
+     * @param privateKey required - the X25519 private key
+     * @return the X25519 public key
+     * @throws GeneralSecurityException
+     */
+    static byte[] publicFromPrivate(byte[] privateKey) throws GeneralSecurityException{
+        return X25519.publicFromPrivate(privateKey);
+    }
+
+    /**
+     * Method to seal a message to a public key with a given ephemeral key, the encryption
+     * generates a new ephemeral key for each message
+     * @param aead required - AEAD of the key schedule
+     * @param recipientKey required - the X25519 public key of the recipient
+     * @param ephemeralKey required - the X25519 ephemeral private key
+     * @param info required - the context information
+     * @param plaintext required - the message
+     * @return the encapsulated key followed by the AEAD ciphertext
+     * @throws GeneralSecurityException
+     */
+    static byte[] seal(Aead aead, byte[] recipientKey, byte[] ephemeralKey, byte[] info, byte[] plaintext) throws GeneralSecurityException{
+        return seal(aead, recipientKey, ephemeralKey, info, EMPTY, plaintext);
+    }
+
+    /**
+     * Method to seal a message with associated data, as the first message of an HPKE context
+     * @param aead required - AEAD of the key schedule
+     * @param recipientKey required - the X25519 public key of the recipient
+     * @param ephemeralKey required - the X25519 ephemeral private key
+     * @param info required - the context information
+     * @param aad required - the associated data, empty for the hybrid encryption
+     * @param plaintext required - the message
+     * @return the encapsulated key followed by the AEAD ciphertext
+     * @throws GeneralSecurityException
+     */
+    static byte[] seal(Aead aead, byte[] recipientKey, byte[] ephemeralKey, byte[] info, byte[] aad, byte[] plaintext) throws GeneralSecurityException{
+        byte[] enc = X25519.publicFromPrivate(ephemeralKey);
+        byte[] sharedSecret = sharedSecret(X25519.computeSharedSecret(ephemeralKey, recipientKey), enc, recipientKey);
+
+        byte[][] keyAndNonce = keySchedule(aead, sharedSecret, info);
+        byte[] output = Arrays.copyOf(enc, KEY_LENGTH + plaintext.length + TAG_LENGTH);
+        return aead.seal(keyAndNonce[0], keyAndNonce[1], aad, plaintext, output, KEY_LENGTH);
+    }
+
+    /**
+     * Method to open a message sealed to the public key of a private key
+     * @param aead required - AEAD of the key schedule
+     * @param privateKey required - the X25519 private key of the recipient
+     * @param publicKey required - the X25519 public key of the recipient
+     * @param info required - the context information
+     * @param ciphertext required - the encapsulated key followed by the AEAD ciphertext
+     * @return the message
+     * @throws GeneralSecurityException
+     */
+    static byte[] open(Aead aead, byte[] privateKey, byte[] publicKey, byte[] info, byte[] ciphertext) throws GeneralSecurityException{
+        return open(aead, privateKey, publicKey, info, EMPTY, ciphertext);
+    }
+
+    /**
+     * Method to open a message sealed with associated data
+     * @param aead required - AEAD of the key schedule
+     * @param privateKey required - the X25519 private key of the recipient
+     * @param publicKey required - the X25519 public key of the recipient
+     * @param info required - the context information
+     * @param aad required - the associated data given to seal
+     * @param ciphertext required - the encapsulated key followed by the AEAD ciphertext
+     * @return the message
+     * @throws GeneralSecurityException
+     */
+    static byte[] open(Aead aead, byte[] privateKey, byte[] publicKey, byte[] info, byte[] aad, byte[] ciphertext) throws GeneralSecurityException{
+        if (ciphertext.length < KEY_LENGTH + TAG_LENGTH) {
+            throw new GeneralSecurityException("Ciphertext too short");
+        }
+        byte[] enc = Arrays.copyOf(ciphertext, KEY_LENGTH);
+        byte[] sharedSecret = sharedSecret(X25519.computeSharedSecret(privateKey, enc), enc, publicKey);
+
+        byte[][] keyAndNonce = keySchedule(aead, sharedSecret, info);
+        return aead.open(keyAndNonce[0], keyAndNonce[1], aad, ciphertext, KEY_LENGTH);
+    }
+
+    /**
+     * Private method to compute the shared secret of the KEM from the Diffie-Hellman secret
+     */
+    private static byte[] sharedSecret(byte[] dh, byte[] enc, byte[] recipientKey) throws GeneralSecurityException{
+        if (MessageDigest.isEqual(dh, new byte[KEY_LENGTH])) {
+            throw new GeneralSecurityException("Invalid X25519 public key");
+        }
+        byte[] kemContext = concat(enc, recipientKey);
+        byte[] prk = labeledExtract(KEM_SUITE_ID, EMPTY, "eae_prk", dh);
+        return labeledExpand(KEM_SUITE_ID, prk, "shared_secret", kemContext, HASH_LENGTH);
+    }
+
+    /**
+     * Private method to derive the AEAD key and the base nonce, without pre-shared key
+     * @return the key and the nonce
+     */
+    private static byte[][] keySchedule(Aead aead, byte[] sharedSecret, byte[] info) throws GeneralSecurityException{
+        byte[] pskIdHash = labeledExtract(aead.suiteId, EMPTY, "psk_id_hash", EMPTY);
+        byte[] infoHash = labeledExtract(aead.suiteId, EMPTY, "info_hash", info);
+        byte[] context = concat(new byte[] {MODE_BASE}, pskIdHash, infoHash);
+
+        byte[] secret = labeledExtract(aead.suiteId, sharedSecret, "secret", EMPTY);
+        return new byte[][] {
+            labeledExpand(aead.suiteId, secret, "key", context, aead.keyLength),
+            labeledExpand(aead.suiteId, secret, "base_nonce", context, NONCE_LENGTH)};
+    }
+
+    private static byte[] labeledExtract(byte[] suiteId, byte[] salt, String label, byte[] ikm) throws GeneralSecurityException{
+        // An empty salt is a string of zeros
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec((salt.length == 0) ? new byte[HASH_LENGTH] : salt, "HmacSHA256"));
+        mac.update(VERSION_LABEL);
+        mac.update(suiteId);
+        mac.update(label.getBytes(StandardCharsets.US_ASCII));
+        return mac.doFinal(ikm);
+    }
+
+    private static byte[] labeledExpand(byte[] suiteId, byte[] prk, String label, byte[] info, int length) throws GeneralSecurityException{
+        byte[] labeledInfo = concat(new byte[] {(byte) (length >> 8), (byte) length}, VERSION_LABEL, suiteId,
+            label.getBytes(StandardCharsets.US_ASCII), info);
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+        byte[] output = new byte[length];
+        byte[] block = EMPTY;
+        for (int position = 0, counter = 1; position < length; counter++) {
+            mac.update(block);
+            mac.update(labeledInfo);
+            mac.update((byte) counter);
+            block = mac.doFinal();
+            int size = Math.min(block.length, length - position);
+            System.arraycopy(block, 0, output, position, size);
+            position += size;
+        }
+        return output;
+    }
+
+    private static byte[] concat(byte[]... parts){
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int position = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, position, part.length);
+            position += part.length;
+        }
+        return result;
+    }
+
+    /**
+     * Encryption with the public key of the recipient, a new ephemeral key for each message
+     */
+    static final class Encrypter implements HybridEncrypt {
+
+        private final Aead aead;
+        private final byte[] recipientKey;
+
+        Encrypter(Aead aead, byte[] recipientKey) {
+            this.aead = aead;
+            this.recipientKey = recipientKey.clone();
+        }
+
+        @Override
+        public byte[] encrypt(byte[] plaintext, byte[] contextInfo) throws GeneralSecurityException {
+            return seal(aead, recipientKey, X25519.generatePrivateKey(), (contextInfo == null) ? EMPTY : contextInfo, plaintext);
+        }
+    }
+
+    /**
+     * Decryption with the private key of the recipient
+     */
+    static final class Decrypter implements HybridDecrypt {
+
+        private final Aead aead;
+        private final byte[] privateKey;
+        private final byte[] publicKey;
+
+        Decrypter(Aead aead, byte[] privateKey) throws GeneralSecurityException {
+            this.aead = aead;
+            this.privateKey = privateKey.clone();
+            this.publicKey = X25519.publicFromPrivate(privateKey);
+        }
+
+        @Override
+        public byte[] decrypt(byte[] ciphertext, byte[] contextInfo) throws GeneralSecurityException {
+            return open(aead, privateKey, publicKey, (contextInfo == null) ? EMPTY : contextInfo, ciphertext);
+        }
+    }
+}
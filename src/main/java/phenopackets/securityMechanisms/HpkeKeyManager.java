@@ -0,0 +1,231 @@
+package phenopackets.securityMechanisms;
+
+import com.google.crypto.tink.HybridDecrypt;
+import com.google.crypto.tink.HybridEncrypt;
+import com.google.crypto.tink.KeyManager;
+import com.google.crypto.tink.PrivateKeyManager;
+import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.proto.KeyData;
+import com.google.crypto.tink.proto.KeyData.KeyMaterialType;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+
+/**
+ * Tink key managers of the X25519 HPKE keys, so these keys are kept in the same keysets as the
+ * ECIES keys and the ciphertexts carry the Tink prefix with the key ID. Tink 1.6 has no HPKE key
+ * protos, so the keys are stored in this format, wrapped in a google.protobuf.BytesValue:
+ * <ul>
+ * <li>key format (value of the key templates): version (1 byte) | AEAD ID (2 bytes)</li>
+ * <li>public key: version | AEAD ID | X25519 public key (32 bytes)</li>
+ * <li>private key: version | AEAD ID | X25519 public key | X25519 private key (32 bytes)</li>
+ * </ul>
+ * The version is FORMAT_VERSION, a key of another version is rejected. The AEAD IDs are the ones
+ * of RFC 9180. The managers are registered by KeysetRegistry and HybridAlgorithm, so the keysets
+ * with these keys can be used as soon as they are read
+ */
+final class HpkeKeyManager {
+
+    static final String PRIVATE_TYPE_URL = "type.phenopackets.org/phenopackets.HpkeX25519PrivateKey";
+    static final String PUBLIC_TYPE_URL = "type.phenopackets.org/phenopackets.HpkeX25519PublicKey";
+
+    // Version of the stored key format
+    static final byte FORMAT_VERSION = 1;
+
+    private static final int VERSION = 0;
+    private static final int HEADER_LENGTH = 3;
+
+    private HpkeKeyManager() {}
+
+    /**
+     * Method to register the key managers, it can be called more than once
+     * @throws GeneralSecurityException
+     */
+    static void register() throws GeneralSecurityException{
+        Registry.registerKeyManager(new PrivateManager(), true);
+        Registry.registerKeyManager(new PublicManager(), false);
+    }
+
+    /**
+     * Method to get the key format of an AEAD, the value of its key templates
+     * @param aead required - AEAD of the key schedule
+     * @return the serialized key format
+     */
+    static byte[] keyFormat(Hpke.Aead aead){
+        return BytesValue.of(ByteString.copyFrom(header(aead))).toByteArray();
+    }
+
+    private static byte[] header(Hpke.Aead aead){
+        return new byte[] {FORMAT_VERSION, (byte) (aead.getId() >> 8), (byte) aead.getId()};
+    }
+
+    /**
+     * Private method to read the version and the AEAD ID at the start of a key or key format
+     */
+    private static Hpke.Aead readAead(byte[] value, int expectedLength) throws GeneralSecurityException{
+        if (value.length != expectedLength) {
+            throw new GeneralSecurityException("Invalid HPKE key");
+        }
+        if (value[0] != FORMAT_VERSION) {
+            throw new GeneralSecurityException("Unsupported HPKE key format version " + value[0]);
+        }
+        return Hpke.Aead.fromId(((value[1] & 0xFF) << 8) | (value[2] & 0xFF));
+    }
+
+    private static byte[] readValue(ByteString serialized) throws GeneralSecurityException{
+        try {
+            return BytesValue.parseFrom(serialized).getValue().toByteArray();
+        } catch (InvalidProtocolBufferException ex) {
+            throw new GeneralSecurityException("Invalid HPKE key", ex);
+        }
+    }
+
+    private static byte[] readValue(MessageLite key) throws GeneralSecurityException{
+        if (!(key instanceof BytesValue)) {
+            throw new GeneralSecurityException("Invalid HPKE key");
+        }
+        return ((BytesValue) key).getValue().toByteArray();
+    }
+
+    /**
+     * Key manager of the private keys, it creates the keys and decrypts
+     */
+    private static final class PrivateManager implements PrivateKeyManager<HybridDecrypt> {
+
+        @Override
+        public HybridDecrypt getPrimitive(ByteString serializedKey) throws GeneralSecurityException {
+            return decrypter(readValue(serializedKey));
+        }
+
+        @Override
+        public HybridDecrypt getPrimitive(MessageLite key) throws GeneralSecurityException {
+            return decrypter(readValue(key));
+        }
+
+        private HybridDecrypt decrypter(byte[] value) throws GeneralSecurityException {
+            Hpke.Aead aead = readAead(value, HEADER_LENGTH + 2 * Hpke.KEY_LENGTH);
+            return new Hpke.Decrypter(aead, Arrays.copyOfRange(value, HEADER_LENGTH + Hpke.KEY_LENGTH, value.length));
+        }
+
+        @Override
+        public MessageLite newKey(ByteString serializedKeyFormat) throws GeneralSecurityException {
+            return newKey(readAead(readValue(serializedKeyFormat), HEADER_LENGTH));
+        }
+
+        @Override
+        public MessageLite newKey(MessageLite keyFormat) throws GeneralSecurityException {
+            return newKey(readAead(readValue(keyFormat), HEADER_LENGTH));
+        }
+
+        private BytesValue newKey(Hpke.Aead aead) throws GeneralSecurityException {
+            byte[] privateKey = Hpke.generatePrivateKey();
+            byte[] value = new byte[HEADER_LENGTH + 2 * Hpke.KEY_LENGTH];
+            System.arraycopy(header(aead), 0, value, 0, HEADER_LENGTH);
+            System.arraycopy(Hpke.publicFromPrivate(privateKey), 0, value, HEADER_LENGTH, Hpke.KEY_LENGTH);
+            System.arraycopy(privateKey, 0, value, HEADER_LENGTH + Hpke.KEY_LENGTH, Hpke.KEY_LENGTH);
+            return BytesValue.of(ByteString.copyFrom(value));
+        }
+
+        @Override
+        public KeyData newKeyData(ByteString serializedKeyFormat) throws GeneralSecurityException {
+            return KeyData.newBuilder()
+                .setTypeUrl(PRIVATE_TYPE_URL)
+                .setValue(newKey(serializedKeyFormat).toByteString())
+                .setKeyMaterialType(KeyMaterialType.ASYMMETRIC_PRIVATE)
+                .build();
+        }
+
+        @Override
+        public KeyData getPublicKeyData(ByteString serializedKey) throws GeneralSecurityException {
+            byte[] value = readValue(serializedKey);
+            readAead(value, HEADER_LENGTH + 2 * Hpke.KEY_LENGTH);
+            byte[] publicValue = Arrays.copyOf(value, HEADER_LENGTH + Hpke.KEY_LENGTH);
+            return KeyData.newBuilder()
+                .setTypeUrl(PUBLIC_TYPE_URL)
+                .setValue(BytesValue.of(ByteString.copyFrom(publicValue)).toByteString())
+                .setKeyMaterialType(KeyMaterialType.ASYMMETRIC_PUBLIC)
+                .build();
+        }
+
+        @Override
+        public boolean doesSupport(String typeUrl) {
+            return PRIVATE_TYPE_URL.equals(typeUrl);
+        }
+
+        @Override
+        public String getKeyType() {
+            return PRIVATE_TYPE_URL;
+        }
+
+        @Override
+        public int getVersion() {
+            return VERSION;
+        }
+
+        @Override
+        public Class<HybridDecrypt> getPrimitiveClass() {
+            return HybridDecrypt.class;
+        }
+    }
+
+    /**
+     * Key manager of the public keys, they are only obtained from the private keys
+     */
+    private static final class PublicManager implements KeyManager<HybridEncrypt> {
+
+        @Override
+        public HybridEncrypt getPrimitive(ByteString serializedKey) throws GeneralSecurityException {
+            return encrypter(readValue(serializedKey));
+        }
+
+        @Override
+        public HybridEncrypt getPrimitive(MessageLite key) throws GeneralSecurityException {
+            return encrypter(readValue(key));
+        }
+
+        private HybridEncrypt encrypter(byte[] value) throws GeneralSecurityException {
+            Hpke.Aead aead = readAead(value, HEADER_LENGTH + Hpke.KEY_LENGTH);
+            return new Hpke.Encrypter(aead, Arrays.copyOfRange(value, HEADER_LENGTH, value.length));
+        }
+
+        @Override
+        public MessageLite newKey(ByteString serializedKeyFormat) throws GeneralSecurityException {
+            throw new GeneralSecurityException("Public keys are obtained from the private keys");
+        }
+
+        @Override
+        public MessageLite newKey(MessageLite keyFormat) throws GeneralSecurityException {
+            throw new GeneralSecurityException("Public keys are obtained from the private keys");
+        }
+
+        @Override
+        public KeyData newKeyData(ByteString serializedKeyFormat) throws GeneralSecurityException {
+            throw new GeneralSecurityException("Public keys are obtained from the private keys");
+        }
+
+        @Override
+        public boolean doesSupport(String typeUrl) {
+            return PUBLIC_TYPE_URL.equals(typeUrl);
+        }
+
+        @Override
+        public String getKeyType() {
+            return PUBLIC_TYPE_URL;
+        }
+
+        @Override
+        public int getVersion() {
+            return VERSION;
+        }
+
+        @Override
+        public Class<HybridEncrypt> getPrimitiveClass() {
+            return HybridEncrypt.class;
+        }
+    }
+}
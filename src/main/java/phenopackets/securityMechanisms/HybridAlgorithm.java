@@ -0,0 +1,77 @@
+package phenopackets.securityMechanisms;
+
+import com.google.crypto.tink.KeyTemplate;
+import com.google.crypto.tink.KeyTemplates;
+import com.google.crypto.tink.hybrid.HybridConfig;
+
+import java.security.GeneralSecurityException;
+
+
+/**
+ * Algorithms of the hybrid encryption keys. A keyset can hold keys of several algorithms, the
+ * ciphertexts start with the ID of their key so the data encrypted with a previous key is still
+ * decrypted after a new key becomes the primary one. The X25519 HPKE keys avoid the P-256 scalar
+ * multiplication, which is most of the cost of encrypting a short field
+ */
+public enum HybridAlgorithm {
+
+    /** ECIES with P-256 and AES-128-GCM, the algorithm of the first keysets */
+    ECIES_P256_HKDF_HMAC_SHA256_AES128_GCM,
+    /** ECIES with P-256 in compressed form, 32 bytes shorter ciphertexts */
+    ECIES_P256_COMPRESSED_HKDF_HMAC_SHA256_AES128_GCM,
+    /** ECIES with P-256 and AES-128-CTR with HMAC-SHA256 */
+    ECIES_P256_HKDF_HMAC_SHA256_AES128_CTR_HMAC_SHA256,
+    /** HPKE with X25519 and AES-128-GCM */
+    DHKEM_X25519_HKDF_SHA256_HKDF_SHA256_AES_128_GCM,
+    /** HPKE with X25519 and AES-256-GCM */
+    DHKEM_X25519_HKDF_SHA256_HKDF_SHA256_AES_256_GCM,
+    /** HPKE with X25519 and ChaCha20-Poly1305, for processors without AES instructions */
+    DHKEM_X25519_HKDF_SHA256_HKDF_SHA256_CHACHA20_POLY1305;
+
+    private static final String ALGORITHM_PROPERTY = "phenopackets.hybrid.algorithm";
+
+    static {
+        // The ECIES and HPKE key managers are needed to create and use the keys
+        try {
+            HybridConfig.register();
+            HpkeKeyManager.register();
+        } catch (GeneralSecurityException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /**
+     * Method to get the template to create a key of the algorithm
+     * @return the key template, the ciphertexts carry the ID of the key
+     * @throws GeneralSecurityException
+     */
+    public KeyTemplate getKeyTemplate() throws GeneralSecurityException{
+        switch (this) {
+            case DHKEM_X25519_HKDF_SHA256_HKDF_SHA256_AES_128_GCM:
+                return hpkeKeyTemplate(Hpke.Aead.AES_128_GCM);
+            case DHKEM_X25519_HKDF_SHA256_HKDF_SHA256_AES_256_GCM:
+                return hpkeKeyTemplate(Hpke.Aead.AES_256_GCM);
+            case DHKEM_X25519_HKDF_SHA256_HKDF_SHA256_CHACHA20_POLY1305:
+                return hpkeKeyTemplate(Hpke.Aead.CHACHA20_POLY1305);
+            default:
+                // The ECIES algorithms have the names of the Tink templates
+                return KeyTemplates.get(name());
+        }
+    }
+
+    /**
+     * Method to get the algorithm of the new keysets, set with the phenopackets.hybrid.algorithm property
+     * @return the configured algorithm, ECIES with P-256 and AES-128-GCM by default
+     */
+    public static HybridAlgorithm getConfigured(){
+        String name = System.getProperty(ALGORITHM_PROPERTY);
+        if (name == null || name.isEmpty()) {
+            return ECIES_P256_HKDF_HMAC_SHA256_AES128_GCM;
+        }
+        return valueOf(name);
+    }
+
+    private static KeyTemplate hpkeKeyTemplate(Hpke.Aead aead){
+        return KeyTemplate.create(HpkeKeyManager.PRIVATE_TYPE_URL, HpkeKeyManager.keyFormat(aead), KeyTemplate.OutputPrefixType.TINK);
+    }
+}
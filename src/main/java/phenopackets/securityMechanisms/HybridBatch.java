@@ -0,0 +1,84 @@
+package phenopackets.securityMechanisms;
+
+
+public class HybridBatch {
+
+    /**
+     * Element of a batch: the bytes to encrypt or decrypt and their context
+     */
+    public static final class Item {
+
+        private final byte[] element;
+        private final byte[] context;
+
+        /**
+         * Create a new batch item
+         * @param element required - the element or field to encrypt/decrypt
+         * @param context required - context related with the data, the Phenopacket ID
+         */
+        public Item(byte[] element, byte[] context) {
+            // Input validation
+            if (element == null || element.length == 0){
+                throw new NullPointerException();
+            }
+            if (context == null || context.length == 0){
+                throw new NullPointerException();
+            }
+            this.element = element;
+            this.context = context;
+        }
+
+        public byte[] getElement() {
+            return element;
+        }
+
+        public byte[] getContext() {
+            return context;
+        }
+    }
+
+    /**
+     * Result of a batch item: the output bytes or the error produced by that item
+     */
+    public static final class Result {
+
+        private final byte[] output;
+        private final Exception error;
+
+        private Result(byte[] output, Exception error) {
+            this.output = output;
+            this.error = error;
+        }
+
+        static Result success(byte[] output) {
+            return new Result(output, null);
+        }
+
+        static Result failure(Exception error) {
+            return new Result(null, error);
+        }
+
+        /**
+         * @return true if the item was encrypted/decrypted
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return the encrypted/decrypted bytes, null if the item failed
+         */
+        public byte[] getOutput() {
+            return output;
+        }
+
+        /**
+         * @return the error of the item, null if it succeeded
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    private HybridBatch() {}
+}
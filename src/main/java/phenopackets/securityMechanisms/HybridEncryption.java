@@ -5,34 +5,51 @@ import com.google.crypto.tink.HybridDecrypt;
 import com.google.crypto.tink.HybridEncrypt;
 import com.google.crypto.tink.JsonKeysetReader;
 import com.google.crypto.tink.JsonKeysetWriter;
-import com.google.crypto.tink.KeyTemplates;
 import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.KeysetManager;
 import com.google.crypto.tink.hybrid.HybridConfig;
+import com.google.crypto.tink.proto.KeysetInfo;
 
-import com.nimbusds.jose.shaded.json.JSONObject;
 import com.nimbusds.jose.shaded.json.parser.ParseException;
-import com.google.gson.stream.JsonReader;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.System.Logger.Level;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 public class HybridEncryption {
     private static final String SK_FILE = "sk_hybridEnc.json"; 
     private static final String PK_FILE = "pk_hybridEnc.json"; 
-    private static final String ALGORITHM = "ECIES_P256_HKDF_HMAC_SHA256_AES128_GCM";
     private static final String FILE_FORMAT =".json";
+    private static final String DATA_KEY = "DataKey";
+
+    private static final System.Logger LOGGER = System.getLogger(HybridEncryption.class.getName());
 
     static ExternalResources externalResource = new ExternalResources();
-    static JSONObject jsonObj = new JSONObject();
+
+    // Backend where the keyset was already checked
+    private static volatile StorageBackend keySetBackend;
+
+    static {
+        // Initialize the hybrid configuration once
+        try {
+            HybridConfig.register();
+            HpkeKeyManager.register();
+        } catch (GeneralSecurityException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
 
     /**
-     * Method to create the assymetric keyset : private and public key
+     * Method to create the assymetric keyset : private and public key. The algorithm of the key
+     * is set with the phenopackets.hybrid.algorithm property
      * @throws IOException
      * @throws GeneralSecurityException
      * @throws URISyntaxException
@@ -40,12 +57,81 @@ public class HybridEncryption {
     private static void createKeySet() throws IOException, GeneralSecurityException, URISyntaxException {
 
         // Generate  new private key
-        KeysetHandle privateKey = KeysetHandle.generateNew(KeyTemplates.get(ALGORITHM));
-        CleartextKeysetHandle.write(privateKey, JsonKeysetWriter.withPath(externalResource.createNewFile(SK_FILE).getAbsolutePath()));
+        KeysetHandle privateKey = KeysetHandle.generateNew(HybridAlgorithm.getConfigured().getKeyTemplate());
+        writeKeySet(privateKey);
+    }
+
+    /**
+     * Method to add a new key to the keyset and make it the primary key, the new data is encrypted
+     * with it while the data encrypted with the previous keys is still decrypted by their key ID
+     * @param algorithm required - algorithm of the new key
+     * @return the ID of the new key
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws URISyntaxException
+     */
+    public static int rotateKeySet(HybridAlgorithm algorithm) throws IOException, GeneralSecurityException, URISyntaxException {
+        // Input validation
+        if (algorithm == null){
+            throw new NullPointerException();
+        }
+        checkKeySet();
+
+        synchronized (HybridEncryption.class) {
+            byte[] privateBytes = ExternalResources.getStorageBackend().read(SK_FILE);
+            KeysetHandle privateKey = CleartextKeysetHandle.read(JsonKeysetReader.withBytes(privateBytes));
+
+            // The new key is the last one of the keyset
+            KeysetManager manager = KeysetManager.withKeysetHandle(privateKey).add(algorithm.getKeyTemplate());
+            List<KeysetInfo.KeyInfo> keys = manager.getKeysetHandle().getKeysetInfo().getKeyInfoList();
+            int keyId = keys.get(keys.size() - 1).getKeyId();
+            writeKeySet(manager.setPrimary(keyId).getKeysetHandle());
+            return keyId;
+        }
+    }
+
+    /**
+     * Private method to write the private keyset and its public keyset
+     * @param privateKey required - the private keyset
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    private static void writeKeySet(KeysetHandle privateKey) throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream privateBytes = new ByteArrayOutputStream();
+        CleartextKeysetHandle.write(privateKey, JsonKeysetWriter.withOutputStream(privateBytes));
+        ExternalResources.getStorageBackend().write(SK_FILE, privateBytes.toByteArray());
 
         // Obtain the public key 
         KeysetHandle publicKey = privateKey.getPublicKeysetHandle();
-        CleartextKeysetHandle.write(publicKey, JsonKeysetWriter.withPath(externalResource.createNewFile(PK_FILE).getAbsolutePath()));
+        ByteArrayOutputStream publicBytes = new ByteArrayOutputStream();
+        CleartextKeysetHandle.write(publicKey, JsonKeysetWriter.withOutputStream(publicBytes));
+        ExternalResources.getStorageBackend().write(PK_FILE, publicBytes.toByteArray());
+
+        // Drop any primitive built from the previous keyset
+        KeysetRegistry.invalidate(SK_FILE);
+        KeysetRegistry.invalidate(PK_FILE);
+    }
+
+    /**
+     * Private method to check only once per storage backend that the keyset exists, creating it otherwise
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws URISyntaxException
+     */
+    private static void checkKeySet() throws IOException, GeneralSecurityException, URISyntaxException {
+        StorageBackend storage = ExternalResources.getStorageBackend();
+        if (keySetBackend == storage) {
+            return;
+        }
+        synchronized (HybridEncryption.class) {
+            if (keySetBackend != storage) {
+                // Check if exist the keyset, if not, create the keyset for the process
+                if (!storage.exists(SK_FILE)) {
+                    createKeySet();
+                }
+                keySetBackend = storage;
+            }
+        }
     }
 
     /**
@@ -53,10 +139,11 @@ public class HybridEncryption {
      * @param element required - the element or field to encrypt
      * @param contextInfo required - context related with the data
      * @return the encrypted data
+     * @throws IOException
      * @throws GeneralSecurityException
      * @throws URISyntaxException
      */
-    private static byte[] hybridEncryption(byte[] element, byte[] contextInfo) throws GeneralSecurityException, URISyntaxException{
+    private static byte[] hybridEncryption(byte[] element, byte[] contextInfo) throws IOException, GeneralSecurityException, URISyntaxException{
         
         // Input validation
         if (element == null || element.length == 0){
@@ -66,21 +153,8 @@ public class HybridEncryption {
             throw new NullPointerException();
         }
 
-        // Read the keyset into a KeysetHandle
-        KeysetHandle handle = null;
-        try {
-            handle = CleartextKeysetHandle.read(JsonKeysetReader.withFile(externalResource.getFileFromResource(PK_FILE)));
-        } catch (GeneralSecurityException | IOException ex) {
-            System.err.println("Process error: " + ex);
-        }
-        
-        // Get primitive related to the encryption
-        HybridEncrypt encryptor = null;
-        try {
-            encryptor = handle.getPrimitive(HybridEncrypt.class);
-        } catch (GeneralSecurityException ex) {
-            System.err.println("Process error: " + ex);
-        }
+        // Get the cached primitive related to the encryption, a keyset that cannot be loaded is reported to the caller
+        HybridEncrypt encryptor = KeysetRegistry.getPrimitive(PK_FILE, HybridEncrypt.class);
 
         // Encrypt and return the ciphertext
         byte[] ciphertext = encryptor.encrypt(element, contextInfo);
@@ -92,10 +166,11 @@ public class HybridEncryption {
      * @param cipher required - the element or field to decryt
      * @param contextInfo required - context related with the data
      * @return the plaintext
+     * @throws IOException
      * @throws GeneralSecurityException
      * @throws URISyntaxException
      */
-    private static byte[] hybridDecryption(byte[] cipher, byte[] contextInfo) throws GeneralSecurityException, URISyntaxException{
+    private static byte[] hybridDecryption(byte[] cipher, byte[] contextInfo) throws IOException, GeneralSecurityException, URISyntaxException{
         
         // Input validation
         if (cipher == null || cipher.length == 0){
@@ -105,21 +180,8 @@ public class HybridEncryption {
             throw new NullPointerException();
         }
 
-        // Read the keyset into a KeysetHandle
-        KeysetHandle handle = null;
-        try {
-            handle = CleartextKeysetHandle.read(JsonKeysetReader.withFile(externalResource.getFileFromResource(SK_FILE)));
-        } catch (GeneralSecurityException | IOException ex) {
-            System.err.println("Process error: " + ex);
-        }
-
-        // Get primitive related to the decryption
-        HybridDecrypt decryptor = null;
-        try {
-          decryptor = handle.getPrimitive(HybridDecrypt.class);
-        } catch (GeneralSecurityException ex) {
-          System.err.println("Process error: " + ex);
-        }
+        // Get the cached primitive related to the decryption, a keyset that cannot be loaded is reported to the caller
+        HybridDecrypt decryptor = KeysetRegistry.getPrimitive(SK_FILE, HybridDecrypt.class);
 
         // Decrypt and return the plaintext
         byte[] plaintext = decryptor.decrypt(cipher, contextInfo);
@@ -139,31 +201,226 @@ public class HybridEncryption {
     public static byte[] hybridEncryption(String mode, byte[] element, byte[] context) throws IOException, GeneralSecurityException, URISyntaxException{
         
         byte[] result;
-        // Initialize the hybrid configuration
-        HybridConfig.register();
-        // Check if exist the keyset
-        File hybridFile = externalResource.getFileFromResource(SK_FILE);
-        // If not, create the keyset for the process
-        if (hybridFile.length()==0) {
-            createKeySet();
-        }
+        // Check if exist the keyset, if not it is created
+        checkKeySet();
 
         // Check the mode is correct
         if (!mode.equals("encrypt") && !mode.equals("decrypt")) {
-          System.err.println("Incorrect mode.");
+          LOGGER.log(Level.ERROR, "Incorrect mode.");
         }
 
         // If the mode is encrypt then call function hybridEncryption, otherwise call hybridDecryption
-        if (mode.equals("encrypt")) {
-            result = hybridEncryption(element,context);
-            return result;
-        }else{
-            result = hybridDecryption(element, context);
-            return result;
-        } 
+        Metrics.Operation operation = mode.equals("encrypt") ? Metrics.Operation.ENCRYPT : Metrics.Operation.DECRYPT;
+        ProtectionEvents.Encryption event = new ProtectionEvents.Encryption();
+        event.begin();
+        long start = Metrics.start();
+        try {
+            if (mode.equals("encrypt")) {
+                result = hybridEncryption(element,context);
+            }else{
+                result = hybridDecryption(element, context);
+            }
+        } catch (IOException | GeneralSecurityException | URISyntaxException | RuntimeException ex) {
+            Metrics.error(operation, start);
+            throw ex;
+        }
+        Metrics.record(operation, start, element.length);
+        event.mode = mode;
+        event.size = element.length;
+        event.commit();
+        return result;
     }
 
 
+    /**
+     * Method to encrypt or decrypt a batch of elements in parallel with the common fork-join pool
+     * @param mode required - only two methods allowed: encrypt or decrypt
+     * @param items required - the elements and their contexts
+     * @return one result per item, in the same order as the items
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws URISyntaxException
+     */
+    public static List<HybridBatch.Result> hybridEncryption(String mode, List<HybridBatch.Item> items) throws IOException, GeneralSecurityException, URISyntaxException{
+        return hybridEncryption(mode, items, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Method to encrypt or decrypt a batch of elements in parallel. The items are split in
+     * slices processed by the executor, an error only fails its own item
+     * @param mode required - only two methods allowed: encrypt or decrypt
+     * @param items required - the elements and their contexts
+     * @param executor required - executor that runs the slices
+     * @return one result per item, in the same order as the items
+     * @throws IOException
+     * @throws GeneralSecurityException if the keyset can not be loaded
+     * @throws URISyntaxException
+     */
+    public static List<HybridBatch.Result> hybridEncryption(String mode, List<HybridBatch.Item> items, ExecutorService executor) throws IOException, GeneralSecurityException, URISyntaxException{
+        // Input validation
+        if (items == null){
+            throw new NullPointerException();
+        }
+        if (executor == null){
+            throw new NullPointerException();
+        }
+
+        // Check the mode is correct
+        if (!mode.equals("encrypt") && !mode.equals("decrypt")) {
+            throw new IllegalArgumentException("Incorrect mode.");
+        }
+        // Check if exist the keyset, if not it is created
+        checkKeySet();
+
+        // Get the primitives once for the whole batch
+        HybridEncrypt encryptor = mode.equals("encrypt") ? KeysetRegistry.getPrimitive(PK_FILE, HybridEncrypt.class) : null;
+        HybridDecrypt decryptor = mode.equals("decrypt") ? KeysetRegistry.getPrimitive(SK_FILE, HybridDecrypt.class) : null;
+
+        // Each slice writes its results in its own positions of the array
+        HybridBatch.Result[] results = new HybridBatch.Result[items.size()];
+        BatchRunner.forEach(items.size(), executor, i -> results[i] = processBatchItem(items.get(i), encryptor, decryptor));
+
+        List<HybridBatch.Result> resultList = new ArrayList<>(results.length);
+        for (HybridBatch.Result result : results) {
+            resultList.add(result);
+        }
+        return resultList;
+    }
+
+    /**
+     * Private method to encrypt or decrypt one item of a batch
+     * @param item required - the element and its context
+     * @param encryptor - primitive to encrypt, null when decrypting
+     * @param decryptor - primitive to decrypt, null when encrypting
+     * @return the result of the item
+     */
+    private static HybridBatch.Result processBatchItem(HybridBatch.Item item, HybridEncrypt encryptor, HybridDecrypt decryptor){
+        Metrics.Operation operation = (encryptor != null) ? Metrics.Operation.ENCRYPT : Metrics.Operation.DECRYPT;
+        ProtectionEvents.Encryption event = new ProtectionEvents.Encryption();
+        event.begin();
+        long start = Metrics.start();
+        try {
+            byte[] result;
+            if (encryptor != null) {
+                result = encryptor.encrypt(item.getElement(), item.getContext());
+            } else {
+                result = decryptor.decrypt(item.getElement(), item.getContext());
+            }
+            Metrics.record(operation, start, item.getElement().length);
+            event.mode = operation.getLabel();
+            event.size = item.getElement().length;
+            event.commit();
+            return HybridBatch.Result.success(result);
+        } catch (GeneralSecurityException | RuntimeException ex) {
+            Metrics.error(operation, start);
+            return HybridBatch.Result.failure(ex);
+        }
+    }
+
+    /**
+     * Method to start an envelope encryption session for a Phenopacket. Only one hybrid
+     * encryption is performed to wrap the data key, the fields are encrypted with AES-GCM
+     * @param context required - the Phenopacket ID
+     * @return the new session
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws URISyntaxException
+     */
+    public static EnvelopeSession createSession(byte[] context) throws IOException, GeneralSecurityException, URISyntaxException{
+        // Check if exist the keyset, if not it is created
+        checkKeySet();
+        return EnvelopeSession.create(context, KeysetRegistry.getPrimitive(PK_FILE, HybridEncrypt.class));
+    }
+
+    /**
+     * Method to open the envelope encryption session of a Phenopacket from its wrapped key
+     * @param wrappedKey required - the wrapped data key of the session
+     * @param context required - the Phenopacket ID
+     * @return the opened session
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws URISyntaxException
+     */
+    public static EnvelopeSession openSession(byte[] wrappedKey, byte[] context) throws IOException, GeneralSecurityException, URISyntaxException{
+        // Check if exist the keyset, if not it is created
+        checkKeySet();
+        return EnvelopeSession.open(wrappedKey, context, KeysetRegistry.getPrimitive(SK_FILE, HybridDecrypt.class));
+    }
+
+    /**
+     * Method to open the envelope encryption session of a Phenopacket from the stored wrapped key
+     * @param fileName required - file where the wrapped key is stored, the Phenopacket ID
+     * @return the opened session
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws URISyntaxException
+     */
+    public static EnvelopeSession openSession(String fileName) throws IOException, GeneralSecurityException, URISyntaxException{
+        byte[] wrappedKey = getCipherBytes(DATA_KEY, fileName);
+        if (wrappedKey == null){
+            throw new GeneralSecurityException("No data key stored for " + fileName);
+        }
+        return openSession(wrappedKey, fileName.getBytes());
+    }
+
+    /**
+     * Method to save the wrapped data key of a session into a file
+     * @param session required - the envelope encryption session
+     * @param fileName required - file where will be stored, the Phenopacket ID
+     * @throws URISyntaxException
+     * @throws ParseException
+     */
+    public static void saveSession(EnvelopeSession session, String fileName) throws URISyntaxException, ParseException{
+        // Input validation
+        if (session == null){
+            throw new NullPointerException();
+        }
+        saveInFile(session.getWrappedKey(), DATA_KEY, fileName);
+    }
+
+    /**
+     * Method to encrypt and decrypt any element or data inside an envelope encryption session
+     * @param mode required - only two methods allowed: encrypt or decrypt
+     * @param element required - the element or field to encrypt/decryt
+     * @param session required - session of the Phenopacket that includes the element
+     * @return the corresponding bytes to encryption/decryption
+     * @throws GeneralSecurityException
+     */
+    public static byte[] hybridEncryption(String mode, byte[] element, EnvelopeSession session) throws GeneralSecurityException{
+        // Input validation
+        if (session == null){
+            throw new NullPointerException();
+        }
+
+        // Check the mode is correct
+        if (!mode.equals("encrypt") && !mode.equals("decrypt")) {
+          LOGGER.log(Level.ERROR, "Incorrect mode.");
+        }
+
+        // If the mode is encrypt then use the session key to encrypt, otherwise to decrypt
+        Metrics.Operation operation = mode.equals("encrypt") ? Metrics.Operation.ENCRYPT : Metrics.Operation.DECRYPT;
+        ProtectionEvents.Encryption event = new ProtectionEvents.Encryption();
+        event.begin();
+        long start = Metrics.start();
+        byte[] result;
+        try {
+            if (mode.equals("encrypt")) {
+                result = session.encrypt(element);
+            }else{
+                result = session.decrypt(element);
+            }
+        } catch (GeneralSecurityException | RuntimeException ex) {
+            Metrics.error(operation, start);
+            throw ex;
+        }
+        Metrics.record(operation, start, element.length);
+        event.mode = mode;
+        event.session = true;
+        event.size = element.length;
+        event.commit();
+        return result;
+    }
+
     /**
      * Method to save the corresponding encrypted bytes into a file
      * @param elementBytes required - the cipherBytes
@@ -211,29 +468,15 @@ public class HybridEncryption {
         }
         
         byte[] cipherBytes = null;
-        // Get the file 
-        File hybridFile = externalResource.getFileFromResource(fileName+FILE_FORMAT);
-        
-        try (FileReader reader = new FileReader(hybridFile)){
-            JsonReader js =  new JsonReader(reader);
-            js.beginObject();
-            
-            // Search for a specific item by its ID 
-            while (js.hasNext()) {
-                String field = js.nextName();
-                
-                if (field.equals(elementName)) {
-                    String ptBytes = js.nextString();
-                    // Get the element Bytes from the file
-                    cipherBytes = Base64.getDecoder().decode(ptBytes);
-                }else {
-                    js.skipValue();
-                }
+        // Get the entry from the store
+        try {
+            String ptBytes = externalResource.getJSONEntry(fileName+FILE_FORMAT, elementName);
+            if (ptBytes != null) {
+                // Get the element Bytes
+                cipherBytes = Base64.getDecoder().decode(ptBytes);
             }
-            js.endObject();
-            js.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+        } catch (ParseException e) {
+            LOGGER.log(Level.ERROR, "Error reading " + elementName + " of " + fileName, e);
         }
         return cipherBytes;
     }
@@ -0,0 +1,163 @@
+package phenopackets.securityMechanisms;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+import org.bouncycastle.crypto.digests.KeccakDigest;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+
+
+/**
+ * Keccak-256 hashing without allocations: each thread reuses its digest and protobuf
+ * elements are serialized straight into the digest
+ */
+public final class KeccakEngine {
+
+    public static final int DIGEST_SIZE = 32;
+
+    private static final int DIGEST_BITS = 256;
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    /**
+     * Method to compute the hash of a byte array
+     * @param element required - the element to compute the hash
+     * @return the hash bytes
+     */
+    public static byte[] hash(byte[] element){
+        byte[] out = new byte[DIGEST_SIZE];
+        hash(element, 0, checkElement(element).length, out, 0);
+        return out;
+    }
+
+    /**
+     * Method to compute the hash of a part of a byte array into a given buffer
+     * @param element required - the element to compute the hash
+     * @param offset required - first byte of the element
+     * @param length required - number of bytes of the element
+     * @param out required - buffer where the hash is written
+     * @param outOffset required - position of the hash in the buffer
+     */
+    public static void hash(byte[] element, int offset, int length, byte[] out, int outOffset){
+        // Input validation
+        checkElement(element);
+        checkOutput(out, outOffset);
+
+        KeccakDigest digest = STATE.get().digest;
+        digest.reset();
+        digest.update(element, offset, length);
+        digest.doFinal(out, outOffset);
+    }
+
+    /**
+     * Method to compute the hash of a Phenopacket element without serializing it to a byte array
+     * @param message required - the element to compute the hash
+     * @return the hash bytes
+     */
+    public static byte[] hash(MessageLite message){
+        byte[] out = new byte[DIGEST_SIZE];
+        hash(message, out, 0);
+        return out;
+    }
+
+    /**
+     * Method to compute the hash of a Phenopacket element into a given buffer. The hash is the
+     * same as the hash of message.toByteArray()
+     * @param message required - the element to compute the hash
+     * @param out required - buffer where the hash is written
+     * @param outOffset required - position of the hash in the buffer
+     */
+    public static void hash(MessageLite message, byte[] out, int outOffset){
+        // Input validation
+        if (message == null){
+            throw new NullPointerException();
+        }
+        checkOutput(out, outOffset);
+
+        State state = STATE.get();
+        state.digest.reset();
+        try {
+            message.writeTo(state.coded);
+            state.coded.flush();
+        } catch (IOException | RuntimeException e) {
+            // The buffered bytes of the stream are not valid for the next element
+            STATE.remove();
+            throw new IllegalStateException("Error hashing the element", e);
+        }
+        state.digest.doFinal(out, outOffset);
+    }
+
+    /**
+     * Method to check in constant time if an element has the given hash
+     * @param element required - the element to compute the hash
+     * @param expected required - the stored hash bytes
+     * @return true if the hashes are equal
+     */
+    public static boolean matches(byte[] element, byte[] expected){
+        // Input validation
+        if (expected == null){
+            throw new NullPointerException();
+        }
+        byte[] scratch = STATE.get().scratch;
+        hash(element, 0, checkElement(element).length, scratch, 0);
+        return MessageDigest.isEqual(scratch, expected);
+    }
+
+    /**
+     * Method to check in constant time if a Phenopacket element has the given hash
+     * @param message required - the element to compute the hash
+     * @param expected required - the stored hash bytes
+     * @return true if the hashes are equal
+     */
+    public static boolean matches(MessageLite message, byte[] expected){
+        // Input validation
+        if (expected == null){
+            throw new NullPointerException();
+        }
+        byte[] scratch = STATE.get().scratch;
+        hash(message, scratch, 0);
+        return MessageDigest.isEqual(scratch, expected);
+    }
+
+    private static byte[] checkElement(byte[] element){
+        if (element == null || element.length == 0){
+            throw new NullPointerException();
+        }
+        return element;
+    }
+
+    private static void checkOutput(byte[] out, int outOffset){
+        if (out == null){
+            throw new NullPointerException();
+        }
+        if (outOffset < 0 || outOffset + DIGEST_SIZE > out.length){
+            throw new IllegalArgumentException("The buffer has no room for the hash");
+        }
+    }
+
+    /**
+     * Digest of a thread, the protobuf stream writes into it
+     */
+    private static final class State extends OutputStream {
+
+        private final KeccakDigest digest = new KeccakDigest(DIGEST_BITS);
+        private final CodedOutputStream coded = CodedOutputStream.newInstance(this, BUFFER_SIZE);
+        private final byte[] scratch = new byte[DIGEST_SIZE];
+
+        @Override
+        public void write(int b) {
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            digest.update(b, off, len);
+        }
+    }
+
+    private KeccakEngine() {}
+}
@@ -0,0 +1,292 @@
+package phenopackets.securityMechanisms;
+
+import com.google.crypto.tink.CleartextKeysetHandle;
+import com.google.crypto.tink.JsonKeysetReader;
+import com.google.crypto.tink.KeysetHandle;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class KeysetRegistry {
+
+    private static final long DEFAULT_REFRESH_MILLIS = 1000;
+    private static final String CONTENT_DIGEST = "SHA-256";
+
+    private static final ConcurrentHashMap<String, CachedKeyset> KEYSETS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Counters> COUNTERS = new ConcurrentHashMap<>();
+    private static volatile long refreshNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_REFRESH_MILLIS);
+
+    static {
+        // The HPKE keys are not known by Tink, their managers are needed to read any keyset
+        try {
+            HpkeKeyManager.register();
+        } catch (GeneralSecurityException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /**
+     * Method to get a primitive built from a keyset file. The keyset is read and the primitive
+     * is created only the first time, afterwards the same instance is shared by every thread
+     * @param fileName required - name of the keyset file
+     * @param primitiveClass required - class of the primitive (HybridEncrypt, PublicKeySign...)
+     * @return the cached primitive
+     * @throws GeneralSecurityException
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    public static <P> P getPrimitive(String fileName, Class<P> primitiveClass) throws GeneralSecurityException, IOException, URISyntaxException{
+        // Input validation
+        if (fileName == null || fileName.length() == 0){
+            throw new NullPointerException();
+        }
+        if (primitiveClass == null){
+            throw new NullPointerException();
+        }
+
+        return getKeyset(fileName).getPrimitive(primitiveClass);
+    }
+
+    /**
+     * Method to get the SHA-256 digest of the content of a keyset file. It changes when the keys
+     * are rotated, so it identifies the keyset in use
+     * @param fileName required - name of the keyset file
+     * @return the digest of the keyset
+     * @throws GeneralSecurityException
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    public static byte[] getKeysetDigest(String fileName) throws GeneralSecurityException, IOException, URISyntaxException{
+        // Input validation
+        if (fileName == null || fileName.length() == 0){
+            throw new NullPointerException();
+        }
+        return getKeyset(fileName).contentHash.clone();
+    }
+
+    /**
+     * Private method to get the cached keyset, checking the file when the refresh interval has passed
+     * @param fileName required - name of the keyset file
+     * @return the cached keyset
+     * @throws GeneralSecurityException
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    private static CachedKeyset getKeyset(String fileName) throws GeneralSecurityException, IOException, URISyntaxException{
+        Counters counters = getCounters(fileName);
+        CachedKeyset keyset = KEYSETS.get(fileName);
+
+        // Served from memory without touching the file
+        if (keyset != null && !keyset.needsCheck()) {
+            counters.hits.increment();
+            return keyset;
+        }
+
+        // Only the first call and the periodic checks reach the disk
+        counters.misses.increment();
+        return load(fileName, counters);
+    }
+
+    /**
+     * Method to discard a cached keyset, the next call will read it again
+     * @param fileName required - name of the keyset file
+     */
+    public static void invalidate(String fileName){
+        // Input validation
+        if (fileName == null || fileName.length() == 0){
+            throw new NullPointerException();
+        }
+        KEYSETS.remove(fileName);
+    }
+
+    /**
+     * Method to discard every cached keyset, used when the storage backend changes
+     */
+    static void clear(){
+        synchronized (KEYSETS) {
+            KEYSETS.clear();
+        }
+    }
+
+    /**
+     * Method to set how often the keyset files are checked for changes
+     * @param millis required - minimum time between two checks, 0 checks on every call
+     */
+    public static void setRefreshInterval(long millis){
+        if (millis < 0){
+            throw new IllegalArgumentException();
+        }
+        refreshNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Method to get the number of calls served from memory
+     * @param fileName required - name of the keyset file
+     * @return number of hits
+     */
+    public static long getHitCount(String fileName){
+        return getCounters(fileName).hits.sum();
+    }
+
+    /**
+     * Method to get the number of calls that had to check or read the keyset file
+     * @param fileName required - name of the keyset file
+     * @return number of misses
+     */
+    public static long getMissCount(String fileName){
+        return getCounters(fileName).misses.sum();
+    }
+
+    /**
+     * Method to get the number of times the primitives were rebuilt because the keyset changed
+     * @param fileName required - name of the keyset file
+     * @return number of reloads
+     */
+    public static long getReloadCount(String fileName){
+        return getCounters(fileName).reloads.sum();
+    }
+
+    /**
+     * Method to get the counters of a keyset file
+     * @param fileName required - name of the keyset file
+     * @return the counters
+     */
+    private static Counters getCounters(String fileName){
+        // Input validation
+        if (fileName == null || fileName.length() == 0){
+            throw new NullPointerException();
+        }
+        return COUNTERS.computeIfAbsent(fileName, name -> new Counters());
+    }
+
+    /**
+     * Private method to check and read the keyset file, only one thread loads a file at a time.
+     * The primitives are rebuilt only when the content of the file is different
+     * @param fileName required - name of the keyset file
+     * @param counters required - counters of the keyset file
+     * @return the cached keyset
+     * @throws GeneralSecurityException
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    private static CachedKeyset load(String fileName, Counters counters) throws GeneralSecurityException, IOException, URISyntaxException{
+        synchronized (KEYSETS) {
+            // Another thread could have checked it while waiting
+            CachedKeyset keyset = KEYSETS.get(fileName);
+            if (keyset != null && !keyset.needsCheck()) {
+                return keyset;
+            }
+
+            StorageBackend storage = ExternalResources.getStorageBackend();
+            long version = storage.getVersion(fileName);
+
+            // Same version, the file did not change
+            if (keyset != null && keyset.version == version) {
+                keyset.checked();
+                return keyset;
+            }
+
+            // Read the file and compare its content with the cached one
+            ProtectionEvents.KeysetLoad event = new ProtectionEvents.KeysetLoad();
+            event.begin();
+            long start = Metrics.start();
+            byte[] content = storage.read(fileName);
+            if (content == null) {
+                Metrics.error(Metrics.Operation.KEYSET_LOAD, start);
+                throw new FileNotFoundException(fileName);
+            }
+            byte[] contentHash = MessageDigest.getInstance(CONTENT_DIGEST).digest(content);
+
+            if (keyset != null && MessageDigest.isEqual(keyset.contentHash, contentHash)) {
+                keyset = new CachedKeyset(keyset, version);
+            } else {
+                // Read the keyset into a KeysetHandle
+                KeysetHandle handle = CleartextKeysetHandle.read(JsonKeysetReader.withBytes(content));
+                if (keyset != null) {
+                    counters.reloads.increment();
+                }
+                keyset = new CachedKeyset(version, contentHash, handle);
+            }
+            Metrics.record(Metrics.Operation.KEYSET_LOAD, start, content.length);
+            event.keysetFile = fileName;
+            event.size = content.length;
+            event.commit();
+            KEYSETS.put(fileName, keyset);
+            return keyset;
+        }
+    }
+
+    /**
+     * Hit, miss and reload counters of a keyset file
+     */
+    private static final class Counters {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder reloads = new LongAdder();
+    }
+
+    /**
+     * Keyset read from a file together with the primitives already built from it
+     */
+    private static final class CachedKeyset {
+
+        private final long version;
+        private final byte[] contentHash;
+        private final KeysetHandle handle;
+        private final ConcurrentHashMap<Class<?>, Object> primitives;
+        private volatile long lastCheck;
+
+        private CachedKeyset(long version, byte[] contentHash, KeysetHandle handle) {
+            this.version = version;
+            this.contentHash = contentHash;
+            this.handle = handle;
+            this.primitives = new ConcurrentHashMap<>();
+            this.lastCheck = System.nanoTime();
+        }
+
+        /**
+         * Keep the primitives of a keyset whose file was touched but has the same content
+         */
+        private CachedKeyset(CachedKeyset keyset, long version) {
+            this.version = version;
+            this.contentHash = keyset.contentHash;
+            this.handle = keyset.handle;
+            this.primitives = keyset.primitives;
+            this.lastCheck = System.nanoTime();
+        }
+
+        /**
+         * Check if the refresh interval has passed since the file was last checked
+         * @return true if the file has to be checked
+         */
+        private boolean needsCheck() {
+            return System.nanoTime() - lastCheck >= refreshNanos;
+        }
+
+        private void checked() {
+            lastCheck = System.nanoTime();
+        }
+
+        private <P> P getPrimitive(Class<P> primitiveClass) throws GeneralSecurityException {
+            Object primitive = primitives.get(primitiveClass);
+            if (primitive == null) {
+                // Tink primitives are thread safe, a duplicated build is harmless
+                primitive = handle.getPrimitive(primitiveClass);
+                Object previous = primitives.putIfAbsent(primitiveClass, primitive);
+                if (previous != null) {
+                    primitive = previous;
+                }
+            }
+            return primitiveClass.cast(primitive);
+        }
+    }
+
+    private KeysetRegistry() {}
+}
@@ -0,0 +1,163 @@
+package phenopackets.securityMechanisms;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Storage backend that keeps every file in memory, for tests and benchmarks. Files that were
+ * not written, such as the signing keys, are read from the classpath
+ */
+public class MemoryStorageBackend implements StorageBackend {
+
+    private final ConcurrentHashMap<String, byte[]> files = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> versions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, EntryStore> stores = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HashIndex> hashIndexes = new ConcurrentHashMap<>();
+    private final AtomicLong lastVersion = new AtomicLong();
+
+    @Override
+    public byte[] read(String name) throws IOException{
+        // Input validation
+        if (name == null || name.length() == 0){
+            throw new NullPointerException();
+        }
+        byte[] content = files.get(name);
+        if (content == null) {
+            return ExternalResources.readResource(name);
+        }
+        return content.clone();
+    }
+
+    @Override
+    public void write(String name, byte[] content){
+        // Input validation
+        if (name == null || name.length() == 0){
+            throw new NullPointerException();
+        }
+        if (content == null){
+            throw new NullPointerException();
+        }
+        files.put(name, content.clone());
+        versions.put(name, lastVersion.incrementAndGet());
+    }
+
+    @Override
+    public void append(String name, byte[] content){
+        // Input validation
+        if (name == null || name.length() == 0){
+            throw new NullPointerException();
+        }
+        if (content == null){
+            throw new NullPointerException();
+        }
+        files.merge(name, content.clone(), (previous, added) -> {
+            byte[] merged = Arrays.copyOf(previous, previous.length + added.length);
+            System.arraycopy(added, 0, merged, previous.length, added.length);
+            return merged;
+        });
+        versions.put(name, lastVersion.incrementAndGet());
+    }
+
+    @Override
+    public boolean exists(String name){
+        // Input validation
+        if (name == null || name.length() == 0){
+            throw new NullPointerException();
+        }
+        byte[] content = files.get(name);
+        return content != null && content.length > 0;
+    }
+
+    @Override
+    public long getVersion(String name){
+        // Input validation
+        if (name == null || name.length() == 0){
+            throw new NullPointerException();
+        }
+        return versions.getOrDefault(name, -1L);
+    }
+
+    @Override
+    public EntryStore openLogStore(String name){
+        // Input validation
+        if (name == null || name.length() == 0){
+            throw new NullPointerException();
+        }
+        return stores.computeIfAbsent(name, storeName -> new MemoryEntryStore());
+    }
+
+    @Override
+    public EntryStore openIndexedStore(String name){
+        return openLogStore(name);
+    }
+
+    @Override
+    public HashIndex openHashIndex(String name){
+        // Input validation
+        if (name == null || name.length() == 0){
+            throw new NullPointerException();
+        }
+        return hashIndexes.computeIfAbsent(name, indexName -> HashIndex.inMemory());
+    }
+
+    @Override
+    public void close(){
+        files.clear();
+        versions.clear();
+        stores.clear();
+        hashIndexes.clear();
+    }
+
+    /**
+     * Entries of a store kept in a map
+     */
+    private static final class MemoryEntryStore implements EntryStore {
+
+        private final ConcurrentHashMap<String, byte[]> entries = new ConcurrentHashMap<>();
+
+        @Override
+        public void put(String key, byte[] value){
+            // Input validation
+            if (key == null || key.length() == 0){
+                throw new NullPointerException();
+            }
+            if (value == null){
+                throw new NullPointerException();
+            }
+            entries.put(key, value.clone());
+        }
+
+        @Override
+        public byte[] get(String key){
+            // Input validation
+            if (key == null || key.length() == 0){
+                throw new NullPointerException();
+            }
+            byte[] value = entries.get(key);
+            return (value != null) ? value.clone() : null;
+        }
+
+        @Override
+        public boolean contains(String key){
+            return entries.containsKey(key);
+        }
+
+        @Override
+        public int size(){
+            return entries.size();
+        }
+
+        @Override
+        public void flush(){
+            // Nothing to write
+        }
+
+        @Override
+        public void close(){
+            // Nothing to release
+        }
+    }
+}
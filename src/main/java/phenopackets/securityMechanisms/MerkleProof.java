@@ -0,0 +1,120 @@
+package phenopackets.securityMechanisms;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Audit path of an element of a Merkle tree: the position of the leaf and the hashes of the
+ * siblings from the leaf to the root
+ */
+public class MerkleProof {
+
+    private final int leafIndex;
+    private final int leafCount;
+    private final List<byte[]> siblings;
+
+    MerkleProof(int leafIndex, int leafCount, List<byte[]> siblings) {
+        this.leafIndex = leafIndex;
+        this.leafCount = leafCount;
+        this.siblings = Collections.unmodifiableList(siblings);
+    }
+
+    /**
+     * Method to read a proof sent with an element
+     * @param proofBytes required - the serialized proof
+     * @return the proof
+     */
+    public static MerkleProof parse(byte[] proofBytes){
+        // Input validation
+        if (proofBytes == null){
+            throw new NullPointerException();
+        }
+        if (proofBytes.length < 12){
+            throw new IllegalArgumentException("Malformed proof");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(proofBytes);
+        int leafIndex = buffer.getInt();
+        int leafCount = buffer.getInt();
+        int count = buffer.getInt();
+        if (count < 0 || count > 32 || buffer.remaining() != count * KeccakEngine.DIGEST_SIZE){
+            throw new IllegalArgumentException("Malformed proof");
+        }
+        List<byte[]> siblings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] sibling = new byte[KeccakEngine.DIGEST_SIZE];
+            buffer.get(sibling);
+            siblings.add(sibling);
+        }
+        return new MerkleProof(leafIndex, leafCount, siblings);
+    }
+
+    /**
+     * Method to serialize the proof so it can be sent with the element
+     * @return the proof bytes
+     */
+    public byte[] toByteArray(){
+        ByteBuffer buffer = ByteBuffer.allocate(12 + siblings.size() * KeccakEngine.DIGEST_SIZE);
+        buffer.putInt(leafIndex).putInt(leafCount).putInt(siblings.size());
+        for (byte[] sibling : siblings) {
+            buffer.put(sibling);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Method to compute the root from an element and its audit path, with one hash per level
+     * @param name required - name of the element
+     * @param elementHash required - Keccak hash of the element
+     * @return the root hash, null if the path does not match the size of the tree
+     */
+    public byte[] computeRoot(String name, byte[] elementHash){
+        if (leafIndex < 0 || leafIndex >= leafCount) {
+            return null;
+        }
+        byte[] hash = MerkleTree.leafHash(name, elementHash);
+        int position = leafIndex;
+        int width = leafCount;
+        int next = 0;
+        while (width > 1) {
+            int sibling = position ^ 1;
+            if (sibling < width) {
+                if (next == siblings.size()) {
+                    return null;
+                }
+                byte[] siblingHash = siblings.get(next++);
+                hash = ((position & 1) == 0) ? MerkleTree.nodeHash(hash, siblingHash) : MerkleTree.nodeHash(siblingHash, hash);
+            }
+            position >>= 1;
+            width = (width + 1) / 2;
+        }
+        return (next == siblings.size()) ? hash : null;
+    }
+
+    /**
+     * Method to check an element against a known root
+     * @param name required - name of the element
+     * @param elementHash required - Keccak hash of the element
+     * @param root required - the root hash
+     * @return true if the element belongs to the tree of the root
+     */
+    public boolean verify(String name, byte[] elementHash, byte[] root){
+        // Input validation
+        if (root == null){
+            throw new NullPointerException();
+        }
+        byte[] computedRoot = computeRoot(name, elementHash);
+        return computedRoot != null && MessageDigest.isEqual(computedRoot, root);
+    }
+
+    public int getLeafIndex() {
+        return leafIndex;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+}
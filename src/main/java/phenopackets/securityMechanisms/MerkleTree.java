@@ -0,0 +1,141 @@
+package phenopackets.securityMechanisms;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Merkle tree over the hashes of the elements of a Phenopacket. Only the root is signed and
+ * each element can be verified with its audit path
+ */
+public class MerkleTree {
+
+    private static final byte LEAF_PREFIX = 0x00;
+    private static final byte NODE_PREFIX = 0x01;
+
+    private final List<String> names;
+    private final List<byte[][]> levels;
+
+    /**
+     * Create the tree of the given elements. A node without sibling is moved up to the next level
+     * @param names required - name of each element, such as diseases/0
+     * @param elementHashes required - Keccak hash of each element, in the same order as the names
+     */
+    public MerkleTree(List<String> names, List<byte[]> elementHashes) {
+        // Input validation
+        if (names == null || elementHashes == null){
+            throw new NullPointerException();
+        }
+        if (names.isEmpty() || names.size() != elementHashes.size()){
+            throw new IllegalArgumentException("Each element needs a name and a hash");
+        }
+        if (names.size() != names.stream().distinct().count()){
+            throw new IllegalArgumentException("The element names must be unique");
+        }
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+
+        // Leaves
+        byte[][] level = new byte[names.size()][];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = leafHash(names.get(i), elementHashes.get(i));
+        }
+        levels = new ArrayList<>();
+        levels.add(level);
+
+        // Inner nodes up to the root
+        while (level.length > 1) {
+            byte[][] parent = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parent.length; i++) {
+                int left = 2 * i;
+                parent[i] = (left + 1 < level.length) ? nodeHash(level[left], level[left + 1]) : level[left];
+            }
+            levels.add(parent);
+            level = parent;
+        }
+    }
+
+    /**
+     * @return the root hash, the value that is signed
+     */
+    public byte[] getRoot() {
+        return levels.get(levels.size() - 1)[0].clone();
+    }
+
+    /**
+     * @return the names of the elements in the order of the leaves
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Method to get the audit path of an element
+     * @param name required - name of the element
+     * @return the proof of the element
+     */
+    public MerkleProof getProof(String name){
+        // Input validation
+        if (name == null || name.length() == 0){
+            throw new NullPointerException();
+        }
+        int index = names.indexOf(name);
+        if (index < 0){
+            throw new IllegalArgumentException("Unknown element " + name);
+        }
+
+        // The sibling of the node at each level, if it has one
+        List<byte[]> siblings = new ArrayList<>();
+        int position = index;
+        for (int i = 0; i < levels.size() - 1; i++) {
+            byte[][] level = levels.get(i);
+            int sibling = position ^ 1;
+            if (sibling < level.length) {
+                siblings.add(level[sibling].clone());
+            }
+            position >>= 1;
+        }
+        return new MerkleProof(index, names.size(), siblings);
+    }
+
+    /**
+     * Method to compute the hash of a leaf, the name binds the hash to its position in the Phenopacket
+     * @param name required - name of the element
+     * @param elementHash required - Keccak hash of the element
+     * @return the leaf hash
+     */
+    static byte[] leafHash(String name, byte[] elementHash){
+        // Input validation
+        if (name == null || name.length() == 0){
+            throw new NullPointerException();
+        }
+        if (elementHash == null || elementHash.length != KeccakEngine.DIGEST_SIZE){
+            throw new IllegalArgumentException("The element hash must have " + KeccakEngine.DIGEST_SIZE + " bytes");
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] leaf = new byte[1 + 4 + nameBytes.length + elementHash.length];
+        leaf[0] = LEAF_PREFIX;
+        leaf[1] = (byte) (nameBytes.length >>> 24);
+        leaf[2] = (byte) (nameBytes.length >>> 16);
+        leaf[3] = (byte) (nameBytes.length >>> 8);
+        leaf[4] = (byte) nameBytes.length;
+        System.arraycopy(nameBytes, 0, leaf, 5, nameBytes.length);
+        System.arraycopy(elementHash, 0, leaf, 5 + nameBytes.length, elementHash.length);
+        return KeccakEngine.hash(leaf);
+    }
+
+    /**
+     * Method to compute the hash of an inner node
+     * @param left required - hash of the left child
+     * @param right required - hash of the right child
+     * @return the node hash
+     */
+    static byte[] nodeHash(byte[] left, byte[] right){
+        byte[] node = new byte[1 + 2 * KeccakEngine.DIGEST_SIZE];
+        node[0] = NODE_PREFIX;
+        System.arraycopy(left, 0, node, 1, KeccakEngine.DIGEST_SIZE);
+        System.arraycopy(right, 0, node, 1 + KeccakEngine.DIGEST_SIZE, KeccakEngine.DIGEST_SIZE);
+        return KeccakEngine.hash(node);
+    }
+}
@@ -0,0 +1,363 @@
+package phenopackets.securityMechanisms;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger.Level;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Metrics of the security operations: a latency histogram, the number of operations, the errors and
+ * the bytes processed by each operation. They are disabled by default, they are enabled with the
+ * phenopackets.metrics property or setEnabled. A disabled operation only reads a flag, nothing is
+ * allocated or timed. The metrics are exported in the Prometheus text format or as a JSON snapshot,
+ * to a file or from an HTTP endpoint
+ */
+public final class Metrics {
+
+    private static final System.Logger LOGGER = System.getLogger(Metrics.class.getName());
+
+    /**
+     * Instrumented operations
+     */
+    public enum Operation {
+        ENCRYPT("encrypt"),
+        DECRYPT("decrypt"),
+        SIGN("sign"),
+        VERIFY("verify"),
+        HASH_COMPUTE("hash_compute"),
+        HASH_LOOKUP("hash_lookup"),
+        KEYSET_LOAD("keyset_load"),
+        STORE_READ("store_read"),
+        STORE_WRITE("store_write");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return name of the operation in the exported metrics
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final String PREFIX = "phenopackets_operation";
+    private static final String PROMETHEUS_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String JSON_TYPE = "application/json";
+
+    // Upper bounds of the latency buckets in nanoseconds, from 1 microsecond to 10 seconds
+    private static final long[] BOUNDS = {
+        1_000L, 2_500L, 5_000L, 10_000L, 25_000L, 50_000L, 100_000L, 250_000L, 500_000L,
+        1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L, 100_000_000L, 250_000_000L, 500_000_000L,
+        1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L};
+    private static final String[] BOUND_LABELS = new String[BOUNDS.length];
+
+    private static final Stats[] STATS = new Stats[Operation.values().length];
+
+    private static volatile boolean enabled = Boolean.getBoolean("phenopackets.metrics");
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUND_LABELS[i] = BigDecimal.valueOf(BOUNDS[i], 9).stripTrailingZeros().toPlainString();
+        }
+        for (int i = 0; i < STATS.length; i++) {
+            STATS[i] = new Stats();
+        }
+    }
+
+    private Metrics() {}
+
+    /**
+     * Method to enable or disable the metrics, the values already recorded are kept
+     * @param value required - true to record the operations
+     */
+    public static void setEnabled(boolean value){
+        enabled = value;
+    }
+
+    /**
+     * @return true if the operations are recorded
+     */
+    public static boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * Method to start timing an operation
+     * @return the start time, 0 if the metrics are disabled
+     */
+    public static long start(){
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Method to record a finished operation. Nothing is recorded if the metrics were disabled at its start
+     * @param operation required - the operation
+     * @param start required - value returned by start
+     * @param bytes required - bytes processed by the operation
+     */
+    public static void record(Operation operation, long start, long bytes){
+        if (start == 0) {
+            return;
+        }
+        STATS[operation.ordinal()].add(System.nanoTime() - start, bytes);
+    }
+
+    /**
+     * Method to record a failed operation, such as an exception or a signature that is not valid.
+     * The errors are counted apart from the latency
+     * @param operation required - the operation
+     * @param start required - value returned by start
+     */
+    public static void error(Operation operation, long start){
+        if (start == 0) {
+            return;
+        }
+        STATS[operation.ordinal()].errors.increment();
+    }
+
+    /**
+     * Method to get the number of operations recorded
+     * @param operation required - the operation
+     * @return number of successful operations
+     */
+    public static long getCount(Operation operation){
+        return STATS[operation.ordinal()].count();
+    }
+
+    /**
+     * Method to get the number of failed operations
+     * @param operation required - the operation
+     * @return number of errors
+     */
+    public static long getErrorCount(Operation operation){
+        return STATS[operation.ordinal()].errors.sum();
+    }
+
+    /**
+     * Method to get the bytes processed by the successful operations
+     * @param operation required - the operation
+     * @return number of bytes
+     */
+    public static long getBytes(Operation operation){
+        return STATS[operation.ordinal()].bytes.sum();
+    }
+
+    /**
+     * Method to clear every recorded value
+     */
+    public static void reset(){
+        for (Stats stats : STATS) {
+            stats.reset();
+        }
+    }
+
+    /**
+     * Method to export the metrics in the Prometheus text format
+     * @return the metrics text
+     */
+    public static String toPrometheus(){
+        StringBuilder text = new StringBuilder(8192);
+        text.append("# HELP ").append(PREFIX).append("_seconds Latency of the security operations\n");
+        text.append("# TYPE ").append(PREFIX).append("_seconds histogram\n");
+        for (Operation operation : Operation.values()) {
+            Stats stats = STATS[operation.ordinal()];
+            long cumulative = 0;
+            for (int i = 0; i <= BOUNDS.length; i++) {
+                cumulative += stats.buckets[i].sum();
+                text.append(PREFIX).append("_seconds_bucket{operation=\"").append(operation.label)
+                    .append("\",le=\"").append(i < BOUNDS.length ? BOUND_LABELS[i] : "+Inf").append("\"} ").append(cumulative).append('\n');
+            }
+            text.append(PREFIX).append("_seconds_sum{operation=\"").append(operation.label).append("\"} ")
+                .append(stats.nanos.sum() / 1e9).append('\n');
+            text.append(PREFIX).append("_seconds_count{operation=\"").append(operation.label).append("\"} ")
+                .append(cumulative).append('\n');
+        }
+        appendCounter(text, "_errors_total", "Failed security operations", stats -> stats.errors.sum());
+        appendCounter(text, "_bytes_total", "Bytes processed by the security operations", stats -> stats.bytes.sum());
+        return text.toString();
+    }
+
+    /**
+     * Method to export a JSON snapshot of the metrics, with the count, errors, bytes, mean and
+     * percentiles of each operation. The percentiles are the upper bound of their bucket
+     * @return the JSON text
+     */
+    public static String toJson(){
+        StringWriter text = new StringWriter();
+        try (JsonWriter json = new JsonWriter(text)) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("timestamp").value(System.currentTimeMillis());
+            json.name("enabled").value(enabled);
+            json.name("operations").beginObject();
+            for (Operation operation : Operation.values()) {
+                Stats stats = STATS[operation.ordinal()];
+                long[] buckets = stats.bucketCounts();
+                long count = 0;
+                for (long bucket : buckets) {
+                    count += bucket;
+                }
+                json.name(operation.label).beginObject();
+                json.name("count").value(count);
+                json.name("errors").value(stats.errors.sum());
+                json.name("bytes").value(stats.bytes.sum());
+                json.name("meanMillis").value((count == 0) ? 0 : stats.nanos.sum() / 1e6 / count);
+                json.name("p50Millis").value(percentile(buckets, count, 0.50));
+                json.name("p95Millis").value(percentile(buckets, count, 0.95));
+                json.name("p99Millis").value(percentile(buckets, count, 0.99));
+                json.endObject();
+            }
+            json.endObject();
+            json.endObject();
+        } catch (IOException ex) {
+            // A StringWriter does not fail
+            throw new UncheckedIOException(ex);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Method to write the metrics to a file, as a JSON snapshot if the name ends with .json and in
+     * the Prometheus text format otherwise. The file is replaced at once, so it can be read at any time
+     * @param file required - the metrics file
+     * @throws IOException
+     */
+    public static void writeTo(Path file) throws IOException{
+        // Input validation
+        if (file == null){
+            throw new NullPointerException();
+        }
+        String content = file.getFileName().toString().endsWith(".json") ? toJson() : toPrometheus();
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tempFile, content, StandardCharsets.UTF_8);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Method to serve the metrics over HTTP: /metrics in the Prometheus text format and
+     * /metrics.json as a JSON snapshot
+     * @param address required - address and port of the server, port 0 picks a free one
+     * @return the running server, it has to be stopped by the caller
+     * @throws IOException
+     */
+    public static HttpServer startServer(InetSocketAddress address) throws IOException{
+        // Input validation
+        if (address == null){
+            throw new NullPointerException();
+        }
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics.json", exchange -> respond(exchange, JSON_TYPE, toJson()));
+        server.createContext("/metrics", exchange -> respond(exchange, PROMETHEUS_TYPE, toPrometheus()));
+        server.start();
+        LOGGER.log(Level.INFO, () -> "Serving metrics at http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/metrics");
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException{
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static void appendCounter(StringBuilder text, String suffix, String help, ToLongFunction<Stats> value){
+        text.append("# HELP ").append(PREFIX).append(suffix).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(PREFIX).append(suffix).append(" counter\n");
+        for (Operation operation : Operation.values()) {
+            text.append(PREFIX).append(suffix).append("{operation=\"").append(operation.label).append("\"} ")
+                .append(value.applyAsLong(STATS[operation.ordinal()])).append('\n');
+        }
+    }
+
+    private static double percentile(long[] buckets, long count, double quantile){
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            cumulative += buckets[i];
+            if (cumulative >= rank) {
+                return BOUNDS[i] / 1e6;
+            }
+        }
+        // Slower than the last bound, which is given as the value
+        return BOUNDS[BOUNDS.length - 1] / 1e6;
+    }
+
+    private static int bucket(long nanos){
+        int i = 0;
+        while (i < BOUNDS.length && nanos > BOUNDS[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Values of an operation, they are only added so the threads do not wait for each other
+     */
+    private static final class Stats {
+
+        private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        private Stats() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void add(long elapsedNanos, long processedBytes){
+            buckets[bucket(elapsedNanos)].increment();
+            nanos.add(elapsedNanos);
+            bytes.add(processedBytes);
+        }
+
+        private long count(){
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        private long[] bucketCounts(){
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return counts;
+        }
+
+        private void reset(){
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            nanos.reset();
+            bytes.reset();
+            errors.reset();
+        }
+    }
+}
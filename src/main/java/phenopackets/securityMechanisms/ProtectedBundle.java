@@ -0,0 +1,160 @@
+package phenopackets.securityMechanisms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Result of protecting a Phenopacket in a single pass: the hash of each element, the encrypted
+ * MetaData, the Phenopacket without MetaData and the signature of the whole Phenopacket. The bundle
+ * is stored with a single write
+ */
+public class ProtectedBundle {
+
+    private static final String BUNDLE_STORE = "bundles";
+
+    private final String phenopacketId;
+    private final Map<String, byte[]> hashes;
+    private final byte[] cipherMetaData;
+    private final byte[] phenopacketBytes;
+    private final byte[] signature;
+
+    /**
+     * Create a protected bundle
+     * @param phenopacketId required - the Phenopacket ID
+     * @param hashes required - Keccak hash of each element by its name
+     * @param cipherMetaData required - the encrypted MetaData
+     * @param phenopacketBytes required - the serialized Phenopacket without MetaData
+     * @param signature required - signature of the serialized Phenopacket
+     */
+    public ProtectedBundle(String phenopacketId, Map<String, byte[]> hashes, byte[] cipherMetaData, byte[] phenopacketBytes, byte[] signature) {
+        // Input validation
+        if (phenopacketId == null || phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+        if (hashes == null || cipherMetaData == null || phenopacketBytes == null || signature == null){
+            throw new NullPointerException();
+        }
+        this.phenopacketId = phenopacketId;
+        this.hashes = Collections.unmodifiableMap(new LinkedHashMap<>(hashes));
+        this.cipherMetaData = cipherMetaData;
+        this.phenopacketBytes = phenopacketBytes;
+        this.signature = signature;
+    }
+
+    /**
+     * Method to store the bundle with a single write
+     * @throws IOException
+     */
+    public void save() throws IOException{
+        EntryStore store = getBundleStore();
+        store.put(phenopacketId, toByteArray());
+        store.flush();
+    }
+
+    /**
+     * Method to get the stored bundle of a Phenopacket
+     * @param phenopacketId required - the Phenopacket ID
+     * @return the bundle, null if the Phenopacket was not protected with a bundle
+     * @throws IOException
+     */
+    public static ProtectedBundle load(String phenopacketId) throws IOException{
+        // Input validation
+        if (phenopacketId == null || phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+        byte[] bundleBytes = getBundleStore().get(phenopacketId);
+        return (bundleBytes == null) ? null : parse(bundleBytes);
+    }
+
+    /**
+     * Method to serialize the bundle
+     * @return the bundle bytes
+     */
+    public byte[] toByteArray(){
+        byte[] idBytes = phenopacketId.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> names = new ArrayList<>(hashes.size());
+        int size = 4 + idBytes.length + 4 + 4 + cipherMetaData.length + 4 + phenopacketBytes.length + 4 + signature.length;
+        for (String name : hashes.keySet()) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            names.add(nameBytes);
+            size += 4 + nameBytes.length + KeccakEngine.DIGEST_SIZE;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(idBytes.length).put(idBytes);
+        buffer.putInt(hashes.size());
+        int i = 0;
+        for (byte[] hash : hashes.values()) {
+            byte[] nameBytes = names.get(i++);
+            buffer.putInt(nameBytes.length).put(nameBytes).put(hash);
+        }
+        buffer.putInt(cipherMetaData.length).put(cipherMetaData);
+        buffer.putInt(phenopacketBytes.length).put(phenopacketBytes);
+        buffer.putInt(signature.length).put(signature);
+        return buffer.array();
+    }
+
+    /**
+     * Method to read a stored bundle
+     * @param bundleBytes required - the serialized bundle
+     * @return the bundle
+     */
+    public static ProtectedBundle parse(byte[] bundleBytes){
+        // Input validation
+        if (bundleBytes == null){
+            throw new NullPointerException();
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bundleBytes);
+            String phenopacketId = new String(readBytes(buffer), StandardCharsets.UTF_8);
+            int count = buffer.getInt();
+            Map<String, byte[]> hashes = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = new String(readBytes(buffer), StandardCharsets.UTF_8);
+                byte[] hash = new byte[KeccakEngine.DIGEST_SIZE];
+                buffer.get(hash);
+                hashes.put(name, hash);
+            }
+            return new ProtectedBundle(phenopacketId, hashes, readBytes(buffer), readBytes(buffer), readBytes(buffer));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed protected bundle", e);
+        }
+    }
+
+    public String getPhenopacketId() {
+        return phenopacketId;
+    }
+
+    public Map<String, byte[]> getHashes() {
+        return hashes;
+    }
+
+    public byte[] getCipherMetaData() {
+        return cipherMetaData.clone();
+    }
+
+    public byte[] getPhenopacketBytes() {
+        return phenopacketBytes.clone();
+    }
+
+    public byte[] getSignature() {
+        return signature.clone();
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer){
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static EntryStore getBundleStore() throws IOException{
+        return ExternalResources.getStorageBackend().openLogStore(BUNDLE_STORE);
+    }
+}
@@ -0,0 +1,134 @@
+package phenopackets.securityMechanisms;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * Java Flight Recorder events of the stages of the protection pipeline. Each event has the
+ * duration of its stage and the bytes it processed, so a recording opened in JDK Mission Control
+ * shows in which stage a Phenopacket spent its time. The events are enabled by the phenopackets.jfc
+ * settings, when they are not recorded beginning and committing them costs nothing
+ */
+public final class ProtectionEvents {
+
+    private static final String CATEGORY = "Phenopackets";
+
+    private ProtectionEvents() {}
+
+    /**
+     * Read of a keyset file into a KeysetHandle
+     */
+    @Name("phenopackets.KeysetLoad")
+    @Label("Keyset Load")
+    @Category({CATEGORY, "Keys"})
+    @Description("Read and parse of a keyset file")
+    public static final class KeysetLoad extends Event {
+
+        @Label("Keyset File")
+        public String keysetFile;
+
+        @Label("Size")
+        @DataAmount
+        public long size;
+    }
+
+    /**
+     * Hybrid or envelope encryption or decryption of an element
+     */
+    @Name("phenopackets.Encryption")
+    @Label("Encryption")
+    @Category({CATEGORY, "Encryption"})
+    @Description("Encryption or decryption of a Phenopacket element")
+    public static final class Encryption extends Event {
+
+        @Label("Mode")
+        public String mode;
+
+        @Label("Envelope Session")
+        @Description("The element is encrypted with the data key of a session instead of a hybrid encryption")
+        public boolean session;
+
+        @Label("Size")
+        @DataAmount
+        public long size;
+    }
+
+    /**
+     * ECDSA signature or verification of an element
+     */
+    @Name("phenopackets.Signature")
+    @Label("Signature")
+    @Category({CATEGORY, "Signature"})
+    @Description("Signature or verification of a Phenopacket element")
+    public static final class Signature extends Event {
+
+        @Label("Mode")
+        public String mode;
+
+        @Label("Verified")
+        public boolean verified;
+
+        @Label("Size")
+        @DataAmount
+        public long size;
+    }
+
+    /**
+     * Keccak hash of an element
+     */
+    @Name("phenopackets.Hash")
+    @Label("Hash")
+    @Category({CATEGORY, "Hashing"})
+    @Description("Keccak hash of a Phenopacket element")
+    public static final class Hash extends Event {
+
+        @Label("Size")
+        @DataAmount
+        public long size;
+    }
+
+    /**
+     * Write of an encrypted element or a session key to the JSON store
+     */
+    @Name("phenopackets.JsonStore")
+    @Label("JSON Store")
+    @Category({CATEGORY, "Storage"})
+    @Description("Write of an entry to the JSON store")
+    public static final class JsonStore extends Event {
+
+        @Label("File Name")
+        public String fileName;
+
+        @Label("Element")
+        public String element;
+
+        @Label("Size")
+        @DataAmount
+        public long size;
+    }
+
+    /**
+     * Parse or print of a Phenopacket in JSON
+     */
+    @Name("phenopackets.JsonCodec")
+    @Label("JSON Codec")
+    @Category({CATEGORY, "JSON"})
+    @Description("Parse or print of a Phenopacket in JSON")
+    public static final class JsonCodec extends Event {
+
+        @Label("Mode")
+        public String mode;
+
+        @Label("Phenopacket ID")
+        public String phenopacketId;
+
+        @Label("Size")
+        @DataAmount
+        public long size;
+    }
+}
@@ -0,0 +1,314 @@
+package phenopackets.securityMechanisms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Version record of a protected Phenopacket: the hash of each element when it was last
+ * protected. Comparing it with a new version gives the elements to protect again
+ */
+public class ProtectionRecord {
+
+    private static final String VERSION_STORE = "versions";
+    private static final String KEY_SEPARATOR = "/";
+    private static final char GROUP_SEPARATOR = '/';
+
+    private final int version;
+    private final long created;
+    private final Map<String, byte[]> hashes;
+
+    /**
+     * Create a version record
+     * @param version required - version number, starting at 1
+     * @param created required - time of the version in milliseconds
+     * @param hashes required - Keccak hash of each element by its name, in the order of the Phenopacket
+     */
+    public ProtectionRecord(int version, long created, Map<String, byte[]> hashes) {
+        // Input validation
+        if (hashes == null){
+            throw new NullPointerException();
+        }
+        if (version <= 0){
+            throw new IllegalArgumentException("The version must be positive");
+        }
+        this.version = version;
+        this.created = created;
+        this.hashes = Collections.unmodifiableMap(new LinkedHashMap<>(hashes));
+    }
+
+    /**
+     * Method to get the last version record of a Phenopacket
+     * @param phenopacketId required - the Phenopacket ID
+     * @return the record, null if the Phenopacket was never protected incrementally
+     * @throws IOException
+     */
+    public static ProtectionRecord load(String phenopacketId) throws IOException{
+        // Input validation
+        if (phenopacketId == null || phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+        byte[] recordBytes = getVersionStore().get(phenopacketId);
+        return (recordBytes == null) ? null : parse(recordBytes);
+    }
+
+    /**
+     * Method to get a previous version record of a Phenopacket
+     * @param phenopacketId required - the Phenopacket ID
+     * @param version required - the version number
+     * @return the record, null if the version does not exist
+     * @throws IOException
+     */
+    public static ProtectionRecord load(String phenopacketId, int version) throws IOException{
+        // Input validation
+        if (phenopacketId == null || phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+        byte[] recordBytes = getVersionStore().get(phenopacketId + KEY_SEPARATOR + version);
+        return (recordBytes == null) ? null : parse(recordBytes);
+    }
+
+    /**
+     * Method to store the record as the last version of the Phenopacket, previous versions are kept
+     * @param phenopacketId required - the Phenopacket ID
+     * @throws IOException
+     */
+    public void save(String phenopacketId) throws IOException{
+        // Input validation
+        if (phenopacketId == null || phenopacketId.length() == 0){
+            throw new NullPointerException();
+        }
+        byte[] recordBytes = toByteArray();
+        EntryStore store = getVersionStore();
+        store.put(phenopacketId + KEY_SEPARATOR + version, recordBytes);
+        store.put(phenopacketId, recordBytes);
+        store.flush();
+    }
+
+    /**
+     * Method to compare the record with the element hashes of a new version. Elements of a repeated
+     * field, such as diseases/[index], are matched by hash first, so an element that only changed its
+     * position is moved and not modified. The elements left are paired in order as modified, the
+     * rest are added or removed
+     * @param previous optional - the last record, null if there is none and every element is added
+     * @param hashes required - Keccak hash of each element of the new version by its name
+     * @return the changes
+     */
+    public static Changes diff(ProtectionRecord previous, Map<String, byte[]> hashes){
+        // Input validation
+        if (hashes == null){
+            throw new NullPointerException();
+        }
+        Map<String, byte[]> previousHashes = (previous == null) ? Collections.emptyMap() : previous.hashes;
+        Changes changes = new Changes();
+
+        // Stored elements of each group by their hash
+        Map<String, Map<ByteBuffer, Deque<String>>> stored = new HashMap<>();
+        Map<String, Integer> positions = new HashMap<>();
+        for (Map.Entry<String, byte[]> element : previousHashes.entrySet()) {
+            positions.put(element.getKey(), positions.size());
+            stored.computeIfAbsent(group(element.getKey()), g -> new HashMap<>())
+                .computeIfAbsent(ByteBuffer.wrap(element.getValue()), h -> new ArrayDeque<>())
+                .add(element.getKey());
+        }
+
+        // Elements of the new version with the same hash as a stored one
+        Map<String, List<String>> unmatched = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> element : hashes.entrySet()) {
+            String name = element.getKey();
+            Map<ByteBuffer, Deque<String>> storedGroup = stored.get(group(name));
+            Deque<String> sameHash = (storedGroup == null) ? null : storedGroup.get(ByteBuffer.wrap(element.getValue()));
+            String storedName = (sameHash == null) ? null : sameHash.pollFirst();
+            if (storedName == null) {
+                unmatched.computeIfAbsent(group(name), g -> new ArrayList<>()).add(name);
+            } else if (!storedName.equals(name)) {
+                changes.moved.add(name);
+            }
+        }
+
+        // Elements left of each group
+        Map<String, List<String>> left = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<ByteBuffer, Deque<String>>> storedGroup : stored.entrySet()) {
+            for (Deque<String> names : storedGroup.getValue().values()) {
+                left.computeIfAbsent(storedGroup.getKey(), g -> new ArrayList<>()).addAll(names);
+            }
+        }
+        for (List<String> names : left.values()) {
+            names.sort((a, b) -> Integer.compare(positions.get(a), positions.get(b)));
+        }
+        for (Map.Entry<String, List<String>> group : unmatched.entrySet()) {
+            List<String> storedNames = left.getOrDefault(group.getKey(), Collections.emptyList());
+            List<String> names = group.getValue();
+            for (int i = 0; i < names.size(); i++) {
+                (i < storedNames.size() ? changes.modified : changes.added).add(names.get(i));
+            }
+        }
+
+        // The names of a repeated field are positions, only the ones past the new end disappear
+        for (String name : previousHashes.keySet()) {
+            if (!hashes.containsKey(name)) {
+                changes.removed.add(name);
+            }
+        }
+
+        // Hashes that are not stored with the same name
+        for (Map.Entry<String, byte[]> element : hashes.entrySet()) {
+            if (!Arrays.equals(previousHashes.get(element.getKey()), element.getValue())) {
+                changes.hashes.put(element.getKey(), element.getValue());
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Method to serialize the record
+     * @return the record bytes
+     */
+    public byte[] toByteArray(){
+        List<byte[]> names = new ArrayList<>(hashes.size());
+        int size = 4 + 8 + 4;
+        for (String name : hashes.keySet()) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            names.add(nameBytes);
+            size += 4 + nameBytes.length + KeccakEngine.DIGEST_SIZE;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(version).putLong(created).putInt(hashes.size());
+        int i = 0;
+        for (byte[] hash : hashes.values()) {
+            byte[] nameBytes = names.get(i++);
+            buffer.putInt(nameBytes.length).put(nameBytes).put(hash);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Method to read a stored record
+     * @param recordBytes required - the serialized record
+     * @return the record
+     */
+    public static ProtectionRecord parse(byte[] recordBytes){
+        // Input validation
+        if (recordBytes == null){
+            throw new NullPointerException();
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(recordBytes);
+            int version = buffer.getInt();
+            long created = buffer.getLong();
+            int count = buffer.getInt();
+            Map<String, byte[]> hashes = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                byte[] nameBytes = new byte[buffer.getInt()];
+                buffer.get(nameBytes);
+                byte[] hash = new byte[KeccakEngine.DIGEST_SIZE];
+                buffer.get(hash);
+                hashes.put(new String(nameBytes, StandardCharsets.UTF_8), hash);
+            }
+            return new ProtectionRecord(version, created, hashes);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed version record", e);
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public Map<String, byte[]> getHashes() {
+        return hashes;
+    }
+
+    /**
+     * Private method to get the group of an element, the repeated field or the element itself
+     * @param name required - name of the element
+     * @return the group name
+     */
+    private static String group(String name){
+        int separator = name.indexOf(GROUP_SEPARATOR);
+        return (separator < 0) ? name : name.substring(0, separator + 1);
+    }
+
+    private static EntryStore getVersionStore() throws IOException{
+        return ExternalResources.getStorageBackend().openLogStore(VERSION_STORE);
+    }
+
+    /**
+     * Elements of a new version that need to be protected again
+     */
+    public static final class Changes {
+
+        private final List<String> added = new ArrayList<>();
+        private final List<String> removed = new ArrayList<>();
+        private final List<String> modified = new ArrayList<>();
+        private final List<String> moved = new ArrayList<>();
+        private final Map<String, byte[]> hashes = new LinkedHashMap<>();
+
+        private Changes() {}
+
+        /**
+         * @return names of the new elements
+         */
+        public List<String> getAdded() {
+            return Collections.unmodifiableList(added);
+        }
+
+        /**
+         * @return names of the previous version that are not in the new one, their hashes are no longer valid
+         */
+        public List<String> getRemoved() {
+            return Collections.unmodifiableList(removed);
+        }
+
+        /**
+         * @return names of the elements whose content changed
+         */
+        public List<String> getModified() {
+            return Collections.unmodifiableList(modified);
+        }
+
+        /**
+         * @return names of the elements with the same content in a new position
+         */
+        public List<String> getMoved() {
+            return Collections.unmodifiableList(moved);
+        }
+
+        /**
+         * @return the hashes that have to be stored again, by element name
+         */
+        public Map<String, byte[]> getHashes() {
+            return Collections.unmodifiableMap(hashes);
+        }
+
+        /**
+         * Method to check if an element has to be protected again
+         * @param name required - name of the element
+         * @return true if the element was added or modified
+         */
+        public boolean isChanged(String name){
+            return added.contains(name) || modified.contains(name);
+        }
+
+        /**
+         * @return true if the new version is different from the previous one
+         */
+        public boolean hasChanges() {
+            return !added.isEmpty() || !removed.isEmpty() || !modified.isEmpty() || !moved.isEmpty();
+        }
+    }
+}
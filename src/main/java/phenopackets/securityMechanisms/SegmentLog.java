@@ -0,0 +1,524 @@
+package phenopackets.securityMechanisms;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+
+public class SegmentLog implements EntryStore {
+
+    private static final System.Logger LOGGER = System.getLogger(SegmentLog.class.getName());
+
+    private static final String SEGMENT_FORMAT = ".seg";
+    private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    // Frame layout: payload length, payload checksum, payload
+    private static final int FRAME_HEADER_SIZE = 8;
+    // Payload layout: key length, key, value
+    private static final int PAYLOAD_HEADER_SIZE = 4;
+
+    // Compactions of every log run in the same background thread
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "segment-log-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path directory;
+    private final long maxSegmentSize;
+    private final ConcurrentHashMap<String, Location> keyDirectory = new ConcurrentHashMap<>();
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final Object compactionLock = new Object();
+    private int activeId;
+    private FileChannel active;
+    private long activeLength;
+    private long liveBytes;
+    private long deadBytes;
+
+    /**
+     * Open a log with the default segment size
+     * @param directory required - folder with the segment files
+     * @throws IOException
+     */
+    public SegmentLog(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open a log, the key directory is rebuilt from the segments. An incomplete or damaged record
+     * at the end of the active segment is discarded, a damaged record of a closed segment is skipped
+     * @param directory required - folder with the segment files
+     * @param maxSegmentSize required - size at which a new segment is started
+     * @throws IOException
+     */
+    public SegmentLog(File directory, long maxSegmentSize) throws IOException {
+        // Input validation
+        if (directory == null){
+            throw new NullPointerException();
+        }
+        if (maxSegmentSize <= FRAME_HEADER_SIZE){
+            throw new IllegalArgumentException();
+        }
+        this.directory = directory.toPath();
+        this.maxSegmentSize = maxSegmentSize;
+        Files.createDirectories(this.directory);
+
+        // Read the segments from the oldest to the newest
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(this.directory)) {
+            files.map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(SEGMENT_FORMAT))
+                .forEach(name -> ids.add(Integer.parseInt(name.substring(0, name.length() - SEGMENT_FORMAT.length()))));
+        }
+        Collections.sort(ids);
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                int id = ids.get(i);
+                FileChannel channel = FileChannel.open(segmentPath(id), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                segments.put(id, channel);
+                activeLength = load(id, channel, i < ids.size() - 1);
+            }
+        } catch (IOException ex) {
+            for (FileChannel channel : segments.values()) {
+                channel.close();
+            }
+            throw ex;
+        }
+
+        if (segments.isEmpty()) {
+            roll(1);
+        } else {
+            activeId = segments.lastKey();
+            active = segments.get(activeId);
+        }
+    }
+
+    /**
+     * Method to append a value, a previous value with the same key becomes garbage
+     * @param key required - key of the value
+     * @param value required - bytes to store
+     * @throws IOException
+     */
+    @Override
+    public void put(String key, byte[] value) throws IOException{
+        // Input validation
+        if (key == null || key.length() == 0){
+            throw new NullPointerException();
+        }
+        if (value == null){
+            throw new NullPointerException();
+        }
+        long start = Metrics.start();
+        try {
+            append(Collections.singletonMap(key, value));
+        } catch (IOException | RuntimeException ex) {
+            Metrics.error(Metrics.Operation.STORE_WRITE, start);
+            throw ex;
+        }
+        Metrics.record(Metrics.Operation.STORE_WRITE, start, value.length);
+    }
+
+    /**
+     * Method to append several values with a single write
+     * @param entries required - values by their key
+     * @throws IOException
+     */
+    public void putAll(Map<String, byte[]> entries) throws IOException{
+        // Input validation
+        if (entries == null){
+            throw new NullPointerException();
+        }
+        long bytes = 0;
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            if (entry.getKey() == null || entry.getKey().length() == 0 || entry.getValue() == null){
+                throw new NullPointerException();
+            }
+            bytes += entry.getValue().length;
+        }
+        if (!entries.isEmpty()) {
+            long start = Metrics.start();
+            try {
+                append(entries);
+            } catch (IOException | RuntimeException ex) {
+                Metrics.error(Metrics.Operation.STORE_WRITE, start);
+                throw ex;
+            }
+            Metrics.record(Metrics.Operation.STORE_WRITE, start, bytes);
+        }
+    }
+
+    /**
+     * Method to get the last value of a key, only its record is read
+     * @param key required - key of the value
+     * @return the stored bytes, null if the key is not stored
+     * @throws IOException
+     */
+    @Override
+    public byte[] get(String key) throws IOException{
+        // Input validation
+        if (key == null || key.length() == 0){
+            throw new NullPointerException();
+        }
+
+        long start = Metrics.start();
+        lock.readLock().lock();
+        try {
+            Location location = keyDirectory.get(key);
+            if (location == null) {
+                Metrics.record(Metrics.Operation.STORE_READ, start, 0);
+                return null;
+            }
+            ByteBuffer payload = readPayload(segments.get(location.segmentId), location.offset, location.length);
+            if (payload == null) {
+                throw new IOException("Damaged record of " + key);
+            }
+            payload.position(PAYLOAD_HEADER_SIZE + payload.getInt(0));
+            byte[] value = new byte[payload.remaining()];
+            payload.get(value);
+            Metrics.record(Metrics.Operation.STORE_READ, start, value.length);
+            return value;
+        } catch (IOException | RuntimeException ex) {
+            Metrics.error(Metrics.Operation.STORE_READ, start);
+            throw ex;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Method to check if a key is stored
+     * @param key required - key of the value
+     * @return true if the key is stored
+     */
+    @Override
+    public boolean contains(String key){
+        return keyDirectory.containsKey(key);
+    }
+
+    /**
+     * @return number of stored keys
+     */
+    @Override
+    public int size(){
+        return keyDirectory.size();
+    }
+
+    /**
+     * Method to copy the live records of the closed segments into the active one and delete
+     * those segments. It runs in the background when garbage exceeds the live data
+     * @throws IOException
+     */
+    public void compact() throws IOException{
+        // Only one compaction at a time
+        synchronized (compactionLock) {
+            // Segments closed when the compaction starts
+            List<Integer> closedIds = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                closedIds.addAll(segments.headMap(activeId).keySet());
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            for (int id : closedIds) {
+                FileChannel channel;
+                lock.readLock().lock();
+                try {
+                    // The log was closed
+                    if (segments.isEmpty()) {
+                        return;
+                    }
+                    channel = segments.get(id);
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (channel == null) {
+                    continue;
+                }
+
+                // Copy forward every record that is still the last value of its key
+                long size = channel.size();
+                long position = 0;
+                while (position + FRAME_HEADER_SIZE <= size) {
+                    int length = readInt(channel, position);
+                    if (length < PAYLOAD_HEADER_SIZE) {
+                        break;
+                    }
+                    ByteBuffer payload = readPayload(channel, position, length);
+                    if (payload == null) {
+                        // Damaged record skipped when the log was opened
+                        position += FRAME_HEADER_SIZE + length;
+                        continue;
+                    }
+                    String key = readKey(payload);
+                    lock.writeLock().lock();
+                    try {
+                        Location location = keyDirectory.get(key);
+                        if (location != null && location.segmentId == id && location.offset == position) {
+                            payload.position(PAYLOAD_HEADER_SIZE + payload.getInt(0));
+                            byte[] value = new byte[payload.remaining()];
+                            payload.get(value);
+                            append(Collections.singletonMap(key, value));
+                        }
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                    position += FRAME_HEADER_SIZE + length;
+                }
+
+                // The copies are durable before the old segment is removed
+                lock.writeLock().lock();
+                try {
+                    active.force(false);
+                    segments.remove(id).close();
+                    Files.deleteIfExists(segmentPath(id));
+                    deadBytes = Math.max(0, deadBytes - size);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to write the appended records to disk
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException{
+        lock.writeLock().lock();
+        try {
+            active.force(false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException{
+        // Wait for a running compaction
+        synchronized (compactionLock) {
+            lock.writeLock().lock();
+            try {
+                if (segments.isEmpty()) {
+                    return;
+                }
+                active.force(false);
+                for (FileChannel channel : segments.values()) {
+                    channel.close();
+                }
+                segments.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Private method to frame the entries and append them to the active segment with one write
+     * @param entries required - values by their key
+     * @throws IOException
+     */
+    private void append(Map<String, byte[]> entries) throws IOException{
+        // Build every frame before taking the lock
+        List<String> keys = new ArrayList<>(entries.size());
+        List<Integer> lengths = new ArrayList<>(entries.size());
+        int total = 0;
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            int length = PAYLOAD_HEADER_SIZE + entry.getKey().getBytes(StandardCharsets.UTF_8).length + entry.getValue().length;
+            keys.add(entry.getKey());
+            lengths.add(length);
+            total += FRAME_HEADER_SIZE + length;
+        }
+        ByteBuffer frames = ByteBuffer.allocate(total);
+        CRC32 checksum = new CRC32();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            int start = frames.position();
+            frames.putInt(PAYLOAD_HEADER_SIZE + keyBytes.length + entry.getValue().length).putInt(0);
+            frames.putInt(keyBytes.length).put(keyBytes).put(entry.getValue());
+            // Checksum of the payload
+            checksum.reset();
+            checksum.update(frames.array(), start + FRAME_HEADER_SIZE, frames.position() - start - FRAME_HEADER_SIZE);
+            frames.putInt(start + 4, (int) checksum.getValue());
+        }
+        frames.flip();
+
+        boolean scheduleCompaction;
+        lock.writeLock().lock();
+        try {
+            if (activeLength > 0 && activeLength + total > maxSegmentSize) {
+                roll(activeId + 1);
+            }
+            long position = activeLength;
+            while (frames.hasRemaining()) {
+                position += active.write(frames, position);
+            }
+
+            // Point the keys to their new records
+            long offset = activeLength;
+            for (int i = 0; i < keys.size(); i++) {
+                index(keys.get(i), new Location(activeId, offset, lengths.get(i)));
+                offset += FRAME_HEADER_SIZE + lengths.get(i);
+            }
+            activeLength = position;
+            scheduleCompaction = deadBytes > liveBytes && segments.size() > 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (scheduleCompaction && compacting.compareAndSet(false, true)) {
+            COMPACTOR.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.ERROR, "Compaction error", ex);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Private method to rebuild the key directory from one segment. Only the active segment can
+     * end with a torn write: a closed segment was forced to disk before the next one was created,
+     * so its damaged records are skipped and a record that cannot be delimited is an error
+     * @param id required - segment identifier
+     * @param channel required - segment file
+     * @param sealed required - true for a closed segment, false for the active one
+     * @return length of the valid records of the segment
+     * @throws IOException
+     */
+    private long load(int id, FileChannel channel, boolean sealed) throws IOException{
+        long size = channel.size();
+        long position = 0;
+        while (position + FRAME_HEADER_SIZE <= size) {
+            int length = readInt(channel, position);
+            if (length < PAYLOAD_HEADER_SIZE || position + FRAME_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = readPayload(channel, position, length);
+            if (payload == null) {
+                if (!sealed) {
+                    break;
+                }
+                // The following records of a closed segment are still valid
+                long damaged = position;
+                LOGGER.log(Level.WARNING, () -> "Skipping damaged record at " + damaged + " of segment " + id);
+                deadBytes += FRAME_HEADER_SIZE + length;
+                position += FRAME_HEADER_SIZE + length;
+                continue;
+            }
+            index(readKey(payload), new Location(id, position, length));
+            position += FRAME_HEADER_SIZE + length;
+        }
+
+        if (position < size && sealed) {
+            throw new IOException("Segment " + id + " is damaged at " + position);
+        }
+        // Remove the incomplete or damaged tail
+        if (position < size) {
+            LOGGER.log(Level.WARNING, () -> "Discarding damaged tail of segment " + id);
+            channel.truncate(position);
+        }
+        return position;
+    }
+
+    private void index(String key, Location location){
+        Location previous = keyDirectory.put(key, location);
+        liveBytes += FRAME_HEADER_SIZE + location.length;
+        if (previous != null) {
+            liveBytes -= FRAME_HEADER_SIZE + previous.length;
+            deadBytes += FRAME_HEADER_SIZE + previous.length;
+        }
+    }
+
+    private void roll(int id) throws IOException{
+        if (active != null) {
+            active.force(false);
+        }
+        active = FileChannel.open(segmentPath(id), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(id, active);
+        activeId = id;
+        activeLength = 0;
+    }
+
+    /**
+     * Private method to read the payload of a frame and check it
+     * @param channel required - segment file
+     * @param position required - position of the frame
+     * @param length required - length of the payload
+     * @return the payload, null if the checksum does not match
+     * @throws IOException
+     */
+    private static ByteBuffer readPayload(FileChannel channel, long position, int length) throws IOException{
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + length);
+        while (frame.hasRemaining()) {
+            if (channel.read(frame, position + frame.position()) < 0) {
+                return null;
+            }
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(frame.array(), FRAME_HEADER_SIZE, length);
+        if ((int) checksum.getValue() != frame.getInt(4)) {
+            return null;
+        }
+        frame.position(FRAME_HEADER_SIZE);
+        return frame.slice();
+    }
+
+    private static String readKey(ByteBuffer payload){
+        int keyLength = payload.getInt(0);
+        return new String(payload.array(), payload.arrayOffset() + PAYLOAD_HEADER_SIZE, keyLength, StandardCharsets.UTF_8);
+    }
+
+    private static int readInt(FileChannel channel, long position) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return -1;
+            }
+        }
+        return buffer.getInt(0);
+    }
+
+    private Path segmentPath(int id){
+        return directory.resolve(String.format("%08d", id) + SEGMENT_FORMAT);
+    }
+
+    /**
+     * Position of the last record of a key
+     */
+    private static final class Location {
+        private final int segmentId;
+        private final long offset;
+        private final int length;
+
+        private Location(int segmentId, long offset, int length) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
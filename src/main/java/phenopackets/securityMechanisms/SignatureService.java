@@ -0,0 +1,170 @@
+package phenopackets.securityMechanisms;
+
+import com.google.crypto.tink.PublicKeySign;
+import com.google.crypto.tink.PublicKeyVerify;
+import com.google.crypto.tink.signature.SignatureConfig;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+
+public class SignatureService {
+
+    private static final System.Logger LOGGER = System.getLogger(SignatureService.class.getName());
+
+    private static final String PK_FILE = "pk_verify.json";
+    private static final String SK_FILE = "pk_sign.json";
+
+    private static final SignatureService INSTANCE = new SignatureService(SK_FILE, PK_FILE);
+
+    static {
+        // Set the Digital Signature configuration once
+        try {
+            SignatureConfig.register();
+        } catch (GeneralSecurityException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final String signingKeyFile;
+    private final String verifyingKeyFile;
+
+    /**
+     * Create a service that signs and verifies with the given keyset files
+     * @param signingKeyFile required - name of the file with the private key
+     * @param verifyingKeyFile required - name of the file with the public key
+     */
+    public SignatureService(String signingKeyFile, String verifyingKeyFile) {
+        // Input validation
+        if (signingKeyFile == null || signingKeyFile.length() == 0){
+            throw new NullPointerException();
+        }
+        if (verifyingKeyFile == null || verifyingKeyFile.length() == 0){
+            throw new NullPointerException();
+        }
+        this.signingKeyFile = signingKeyFile;
+        this.verifyingKeyFile = verifyingKeyFile;
+    }
+
+    /**
+     * Method to get the service that uses the default keyset files
+     * @return the shared service
+     */
+    public static SignatureService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Method to sign an element with the cached signer
+     * @param element required - the element bytes
+     * @return the signature bytes
+     * @throws GeneralSecurityException
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    public byte[] sign(byte[] element) throws GeneralSecurityException, IOException, URISyntaxException{
+        // Input validation
+        if (element == null || element.length == 0){
+            throw new NullPointerException();
+        }
+        // The signer is only rebuilt if the key file changed
+        PublicKeySign signer = KeysetRegistry.getPrimitive(signingKeyFile, PublicKeySign.class);
+
+        ProtectionEvents.Signature event = new ProtectionEvents.Signature();
+        event.begin();
+        long start = Metrics.start();
+        byte[] signature;
+        try {
+            signature = signer.sign(element);
+        } catch (GeneralSecurityException | RuntimeException ex) {
+            Metrics.error(Metrics.Operation.SIGN, start);
+            throw ex;
+        }
+        Metrics.record(Metrics.Operation.SIGN, start, element.length);
+        event.mode = "sign";
+        event.size = element.length;
+        event.commit();
+        return signature;
+    }
+
+    /**
+     * Method to verify a signature with the cached verifier
+     * @param element required - the element bytes
+     * @param signature required - the signature bytes
+     * @return boolean value. If the signatures was verified then returns true, otherwise false
+     * @throws GeneralSecurityException if the verifying key can not be loaded
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    public boolean verify(byte[] element, byte[] signature) throws GeneralSecurityException, IOException, URISyntaxException{
+        // Input validation
+        if (element == null || element.length == 0){
+            throw new NullPointerException();
+        }
+        if (signature == null || signature.length == 0){
+            throw new NullPointerException();
+        }
+        // The verifier is only rebuilt if the key file changed
+        PublicKeyVerify verifier = KeysetRegistry.getPrimitive(verifyingKeyFile, PublicKeyVerify.class);
+
+        // Check if the signature is correct
+        ProtectionEvents.Signature event = new ProtectionEvents.Signature();
+        event.begin();
+        long start = Metrics.start();
+        try{
+            verifier.verify(signature, element);
+            Metrics.record(Metrics.Operation.VERIFY, start, element.length);
+            event.verified = true;
+            return true;
+        }catch (GeneralSecurityException ex) {
+            Metrics.error(Metrics.Operation.VERIFY, start);
+            // A wrong signature is an expected result, not a problem of the service
+            if (LOGGER.isLoggable(Level.DEBUG)) {
+                LOGGER.log(Level.DEBUG, "Verification failed. " + ex);
+            }
+            return false;
+        }finally {
+            event.mode = "verify";
+            event.size = element.length;
+            event.commit();
+        }
+    }
+
+    /**
+     * Method to get the identifier of the verifying key, it changes when the key is rotated
+     * @return the key identifier
+     * @throws GeneralSecurityException
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    public long getVerifyingKeyId() throws GeneralSecurityException, IOException, URISyntaxException{
+        return ByteBuffer.wrap(KeysetRegistry.getKeysetDigest(verifyingKeyFile)).getLong();
+    }
+
+    /**
+     * Method to get the number of key lookups served from memory
+     * @return number of hits
+     */
+    public long getHitCount() {
+        return KeysetRegistry.getHitCount(signingKeyFile) + KeysetRegistry.getHitCount(verifyingKeyFile);
+    }
+
+    /**
+     * Method to get the number of key lookups that had to check or read the key files
+     * @return number of misses
+     */
+    public long getMissCount() {
+        return KeysetRegistry.getMissCount(signingKeyFile) + KeysetRegistry.getMissCount(verifyingKeyFile);
+    }
+
+    /**
+     * Method to get the number of times the signer or verifier were rebuilt
+     * @return number of reloads
+     */
+    public long getReloadCount() {
+        return KeysetRegistry.getReloadCount(signingKeyFile) + KeysetRegistry.getReloadCount(verifyingKeyFile);
+    }
+}
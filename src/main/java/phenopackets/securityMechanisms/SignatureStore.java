@@ -0,0 +1,440 @@
+package phenopackets.securityMechanisms;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+public class SignatureStore implements EntryStore {
+
+    private static final String TEMP_FORMAT = ".tmp";
+
+    // Index layout: header followed by open addressing slots
+    private static final int MAGIC = 0x50534931;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 24;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAGIC_POSITION = 0;
+    private static final int CAPACITY_POSITION = 4;
+    private static final int SIZE_POSITION = 8;
+    private static final int DATA_LENGTH_POSITION = 16;
+
+    // Record layout: key length, key, value length, value
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final Path dataPath;
+    private final Path indexPath;
+    private final FileChannel data;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private MappedByteBuffer index;
+    private int capacity;
+    private int size;
+    private long dataLength;
+
+    /**
+     * Open a store, the index is memory-mapped and any record appended after the last
+     * indexed one is recovered
+     * @param dataFile required - file with the records
+     * @param indexFile required - file with the index of the records
+     * @throws IOException
+     */
+    public SignatureStore(File dataFile, File indexFile) throws IOException {
+        // Input validation
+        if (dataFile == null || indexFile == null){
+            throw new NullPointerException();
+        }
+        this.dataPath = dataFile.toPath();
+        this.indexPath = indexFile.toPath();
+        this.data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long indexedLength = openIndex();
+        dataLength = data.size();
+
+        // The index is ahead of the data, it is rebuilt from the records
+        if (indexedLength > dataLength) {
+            createIndex(INITIAL_CAPACITY);
+            indexedLength = 0;
+        }
+        // Records written after the last update of the index
+        if (indexedLength < dataLength) {
+            recover(indexedLength);
+        }
+    }
+
+    /**
+     * Method to store a value, a previous value with the same key is replaced
+     * @param key required - key of the value
+     * @param value required - bytes to store
+     * @throws IOException
+     */
+    @Override
+    public void put(String key, byte[] value) throws IOException{
+        // Input validation
+        if (key == null || key.length() == 0){
+            throw new NullPointerException();
+        }
+        if (value == null || value.length == 0){
+            throw new NullPointerException();
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length + value.length);
+        record.putInt(keyBytes.length).put(keyBytes).putInt(value.length).put(value).flip();
+
+        long start = Metrics.start();
+        lock.writeLock().lock();
+        try {
+            // Append the record and then point the index to it
+            long offset = dataLength;
+            int length = record.remaining();
+            writeFully(record, offset);
+            dataLength += length;
+
+            insert(fingerprint(keyBytes), keyBytes, offset, length);
+            index.putLong(DATA_LENGTH_POSITION, dataLength);
+        } catch (IOException | RuntimeException ex) {
+            Metrics.error(Metrics.Operation.STORE_WRITE, start);
+            throw ex;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Metrics.record(Metrics.Operation.STORE_WRITE, start, value.length);
+    }
+
+    /**
+     * Method to get a value, only the record of the key is read
+     * @param key required - key of the value
+     * @return the stored bytes, null if the key is not stored
+     * @throws IOException
+     */
+    @Override
+    public byte[] get(String key) throws IOException{
+        // Input validation
+        if (key == null || key.length() == 0){
+            throw new NullPointerException();
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long fingerprint = fingerprint(keyBytes);
+
+        long start = Metrics.start();
+        lock.readLock().lock();
+        try {
+            int mask = capacity - 1;
+            for (int slot = firstSlot(fingerprint, mask); ; slot = (slot + 1) & mask) {
+                int position = HEADER_SIZE + slot * SLOT_SIZE;
+                int length = index.getInt(position + 16);
+                // Empty slot, the key is not stored
+                if (length == 0) {
+                    Metrics.record(Metrics.Operation.STORE_READ, start, 0);
+                    return null;
+                }
+                if (index.getLong(position) == fingerprint) {
+                    ByteBuffer record = readRecord(index.getLong(position + 8), length);
+                    if (hasKey(record, keyBytes)) {
+                        byte[] value = new byte[record.getInt()];
+                        record.get(value);
+                        Metrics.record(Metrics.Operation.STORE_READ, start, value.length);
+                        return value;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            Metrics.error(Metrics.Operation.STORE_READ, start);
+            throw ex;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Method to check if a key is stored
+     * @param key required - key of the value
+     * @return true if the key is stored
+     * @throws IOException
+     */
+    @Override
+    public boolean contains(String key) throws IOException{
+        return get(key) != null;
+    }
+
+    /**
+     * @return number of stored keys
+     */
+    @Override
+    public int size(){
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Method to import the entries of a JSON file with Base64 values, such as signatures.json
+     * @param jsonFile required - the JSON file
+     * @throws IOException
+     */
+    public void importJson(File jsonFile) throws IOException{
+        // Input validation
+        if (jsonFile == null){
+            throw new NullPointerException();
+        }
+
+        try (FileReader reader = new FileReader(jsonFile)){
+            ExternalResources.importJson(this, reader);
+        }
+    }
+
+    /**
+     * Method to write the pending changes of the records and the index to disk
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException{
+        lock.writeLock().lock();
+        try {
+            data.force(false);
+            index.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException{
+        flush();
+        data.close();
+    }
+
+    /**
+     * Private method to map the index file, a new index is created if it does not exist
+     * @return data length covered by the index
+     * @throws IOException
+     */
+    private long openIndex() throws IOException{
+        if (Files.exists(indexPath) && Files.size(indexPath) >= HEADER_SIZE) {
+            index = map(indexPath, Files.size(indexPath));
+            capacity = index.getInt(CAPACITY_POSITION);
+            size = index.getInt(SIZE_POSITION);
+            long expectedSize = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+            if (index.getInt(MAGIC_POSITION) == MAGIC && Integer.bitCount(capacity) == 1 && Files.size(indexPath) == expectedSize) {
+                return index.getLong(DATA_LENGTH_POSITION);
+            }
+        }
+        // Missing or damaged index
+        createIndex(INITIAL_CAPACITY);
+        return 0;
+    }
+
+    /**
+     * Private method to create an empty index
+     * @param newCapacity required - number of slots, power of two
+     * @throws IOException
+     */
+    private void createIndex(int newCapacity) throws IOException{
+        Files.deleteIfExists(indexPath);
+        index = map(indexPath, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        index.putInt(MAGIC_POSITION, MAGIC);
+        index.putInt(CAPACITY_POSITION, newCapacity);
+        index.putInt(SIZE_POSITION, 0);
+        index.putLong(DATA_LENGTH_POSITION, 0);
+        capacity = newCapacity;
+        size = 0;
+    }
+
+    /**
+     * Private method to index the records written after the given position. An incomplete
+     * record at the end of the file is discarded
+     * @param position required - first record not indexed
+     * @throws IOException
+     */
+    private void recover(long position) throws IOException{
+        ByteBuffer header = ByteBuffer.allocate(4);
+        while (position + RECORD_HEADER_SIZE <= dataLength) {
+            // Read the key and the length of the value
+            header.clear();
+            readFully(header, position);
+            int keyLength = header.flip().getInt();
+            if (keyLength <= 0 || position + RECORD_HEADER_SIZE + keyLength > dataLength) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            readFully(ByteBuffer.wrap(keyBytes), position + 4);
+            header.clear();
+            readFully(header, position + 4 + keyLength);
+            int valueLength = header.flip().getInt();
+            int length = RECORD_HEADER_SIZE + keyLength + valueLength;
+            if (valueLength <= 0 || position + length > dataLength) {
+                break;
+            }
+            insert(fingerprint(keyBytes), keyBytes, position, length);
+            position += length;
+        }
+
+        // Remove the incomplete record
+        if (position < dataLength) {
+            data.truncate(position);
+            dataLength = position;
+        }
+        index.putLong(DATA_LENGTH_POSITION, dataLength);
+    }
+
+    /**
+     * Private method to point a key to its record, replacing the previous record of the key
+     * @param fingerprint required - fingerprint of the key
+     * @param keyBytes required - the key
+     * @param offset required - position of the record
+     * @param length required - length of the record
+     * @throws IOException
+     */
+    private void insert(long fingerprint, byte[] keyBytes, long offset, int length) throws IOException{
+        int mask = capacity - 1;
+        int slot = firstSlot(fingerprint, mask);
+        while (true) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            int slotLength = index.getInt(position + 16);
+            if (slotLength == 0) {
+                break;
+            }
+            // Same key, the slot is reused
+            if (index.getLong(position) == fingerprint && hasKey(readRecord(index.getLong(position + 8), slotLength), keyBytes)) {
+                writeSlot(position, fingerprint, offset, length);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        writeSlot(HEADER_SIZE + slot * SLOT_SIZE, fingerprint, offset, length);
+        size++;
+        index.putInt(SIZE_POSITION, size);
+
+        // Keep the load factor under one half
+        if (size * 2 > capacity) {
+            resize(capacity * 2);
+        }
+    }
+
+    /**
+     * Private method to move every slot to a bigger index. The new index is written to a
+     * temporary file that replaces the old one
+     * @param newCapacity required - number of slots, power of two
+     * @throws IOException
+     */
+    private void resize(int newCapacity) throws IOException{
+        Path tempPath = indexPath.resolveSibling(indexPath.getFileName() + TEMP_FORMAT);
+        Files.deleteIfExists(tempPath);
+        MappedByteBuffer newIndex = map(tempPath, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        newIndex.putInt(MAGIC_POSITION, MAGIC);
+        newIndex.putInt(CAPACITY_POSITION, newCapacity);
+        newIndex.putInt(SIZE_POSITION, size);
+        newIndex.putLong(DATA_LENGTH_POSITION, index.getLong(DATA_LENGTH_POSITION));
+
+        // The keys are unique, each slot only needs a free position
+        int mask = newCapacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            int position = HEADER_SIZE + i * SLOT_SIZE;
+            int length = index.getInt(position + 16);
+            if (length == 0) {
+                continue;
+            }
+            long fingerprint = index.getLong(position);
+            int slot = firstSlot(fingerprint, mask);
+            while (newIndex.getInt(HEADER_SIZE + slot * SLOT_SIZE + 16) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            int newPosition = HEADER_SIZE + slot * SLOT_SIZE;
+            newIndex.putLong(newPosition, fingerprint);
+            newIndex.putLong(newPosition + 8, index.getLong(position + 8));
+            newIndex.putInt(newPosition + 16, length);
+        }
+
+        newIndex.force();
+        Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        index = newIndex;
+        capacity = newCapacity;
+    }
+
+    private void writeSlot(int position, long fingerprint, long offset, int length){
+        index.putLong(position, fingerprint);
+        index.putLong(position + 8, offset);
+        index.putInt(position + 16, length);
+    }
+
+    /**
+     * Private method to check if a record belongs to a key. The record is left at the value length
+     * @param record required - the record bytes
+     * @param keyBytes required - the key
+     * @return true if the record has the same key
+     */
+    private static boolean hasKey(ByteBuffer record, byte[] keyBytes){
+        int keyLength = record.getInt();
+        if (keyLength != keyBytes.length) {
+            return false;
+        }
+        byte[] recordKey = new byte[keyLength];
+        record.get(recordKey);
+        return Arrays.equals(recordKey, keyBytes);
+    }
+
+    private ByteBuffer readRecord(long offset, int length) throws IOException{
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(record, offset);
+        record.flip();
+        return record;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException{
+        while (buffer.hasRemaining()) {
+            int read = data.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + dataPath);
+            }
+            position += read;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException{
+        while (buffer.hasRemaining()) {
+            position += data.write(buffer, position);
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, long length) throws IOException{
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+
+    private static int firstSlot(long fingerprint, int mask){
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    /**
+     * Private method to compute the 64-bit fingerprint of a key (FNV-1a with a final mix)
+     * @param keyBytes required - the key
+     * @return the fingerprint
+     */
+    private static long fingerprint(byte[] keyBytes){
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : keyBytes) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
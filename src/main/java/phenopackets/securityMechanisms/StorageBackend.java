@@ -0,0 +1,77 @@
+package phenopackets.securityMechanisms;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * Place where the keysets, hashes, signatures and encrypted elements are stored
+ */
+public interface StorageBackend extends Closeable {
+
+    /**
+     * Method to read the whole content of a file
+     * @param name required - name of the file
+     * @return the content, null if the file does not exist
+     * @throws IOException
+     */
+    byte[] read(String name) throws IOException;
+
+    /**
+     * Method to replace the content of a file
+     * @param name required - name of the file
+     * @param content required - new content
+     * @throws IOException
+     */
+    void write(String name, byte[] content) throws IOException;
+
+    /**
+     * Method to add content at the end of a file, the file is created if it does not exist
+     * @param name required - name of the file
+     * @param content required - content to add
+     * @throws IOException
+     */
+    void append(String name, byte[] content) throws IOException;
+
+    /**
+     * Method to check if a file exists and is not empty
+     * @param name required - name of the file
+     * @return true if the file has content
+     */
+    boolean exists(String name);
+
+    /**
+     * Method to get a value that changes whenever the file may have changed
+     * @param name required - name of the file
+     * @return the version of the file, -1 if it does not exist
+     * @throws IOException
+     */
+    long getVersion(String name) throws IOException;
+
+    /**
+     * Method to open a store for entries that are replaced often. The same store is returned
+     * while the backend is open
+     * @param name required - name of the store
+     * @return the store
+     * @throws IOException
+     */
+    EntryStore openLogStore(String name) throws IOException;
+
+    /**
+     * Method to open a store for entries that are mostly read by key. The same store is returned
+     * while the backend is open
+     * @param name required - name of the store
+     * @return the store
+     * @throws IOException
+     */
+    EntryStore openIndexedStore(String name) throws IOException;
+
+    /**
+     * Method to open the index of the element hashes. The same index is returned while the
+     * backend is open
+     * @param name required - name of the index
+     * @return the hash index
+     * @throws IOException
+     */
+    HashIndex openHashIndex(String name) throws IOException;
+}
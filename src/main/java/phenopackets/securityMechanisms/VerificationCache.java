@@ -0,0 +1,168 @@
+package phenopackets.securityMechanisms;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Cache of signature verifications. A verdict is reused while the Phenopacket ID, the digest of
+ * the signed bytes, the signature and the verifying key are the same
+ */
+public class VerificationCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<Key, Verdict> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long keyId;
+
+    /**
+     * Create a cache
+     * @param maxEntries required - maximum number of verdicts, the least recently used is evicted
+     * @param ttlMillis required - time a verdict is valid
+     */
+    public VerificationCache(int maxEntries, long ttlMillis) {
+        if (maxEntries <= 0 || ttlMillis <= 0){
+            throw new IllegalArgumentException();
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<Key, Verdict>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Verdict> eldest) {
+                return size() > VerificationCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Method to get a cached verdict
+     * @param phenopacketId required - the Phenopacket ID
+     * @param digest required - Keccak digest of the signed bytes
+     * @param signature required - the stored signature
+     * @param verifyingKeyId required - identifier of the verifying key
+     * @return the verdict, null if it is not cached or expired
+     */
+    public synchronized Boolean get(String phenopacketId, byte[] digest, byte[] signature, long verifyingKeyId){
+        checkKey(verifyingKeyId);
+        Key key = new Key(phenopacketId, digest, verifyingKeyId);
+        Verdict entry = entries.get(key);
+        if (entry == null || System.nanoTime() - entry.created >= ttlNanos || !Arrays.equals(entry.signature, signature)) {
+            if (entry != null) {
+                entries.remove(key);
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.verdict;
+    }
+
+    /**
+     * Method to store a verdict
+     * @param phenopacketId required - the Phenopacket ID
+     * @param digest required - Keccak digest of the signed bytes
+     * @param signature required - the stored signature
+     * @param verifyingKeyId required - identifier of the verifying key
+     * @param verdict required - result of the verification
+     */
+    public synchronized void put(String phenopacketId, byte[] digest, byte[] signature, long verifyingKeyId, boolean verdict){
+        checkKey(verifyingKeyId);
+        entries.put(new Key(phenopacketId, digest, verifyingKeyId), new Verdict(signature.clone(), verdict, System.nanoTime()));
+    }
+
+    /**
+     * Method to discard every verdict
+     */
+    public synchronized void invalidateAll(){
+        entries.clear();
+    }
+
+    /**
+     * @return number of cached verdicts
+     */
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /**
+     * @return number of verifications served from the cache
+     */
+    public long getHitCount(){
+        return hits.sum();
+    }
+
+    /**
+     * @return number of verifications that were not cached
+     */
+    public long getMissCount(){
+        return misses.sum();
+    }
+
+    /**
+     * Private method to discard the verdicts of a previous key when the key is rotated
+     * @param verifyingKeyId required - identifier of the verifying key in use
+     */
+    private void checkKey(long verifyingKeyId){
+        if (verifyingKeyId != keyId) {
+            entries.clear();
+            keyId = verifyingKeyId;
+        }
+    }
+
+    /**
+     * Phenopacket ID, digest and key of a verdict
+     */
+    private static final class Key {
+        private final String phenopacketId;
+        private final byte[] digest;
+        private final long verifyingKeyId;
+        private final int hash;
+
+        private Key(String phenopacketId, byte[] digest, long verifyingKeyId) {
+            // Input validation
+            if (phenopacketId == null || digest == null){
+                throw new NullPointerException();
+            }
+            this.phenopacketId = phenopacketId;
+            this.digest = digest;
+            this.verifyingKeyId = verifyingKeyId;
+            // The digest is already uniformly distributed
+            this.hash = 31 * phenopacketId.hashCode() + ByteBuffer.wrap(digest).getInt();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return verifyingKeyId == key.verifyingKeyId && phenopacketId.equals(key.phenopacketId) && Arrays.equals(digest, key.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Cached verdict with the signature it was computed for
+     */
+    private static final class Verdict {
+        private final byte[] signature;
+        private final boolean verdict;
+        private final long created;
+
+        private Verdict(byte[] signature, boolean verdict, long created) {
+            this.signature = signature;
+            this.verdict = verdict;
+            this.created = created;
+        }
+    }
+}
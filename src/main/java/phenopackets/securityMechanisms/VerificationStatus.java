@@ -0,0 +1,15 @@
+package phenopackets.securityMechanisms;
+
+/**
+ * Result of verifying the signature of a Phenopacket
+ */
+public enum VerificationStatus {
+    // The signature matches the Phenopacket
+    VERIFIED,
+    // The signature does not match the Phenopacket
+    BAD_SIGNATURE,
+    // There is no signature stored for the Phenopacket
+    MISSING_SIGNATURE,
+    // The signature could not be checked, the stored data or the keys could not be read
+    ERROR
+}
@@ -0,0 +1,93 @@
+package phenopackets.securityMechanisms;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.crypto.tink.HybridDecrypt;
+import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.subtle.Hex;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+
+public class HpkeTest {
+
+    // RFC 9180, appendix A: info, plaintext and associated data of the first message
+    private static final byte[] INFO = Hex.decode("4f6465206f6e2061204772656369616e2055726e");
+    private static final byte[] PLAINTEXT = Hex.decode("4265617574792069732074727574682c20747275746820626561757479");
+    private static final byte[] AAD = Hex.decode("436f756e742d30");
+
+    /*
+     * TEST: DHKEM(X25519, HKDF-SHA256), HKDF-SHA256, AES-128-GCM (RFC 9180, A.1.1)
+     */
+    @Test
+    void checkAes128GcmVector() throws GeneralSecurityException{
+        checkVector(Hpke.Aead.AES_128_GCM,
+            "52c4a758a802cd8b936eceea314432798d5baf2d7e9235dc084ab1b9cfa2f736",
+            "37fda3567bdbd628e88668c3c8d7e97d1d1253b6d4ea6d44c150f741f1bf4431",
+            "4612c550263fc8ad58375df3f557aac531d26850903e55a9f23f21d8534e8ac8",
+            "3948cfe0ad1ddb695d780e59077195da6c56506b027329794ab02bca80815c4d",
+            "f938558b5d72f1a23810b4be2ab4f84331acc02fc97babc53a52ae8218a355a96d8770ac83d07bea87e13c512a");
+    }
+
+    /*
+     * TEST: DHKEM(X25519, HKDF-SHA256), HKDF-SHA256, ChaCha20-Poly1305 (RFC 9180, A.2.1)
+     */
+    @Test
+    void checkChaCha20Poly1305Vector() throws GeneralSecurityException{
+        checkVector(Hpke.Aead.CHACHA20_POLY1305,
+            "f4ec9b33b792c372c1d2c2063507b684ef925b8c75a42dbcbf57d63ccd381600",
+            "1afa08d3dec047a643885163f1180476fa7ddb54c6a8029ea33f95796bf2ac4a",
+            "8057991eef8f1f1af18f4a9491d16a1ce333f695d4db8e38da75975c4478e0fb",
+            "4310ee97d88cc1f088a5576c77ab0cf5c3ac797f3d95139c6c84b5429c59662a",
+            "1c5250d8034ec2b784ba2cfd69dbdb8af406cfe3ff938e131f0def8c8b60b4db21993c62ce81883d2dd1b51a28");
+    }
+
+    private static void checkVector(Hpke.Aead aead, String skEm, String enc, String skRm, String pkRm, String ct) throws GeneralSecurityException{
+        byte[] sealed = Hpke.seal(aead, Hex.decode(pkRm), Hex.decode(skEm), INFO, AAD, PLAINTEXT);
+
+        Assertions.assertArrayEquals(Hex.decode(enc), Arrays.copyOf(sealed, Hpke.KEY_LENGTH));
+        Assertions.assertArrayEquals(Hex.decode(ct), Arrays.copyOfRange(sealed, Hpke.KEY_LENGTH, sealed.length));
+        Assertions.assertArrayEquals(PLAINTEXT, Hpke.open(aead, Hex.decode(skRm), Hex.decode(pkRm), INFO, AAD, sealed));
+    }
+
+    /*
+     * TEST: a zero or low-order public key gives a zero shared secret and is rejected
+     */
+    @Test
+    void checkLowOrderKeys() throws GeneralSecurityException{
+        byte[] ephemeralKey = Hpke.generatePrivateKey();
+        byte[][] publicKeys = {
+            new byte[Hpke.KEY_LENGTH],
+            Hex.decode("0100000000000000000000000000000000000000000000000000000000000000"),
+            Hex.decode("e0eb7a7c3b41b8ae1656e3faf19fc46ada098deb9c32b1fd866205165f49b800")};
+
+        for (byte[] publicKey : publicKeys) {
+            Assertions.assertThrows(GeneralSecurityException.class,
+                () -> Hpke.seal(Hpke.Aead.AES_128_GCM, publicKey, ephemeralKey, INFO, PLAINTEXT));
+        }
+    }
+
+    /*
+     * TEST: the keys start with the format version and a key of another version is rejected
+     */
+    @Test
+    void checkKeyFormatVersion() throws GeneralSecurityException{
+        HpkeKeyManager.register();
+        byte[] privateKey = Hpke.generatePrivateKey();
+        byte[] value = new byte[3 + 2 * Hpke.KEY_LENGTH];
+        value[0] = HpkeKeyManager.FORMAT_VERSION;
+        value[2] = (byte) Hpke.Aead.AES_128_GCM.getId();
+        System.arraycopy(Hpke.publicFromPrivate(privateKey), 0, value, 3, Hpke.KEY_LENGTH);
+        System.arraycopy(privateKey, 0, value, 3 + Hpke.KEY_LENGTH, Hpke.KEY_LENGTH);
+
+        Assertions.assertNotNull(Registry.getPrimitive(HpkeKeyManager.PRIVATE_TYPE_URL,
+            BytesValue.of(ByteString.copyFrom(value)).toByteString(), HybridDecrypt.class));
+
+        value[0] = (byte) (HpkeKeyManager.FORMAT_VERSION + 1);
+        Assertions.assertThrows(GeneralSecurityException.class, () -> Registry.getPrimitive(HpkeKeyManager.PRIVATE_TYPE_URL,
+            BytesValue.of(ByteString.copyFrom(value)).toByteString(), HybridDecrypt.class));
+    }
+}
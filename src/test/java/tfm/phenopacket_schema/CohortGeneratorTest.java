@@ -0,0 +1,97 @@
+package tfm.phenopacket_schema;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.phenopackets.secure.schema.Phenopacket;
+import org.phenopackets.secure.schema.core.Disease;
+import org.phenopackets.secure.schema.core.MedicalAction;
+
+import phenopackets.PhenopacketStreamReader;
+import phenopackets.SecurePhenopacket;
+import phenopackets.examples.CohortGenerator;
+import phenopackets.examples.CohortGenerator.Distribution;
+import phenopackets.schema.BlockBuilder;
+import phenopackets.securityMechanisms.EnvelopeSession;
+import phenopackets.securityMechanisms.HybridEncryption;
+
+public class CohortGeneratorTest {
+
+    /*
+     * TEST: the same seed generates the same corpus, also in parallel and in parts
+     */
+    @Test
+    void checkDeterministicCorpus() throws GeneralSecurityException{
+        List<Phenopacket> corpus = new CohortGenerator(42).stream(200).collect(Collectors.toList());
+
+        Assertions.assertEquals(corpus, new CohortGenerator(42).stream(200).parallel().collect(Collectors.toList()));
+        Assertions.assertEquals(corpus.subList(150, 200), new CohortGenerator(42).stream(150, 50).collect(Collectors.toList()));
+        Assertions.assertEquals(corpus.get(7), new CohortGenerator(42).generate(7));
+        Assertions.assertNotEquals(corpus.get(0), new CohortGenerator(43).generate(0));
+        Assertions.assertEquals(200, corpus.stream().map(Phenopacket::getId).distinct().count());
+    }
+
+    /*
+     * TEST: the number of elements follows the distributions and every kind of MedicalAction is generated
+     */
+    @Test
+    void checkDistributions() throws GeneralSecurityException{
+        CohortGenerator generator = new CohortGenerator(7)
+            .phenotypicFeatures(Distribution.fixed(5))
+            .diseases(Distribution.fixed(2))
+            .tnmFindings(Distribution.uniform(1, 3))
+            .medicalActions(Distribution.uniform(4, 8))
+            .resources(Distribution.fixed(3))
+            .updates(Distribution.poisson(40));
+
+        Set<MedicalAction.ActionCase> actions = new HashSet<>();
+        long updates = 0;
+        for (int i = 0; i < 100; i++) {
+            Phenopacket phenopacket = generator.generate(i);
+            Assertions.assertEquals(5, phenopacket.getPhenotypicFeaturesCount());
+            Assertions.assertEquals(2, phenopacket.getDiseasesCount());
+            for (Disease disease : phenopacket.getDiseasesList()) {
+                Assertions.assertTrue(disease.getClinicalTnmFindingCount() >= 1 && disease.getClinicalTnmFindingCount() <= 3);
+            }
+            Assertions.assertTrue(phenopacket.getMedicalActionsCount() >= 4 && phenopacket.getMedicalActionsCount() <= 8);
+            Assertions.assertEquals(3, phenopacket.getMetaData().getResourcesCount());
+            phenopacket.getMedicalActionsList().forEach(action -> actions.add(action.getActionCase()));
+            updates += phenopacket.getMetaData().getUpdatesCount();
+        }
+        Assertions.assertEquals(4, actions.size());
+        // The mean of the updates is close to the one of the distribution
+        Assertions.assertEquals(40, updates / 100.0, 3);
+    }
+
+    /*
+     * TEST: the corpus is written to NDJSON and read back, the ages can be encrypted with a session
+     */
+    @Test
+    void checkCorpusFiles(@TempDir Path directory) throws IOException, GeneralSecurityException, URISyntaxException{
+        CohortGenerator generator = new CohortGenerator(1);
+        Path file = directory.resolve("corpus.ndjson.gz");
+        Assertions.assertEquals(50, generator.toNdjson(50, file, true));
+
+        Path plainFile = directory.resolve("corpus.ndjson");
+        generator.toNdjson(50, plainFile, false);
+        try (PhenopacketStreamReader reader = SecurePhenopacket.streamPhenopackets(plainFile)) {
+            Assertions.assertEquals(generator.stream(50).collect(Collectors.toList()), reader.stream().collect(Collectors.toList()));
+        }
+        Assertions.assertEquals(10, generator.toDirectory(10, directory.resolve("files")));
+
+        EnvelopeSession session = HybridEncryption.createSession("cohort".getBytes(StandardCharsets.UTF_8));
+        Phenopacket phenopacket = new CohortGenerator(1).encryptAges(session).generate(0);
+        String age = BlockBuilder.getAge(phenopacket.getSubject().getTimeAtLastEncounter(), session);
+        Assertions.assertEquals(generator.generate(0).getSubject().getTimeAtLastEncounter().getAge().getIso8601Duration(), age);
+    }
+}
@@ -0,0 +1,65 @@
+package tfm.phenopacket_schema;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.phenopackets.secure.schema.Phenopacket;
+import org.phenopackets.secure.schema.core.Individual;
+import org.phenopackets.secure.schema.core.MetaData;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.JsonFormat;
+
+import phenopackets.PhenopacketJsonCodec;
+import phenopackets.examples.Covid19;
+import phenopackets.examples.Oncology;
+
+public class PhenopacketJsonCodecTest {
+
+    private static final JsonFormat.Printer PRINTER = JsonFormat.printer().includingDefaultValueFields();
+
+    /*
+     * TEST: the codec prints the same JSON as JsonFormat and parses it back
+     */
+    @Test
+    void checkSameOutputAsJsonFormat() throws IOException, GeneralSecurityException, URISyntaxException{
+        for (Phenopacket phenopacket : examples()) {
+            String json = PRINTER.print(phenopacket);
+            Assertions.assertEquals(json, PhenopacketJsonCodec.pretty().print(phenopacket));
+            Assertions.assertEquals(PRINTER.omittingInsignificantWhitespace().print(phenopacket), PhenopacketJsonCodec.compact().print(phenopacket));
+            Assertions.assertEquals(phenopacket, PhenopacketJsonCodec.pretty().parse(json));
+        }
+    }
+
+    /*
+     * TEST: escaped characters, empty messages and timestamps with nanoseconds
+     */
+    @Test
+    void checkSpecialValues() throws IOException{
+        Phenopacket phenopacket = Phenopacket.newBuilder()
+            .setId("<id> & 'quote' = \"x\"\n\t \u0001 é")
+            .setSubject(Individual.getDefaultInstance())
+            .setMetaData(MetaData.newBuilder().setCreated(Timestamp.newBuilder().setSeconds(1620745636).setNanos(662000000)))
+            .build();
+        String json = PRINTER.print(phenopacket);
+        Assertions.assertEquals(json, PhenopacketJsonCodec.pretty().print(phenopacket));
+        Assertions.assertEquals(phenopacket, PhenopacketJsonCodec.pretty().parse(json));
+
+        // Field names as in the proto file and numbers as strings
+        Phenopacket parsed = PhenopacketJsonCodec.compact().parse("{\"id\": \"P-1\", \"meta_data\": {\"phenopacket_schema_version\": \"2.0\"}, \"subject\": {\"karyotypicSex\": 2}}");
+        Assertions.assertEquals("2.0", parsed.getMetaData().getPhenopacketSchemaVersion());
+        Assertions.assertEquals(2, parsed.getSubject().getKaryotypicSexValue());
+
+        Assertions.assertThrows(InvalidProtocolBufferException.class, () -> PhenopacketJsonCodec.pretty().parse("{\"unknown\": 1}"));
+        Assertions.assertThrows(InvalidProtocolBufferException.class, () -> PhenopacketJsonCodec.pretty().parse("{\"id\": \"P-1\""));
+    }
+
+    private static List<Phenopacket> examples() throws IOException, GeneralSecurityException, URISyntaxException{
+        return List.of(new Covid19().covid19Phenopacket(), new Oncology().createOncologyPhenopacket());
+    }
+}
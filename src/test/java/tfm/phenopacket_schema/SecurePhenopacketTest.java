@@ -1,16 +1,28 @@
 package tfm.phenopacket_schema;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.phenopackets.secure.schema.Phenopacket;
 import org.phenopackets.secure.schema.core.Disease;
 import org.phenopackets.secure.schema.core.Individual;
@@ -18,11 +30,21 @@ import org.phenopackets.secure.schema.core.MedicalAction;
 import org.phenopackets.secure.schema.core.MetaData;
 import org.phenopackets.secure.schema.core.PhenotypicFeature;
 
+import com.google.protobuf.util.JsonFormat;
 import com.nimbusds.jose.shaded.json.parser.ParseException;
 
+import phenopackets.PhenopacketExporter;
+import phenopackets.PhenopacketImporter;
+import phenopackets.PhenopacketStreamReader;
 import phenopackets.SecurePhenopacket;
 import phenopackets.examples.Covid19;
+import phenopackets.examples.Oncology;
 import phenopackets.securityMechanisms.ExternalResources;
+import phenopackets.securityMechanisms.Hashing;
+import phenopackets.securityMechanisms.KeccakEngine;
+import phenopackets.securityMechanisms.MerkleProof;
+import phenopackets.securityMechanisms.ProtectedBundle;
+import phenopackets.securityMechanisms.ProtectionRecord;
 
 public class SecurePhenopacketTest {
     Covid19 covidCase = new Covid19();
@@ -157,6 +179,232 @@ public class SecurePhenopacketTest {
 
         Assertions.assertNotEquals(phenopacket, phenopacketFromFile);
     }
+
+    /*
+     * TEST: the JSON files of a directory tree are imported and a wrong file does not stop the import
+     */
+    @Test
+    void checkDirectoryImport(@TempDir Path directory) throws IOException, GeneralSecurityException, URISyntaxException{
+        Phenopacket phenopacket = covidCase.covid19Phenopacket();
+        String json = JsonFormat.printer().print(phenopacket);
+        Files.createDirectories(directory.resolve("registry/2022"));
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(directory.resolve((i % 2 == 0 ? "registry/" : "registry/2022/") + "P-" + i + ".json"), json);
+        }
+        Files.writeString(directory.resolve("registry/wrong.json"), "{ not a Phenopacket");
+        Files.writeString(directory.resolve("registry/notes.txt"), "ignored");
+
+        // A small queue and a slow consumer make the workers wait
+        List<Phenopacket> imported = new ArrayList<>();
+        PhenopacketImporter.Report report = new PhenopacketImporter(2, 1).importDirectory(directory, p -> {
+            imported.add(p);
+            Thread.yield();
+        });
+
+        Assertions.assertEquals(21, report.getFiles());
+        Assertions.assertEquals(20, report.getImported());
+        Assertions.assertEquals(1, report.getErrors().size());
+        Assertions.assertTrue(report.getErrors().get(0).contains("wrong.json"));
+        Assertions.assertEquals(20, imported.size());
+        Assertions.assertEquals(phenopacket, imported.get(0));
+        System.out.println(report);
+    }
+
+    /*
+     * TEST: the Phenopackets of JSON array and NDJSON files are read one at a time and the reading can start again from an offset
+     */
+    @Test
+    void checkStreamingImport(@TempDir Path directory) throws IOException, GeneralSecurityException, URISyntaxException{
+        Phenopacket covidPhenopacket = covidCase.covid19Phenopacket();
+        Phenopacket oncologyPhenopacket = new Oncology().createOncologyPhenopacket();
+        JsonFormat.Printer printer = JsonFormat.printer();
+
+        // JSON array with the Phenopackets in several lines
+        Path arrayFile = directory.resolve("cohort.json");
+        Files.writeString(arrayFile, "[\n" + printer.print(covidPhenopacket) + ",\n" + printer.print(oncologyPhenopacket) + "\n]\n");
+        try (PhenopacketStreamReader reader = SecurePhenopacket.streamPhenopackets(arrayFile)) {
+            Assertions.assertEquals(List.of(covidPhenopacket, oncologyPhenopacket), reader.stream().collect(Collectors.toList()));
+        }
+
+        // NDJSON with a wrong line in the middle
+        Path ndjsonFile = directory.resolve("cohort.ndjson");
+        Files.writeString(ndjsonFile, printer.omittingInsignificantWhitespace().print(covidPhenopacket) + "\n{\"unknown\": 1}\n"
+            + printer.omittingInsignificantWhitespace().print(oncologyPhenopacket) + "\n");
+        long nextOffset;
+        try (PhenopacketStreamReader reader = new PhenopacketStreamReader(ndjsonFile)) {
+            Assertions.assertEquals(covidPhenopacket, reader.next());
+            Assertions.assertEquals(0, reader.getOffset());
+            nextOffset = reader.getNextOffset();
+            Assertions.assertThrows(IllegalArgumentException.class, reader::next);
+            Assertions.assertEquals(oncologyPhenopacket, reader.next());
+            Assertions.assertFalse(reader.hasNext());
+        }
+
+        // Start again after the first Phenopacket
+        try (PhenopacketStreamReader reader = new PhenopacketStreamReader(ndjsonFile, nextOffset)) {
+            Assertions.assertThrows(IllegalArgumentException.class, reader::next);
+            Assertions.assertEquals(oncologyPhenopacket, reader.next());
+        }
+
+        // The stream ends at the wrong line, the reader gives where to start again
+        try (PhenopacketStreamReader reader = SecurePhenopacket.streamPhenopackets(ndjsonFile)) {
+            List<Phenopacket> read = new ArrayList<>();
+            Assertions.assertThrows(IllegalArgumentException.class, () -> reader.stream().forEach(read::add));
+            Assertions.assertEquals(List.of(covidPhenopacket), read);
+            Assertions.assertEquals(0, reader.getOffset());
+            Assertions.assertTrue(reader.getNextOffset() > nextOffset);
+        }
+
+        // The wrong line and a stray character are skipped and given to the callback with their offsets
+        Files.writeString(ndjsonFile, "x\n", StandardOpenOption.APPEND);
+        Map<Long, String> errors = new LinkedHashMap<>();
+        try (PhenopacketStreamReader reader = SecurePhenopacket.streamPhenopackets(ndjsonFile)) {
+            Assertions.assertEquals(List.of(covidPhenopacket, oncologyPhenopacket),
+                reader.stream((ex, offset) -> errors.put(offset, ex.getMessage())).collect(Collectors.toList()));
+        }
+        Assertions.assertEquals(List.of(nextOffset + 1, Files.size(ndjsonFile) - 2), new ArrayList<>(errors.keySet()));
+    }
+
+    /*
+     * TEST: Phenopackets exported to NDJSON, gzip NDJSON and one file each are read back
+     */
+    @Test
+    void checkBatchExport(@TempDir Path directory) throws IOException, GeneralSecurityException, URISyntaxException, ParseException{
+        List<Phenopacket> phenopackets = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            phenopackets.add(Phenopacket.newBuilder(covidCase.covid19Phenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build());
+        }
+
+        Path ndjsonFile = directory.resolve("registry.ndjson");
+        Assertions.assertEquals(3, SecurePhenopacket.exportPhenopackets(phenopackets, ndjsonFile, false));
+        Assertions.assertEquals(3, Files.readAllLines(ndjsonFile).size());
+        try (PhenopacketStreamReader reader = SecurePhenopacket.streamPhenopackets(ndjsonFile)) {
+            Assertions.assertEquals(phenopackets, reader.stream().collect(Collectors.toList()));
+        }
+
+        Path gzipFile = directory.resolve("registry.ndjson.gz");
+        SecurePhenopacket.exportPhenopackets(phenopackets, gzipFile, true);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(gzipFile)), StandardCharsets.UTF_8))) {
+            Phenopacket.Builder phenopacketBuilder = Phenopacket.newBuilder();
+            JsonFormat.parser().merge(reader.readLine(), phenopacketBuilder);
+            Assertions.assertEquals(phenopackets.get(0), phenopacketBuilder.build());
+        }
+
+        try (PhenopacketExporter exporter = PhenopacketExporter.toDirectory(directory.resolve("files"))) {
+            exporter.writeAll(phenopackets);
+        }
+        Phenopacket phenopacket = phenopackets.get(2);
+        Assertions.assertEquals(phenopacket, SecurePhenopacket.importPhenopacket(directory.resolve("files/P-" + phenopacket.getId() + ".json").toFile()));
+    }
+
+    /*
+     * TEST: a new version of a Phenopacket only protects the elements that changed
+     */
+    @Test
+    void checkIncrementalProtection() throws IOException, GeneralSecurityException, URISyntaxException, ParseException{
+        Phenopacket phenopacket = Phenopacket.newBuilder(new Oncology().createOncologyPhenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+
+        // The first version protects every element
+        ProtectionRecord.Changes changes = SecurePhenopacket.reprotectPhenopacket(phenopacket);
+        Assertions.assertEquals(SecurePhenopacket.computeElementHashes(phenopacket).size(), changes.getAdded().size());
+        Assertions.assertEquals(1, ProtectionRecord.load(phenopacket.getId()).getVersion());
+        Assertions.assertFalse(SecurePhenopacket.reprotectPhenopacket(phenopacket).hasChanges());
+
+        // A clinician appends a PhenotypicFeature
+        Phenopacket updated = Phenopacket.newBuilder(phenopacket).addPhenotypicFeatures(covidCase.createCovidPhenotypicFeatures().get(0)).build();
+        String featureName = "phenotypic_features/" + phenopacket.getPhenotypicFeaturesCount();
+        changes = SecurePhenopacket.reprotectPhenopacket(updated);
+        Assertions.assertEquals(List.of(featureName), changes.getAdded());
+        Assertions.assertTrue(changes.getModified().isEmpty());
+        Assertions.assertEquals(1, changes.getHashes().size());
+        Assertions.assertEquals(2, ProtectionRecord.load(updated.getId()).getVersion());
+        Assertions.assertNotNull(ProtectionRecord.load(updated.getId(), 1));
+
+        // The new element is verified with the new signed root
+        MerkleProof proof = SecurePhenopacket.buildMerkleTree(updated).getProof(featureName);
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacketElement(updated.getId(), featureName, updated.getPhenotypicFeatures(phenopacket.getPhenotypicFeaturesCount()), proof));
+        Assertions.assertNotNull(Hashing.getHashBytes(updated.getId(), featureName));
+
+        // The PhenotypicFeature is removed again and its hash is dropped
+        changes = SecurePhenopacket.reprotectPhenopacket(phenopacket);
+        Assertions.assertEquals(List.of(featureName), changes.getRemoved());
+        Assertions.assertNull(Hashing.getHashBytes(phenopacket.getId(), featureName));
+        Assertions.assertNotNull(Hashing.getHashBytes(phenopacket.getId(), SecurePhenopacket.computeElementHashes(phenopacket).keySet().iterator().next()));
+    }
+
+    /*
+     * TEST: removing the first element renumbers the rest, their hashes are stored again and the last name is dropped
+     */
+    @Test
+    void checkReprotectRemovedFirstElement() throws IOException, GeneralSecurityException, URISyntaxException, ParseException{
+        PhenotypicFeature feature = covidCase.createCovidPhenotypicFeatures().get(0);
+        Phenopacket.Builder builder = Phenopacket.newBuilder(new Oncology().createOncologyPhenopacket()).setId(SecurePhenopacket.generatePhenopacketId())
+            .clearPhenotypicFeatures();
+        for (int i = 0; i < 3; i++) {
+            builder.addPhenotypicFeatures(PhenotypicFeature.newBuilder(feature).setDescription("Feature " + i));
+        }
+        Phenopacket phenopacket = builder.build();
+        SecurePhenopacket.reprotectPhenopacket(phenopacket);
+
+        Phenopacket updated = Phenopacket.newBuilder(phenopacket).removePhenotypicFeatures(0).build();
+        ProtectionRecord.Changes changes = SecurePhenopacket.reprotectPhenopacket(updated);
+        Assertions.assertEquals(List.of("phenotypic_features/2"), changes.getRemoved());
+
+        Map<String, byte[]> hashes = SecurePhenopacket.computeElementHashes(updated);
+        for (String name : List.of("phenotypic_features/0", "phenotypic_features/1")) {
+            Assertions.assertArrayEquals(hashes.get(name), Hashing.getHashBytes(updated.getId(), name));
+        }
+        Assertions.assertNull(Hashing.getHashBytes(updated.getId(), "phenotypic_features/2"));
+    }
+
+    /*
+     * TEST: a Phenopacket protected in a single pass has the same hashes and is opened with its MetaData
+     */
+    @Test
+    void checkSinglePassProtection() throws IOException, GeneralSecurityException, URISyntaxException{
+        Phenopacket phenopacket = Phenopacket.newBuilder(new Oncology().createOncologyPhenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+
+        ProtectedBundle bundle = SecurePhenopacket.protectPhenopacket(phenopacket);
+        Map<String, byte[]> hashes = SecurePhenopacket.computeElementHashes(phenopacket);
+        Assertions.assertEquals(hashes.keySet(), bundle.getHashes().keySet());
+        for (String name : hashes.keySet()) {
+            Assertions.assertArrayEquals(hashes.get(name), bundle.getHashes().get(name));
+        }
+        Assertions.assertArrayEquals(Phenopacket.newBuilder(phenopacket).clearMetaData().build().toByteArray(), bundle.getPhenopacketBytes());
+
+        // The stored bundle gives back the Phenopacket
+        Assertions.assertEquals(phenopacket, SecurePhenopacket.openProtectedBundle(phenopacket.getId()));
+        Assertions.assertNull(SecurePhenopacket.openProtectedBundle(SecurePhenopacket.generatePhenopacketId()));
+    }
+
+    /*
+     * TEST: removing an element in the middle moves the next ones without modifying them
+     */
+    @Test
+    void checkVersionDiff(){
+        Map<String, byte[]> hashes = new LinkedHashMap<>();
+        hashes.put("id", KeccakEngine.hash("id".getBytes()));
+        hashes.put("diseases/0", KeccakEngine.hash("A".getBytes()));
+        hashes.put("diseases/1", KeccakEngine.hash("B".getBytes()));
+        hashes.put("diseases/2", KeccakEngine.hash("C".getBytes()));
+        ProtectionRecord previous = ProtectionRecord.parse(new ProtectionRecord(1, 0, hashes).toByteArray());
+
+        Map<String, byte[]> newHashes = new LinkedHashMap<>();
+        newHashes.put("id", KeccakEngine.hash("id".getBytes()));
+        newHashes.put("diseases/0", KeccakEngine.hash("A".getBytes()));
+        newHashes.put("diseases/1", KeccakEngine.hash("C".getBytes()));
+        ProtectionRecord.Changes changes = ProtectionRecord.diff(previous, newHashes);
+        Assertions.assertEquals(List.of("diseases/1"), changes.getMoved());
+        // The removed names are the names of the previous version past the new end
+        Assertions.assertEquals(List.of("diseases/2"), changes.getRemoved());
+        Assertions.assertTrue(changes.getAdded().isEmpty() && changes.getModified().isEmpty());
+
+        // C is replaced by D
+        newHashes.put("diseases/1", KeccakEngine.hash("D".getBytes()));
+        changes = ProtectionRecord.diff(previous, newHashes);
+        Assertions.assertEquals(List.of("diseases/1"), changes.getModified());
+        Assertions.assertEquals(List.of("diseases/2"), changes.getRemoved());
+    }
     
 }
 
@@ -2,15 +2,32 @@ package tfm.securityMechanisms;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.phenopackets.secure.schema.Phenopacket;
+import org.phenopackets.secure.schema.core.Disease;
 
 import com.nimbusds.jose.shaded.json.parser.ParseException;
 
 import phenopackets.SecurePhenopacket;
 import phenopackets.examples.Covid19;
+import phenopackets.examples.Oncology;
+import phenopackets.securityMechanisms.EntryStore;
+import phenopackets.securityMechanisms.ExternalResources;
+import phenopackets.securityMechanisms.KeccakEngine;
+import phenopackets.securityMechanisms.MemoryStorageBackend;
+import phenopackets.securityMechanisms.MerkleProof;
+import phenopackets.securityMechanisms.MerkleTree;
+import phenopackets.securityMechanisms.SignatureService;
+import phenopackets.securityMechanisms.StorageBackend;
+import phenopackets.securityMechanisms.VerificationStatus;
 
 public class DigitalSignatureTest {
 
@@ -30,6 +47,267 @@ public class DigitalSignatureTest {
         // Function that signs the Phenopacket and save the signature in a JSON file
         SecurePhenopacket.signPhenopacket(covidPhenopacket);
         // Function that retrieves the signature from the file and verifies it
-        SecurePhenopacket.verifyPhenopacket(covidPhenopacket);
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacket(covidPhenopacket));
     }   
-}
\ No newline at end of file
+
+    /*
+     * TEST: repeated signatures are served by the cached signer and verifier
+     */
+    @Test
+    void testSignatureServiceCache() throws IOException, URISyntaxException, GeneralSecurityException{
+
+        SignatureService service = SignatureService.getInstance();
+        byte[] element = covidCase.covid19Phenopacket().toByteArray();
+
+        // The first call loads the keys
+        byte[] signature = service.sign(element);
+        Assertions.assertTrue(service.verify(element, signature));
+
+        long hits = service.getHitCount();
+        long reloads = service.getReloadCount();
+
+        // The following calls are served from memory
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(service.verify(element, service.sign(element)));
+        }
+
+        Assertions.assertTrue(service.getHitCount() > hits);
+        Assertions.assertEquals(reloads, service.getReloadCount());
+    }
+
+    /*
+     * TEST: verify several Phenopackets at once, each one gets its own status
+     */
+    @Test
+    void testBatchVerification() throws IOException, URISyntaxException, ParseException, GeneralSecurityException{
+
+        Phenopacket covidPhenopacket = covidCase.covid19Phenopacket();
+        Phenopacket oncologyPhenopacket = new Oncology().createOncologyPhenopacket();
+        SecurePhenopacket.signPhenopacket(covidPhenopacket);
+        SecurePhenopacket.signPhenopacket(oncologyPhenopacket);
+
+        // A modified Phenopacket and a Phenopacket that was never signed
+        Phenopacket modifiedPhenopacket = Phenopacket.newBuilder(oncologyPhenopacket).clearDiseases().build();
+        Phenopacket unsignedPhenopacket = Phenopacket.newBuilder(covidPhenopacket).setId(SecurePhenopacket.generatePhenopacketId()).build();
+
+        Map<String, VerificationStatus> statuses = SecurePhenopacket.verifyPhenopackets(List.of(covidPhenopacket, modifiedPhenopacket, unsignedPhenopacket));
+
+        Assertions.assertEquals(VerificationStatus.VERIFIED, statuses.get(covidPhenopacket.getId()));
+        Assertions.assertEquals(VerificationStatus.BAD_SIGNATURE, statuses.get(modifiedPhenopacket.getId()));
+        Assertions.assertEquals(VerificationStatus.MISSING_SIGNATURE, statuses.get(unsignedPhenopacket.getId()));
+
+        // The stored Phenopackets can be verified only by their ID
+        Map<String, VerificationStatus> storedStatuses = SecurePhenopacket.verifyPhenopacketsById(List.of(covidPhenopacket.getId(), unsignedPhenopacket.getId()));
+
+        Assertions.assertEquals(VerificationStatus.VERIFIED, storedStatuses.get(covidPhenopacket.getId()));
+        Assertions.assertEquals(VerificationStatus.MISSING_SIGNATURE, storedStatuses.get(unsignedPhenopacket.getId()));
+    }
+
+    /*
+     * TEST: sign the Merkle root and verify only one Disease with its proof
+     */
+    @Test
+    void testElementVerification() throws IOException, URISyntaxException, GeneralSecurityException{
+
+        Phenopacket oncologyPhenopacket = new Oncology().createOncologyPhenopacket();
+        MerkleTree tree = SecurePhenopacket.signPhenopacketElements(oncologyPhenopacket);
+
+        // The consumer only receives the Disease and its proof
+        Disease disease = oncologyPhenopacket.getDiseases(0);
+        MerkleProof proof = MerkleProof.parse(tree.getProof("diseases/0").toByteArray());
+
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacketElement(oncologyPhenopacket.getId(), "diseases/0", disease, proof));
+
+        // A modified Disease or the proof of another Phenopacket are rejected
+        Disease modifiedDisease = Disease.newBuilder(disease).setExcluded(!disease.getExcluded()).build();
+        Assertions.assertFalse(SecurePhenopacket.verifyPhenopacketElement(oncologyPhenopacket.getId(), "diseases/0", modifiedDisease, proof));
+        Assertions.assertFalse(SecurePhenopacket.verifyPhenopacketElement(SecurePhenopacket.generatePhenopacketId(), "diseases/0", disease, proof));
+    }
+
+    /*
+     * TEST: several Phenopackets signed with one signature are verified one by one and in batch
+     */
+    @Test
+    void testBatchSigning() throws IOException, URISyntaxException, GeneralSecurityException{
+
+        Phenopacket covidPhenopacket = Phenopacket.newBuilder(covidCase.covid19Phenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+        Phenopacket oncologyPhenopacket = Phenopacket.newBuilder(new Oncology().createOncologyPhenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+        Phenopacket otherPhenopacket = Phenopacket.newBuilder(covidPhenopacket).setId(SecurePhenopacket.generatePhenopacketId()).build();
+
+        SecurePhenopacket.signPhenopackets(List.of(covidPhenopacket, oncologyPhenopacket, otherPhenopacket));
+
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacket(oncologyPhenopacket));
+        Assertions.assertFalse(SecurePhenopacket.verifyPhenopacket(Phenopacket.newBuilder(oncologyPhenopacket).clearDiseases().build()));
+
+        Map<String, VerificationStatus> statuses = SecurePhenopacket.verifyPhenopacketsById(List.of(covidPhenopacket.getId(), oncologyPhenopacket.getId(), otherPhenopacket.getId()));
+        Assertions.assertEquals(List.of(VerificationStatus.VERIFIED, VerificationStatus.VERIFIED, VerificationStatus.VERIFIED), List.copyOf(statuses.values()));
+    }
+
+    /*
+     * TEST: a truncated or corrupted batch proof is not verified and does not throw
+     */
+    @Test
+    void testMalformedBatchProof() throws IOException, URISyntaxException, GeneralSecurityException{
+
+        Phenopacket oncologyPhenopacket = Phenopacket.newBuilder(new Oncology().createOncologyPhenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+        Phenopacket covidPhenopacket = Phenopacket.newBuilder(covidCase.covid19Phenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+        SecurePhenopacket.signPhenopackets(List.of(oncologyPhenopacket, covidPhenopacket));
+
+        EntryStore store = ExternalResources.getSignatureStore();
+        String proofKey = oncologyPhenopacket.getId() + "-BatchProof";
+        byte[] batchProof = store.get(proofKey);
+        byte[][] malformedProofs = {
+            new byte[] {0, 0},
+            ByteBuffer.allocate(8).putInt(Integer.MAX_VALUE).array(),
+            ByteBuffer.allocate(8).putInt(-1).array(),
+            Arrays.copyOf(batchProof, batchProof.length - 1)};
+
+        for (byte[] malformedProof : malformedProofs) {
+            store.put(proofKey, malformedProof);
+            Assertions.assertFalse(SecurePhenopacket.verifyPhenopacket(oncologyPhenopacket));
+            Map<String, VerificationStatus> statuses = SecurePhenopacket.verifyPhenopacketsById(List.of(oncologyPhenopacket.getId(), covidPhenopacket.getId()));
+            Assertions.assertEquals(VerificationStatus.BAD_SIGNATURE, statuses.get(oncologyPhenopacket.getId()));
+            Assertions.assertEquals(VerificationStatus.VERIFIED, statuses.get(covidPhenopacket.getId()));
+        }
+    }
+
+    /*
+     * TEST: a Phenopacket whose signature cannot be read gets an error status, the rest of the batch is verified
+     */
+    @Test
+    void testBatchVerificationError() throws IOException, URISyntaxException, GeneralSecurityException{
+
+        String unreadableBatch = "unreadable-batch";
+        StorageBackend previousBackend = ExternalResources.getStorageBackend();
+        ExternalResources.setStorageBackend(new MemoryStorageBackend() {
+            @Override
+            public EntryStore openIndexedStore(String name){
+                EntryStore store = super.openIndexedStore(name);
+                return new EntryStore() {
+                    @Override
+                    public void put(String key, byte[] value) throws IOException{
+                        store.put(key, value);
+                    }
+
+                    @Override
+                    public byte[] get(String key) throws IOException{
+                        if (key.startsWith(unreadableBatch)) {
+                            throw new IOException("Unreadable entry " + key);
+                        }
+                        return store.get(key);
+                    }
+
+                    @Override
+                    public boolean contains(String key) throws IOException{
+                        return store.contains(key);
+                    }
+
+                    @Override
+                    public int size(){
+                        return store.size();
+                    }
+
+                    @Override
+                    public void flush() throws IOException{
+                        store.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException{
+                        store.close();
+                    }
+                };
+            }
+        });
+        try {
+            Phenopacket oncologyPhenopacket = Phenopacket.newBuilder(new Oncology().createOncologyPhenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+            Phenopacket covidPhenopacket = Phenopacket.newBuilder(covidCase.covid19Phenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+            SecurePhenopacket.signPhenopackets(List.of(oncologyPhenopacket, covidPhenopacket));
+
+            // The proof points to a batch whose signature cannot be read
+            EntryStore store = ExternalResources.getSignatureStore();
+            String proofKey = oncologyPhenopacket.getId() + "-BatchProof";
+            ByteBuffer batchProof = ByteBuffer.wrap(store.get(proofKey));
+            batchProof.position(4 + batchProof.getInt());
+            byte[] batchId = unreadableBatch.getBytes(StandardCharsets.UTF_8);
+            store.put(proofKey, ByteBuffer.allocate(4 + batchId.length + batchProof.remaining())
+                .putInt(batchId.length).put(batchId).put(batchProof).array());
+
+            Map<String, VerificationStatus> statuses = SecurePhenopacket.verifyPhenopacketsById(List.of(oncologyPhenopacket.getId(), covidPhenopacket.getId()));
+            Assertions.assertEquals(VerificationStatus.ERROR, statuses.get(oncologyPhenopacket.getId()));
+            Assertions.assertEquals(VerificationStatus.VERIFIED, statuses.get(covidPhenopacket.getId()));
+        } finally {
+            ExternalResources.setStorageBackend(previousBackend);
+        }
+    }
+
+    /*
+     * TEST: the elements are signed with their tag, the untagged signatures stored before are still verified
+     */
+    @Test
+    void testElementSignatureTag() throws IOException, URISyntaxException, ParseException, GeneralSecurityException{
+
+        Phenopacket oncologyPhenopacket = Phenopacket.newBuilder(new Oncology().createOncologyPhenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+        SecurePhenopacket.signPhenopacket(oncologyPhenopacket);
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacket(oncologyPhenopacket));
+
+        EntryStore store = ExternalResources.getSignatureStore();
+        String signatureKey = oncologyPhenopacket.getId() + "-Signature";
+        Assertions.assertFalse(SignatureService.getInstance().verify(oncologyPhenopacket.toByteArray(), store.get(signatureKey)));
+
+        // A signature of the untagged element
+        store.put(signatureKey, SignatureService.getInstance().sign(oncologyPhenopacket.toByteArray()));
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacket(oncologyPhenopacket));
+        Map<String, VerificationStatus> statuses = SecurePhenopacket.verifyPhenopacketsById(List.of(oncologyPhenopacket.getId()));
+        Assertions.assertEquals(VerificationStatus.VERIFIED, statuses.get(oncologyPhenopacket.getId()));
+    }
+
+    /*
+     * TEST: the signed roots and digests carry the tag of their mode, an untagged signature
+     * or a signature of another mode is not accepted
+     */
+    @Test
+    void testSignatureDomains() throws IOException, URISyntaxException, GeneralSecurityException{
+
+        Phenopacket oncologyPhenopacket = Phenopacket.newBuilder(new Oncology().createOncologyPhenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+        SecurePhenopacket.signPhenopacketDigest(oncologyPhenopacket, false);
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacketDigest(oncologyPhenopacket));
+
+        // The bare digest signed by the same key
+        EntryStore store = ExternalResources.getSignatureStore();
+        byte[] untagged = SignatureService.getInstance().sign(KeccakEngine.hash(oncologyPhenopacket));
+        store.put(oncologyPhenopacket.getId() + "-DigestSignature", untagged);
+        Assertions.assertFalse(SecurePhenopacket.verifyPhenopacketDigest(oncologyPhenopacket));
+
+        // A batch root signature offered as the signature of a Merkle root
+        Phenopacket covidPhenopacket = Phenopacket.newBuilder(covidCase.covid19Phenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+        MerkleTree tree = new MerkleTree(List.of(covidPhenopacket.getId()), List.of(KeccakEngine.hash(covidPhenopacket.toByteArray())));
+        String batchId = SecurePhenopacket.signPhenopackets(List.of(covidPhenopacket));
+        store.put(covidPhenopacket.getId() + "-MerkleSignature", store.get(batchId + "-Signature"));
+        Assertions.assertFalse(SecurePhenopacket.verifyPhenopacketElement(covidPhenopacket.getId(), covidPhenopacket.getId(),
+            covidPhenopacket, tree.getProof(covidPhenopacket.getId())));
+    }
+
+    /*
+     * TEST: sign the digest of a Phenopacket, with and without storing the Phenopacket
+     */
+    @Test
+    void testDigestSigning() throws IOException, URISyntaxException, GeneralSecurityException{
+
+        Phenopacket oncologyPhenopacket = Phenopacket.newBuilder(new Oncology().createOncologyPhenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+        Phenopacket externalPhenopacket = Phenopacket.newBuilder(oncologyPhenopacket).setId(SecurePhenopacket.generatePhenopacketId()).build();
+
+        SecurePhenopacket.signPhenopacketDigest(oncologyPhenopacket, true);
+        SecurePhenopacket.signPhenopacketDigest(externalPhenopacket, false);
+
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacketDigest(oncologyPhenopacket));
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacketDigest(externalPhenopacket));
+        Assertions.assertFalse(SecurePhenopacket.verifyPhenopacketDigest(Phenopacket.newBuilder(oncologyPhenopacket).clearDiseases().build()));
+
+        // The byte array verification accepts the digest signature too
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacket(oncologyPhenopacket));
+        Map<String, VerificationStatus> statuses = SecurePhenopacket.verifyPhenopacketsById(List.of(oncologyPhenopacket.getId(), externalPhenopacket.getId()));
+        Assertions.assertEquals(VerificationStatus.VERIFIED, statuses.get(oncologyPhenopacket.getId()));
+        Assertions.assertEquals(VerificationStatus.MISSING_SIGNATURE, statuses.get(externalPhenopacket.getId()));
+    }
+}
@@ -0,0 +1,127 @@
+package tfm.securityMechanisms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import phenopackets.securityMechanisms.HashIndex;
+
+public class HashIndexTest {
+
+    @TempDir
+    Path folder;
+
+    /*
+     * TEST: an element name contained in another one gets its own hash
+     */
+    @Test
+    void checkExactElement() throws IOException{
+        HashIndex hashIndex = HashIndex.inMemory();
+        hashIndex.put("P-1", "Fever", digest(1));
+        hashIndex.put("P-1", "Fever high", digest(2));
+        hashIndex.put("P-1", "Fever", digest(3));
+
+        Assertions.assertArrayEquals(digest(3), hashIndex.get("P-1", "Fever"));
+        Assertions.assertArrayEquals(digest(2), hashIndex.get("P-1", "Fever high"));
+        Assertions.assertNull(hashIndex.get("P-2", "Fever"));
+        Assertions.assertEquals(2, hashIndex.size());
+    }
+
+    /*
+     * TEST: the index grows and keeps every hash after it is opened again
+     */
+    @Test
+    void checkReopenAfterResize() throws IOException{
+        HashIndex hashIndex = new HashIndex(folder.resolve("hashes.idx").toFile());
+        Map<String, byte[]> digests = new LinkedHashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            digests.put("Element " + i, digest(i));
+        }
+        hashIndex.putAll("P-1", digests);
+        hashIndex.close();
+
+        HashIndex reopened = new HashIndex(folder.resolve("hashes.idx").toFile());
+        Assertions.assertEquals(3000, reopened.size());
+        for (int i = 0; i < 3000; i++) {
+            Assertions.assertArrayEquals(digest(i), reopened.get("P-1", "Element " + i));
+        }
+    }
+
+    /*
+     * TEST: a removed hash is not found, the keys stored after it are, and the removal is kept after reopening
+     */
+    @Test
+    void checkRemove() throws IOException{
+        HashIndex hashIndex = new HashIndex(folder.resolve("hashes.idx").toFile());
+        for (int i = 0; i < 400; i++) {
+            hashIndex.put("P-1", "Element " + i, digest(i));
+        }
+        for (int i = 0; i < 400; i += 2) {
+            Assertions.assertTrue(hashIndex.remove("P-1", "Element " + i));
+        }
+        Assertions.assertFalse(hashIndex.remove("P-1", "Element 0"));
+        Assertions.assertEquals(200, hashIndex.size());
+        hashIndex.close();
+
+        HashIndex reopened = new HashIndex(folder.resolve("hashes.idx").toFile());
+        Assertions.assertEquals(200, reopened.size());
+        for (int i = 0; i < 400; i++) {
+            if (i % 2 == 0) {
+                Assertions.assertNull(reopened.get("P-1", "Element " + i));
+            } else {
+                Assertions.assertArrayEquals(digest(i), reopened.get("P-1", "Element " + i));
+            }
+        }
+
+        // Removing and adding keys many times does not fill the index with tombstones
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 400; i += 2) {
+                reopened.put("P-1", "Element " + i, digest(round));
+            }
+            for (int i = 0; i < 400; i += 2) {
+                reopened.remove("P-1", "Element " + i);
+            }
+        }
+        Assertions.assertEquals(200, reopened.size());
+        Assertions.assertArrayEquals(digest(399), reopened.get("P-1", "Element 399"));
+    }
+
+    /*
+     * TEST: an index of the first format is kept aside and a new one is created
+     */
+    @Test
+    void checkFirstFormatIndex() throws IOException{
+        Path indexFile = folder.resolve("hashes.idx");
+        Files.write(indexFile, ByteBuffer.allocate(16 + 1024 * 48).putInt(0x50484931).putInt(1024).putInt(1).array());
+
+        HashIndex hashIndex = new HashIndex(indexFile.toFile());
+        Assertions.assertTrue(Files.exists(folder.resolve("hashes.idx.v1")));
+        Assertions.assertEquals(0, hashIndex.size());
+        hashIndex.put("P-1", "Fever", digest(1));
+        Assertions.assertArrayEquals(digest(1), hashIndex.get("P-1", "Fever"));
+    }
+
+    /*
+     * TEST: only 32 bytes hashes are accepted
+     */
+    @Test
+    void checkDigestSize(){
+        HashIndex hashIndex = HashIndex.inMemory();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> hashIndex.put("P-1", "Fever", new byte[16]));
+    }
+
+    private static byte[] digest(int value){
+        byte[] digest = new byte[HashIndex.DIGEST_SIZE];
+        Arrays.fill(digest, (byte) value);
+        digest[0] = (byte) (value >>> 8);
+        return digest;
+    }
+}
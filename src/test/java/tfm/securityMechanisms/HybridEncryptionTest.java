@@ -2,7 +2,10 @@ package tfm.securityMechanisms;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -15,7 +18,13 @@ import com.nimbusds.jose.shaded.json.parser.ParseException;
 
 import phenopackets.SecurePhenopacket;
 import phenopackets.examples.Covid19;
+import phenopackets.securityMechanisms.EnvelopeSession;
+import phenopackets.securityMechanisms.ExternalResources;
+import phenopackets.securityMechanisms.HybridAlgorithm;
+import phenopackets.securityMechanisms.HybridBatch;
 import phenopackets.securityMechanisms.HybridEncryption;
+import phenopackets.securityMechanisms.MemoryStorageBackend;
+import phenopackets.securityMechanisms.StorageBackend;
 import phenopackets.schema.BlockBuilder;
 import phenopackets.schema.MainElements;
 
@@ -156,4 +165,141 @@ public class HybridEncryptionTest {
         "Expected same MetaData element");
         Assertions.assertEquals(covidCase.isoAge, plainAge,"Expected value isoAge = P70Y");
     }
-}
\ No newline at end of file
+
+    /*
+     * TEST: encrypt several fields with one envelope session and decrypt them
+     * after opening the session again from the stored wrapped key
+     */
+    @Test
+    void checkEnvelopeSession() throws URISyntaxException, IOException, GeneralSecurityException, ParseException{
+
+        Phenopacket phenopacket = covidCase.covid19Phenopacket();
+        String phenopacketId = phenopacket.getId();
+        MetaData metaData = phenopacket.getMetaData();
+
+        // One hybrid encryption for the whole Phenopacket
+        EnvelopeSession session = HybridEncryption.createSession(phenopacketId.getBytes());
+        TimeElement age = BlockBuilder.createTimeElementAge(covidCase.isoAge.getBytes(), session);
+        MetaData metaDataProtectingCreator = MainElements.protectedMetaDataCreator(metaData, session);
+
+        Assertions.assertNotEquals(covidCase.isoAge, age.getAge().getIso8601Duration());
+        Assertions.assertNotEquals(metaData.getCreatedBy(), metaDataProtectingCreator.getCreatedBy());
+
+        // Store the wrapped key with the rest of encrypted elements
+        SecurePhenopacket.protectMetaData(phenopacket, session);
+        byte[] cipherMetadata = HybridEncryption.getCipherBytes("Metadata", phenopacketId);
+
+        // Unwrap the key once and decrypt every field
+        EnvelopeSession openedSession = HybridEncryption.openSession(phenopacketId);
+
+        Assertions.assertEquals(covidCase.isoAge, BlockBuilder.getAge(age, openedSession));
+        Assertions.assertEquals(metaData.getCreatedBy(), MainElements.getMetaDataCreator(metaDataProtectingCreator, openedSession));
+        Assertions.assertEquals(metaData, MainElements.getMetaData(cipherMetadata, openedSession));
+    }
+
+    /*
+     * TEST: a field encrypted for a Phenopacket can not be decrypted with the context of another one
+     */
+    @Test
+    void checkEnvelopeSessionContext() throws IOException, GeneralSecurityException, URISyntaxException{
+
+        EnvelopeSession session = HybridEncryption.createSession("phenopacket-1".getBytes());
+        byte[] cipher = HybridEncryption.hybridEncryption("encrypt", covidCase.isoAge.getBytes(), session);
+
+        // The wrapped key is bound to its Phenopacket ID
+        Assertions.assertThrows(GeneralSecurityException.class, 
+            () -> HybridEncryption.openSession(session.getWrappedKey(), "phenopacket-2".getBytes()));
+
+        EnvelopeSession openedSession = HybridEncryption.openSession(session.getWrappedKey(), "phenopacket-1".getBytes());
+        Assertions.assertEquals(covidCase.isoAge, new String(HybridEncryption.hybridEncryption("decrypt", cipher, openedSession)));
+    }
+
+    /*
+     * TEST: encrypt and decrypt a batch of fields in parallel, the results keep the order
+     * of the items and a wrong item does not fail the rest of the batch
+     */
+    @Test
+    void checkBatchEncryption() throws IOException, GeneralSecurityException, URISyntaxException{
+
+        List<HybridBatch.Item> plainItems = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            plainItems.add(new HybridBatch.Item(("P" + i + "Y").getBytes(), ("phenopacket-" + i).getBytes()));
+        }
+        List<HybridBatch.Result> cipherResults = HybridEncryption.hybridEncryption("encrypt", plainItems);
+
+        List<HybridBatch.Item> cipherItems = new ArrayList<>();
+        for (int i = 0; i < cipherResults.size(); i++) {
+            Assertions.assertTrue(cipherResults.get(i).isSuccess());
+            // The last item is decrypted with a different context
+            byte[] context = (i == cipherResults.size() - 1) ? "other".getBytes() : plainItems.get(i).getContext();
+            cipherItems.add(new HybridBatch.Item(cipherResults.get(i).getOutput(), context));
+        }
+        List<HybridBatch.Result> plainResults = HybridEncryption.hybridEncryption("decrypt", cipherItems);
+
+        for (int i = 0; i < plainResults.size() - 1; i++) {
+            Assertions.assertEquals("P" + i + "Y", new String(plainResults.get(i).getOutput()));
+        }
+        HybridBatch.Result failed = plainResults.get(plainResults.size() - 1);
+        Assertions.assertFalse(failed.isSuccess());
+        Assertions.assertTrue(failed.getError() instanceof GeneralSecurityException);
+    }
+
+    /*
+     * TEST: the keyset is rotated to each algorithm, the new data uses the new key and the data
+     * encrypted with the previous keys is still decrypted
+     */
+    @Test
+    void checkAlgorithmRotation() throws IOException, GeneralSecurityException, URISyntaxException{
+        StorageBackend previousBackend = ExternalResources.getStorageBackend();
+        ExternalResources.setStorageBackend(new MemoryStorageBackend());
+        try {
+            byte[] context = "phenopacket-rotation".getBytes();
+            List<byte[]> ciphers = new ArrayList<>();
+            ciphers.add(HybridEncryption.hybridEncryption("encrypt", "P70Y".getBytes(), context));
+
+            for (HybridAlgorithm algorithm : HybridAlgorithm.values()) {
+                int keyId = HybridEncryption.rotateKeySet(algorithm);
+                byte[] cipher = HybridEncryption.hybridEncryption("encrypt", "P70Y".getBytes(), context);
+                // Tink prefix with the ID of the new key
+                Assertions.assertEquals(1, cipher[0]);
+                Assertions.assertEquals(keyId, ByteBuffer.wrap(cipher, 1, 4).getInt());
+                if (algorithm.name().startsWith("DHKEM_X25519")) {
+                    Assertions.assertEquals(5 + 32 + 4 + 16, cipher.length);
+                }
+                ciphers.add(cipher);
+
+                EnvelopeSession session = HybridEncryption.createSession(context);
+                Assertions.assertEquals("P70Y", new String(HybridEncryption.hybridEncryption("decrypt",
+                    HybridEncryption.hybridEncryption("encrypt", "P70Y".getBytes(), session), session)));
+            }
+
+            for (byte[] cipher : ciphers) {
+                Assertions.assertEquals("P70Y", new String(HybridEncryption.hybridEncryption("decrypt", cipher, context)));
+            }
+            Assertions.assertThrows(GeneralSecurityException.class,
+                () -> HybridEncryption.hybridEncryption("decrypt", ciphers.get(ciphers.size() - 1), "other".getBytes()));
+        } finally {
+            ExternalResources.setStorageBackend(previousBackend);
+        }
+    }
+
+    /*
+     * TEST: a keyset that cannot be read is reported to the caller
+     */
+    @Test
+    void checkDamagedKeyset(){
+        StorageBackend previousBackend = ExternalResources.getStorageBackend();
+        MemoryStorageBackend memory = new MemoryStorageBackend();
+        ExternalResources.setStorageBackend(memory);
+        try {
+            memory.write("pk_hybridEnc.json", "{".getBytes());
+            memory.write("sk_hybridEnc.json", "{".getBytes());
+            Assertions.assertThrows(IOException.class,
+                () -> HybridEncryption.hybridEncryption("encrypt", "P70Y".getBytes(), "phenopacket-damaged".getBytes()));
+            Assertions.assertThrows(IOException.class,
+                () -> HybridEncryption.hybridEncryption("decrypt", new byte[64], "phenopacket-damaged".getBytes()));
+        } finally {
+            ExternalResources.setStorageBackend(previousBackend);
+        }
+    }
+}
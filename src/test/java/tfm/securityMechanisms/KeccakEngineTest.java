@@ -0,0 +1,66 @@
+package tfm.securityMechanisms;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import org.bouncycastle.jcajce.provider.digest.Keccak;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.phenopackets.secure.schema.Phenopacket;
+import org.phenopackets.secure.schema.core.PhenotypicFeature;
+
+import phenopackets.examples.Oncology;
+import phenopackets.securityMechanisms.Hashing;
+import phenopackets.securityMechanisms.KeccakEngine;
+
+public class KeccakEngineTest {
+
+    Oncology oncologyCase = new Oncology();
+
+    /*
+     * TEST: the hash of an element is the same as a new Keccak digest of its bytes
+     */
+    @Test
+    void checkSameHashAsDigest() throws IOException, GeneralSecurityException, URISyntaxException{
+        Phenopacket phenopacket = oncologyCase.createOncologyPhenopacket();
+        PhenotypicFeature phenotypicFeature = phenopacket.getPhenotypicFeaturesList().get(0);
+        byte[] expected = new Keccak.Digest256().digest(phenotypicFeature.toByteArray());
+
+        Assertions.assertArrayEquals(expected, KeccakEngine.hash(phenotypicFeature.toByteArray()));
+        Assertions.assertArrayEquals(expected, KeccakEngine.hash(phenotypicFeature));
+        // The reused digest gives the same hash again
+        Assertions.assertArrayEquals(expected, KeccakEngine.hash(phenotypicFeature));
+
+        byte[] whole = new Keccak.Digest256().digest(phenopacket.toByteArray());
+        Assertions.assertArrayEquals(whole, KeccakEngine.hash(phenopacket));
+    }
+
+    /*
+     * TEST: the hash is written in the given position of the buffer
+     */
+    @Test
+    void checkHashIntoBuffer(){
+        byte[] element = "P70Y".getBytes();
+        byte[] out = new byte[KeccakEngine.DIGEST_SIZE + 8];
+        new Hashing().computeHashElement(element, out, 8);
+
+        Assertions.assertArrayEquals(KeccakEngine.hash(element), Arrays.copyOfRange(out, 8, out.length));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> KeccakEngine.hash(element, 0, element.length, out, 9));
+    }
+
+    /*
+     * TEST: raw hashes are compared without hex strings
+     */
+    @Test
+    void checkRawHashComparison() throws IOException, GeneralSecurityException, URISyntaxException{
+        Phenopacket phenopacket = oncologyCase.createOncologyPhenopacket();
+        PhenotypicFeature phenotypicFeature = phenopacket.getPhenotypicFeaturesList().get(0);
+        byte[] hash = KeccakEngine.hash(phenotypicFeature);
+
+        Assertions.assertTrue(Hashing.checkHash(phenotypicFeature, hash));
+        Assertions.assertTrue(Hashing.checkHash(phenotypicFeature.toByteArray(), hash));
+        Assertions.assertFalse(Hashing.checkHash(phenopacket.getPhenotypicFeaturesList().get(1), hash));
+    }
+}
@@ -0,0 +1,89 @@
+package tfm.securityMechanisms;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.google.crypto.tink.HybridEncrypt;
+
+import phenopackets.securityMechanisms.ExternalResources;
+import phenopackets.securityMechanisms.HybridEncryption;
+import phenopackets.securityMechanisms.KeysetRegistry;
+
+public class KeysetRegistryTest {
+
+    private static final String PK_FILE = "pk_hybridEnc.json";
+    private static final byte[] CONTEXT = "17a1a6ad-2ea1-40ee-9308-1401fa096c0c".getBytes();
+
+    @AfterEach
+    void restoreRefreshInterval(){
+        KeysetRegistry.setRefreshInterval(1000);
+    }
+
+    /*
+     * TEST: the same primitive instance is shared between calls
+     */
+    @Test
+    void checkPrimitiveIsCached() throws IOException, GeneralSecurityException, URISyntaxException{
+        // The first encryption creates the keyset if needed
+        HybridEncryption.hybridEncryption("encrypt", "P70Y".getBytes(), CONTEXT);
+
+        HybridEncrypt first = KeysetRegistry.getPrimitive(PK_FILE, HybridEncrypt.class);
+        HybridEncrypt second = KeysetRegistry.getPrimitive(PK_FILE, HybridEncrypt.class);
+
+        Assertions.assertSame(first, second);
+    }
+
+    /*
+     * TEST: a touched keyset file with the same content keeps its primitives
+     */
+    @Test
+    void checkTouchedKeysetIsNotReloaded() throws IOException, GeneralSecurityException, URISyntaxException{
+        HybridEncryption.hybridEncryption("encrypt", "P70Y".getBytes(), CONTEXT);
+        KeysetRegistry.setRefreshInterval(0);
+
+        HybridEncrypt first = KeysetRegistry.getPrimitive(PK_FILE, HybridEncrypt.class);
+        long reloads = KeysetRegistry.getReloadCount(PK_FILE);
+
+        // Change only the modification time of the keyset file
+        File keysetFile = new ExternalResources().getFileFromResource(PK_FILE);
+        Assertions.assertTrue(keysetFile.setLastModified(keysetFile.lastModified() - 10000));
+
+        HybridEncrypt second = KeysetRegistry.getPrimitive(PK_FILE, HybridEncrypt.class);
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(reloads, KeysetRegistry.getReloadCount(PK_FILE));
+    }
+
+    /*
+     * TEST: a modified keyset file is read again
+     */
+    @Test
+    void checkKeysetIsReloaded() throws IOException, GeneralSecurityException, URISyntaxException{
+        HybridEncryption.hybridEncryption("encrypt", "P70Y".getBytes(), CONTEXT);
+        KeysetRegistry.setRefreshInterval(0);
+
+        HybridEncrypt first = KeysetRegistry.getPrimitive(PK_FILE, HybridEncrypt.class);
+        long reloads = KeysetRegistry.getReloadCount(PK_FILE);
+
+        // Rewrite the same keyset with a different layout
+        File keysetFile = new ExternalResources().getFileFromResource(PK_FILE);
+        String keyset = Files.readString(keysetFile.toPath());
+        Files.writeString(keysetFile.toPath(), keyset + " ");
+        Assertions.assertTrue(keysetFile.setLastModified(keysetFile.lastModified() + 10000));
+
+        HybridEncrypt second = KeysetRegistry.getPrimitive(PK_FILE, HybridEncrypt.class);
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals(reloads + 1, KeysetRegistry.getReloadCount(PK_FILE));
+
+        // The reloaded keyset still works with the private key
+        byte[] cipher = HybridEncryption.hybridEncryption("encrypt", "P70Y".getBytes(), CONTEXT);
+        byte[] plain = HybridEncryption.hybridEncryption("decrypt", cipher, CONTEXT);
+        Assertions.assertEquals("P70Y", new String(plain));
+    }
+}
@@ -0,0 +1,54 @@
+package tfm.securityMechanisms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import phenopackets.securityMechanisms.KeccakEngine;
+import phenopackets.securityMechanisms.MerkleProof;
+import phenopackets.securityMechanisms.MerkleTree;
+
+public class MerkleTreeTest {
+
+    /*
+     * TEST: every element of trees of different sizes is verified with its proof
+     */
+    @Test
+    void checkEveryProof(){
+        for (int size = 1; size <= 9; size++) {
+            List<String> names = new ArrayList<>();
+            List<byte[]> hashes = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                names.add("diseases/" + i);
+                hashes.add(KeccakEngine.hash(("Disease " + i).getBytes()));
+            }
+            MerkleTree tree = new MerkleTree(names, hashes);
+
+            for (int i = 0; i < size; i++) {
+                // The proof is sent serialized with the element
+                MerkleProof proof = MerkleProof.parse(tree.getProof(names.get(i)).toByteArray());
+                Assertions.assertTrue(proof.verify(names.get(i), hashes.get(i), tree.getRoot()));
+            }
+        }
+    }
+
+    /*
+     * TEST: a modified element or an element with another name is rejected
+     */
+    @Test
+    void checkWrongElement(){
+        List<String> names = List.of("id", "subject", "diseases/0", "diseases/1", "medical_actions/0");
+        List<byte[]> hashes = new ArrayList<>();
+        for (String name : names) {
+            hashes.add(KeccakEngine.hash(name.getBytes()));
+        }
+        MerkleTree tree = new MerkleTree(names, hashes);
+        MerkleProof proof = tree.getProof("diseases/0");
+
+        Assertions.assertFalse(proof.verify("diseases/0", KeccakEngine.hash("other".getBytes()), tree.getRoot()));
+        Assertions.assertFalse(proof.verify("diseases/1", hashes.get(2), tree.getRoot()));
+        Assertions.assertFalse(tree.getProof("diseases/1").verify("diseases/1", hashes.get(2), tree.getRoot()));
+    }
+}
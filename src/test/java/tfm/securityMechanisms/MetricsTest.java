@@ -0,0 +1,134 @@
+package tfm.securityMechanisms;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+
+import phenopackets.securityMechanisms.FileStorageBackend;
+import phenopackets.securityMechanisms.Hashing;
+import phenopackets.securityMechanisms.HybridEncryption;
+import phenopackets.securityMechanisms.Metrics;
+import phenopackets.securityMechanisms.Metrics.Operation;
+import phenopackets.securityMechanisms.SignatureService;
+
+public class MetricsTest {
+
+    private static final String PHENOPACKET_ID = "17a1a6ad-2ea1-40ee-9308-1401fa096c0c";
+
+    @TempDir
+    Path folder;
+
+    @BeforeEach
+    void enableMetrics(){
+        Metrics.reset();
+        Metrics.setEnabled(true);
+    }
+
+    @AfterEach
+    void disableMetrics(){
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    /*
+     * TEST: the operations, errors and bytes of encryption, signature, hash and storage are counted
+     */
+    @Test
+    void checkRecordedOperations() throws IOException, GeneralSecurityException, URISyntaxException{
+        byte[] age = "P70Y".getBytes(StandardCharsets.UTF_8);
+        byte[] cipher = HybridEncryption.hybridEncryption("encrypt", age, PHENOPACKET_ID.getBytes());
+        HybridEncryption.hybridEncryption("decrypt", cipher, PHENOPACKET_ID.getBytes());
+        Assertions.assertEquals(1, Metrics.getCount(Operation.ENCRYPT));
+        Assertions.assertEquals(age.length, Metrics.getBytes(Operation.ENCRYPT));
+        Assertions.assertEquals(1, Metrics.getCount(Operation.DECRYPT));
+
+        SignatureService service = SignatureService.getInstance();
+        byte[] signature = service.sign(age);
+        Assertions.assertTrue(service.verify(age, signature));
+        Assertions.assertFalse(service.verify("P71Y".getBytes(StandardCharsets.UTF_8), signature));
+        Assertions.assertEquals(1, Metrics.getCount(Operation.SIGN));
+        Assertions.assertEquals(1, Metrics.getCount(Operation.VERIFY));
+        Assertions.assertEquals(1, Metrics.getErrorCount(Operation.VERIFY));
+
+        new Hashing().computeHashElement(age);
+        Assertions.assertEquals(1, Metrics.getCount(Operation.HASH_COMPUTE));
+
+        // The keysets were read from the default storage
+        Metrics.reset();
+        FileStorageBackend storage = new FileStorageBackend(folder);
+        storage.write("element.bin", new byte[100]);
+        storage.append("element.bin", new byte[28]);
+        Assertions.assertEquals(128, storage.read("element.bin").length);
+        Assertions.assertEquals(2, Metrics.getCount(Operation.STORE_WRITE));
+        Assertions.assertEquals(128, Metrics.getBytes(Operation.STORE_WRITE));
+        Assertions.assertEquals(128, Metrics.getBytes(Operation.STORE_READ));
+    }
+
+    /*
+     * TEST: nothing is recorded while the metrics are disabled
+     */
+    @Test
+    void checkDisabledMetrics() throws IOException{
+        Metrics.setEnabled(false);
+        Assertions.assertEquals(0, Metrics.start());
+
+        FileStorageBackend storage = new FileStorageBackend(folder);
+        storage.write("element.bin", new byte[100]);
+        new Hashing().computeHashElement(new byte[10]);
+        Assertions.assertEquals(0, Metrics.getCount(Operation.STORE_WRITE));
+        Assertions.assertEquals(0, Metrics.getCount(Operation.HASH_COMPUTE));
+    }
+
+    /*
+     * TEST: the metrics are exported in the Prometheus text format and as JSON, to a file and over HTTP
+     */
+    @Test
+    void checkExport() throws IOException{
+        Metrics.record(Operation.SIGN, Metrics.start(), 64);
+        Metrics.error(Operation.SIGN, Metrics.start());
+
+        String text = Metrics.toPrometheus();
+        Assertions.assertTrue(text.contains("# TYPE phenopackets_operation_seconds histogram"));
+        Assertions.assertTrue(text.contains("phenopackets_operation_seconds_bucket{operation=\"sign\",le=\"+Inf\"} 1"));
+        Assertions.assertTrue(text.contains("phenopackets_operation_seconds_count{operation=\"sign\"} 1"));
+        Assertions.assertTrue(text.contains("phenopackets_operation_errors_total{operation=\"sign\"} 1"));
+        Assertions.assertTrue(text.contains("phenopackets_operation_bytes_total{operation=\"sign\"} 64"));
+
+        JsonObject sign = JsonParser.parseString(Metrics.toJson()).getAsJsonObject()
+            .getAsJsonObject("operations").getAsJsonObject("sign");
+        Assertions.assertEquals(1, sign.get("count").getAsLong());
+        Assertions.assertEquals(1, sign.get("errors").getAsLong());
+        Assertions.assertTrue(sign.get("p99Millis").getAsDouble() > 0);
+
+        Path textFile = folder.resolve("metrics.prom");
+        Path jsonFile = folder.resolve("metrics.json");
+        Metrics.writeTo(textFile);
+        Metrics.writeTo(jsonFile);
+        Assertions.assertTrue(Files.readString(textFile).startsWith("# HELP"));
+        Assertions.assertTrue(JsonParser.parseString(Files.readString(jsonFile)).isJsonObject());
+
+        HttpServer server = Metrics.startServer(new InetSocketAddress("127.0.0.1", 0));
+        try (InputStream input = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/metrics").openStream()) {
+            String served = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            Assertions.assertTrue(served.contains("phenopackets_operation_seconds_count{operation=\"sign\"} 1"));
+        } finally {
+            server.stop(0);
+        }
+    }
+}
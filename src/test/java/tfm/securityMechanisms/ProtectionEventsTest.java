@@ -0,0 +1,101 @@
+package tfm.securityMechanisms;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.phenopackets.secure.schema.Phenopacket;
+
+import com.nimbusds.jose.shaded.json.parser.ParseException;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import phenopackets.PhenopacketJsonCodec;
+import phenopackets.SecurePhenopacket;
+import phenopackets.examples.CohortGenerator;
+import phenopackets.securityMechanisms.ExternalResources;
+import phenopackets.securityMechanisms.Hashing;
+import phenopackets.securityMechanisms.HybridEncryption;
+import phenopackets.securityMechanisms.MemoryStorageBackend;
+import phenopackets.securityMechanisms.SignatureService;
+import phenopackets.securityMechanisms.StorageBackend;
+
+public class ProtectionEventsTest {
+
+    @TempDir
+    Path folder;
+
+    private StorageBackend previousBackend;
+
+    @BeforeEach
+    void saveBackend(){
+        previousBackend = ExternalResources.getStorageBackend();
+    }
+
+    @AfterEach
+    void restoreBackend(){
+        ExternalResources.setStorageBackend(previousBackend);
+    }
+
+    /*
+     * TEST: the settings of phenopackets.jfc record an event for each stage of the pipeline
+     */
+    @Test
+    void checkRecordedStages() throws IOException, GeneralSecurityException, URISyntaxException, java.text.ParseException, ParseException{
+        Configuration configuration;
+        try (Reader reader = new InputStreamReader(getClass().getClassLoader().getResourceAsStream("phenopackets.jfc"), StandardCharsets.UTF_8)) {
+            configuration = Configuration.create(reader);
+        }
+        Path recordingFile = folder.resolve("phenopackets.jfr");
+
+        try (Recording recording = new Recording(configuration)) {
+            recording.start();
+
+            ExternalResources.setStorageBackend(new MemoryStorageBackend());
+            Phenopacket phenopacket = new CohortGenerator(3).generate(0);
+            byte[] age = "P70Y".getBytes(StandardCharsets.UTF_8);
+            byte[] cipher = HybridEncryption.hybridEncryption("encrypt", age, phenopacket.getId().getBytes());
+            HybridEncryption.saveInFile(cipher, "Age", phenopacket.getId());
+
+            SignatureService service = SignatureService.getInstance();
+            Assertions.assertTrue(service.verify(age, service.sign(age)));
+            new Hashing().computeHashElement(age);
+
+            SecurePhenopacket.exportPhenopacket(phenopacket);
+            File jsonFile = folder.resolve("phenopacket.json").toFile();
+            Files.writeString(jsonFile.toPath(), PhenopacketJsonCodec.pretty().print(phenopacket));
+            Assertions.assertEquals(phenopacket, SecurePhenopacket.importPhenopacket(jsonFile));
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        Set<String> stages = new HashSet<>();
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            if (name.startsWith("phenopackets.")) {
+                stages.add(name);
+                Assertions.assertTrue(event.getLong("size") > 0);
+            }
+        }
+        Assertions.assertEquals(Set.of("phenopackets.KeysetLoad", "phenopackets.Encryption", "phenopackets.Signature",
+            "phenopackets.Hash", "phenopackets.JsonStore", "phenopackets.JsonCodec"), stages);
+    }
+}
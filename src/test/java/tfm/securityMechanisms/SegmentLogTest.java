@@ -0,0 +1,135 @@
+package tfm.securityMechanisms;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import phenopackets.securityMechanisms.SegmentLog;
+
+public class SegmentLogTest {
+
+    @TempDir
+    Path folder;
+
+    /*
+     * TEST: append, replace and retrieve values, also after the log is opened again
+     */
+    @Test
+    void checkPutAndReopen() throws IOException{
+        try (SegmentLog log = new SegmentLog(folder.toFile())) {
+            log.put("P-1/Metadata", "metadata".getBytes());
+            log.put("P-1/Age", "age".getBytes());
+            log.put("P-1/Age", "new age".getBytes());
+
+            Assertions.assertEquals("new age", new String(log.get("P-1/Age")));
+            Assertions.assertNull(log.get("P-2/Age"));
+            Assertions.assertEquals(2, log.size());
+        }
+        try (SegmentLog log = new SegmentLog(folder.toFile())) {
+            Assertions.assertEquals("metadata", new String(log.get("P-1/Metadata")));
+            Assertions.assertEquals("new age", new String(log.get("P-1/Age")));
+        }
+    }
+
+    /*
+     * TEST: a torn record at the end of the log is discarded on open
+     */
+    @Test
+    void checkTornTail() throws IOException{
+        try (SegmentLog log = new SegmentLog(folder.toFile())) {
+            log.put("P-1/Age", "age".getBytes());
+        }
+        File segment = folder.resolve("00000001.seg").toFile();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(file.length());
+            file.writeInt(100);
+            file.writeInt(0);
+            file.write("P-2".getBytes());
+        }
+
+        try (SegmentLog log = new SegmentLog(folder.toFile())) {
+            Assertions.assertEquals("age", new String(log.get("P-1/Age")));
+            Assertions.assertFalse(log.contains("P-2/Age"));
+            log.put("P-2/Age", "other".getBytes());
+            Assertions.assertEquals("other", new String(log.get("P-2/Age")));
+        }
+    }
+
+    /*
+     * TEST: a damaged record of a closed segment is skipped, the following records and segments are kept
+     */
+    @Test
+    void checkDamagedClosedSegment() throws IOException{
+        try (SegmentLog log = new SegmentLog(folder.toFile(), 64)) {
+            for (int i = 1; i <= 6; i++) {
+                log.put("P-" + i + "/Age", ("age-" + i).getBytes());
+            }
+        }
+        // The first record of the first segment
+        try (RandomAccessFile file = new RandomAccessFile(folder.resolve("00000001.seg").toFile(), "rw")) {
+            file.seek(12);
+            file.write('X');
+        }
+
+        try (SegmentLog log = new SegmentLog(folder.toFile(), 64)) {
+            Assertions.assertFalse(log.contains("P-1/Age"));
+            for (int i = 2; i <= 6; i++) {
+                Assertions.assertEquals("age-" + i, new String(log.get("P-" + i + "/Age")));
+            }
+            log.compact();
+            Assertions.assertEquals("age-2", new String(log.get("P-2/Age")));
+        }
+        try (SegmentLog log = new SegmentLog(folder.toFile(), 64)) {
+            Assertions.assertEquals(5, log.size());
+            Assertions.assertEquals("age-2", new String(log.get("P-2/Age")));
+        }
+    }
+
+    /*
+     * TEST: a record of a closed segment that cannot be delimited is an error
+     */
+    @Test
+    void checkBrokenClosedSegment() throws IOException{
+        try (SegmentLog log = new SegmentLog(folder.toFile(), 64)) {
+            for (int i = 1; i <= 4; i++) {
+                log.put("P-" + i + "/Age", ("age-" + i).getBytes());
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(folder.resolve("00000001.seg").toFile(), "rw")) {
+            file.writeInt(1000);
+        }
+
+        Assertions.assertThrows(IOException.class, () -> new SegmentLog(folder.toFile(), 64));
+    }
+
+    /*
+     * TEST: several values written together and compaction of the replaced values
+     */
+    @Test
+    void checkPutAllAndCompaction() throws IOException{
+        try (SegmentLog log = new SegmentLog(folder.toFile(), 256)) {
+            for (int i = 0; i < 50; i++) {
+                Map<String, byte[]> entries = new LinkedHashMap<>();
+                entries.put("P-1/Metadata", ("metadata-" + i).getBytes());
+                entries.put("P-1/Age", ("age-" + i).getBytes());
+                log.putAll(entries);
+            }
+            log.compact();
+
+            Assertions.assertEquals("metadata-49", new String(log.get("P-1/Metadata")));
+            Assertions.assertEquals("age-49", new String(log.get("P-1/Age")));
+            Assertions.assertTrue(folder.toFile().list().length < 10);
+        }
+        try (SegmentLog log = new SegmentLog(folder.toFile(), 256)) {
+            Assertions.assertEquals(2, log.size());
+            Assertions.assertEquals("age-49", new String(log.get("P-1/Age")));
+        }
+    }
+}
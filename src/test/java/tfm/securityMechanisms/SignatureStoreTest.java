@@ -0,0 +1,97 @@
+package tfm.securityMechanisms;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import phenopackets.securityMechanisms.SignatureStore;
+
+public class SignatureStoreTest {
+
+    @TempDir
+    Path folder;
+
+    /*
+     * TEST: store, replace and retrieve values
+     */
+    @Test
+    void checkPutAndGet() throws IOException{
+        try (SignatureStore store = openStore()) {
+            store.put("P-1", "phenopacket".getBytes());
+            store.put("P-1-Signature", "signature".getBytes());
+            store.put("P-1-Signature", "new signature".getBytes());
+
+            Assertions.assertEquals("phenopacket", new String(store.get("P-1")));
+            Assertions.assertEquals("new signature", new String(store.get("P-1-Signature")));
+            Assertions.assertNull(store.get("P-2"));
+            Assertions.assertEquals(2, store.size());
+        }
+    }
+
+    /*
+     * TEST: the index grows and keeps every key after the store is opened again
+     */
+    @Test
+    void checkReopenAfterResize() throws IOException{
+        try (SignatureStore store = openStore()) {
+            for (int i = 0; i < 5000; i++) {
+                store.put("P-" + i, ("value-" + i).getBytes());
+            }
+        }
+        try (SignatureStore store = openStore()) {
+            Assertions.assertEquals(5000, store.size());
+            for (int i = 0; i < 5000; i++) {
+                Assertions.assertEquals("value-" + i, new String(store.get("P-" + i)));
+            }
+        }
+    }
+
+    /*
+     * TEST: records written after the index and incomplete records are recovered on open
+     */
+    @Test
+    void checkRecovery() throws IOException{
+        try (SignatureStore store = openStore()) {
+            store.put("P-1", "phenopacket".getBytes());
+        }
+        // The index is lost and the last record was not fully written
+        Files.delete(folder.resolve("signatures.idx"));
+        try (RandomAccessFile dataFile = new RandomAccessFile(folder.resolve("signatures.dat").toFile(), "rw")) {
+            dataFile.seek(dataFile.length());
+            dataFile.writeInt(3);
+            dataFile.write("P-2".getBytes());
+        }
+
+        try (SignatureStore store = openStore()) {
+            Assertions.assertEquals("phenopacket", new String(store.get("P-1")));
+            Assertions.assertNull(store.get("P-2"));
+            store.put("P-2", "other".getBytes());
+            Assertions.assertEquals("other", new String(store.get("P-2")));
+        }
+    }
+
+    /*
+     * TEST: import the entries of the previous signatures JSON file
+     */
+    @Test
+    void checkJsonImport() throws IOException{
+        File jsonFile = folder.resolve("signatures.json").toFile();
+        Files.writeString(jsonFile.toPath(), "{\"P-1\":\"cGhlbm9wYWNrZXQ=\",\"P-1-Signature\":\"c2lnbmF0dXJl\"}");
+
+        try (SignatureStore store = openStore()) {
+            store.importJson(jsonFile);
+            Assertions.assertEquals("phenopacket", new String(store.get("P-1")));
+            Assertions.assertEquals("signature", new String(store.get("P-1-Signature")));
+        }
+    }
+
+    private SignatureStore openStore() throws IOException{
+        return new SignatureStore(folder.resolve("signatures.dat").toFile(), folder.resolve("signatures.idx").toFile());
+    }
+}
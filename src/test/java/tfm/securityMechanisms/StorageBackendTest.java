@@ -0,0 +1,122 @@
+package tfm.securityMechanisms;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.nimbusds.jose.shaded.json.parser.ParseException;
+
+import phenopackets.securityMechanisms.DigitalSignature;
+import phenopackets.securityMechanisms.ExternalResources;
+import phenopackets.securityMechanisms.FileStorageBackend;
+import phenopackets.securityMechanisms.HybridEncryption;
+import phenopackets.securityMechanisms.MemoryStorageBackend;
+import phenopackets.securityMechanisms.StorageBackend;
+
+public class StorageBackendTest {
+
+    private static final String PHENOPACKET_ID = "17a1a6ad-2ea1-40ee-9308-1401fa096c0c";
+
+    @TempDir
+    Path folder;
+
+    private StorageBackend previousBackend;
+
+    @BeforeEach
+    void saveBackend(){
+        previousBackend = ExternalResources.getStorageBackend();
+    }
+
+    @AfterEach
+    void restoreBackend(){
+        ExternalResources.setStorageBackend(previousBackend);
+    }
+
+    /*
+     * TEST: keysets, encrypted elements and signatures are kept in memory
+     */
+    @Test
+    void checkMemoryBackend() throws IOException, GeneralSecurityException, URISyntaxException, ParseException{
+        MemoryStorageBackend memory = new MemoryStorageBackend();
+        ExternalResources.setStorageBackend(memory);
+
+        byte[] cipher = HybridEncryption.hybridEncryption("encrypt", "P70Y".getBytes(), PHENOPACKET_ID.getBytes());
+        HybridEncryption.saveInFile(cipher, "Age", PHENOPACKET_ID);
+        byte[] stored = HybridEncryption.getCipherBytes("Age", PHENOPACKET_ID);
+        Assertions.assertEquals("P70Y", new String(HybridEncryption.hybridEncryption("decrypt", stored, PHENOPACKET_ID.getBytes())));
+        Assertions.assertTrue(memory.exists("sk_hybridEnc.json"));
+
+        DigitalSignature.protectWithDS("sign", "phenopacket".getBytes(), PHENOPACKET_ID);
+        Assertions.assertTrue(DigitalSignature.verifyWithDS("phenopacket".getBytes(), PHENOPACKET_ID));
+        Assertions.assertNotNull(memory.openIndexedStore("signatures").get(PHENOPACKET_ID));
+    }
+
+    /*
+     * TEST: the methods that return a File are only available with a file backend
+     */
+    @Test
+    void checkFilesWithMemoryBackend() throws IOException, URISyntaxException{
+        ExternalResources externalResources = new ExternalResources();
+        ExternalResources.setStorageBackend(new MemoryStorageBackend());
+        UnsupportedOperationException ex = Assertions.assertThrows(UnsupportedOperationException.class,
+            () -> externalResources.getFileFromResource("pk_hybridEnc.json"));
+        Assertions.assertTrue(ex.getMessage().contains("MemoryStorageBackend"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> externalResources.createNewFile("P-1.json"));
+
+        // The same names are read and written through the backend
+        ExternalResources.getStorageBackend().write("P-1.json", "{}".getBytes());
+        Assertions.assertEquals("{}", new String(ExternalResources.getStorageBackend().read("P-1.json")));
+
+        ExternalResources.setStorageBackend(new FileStorageBackend(folder));
+        Assertions.assertEquals(folder.resolve("P-1.json").toFile().getAbsoluteFile(), externalResources.createNewFile("P-1.json"));
+    }
+
+    /*
+     * TEST: files are written in the configured folder and the classpath is only read
+     */
+    @Test
+    void checkFileBackend() throws IOException{
+        try (FileStorageBackend storage = new FileStorageBackend(folder)) {
+            Assertions.assertNull(storage.read("missing.txt"));
+            Assertions.assertEquals(-1, storage.getVersion("missing.txt"));
+
+            storage.append("P-1.txt", "Disease:aa\n".getBytes());
+            storage.append("P-1.txt", "Feature:bb\n".getBytes());
+            Assertions.assertEquals("Disease:aa\nFeature:bb\n", new String(storage.read("P-1.txt")));
+            Assertions.assertTrue(Files.exists(folder.resolve("P-1.txt")));
+
+            storage.write("P-1.txt", "Disease:cc\n".getBytes());
+            Assertions.assertEquals("Disease:cc\n", new String(storage.read("P-1.txt")));
+
+            // The signing keys are only in the classpath
+            Assertions.assertNotNull(storage.read("pk_sign.json"));
+            Assertions.assertFalse(Files.exists(folder.resolve("pk_sign.json")));
+
+            Assertions.assertSame(storage.openLogStore("store"), storage.openLogStore("store"));
+        }
+    }
+
+    /*
+     * TEST: a missing file resolves in the folder and a written file is read before the classpath one
+     */
+    @Test
+    void checkFileBackendResolve() throws IOException{
+        try (FileStorageBackend storage = new FileStorageBackend(folder)) {
+            Assertions.assertEquals(folder.resolve("missing.txt"), storage.resolve("missing.txt"));
+            Assertions.assertEquals(folder.resolve("missing.txt"), storage.resolve("missing.txt"));
+
+            Assertions.assertNotEquals(folder.resolve("pk_sign.json"), storage.resolve("pk_sign.json"));
+            storage.write("pk_sign.json", "{}".getBytes());
+            Assertions.assertEquals(folder.resolve("pk_sign.json"), storage.resolve("pk_sign.json"));
+            Assertions.assertEquals("{}", new String(storage.read("pk_sign.json")));
+        }
+    }
+}
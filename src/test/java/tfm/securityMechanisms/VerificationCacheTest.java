@@ -0,0 +1,87 @@
+package tfm.securityMechanisms;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.phenopackets.secure.schema.Phenopacket;
+
+import com.nimbusds.jose.shaded.json.parser.ParseException;
+
+import phenopackets.SecurePhenopacket;
+import phenopackets.examples.Oncology;
+import phenopackets.securityMechanisms.DigitalSignature;
+import phenopackets.securityMechanisms.KeccakEngine;
+import phenopackets.securityMechanisms.VerificationCache;
+
+public class VerificationCacheTest {
+
+    private static final byte[] SIGNATURE = "signature".getBytes();
+
+    @AfterEach
+    void disableCache(){
+        DigitalSignature.setVerificationCache(null);
+    }
+
+    /*
+     * TEST: the least recently used verdict is evicted and a new signature or key is a miss
+     */
+    @Test
+    void checkEvictionAndInvalidation(){
+        VerificationCache cache = new VerificationCache(2, 60000);
+        cache.put("P-1", digest("1"), SIGNATURE, 7, true);
+        cache.put("P-2", digest("2"), SIGNATURE, 7, true);
+        Assertions.assertEquals(Boolean.TRUE, cache.get("P-1", digest("1"), SIGNATURE, 7));
+
+        // P-2 is the least recently used
+        cache.put("P-3", digest("3"), SIGNATURE, 7, false);
+        Assertions.assertNull(cache.get("P-2", digest("2"), SIGNATURE, 7));
+        Assertions.assertEquals(Boolean.FALSE, cache.get("P-3", digest("3"), SIGNATURE, 7));
+
+        // Changed element, new signature and rotated key
+        Assertions.assertNull(cache.get("P-1", digest("changed"), SIGNATURE, 7));
+        Assertions.assertNull(cache.get("P-1", digest("1"), "other".getBytes(), 7));
+        cache.put("P-1", digest("1"), SIGNATURE, 7, true);
+        Assertions.assertNull(cache.get("P-1", digest("1"), SIGNATURE, 8));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    /*
+     * TEST: a verdict expires after its time to live
+     */
+    @Test
+    void checkExpiration() throws InterruptedException{
+        VerificationCache cache = new VerificationCache(10, 1);
+        cache.put("P-1", digest("1"), SIGNATURE, 7, true);
+        Thread.sleep(5);
+        Assertions.assertNull(cache.get("P-1", digest("1"), SIGNATURE, 7));
+    }
+
+    /*
+     * TEST: verifying an unchanged Phenopacket again is served by the cache
+     */
+    @Test
+    void checkRepeatedVerification() throws IOException, URISyntaxException, ParseException, GeneralSecurityException{
+        VerificationCache cache = new VerificationCache(100, 60000);
+        DigitalSignature.setVerificationCache(cache);
+
+        Phenopacket phenopacket = Phenopacket.newBuilder(new Oncology().createOncologyPhenopacket()).setId(SecurePhenopacket.generatePhenopacketId()).build();
+        SecurePhenopacket.signPhenopacket(phenopacket);
+
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacket(phenopacket));
+        long hits = cache.getHitCount();
+        Assertions.assertTrue(SecurePhenopacket.verifyPhenopacket(phenopacket));
+        Assertions.assertEquals(hits + 1, cache.getHitCount());
+
+        // A modified Phenopacket is verified again
+        Assertions.assertFalse(SecurePhenopacket.verifyPhenopacket(Phenopacket.newBuilder(phenopacket).clearDiseases().build()));
+        Assertions.assertEquals(hits + 1, cache.getHitCount());
+    }
+
+    private static byte[] digest(String element){
+        return KeccakEngine.hash(element.getBytes());
+    }
+}